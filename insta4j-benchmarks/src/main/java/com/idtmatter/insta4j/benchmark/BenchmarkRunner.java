@@ -0,0 +1,54 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the insta4j benchmarks with the gc profiler attached, so every call reports throughput, latency
+ * percentiles and the allocation rate (gc.alloc.rate.norm is bytes allocated per call).
+ * <p/>
+ * <blockquote><pre>
+ *     mvn -pl insta4j-benchmarks -am package
+ *     java -jar insta4j-benchmarks/target/benchmarks.jar [jmh options] [benchmark regexp...]
+ * </pre></blockquote>
+ * Any regular JMH command line option (-wi, -i, -f, -t, -prof ...) is honoured.
+ * Results are also written to jmh-result.json so runs can be compared for regressions.
+ */
+public final class BenchmarkRunner {
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(final String[] args) throws RunnerException, CommandLineOptionException {
+		final CommandLineOptions commandLine = new CommandLineOptions(args);
+		final ChainedOptionsBuilder options = new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result("jmh-result.json");
+		if (commandLine.getIncludes().isEmpty()) {
+			options.include("com\\.idtmatter\\.insta4j\\.benchmark\\..*");
+		}
+		new Runner(options.build()).run();
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.benchmark;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idtmatter.insta4j.bulk.BulkImporter;
+import com.idtmatter.insta4j.bulk.ImportResult;
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.client.transport.InstaTransports;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.idtmatter.insta4j.stub.LatencyDistribution;
+
+/**
+ * Sustained adds per second of the {@link BulkImporter} against a stub answering in 20ms, as Instapaper does from
+ * a nearby region. The score is in bookmarks added per second, every invocation imports {@link #BATCH} new urls.
+ * <p/>
+ * One call at a time is bound by the latency to 50 adds/s, the importer should scale close to linearly with its
+ * parallelism until the client or the stub saturate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 4)
+@Fork(1)
+public class BulkImportBenchmark {
+
+	static final int BATCH = 200;
+
+	@Param({"1", "8", "32"})
+	public int parallelism;
+
+	private InstapaperStubServer server;
+	private FullInstaClient client;
+	private BulkImporter importer;
+	private int batches;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(0)).latency(LatencyDistribution.fixed(20))
+				.start();
+		final InstaClientConfig config = ClientFixture.configFor(server);
+		config.getProperties().put(InstaClientConfig.PROPERTY_TRANSPORT, InstaTransports.POOLED);
+		config.getProperties().put(InstaClientConfig.PROPERTY_MAX_CONNECTIONS, "32");
+		client = new FullInstaClient(ClientFixture.USERNAME, ClientFixture.PASSWORD, config);
+		importer = new BulkImporter(client, parallelism).resolveFinalUrl(false);
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.out.println(String.format("%nparallelism %d: %d bookmarks added", parallelism, server.getDataset()
+				.getBookmarkIdCount()));
+		client.destroy();
+		server.stop();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public ImportResult importBatch() throws IOException {
+		final int batch = batches++;
+		return importer.importUrls(new AbstractList<String>() {
+			@Override
+			public String get(final int index) {
+				return "http://example.com/" + batch + "/" + index;
+			}
+
+			@Override
+			public int size() {
+				return BATCH;
+			}
+		});
+	}
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.benchmark;
+
+import com.idtmatter.insta4j.client.config.DefaultInstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Shared wiring between the benchmarks and the {@link InstapaperStubServer}.
+ */
+final class ClientFixture {
+
+	static final String USERNAME = "jinstapaper@gmail.com";
+	static final String PASSWORD = "open";
+
+	private ClientFixture() {
+	}
+
+	/**
+	 * @return A client configuration with the dummy consumer key from insta4j.properties pointing at the server.
+	 */
+	static InstaClientConfig configFor(final InstapaperStubServer server) {
+		final InstaClientConfig config = new DefaultInstaClientConfig();
+		config.getProperties().put(InstaClientConfig.PROPERTY_API_BASE_URL, server.getBaseUrl());
+		return config;
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.jsonp.JAXBContextResolver;
+import com.idtmatter.insta4j.jsonp.RecordCodec;
+import com.idtmatter.insta4j.jsonp.RecordCodecs;
+import com.idtmatter.insta4j.jsonp.RecordReader;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
+
+/**
+ * Compares the {@link RecordCodec}s decoding a bookmarks/list response taken from the {@link InstapaperStubServer},
+ * without any network in the measurement.
+ * <p/>
+ * The score is in decoded responses per millisecond, and with the gc profiler of {@link BenchmarkRunner}
+ * gc.alloc.rate.norm divided by the number of records gives the bytes allocated per record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+
+	@Param({RecordCodecs.INSTA4J, RecordCodecs.JACKSON, RecordCodecs.JAXB})
+	public String codec;
+
+	@Param({"10", "500"})
+	public int records;
+
+	private RecordCodec recordCodec;
+	private byte[] response;
+
+	@Setup
+	public void setUp() throws IOException {
+		final ClientConfig config = new DefaultClientConfig();
+		config.getClasses().add(JAXBContextResolver.class);
+		recordCodec = RecordCodecs.create(codec, Client.create(config).getProviders());
+		response = fetchResponse(records);
+	}
+
+	@Benchmark
+	public int decode(final Blackhole blackhole) throws IOException {
+		final RecordReader reader = recordCodec.newReader(new ByteArrayInputStream(response));
+		int count = 0;
+		try {
+			InstaRecordBean record;
+			while ((record = reader.read()) != null) {
+				blackhole.consume(record);
+				count++;
+			}
+		} finally {
+			reader.close();
+		}
+		return count;
+	}
+
+	/**
+	 * @return The raw body of a bookmarks/list response with the meta and user records and the given number of
+	 *         bookmarks.
+	 */
+	static byte[] fetchResponse(final int bookmarks) throws IOException {
+		final InstapaperStubServer server = new InstapaperStubServer().dataset(new BookmarkDataset(bookmarks)).start();
+		try {
+			final String token = server.issueToken(ClientFixture.USERNAME).get("oauth_token");
+			final HttpURLConnection connection = (HttpURLConnection) new URL(server.getBaseUrl()
+					+ "/api/1/bookmarks/list").openConnection();
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			connection.setRequestProperty("Authorization", String.format("OAuth oauth_token=\"%s\"", token));
+			final OutputStream out = connection.getOutputStream();
+			out.write(("limit=" + bookmarks).getBytes("UTF-8"));
+			out.close();
+			final InputStream in = connection.getInputStream();
+			final ByteArrayOutputStream body = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				body.write(buffer, 0, read);
+			}
+			in.close();
+			return body.toByteArray();
+		} finally {
+			server.stop();
+		}
+	}
+}
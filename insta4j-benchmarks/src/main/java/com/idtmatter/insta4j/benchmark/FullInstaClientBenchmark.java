@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.benchmark;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.idtmatter.insta4j.stub.StubFolder;
+
+/**
+ * Measures every {@link com.idtmatter.insta4j.client.InstaClient} call, except listBookmarks which has its own
+ * parameterised benchmark in {@link ListBookmarksBenchmark}, against the {@link InstapaperStubServer}.
+ * <p/>
+ * Throughput and sampled latency (p50...p99.99) are reported for each call, run through
+ * {@link BenchmarkRunner} to also get the allocation rate from the gc profiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FullInstaClientBenchmark {
+
+	private static final String BOOKMARK_ID = Long.toString(BookmarkDataset.FIRST_BOOKMARK_ID);
+
+	private InstapaperStubServer server;
+	private FullInstaClient client;
+	private String folderId;
+	private Map<Integer, Long> folderOrder;
+	private final AtomicLong sequence = new AtomicLong();
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new InstapaperStubServer().start();
+		client = new FullInstaClient(ClientFixture.USERNAME, ClientFixture.PASSWORD, ClientFixture.configFor(server));
+		final StubFolder news = server.getDataset().addFolder("news");
+		final StubFolder java = server.getDataset().addFolder("java");
+		folderId = Long.toString(news.getId());
+		folderOrder = new LinkedHashMap<Integer, Long>();
+		folderOrder.put((int) news.getId(), 1310749195L);
+		folderOrder.put((int) java.getId(), 1310749196L);
+	}
+
+	/**
+	 * A bookmark and a folder created on the server before each invocation, for the calls that delete them.
+	 */
+	@State(Scope.Thread)
+	public static class Disposable {
+		String bookmarkId;
+		String folderId;
+
+		@Setup(Level.Invocation)
+		public void create(final FullInstaClientBenchmark benchmark) {
+			final BookmarkDataset dataset = benchmark.server.getDataset();
+			final long n = benchmark.sequence.incrementAndGet();
+			bookmarkId = Long.toString(dataset.add("http://example.com/disposable/" + n, null, null, null).getId());
+			folderId = Long.toString(dataset.addFolder("disposable-" + n).getId());
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Benchmark
+	public Map<String, String> authorize() {
+		return client.authorize(ClientFixture.USERNAME, ClientFixture.PASSWORD);
+	}
+
+	@Benchmark
+	public InstaRecordBean verifyCredentials() {
+		return client.verifyCredentials();
+	}
+
+	@Benchmark
+	public InstaRecordBean addBookmark() {
+		return client.addBookmark("http://toilettwit.info/", "ToileTTwiT", null, false);
+	}
+
+	@Benchmark
+	public InstaRecordBean updateReadProgress() {
+		return client.updateReadProgress(BOOKMARK_ID, 0.5d, 1288584076L);
+	}
+
+	@Benchmark
+	public Boolean deleteBookmark(final Disposable disposable) {
+		return client.deleteBookmark(disposable.bookmarkId);
+	}
+
+	@Benchmark
+	public InstaRecordBean starBookmark() {
+		return client.starBookmark(BOOKMARK_ID);
+	}
+
+	@Benchmark
+	public InstaRecordBean unstarBookmark() {
+		return client.unstarBookmark(BOOKMARK_ID);
+	}
+
+	@Benchmark
+	public InstaRecordBean archiveBookmark() {
+		return client.archiveBookmark(BOOKMARK_ID);
+	}
+
+	@Benchmark
+	public InstaRecordBean unarchiveBookmark() {
+		return client.unarchiveBookmark(BOOKMARK_ID);
+	}
+
+	@Benchmark
+	public InstaRecordBean moveBookmark() {
+		return client.moveBookmark(BOOKMARK_ID, folderId);
+	}
+
+	@Benchmark
+	public String getText() {
+		return client.getBookmark(BOOKMARK_ID, folderId);
+	}
+
+	@Benchmark
+	public List<InstaRecordBean> listFolders() {
+		return client.listFolders();
+	}
+
+	@Benchmark
+	public InstaRecordBean createFolder() {
+		return client.createFolder("benchmark-" + sequence.incrementAndGet());
+	}
+
+	@Benchmark
+	public Boolean deleteFolder(final Disposable disposable) {
+		return client.deleteFolder(disposable.folderId);
+	}
+
+	@Benchmark
+	public List<InstaRecordBean> setFolderOrder() {
+		return client.setFolderOrder(folderOrder);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.InstaRecordHandler;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Measures {@link FullInstaClient#listBookmarks(String, String, String...)} and its streaming variant
+ * {@link FullInstaClient#streamBookmarks(String, String, InstaRecordHandler, String...)} for a small, a full (500)
+ * and an oversized response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListBookmarksBenchmark {
+
+	@Param({"10", "500", "5000"})
+	public String records;
+
+	private InstapaperStubServer server;
+	private FullInstaClient client;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(Integer.parseInt(records))).start();
+		client = new FullInstaClient(ClientFixture.USERNAME, ClientFixture.PASSWORD, ClientFixture.configFor(server));
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Benchmark
+	public List<InstaRecordBean> listBookmarks() {
+		return client.listBookmarks(records, null, (String[]) null);
+	}
+
+	@Benchmark
+	public int streamBookmarks(final Blackhole blackhole) {
+		return client.streamBookmarks(records, null, new InstaRecordHandler() {
+			public void onRecord(final InstaRecordBean record) {
+				blackhole.consume(record);
+			}
+		});
+	}
+}
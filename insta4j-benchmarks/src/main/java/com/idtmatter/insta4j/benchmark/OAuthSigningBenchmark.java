@@ -0,0 +1,121 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idtmatter.insta4j.client.oauth.OAuthSigner;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandler;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import com.sun.jersey.core.header.InBoundHeaders;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import com.sun.jersey.oauth.client.OAuthClientFilter;
+import com.sun.jersey.oauth.signature.HMAC_SHA1;
+import com.sun.jersey.oauth.signature.OAuthParameters;
+import com.sun.jersey.oauth.signature.OAuthSecrets;
+
+/**
+ * Signs a request with the Jersey {@link OAuthClientFilter} and with the {@link OAuthSigner} of the runtime, both run
+ * as the filter of a Jersey client whose handler answers without any network.
+ * <p/>
+ * "verify" is a verify_credentials without parameters, "add" a bookmarks/add with a url, a title and a description.
+ * With the gc profiler of {@link BenchmarkRunner} gc.alloc.rate.norm gives the bytes allocated per signature.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OAuthSigningBenchmark {
+
+	private static final String CONSUMER_KEY = "b1a4c0e3a7f14a6e8d61f9c1c6c7e0d2";
+	private static final String CONSUMER_SECRET = "4f1d3c8b2e6a47b0a5c9d8e7f6a5b4c3";
+	private static final String TOKEN = "0c1b2a39485766a5b4c3d2e1f0a9b8c7";
+	private static final String TOKEN_SECRET = "9a8b7c6d5e4f30211203f4e5d6c7b8a9";
+
+	@Param({"jersey", "insta4j"})
+	public String signer;
+
+	@Param({"verify", "add"})
+	public String request;
+
+	private Client client;
+	private ClientRequest clientRequest;
+
+	@Setup
+	public void setUp() {
+		final ClientResponse response = new ClientResponse(200, new InBoundHeaders(), new ByteArrayInputStream(
+				new byte[0]), null);
+		client = new Client(new ClientHandler() {
+			public ClientResponse handle(final ClientRequest request) throws ClientHandlerException {
+				return response;
+			}
+		});
+		if ("jersey".equals(signer)) {
+			client.addFilter(new OAuthClientFilter(client.getProviders(), new OAuthParameters().consumerKey(
+					CONSUMER_KEY).token(TOKEN).signatureMethod(HMAC_SHA1.NAME).version(), new OAuthSecrets()
+					.consumerSecret(CONSUMER_SECRET).tokenSecret(TOKEN_SECRET)));
+		} else {
+			final OAuthSigner oauthSigner = new OAuthSigner(CONSUMER_KEY, CONSUMER_SECRET);
+			client.addFilter(new ClientFilter() {
+				@Override
+				public ClientResponse handle(final ClientRequest request) throws ClientHandlerException {
+					oauthSigner.sign(request, TOKEN, TOKEN_SECRET);
+					return getNext().handle(request);
+				}
+			});
+		}
+		if ("add".equals(request)) {
+			final MultivaluedMap<String, String> form = new MultivaluedMapImpl();
+			form.add("url", "http://www.example.com/2012/03/a-long-article-about-performance?utm_source=feed");
+			form.add("title", "A long article about performance");
+			form.add("description", "Why allocation rate matters & what to do about it");
+			clientRequest = ClientRequest.create().type(MediaType.APPLICATION_FORM_URLENCODED_TYPE).entity(form)
+					.build(URI.create("https://www.instapaper.com/api/1/bookmarks/add"), "POST");
+		} else {
+			clientRequest = ClientRequest.create().build(URI.create(
+					"https://www.instapaper.com/api/1/account/verify_credentials"), "POST");
+		}
+	}
+
+	@Benchmark
+	public Object sign() {
+		clientRequest.getHeaders().remove("Authorization");
+		client.handle(clientRequest);
+		return clientRequest.getHeaders().getFirst("Authorization");
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.search.SearchIndex;
+
+/**
+ * Indexing throughput and query latency of the {@link SearchIndex} over a synthetic corpus: articles of 480 words
+ * in html paragraphs, drawn with a skewed distribution from a vocabulary of 20000 words so that a few terms are in
+ * nearly every article and most are rare, like natural text.
+ * <p/>
+ * index scores articles indexed per second. The query benchmarks run against an index of {@link #QUERY_ARTICLES}
+ * articles and score the average time of a query in microseconds: a rare term, two common terms that must both
+ * occur, and a two word phrase.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchIndexBenchmark {
+
+	static final int INDEXED_ARTICLES = 1000;
+	static final int QUERY_ARTICLES = 10000;
+	private static final int VOCABULARY = 20000;
+
+	private String[] words;
+	private List<Bookmark> bookmarks;
+	private List<String> articles;
+	private SearchIndex index;
+	private File directory;
+	private String rareTerm;
+	private String commonTerms;
+	private String phrase;
+
+	@Setup
+	public void setUp() throws IOException {
+		final Random random = new Random(42);
+		words = new String[VOCABULARY];
+		for (int i = 0; i < VOCABULARY; i++) {
+			final StringBuilder word = new StringBuilder();
+			final int length = 3 + random.nextInt(8);
+			for (int c = 0; c < length; c++) {
+				word.append((char) ('a' + random.nextInt(26)));
+			}
+			words[i] = word.toString();
+		}
+		bookmarks = new ArrayList<>(QUERY_ARTICLES);
+		articles = new ArrayList<>(QUERY_ARTICLES);
+		for (int i = 0; i < QUERY_ARTICLES; i++) {
+			bookmarks.add(new Bookmark(i + 1, "http://example.com/" + i, "Article " + i, "", 1330000000L + i, false,
+					"", Integer.toHexString(i), 0f, 0L));
+			articles.add(article(random));
+		}
+		directory = File.createTempFile("insta4j-search", "");
+		if (!directory.delete() || !directory.mkdirs()) {
+			throw new IOException("Can not create " + directory);
+		}
+		index = new SearchIndex(directory);
+		for (int i = 0; i < QUERY_ARTICLES; i++) {
+			index.add(bookmarks.get(i), articles.get(i));
+		}
+		rareTerm = words[VOCABULARY / 2];
+		commonTerms = words[0] + " " + words[3];
+		// the seventh and eighth words of an article
+		final String[] first = articles.get(7).replaceAll("<[^>]+>", " ").trim().split("[ .]+");
+		phrase = "\"" + first[7] + " " + first[8] + "\"";
+		if (index.search(phrase).isEmpty() || index.search(commonTerms).isEmpty()) {
+			throw new IllegalStateException("The synthetic corpus does not match the queries");
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		for (final File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private String article(final Random random) {
+		final StringBuilder html = new StringBuilder(4096);
+		html.append("<html><head><title>article</title></head><body><div id=\"story\">");
+		for (int p = 0; p < 8; p++) {
+			html.append("<p>");
+			for (int w = 0; w < 60; w++) {
+				// skewed towards the first words of the vocabulary
+				final double skew = random.nextDouble();
+				html.append(words[(int) (VOCABULARY * skew * skew * skew)]).append(w == 59 ? ". " : " ");
+			}
+			html.append("</p>\n");
+		}
+		return html.append("</div></body></html>").toString();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(INDEXED_ARTICLES)
+	public int index() throws IOException {
+		final SearchIndex fresh = new SearchIndex(directory);
+		for (int i = 0; i < INDEXED_ARTICLES; i++) {
+			fresh.add(bookmarks.get(i), articles.get(i));
+		}
+		return fresh.getTermCount();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<InstaRecordBean> rareTerm() {
+		return index.search(rareTerm, 20);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<InstaRecordBean> commonTerms() {
+		return index.search(commonTerms, 20);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<InstaRecordBean> phrase() {
+		return index.search(phrase, 20);
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idtmatter.insta4j.SimpleInstaClient;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Measures the Simple api calls of {@link SimpleInstaClient} against the {@link InstapaperStubServer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SimpleInstaClientBenchmark {
+
+	private InstapaperStubServer server;
+	private SimpleInstaClient client;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new InstapaperStubServer().start();
+		client = new SimpleInstaClient(ClientFixture.USERNAME, ClientFixture.PASSWORD, server.getSimpleApiUrl());
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Benchmark
+	public boolean authenticate() {
+		return client.authenticate();
+	}
+
+	@Benchmark
+	public MultivaluedMap<String, String> add() {
+		return client.add("http://toilettwit.info/", "ToileTTwiT", "Adding Toilettwit");
+	}
+}
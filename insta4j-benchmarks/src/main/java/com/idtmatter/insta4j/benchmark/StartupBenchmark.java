@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.InstaRuntime;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.idtmatter.insta4j.stub.LatencyDistribution;
+import com.idtmatter.insta4j.token.EncryptedFileTokenStore;
+import com.idtmatter.insta4j.token.TokenStore;
+
+/**
+ * Time to first call: creating the client of an account and verifying its credentials against a stub answering in
+ * 50ms, a round trip to Instapaper from another continent.
+ * <p/>
+ * "xauth" authorizes in the constructor as clients always did, "stored" starts with the token kept in an
+ * {@link EncryptedFileTokenStore} and saves the access_token round trip, "shared" also reuses an
+ * {@link InstaRuntime} instead of setting up a Jersey client, a transport and a codec per account.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class StartupBenchmark {
+
+	@Param({"xauth", "stored", "shared"})
+	public String start;
+
+	private InstapaperStubServer server;
+	private InstaClientConfig config;
+	private TokenStore store;
+	private InstaRuntime runtime;
+	private File directory;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new InstapaperStubServer().account(ClientFixture.USERNAME, ClientFixture.PASSWORD).latency(
+				LatencyDistribution.fixed(50)).start();
+		config = ClientFixture.configFor(server);
+		directory = File.createTempFile("insta4j-tokens", "");
+		directory.delete();
+		store = new EncryptedFileTokenStore(directory, "0123456789abcdef".getBytes("UTF-8"));
+		new FullInstaClient(ClientFixture.USERNAME, ClientFixture.PASSWORD, config, store).destroy();
+		runtime = new InstaRuntime(config);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		store.remove(ClientFixture.USERNAME);
+		directory.delete();
+		runtime.destroy();
+		server.stop();
+	}
+
+	@Benchmark
+	public InstaRecordBean firstCall() {
+		final FullInstaClient client;
+		if ("xauth".equals(start)) {
+			client = new FullInstaClient(ClientFixture.USERNAME, ClientFixture.PASSWORD, config);
+		} else if ("stored".equals(start)) {
+			client = new FullInstaClient(ClientFixture.USERNAME, ClientFixture.PASSWORD, config, store);
+		} else {
+			client = runtime.login(ClientFixture.USERNAME, ClientFixture.PASSWORD, store);
+		}
+		try {
+			return client.verifyCredentials();
+		} finally {
+			client.destroy();
+		}
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.client.transport.InstaTransports;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.idtmatter.insta4j.stub.LatencyDistribution;
+
+/**
+ * Compares the {@link com.idtmatter.insta4j.client.transport.UrlConnectionTransport} with the
+ * {@link com.idtmatter.insta4j.client.transport.PooledTransport} under 16 concurrent callers sharing one client.
+ * <p/>
+ * Sampled latency shows the p99, the number of connections the server accepted (each one a tcp, and against the
+ * real service a tls, handshake) is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(1)
+public class TransportBenchmark {
+
+	@Param({InstaTransports.URL_CONNECTION, InstaTransports.POOLED})
+	public String transport;
+
+	private InstapaperStubServer server;
+	private FullInstaClient client;
+
+	@Setup
+	public void setUp() throws IOException {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(100)).latency(LatencyDistribution.fixed(2))
+				.start();
+		final InstaClientConfig config = ClientFixture.configFor(server);
+		config.getProperties().put(InstaClientConfig.PROPERTY_TRANSPORT, transport);
+		config.getProperties().put(InstaClientConfig.PROPERTY_MAX_CONNECTIONS, "16");
+		client = new FullInstaClient(ClientFixture.USERNAME, ClientFixture.PASSWORD, config);
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.out.println(String.format("%n%s transport: %d connections for %d requests", transport,
+				server.getConnectionCount(), server.getRequestCount()));
+		client.destroy();
+		server.stop();
+	}
+
+	@Benchmark
+	public List<InstaRecordBean> listBookmarks() {
+		return client.listBookmarks("10", null, (String[]) null);
+	}
+}
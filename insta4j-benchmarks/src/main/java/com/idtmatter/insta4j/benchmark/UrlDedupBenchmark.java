@@ -0,0 +1,192 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.idtmatter.insta4j.benchmark;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.dedup.UrlCanonicalizer;
+import com.idtmatter.insta4j.dedup.UrlIndex;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.idtmatter.insta4j.stub.LatencyDistribution;
+
+/**
+ * Cost and benefit of the {@link UrlIndex}.
+ * <p/>
+ * canonicalize and lookup score the average time in nanoseconds of reducing a url and of looking it up in an index
+ * of {@link #INDEXED_URLS} urls, over urls of which half are other forms of indexed urls (another scheme, tracking
+ * parameters, a trailing slash, an upper case host) and half were never saved. lookupNew only looks up urls never
+ * saved, most of which the Bloom filter rejects.
+ * <p/>
+ * ingest scores the adds per second of a client saving urls of which half are already in the Unread folder, against a
+ * stub answering in 5ms, with and without an index filled from one listing. The tear down prints the share of adds
+ * answered without a request.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 4)
+@Fork(1)
+public class UrlDedupBenchmark {
+
+	static final int INDEXED_URLS = 100000;
+	static final int BATCH = 100;
+	private static final int PROBES = 4096;
+
+	private UrlIndex index;
+	private String[] probes;
+	private String[] newUrls;
+	private int next;
+
+	@Setup
+	public void setUp() {
+		final Random random = new Random(42);
+		index = new UrlIndex(INDEXED_URLS);
+		for (int i = 0; i < INDEXED_URLS; i++) {
+			index.add(savedUrl(i), i + 1);
+		}
+		probes = new String[PROBES];
+		newUrls = new String[PROBES];
+		for (int i = 0; i < PROBES; i++) {
+			newUrls[i] = savedUrl(INDEXED_URLS + i) + "&page=" + i;
+			probes[i] = i % 2 == 0 ? variant(savedUrl(random.nextInt(INDEXED_URLS)), i) : newUrls[i];
+			if (i % 2 == 0 && !index.contains(probes[i])) {
+				throw new IllegalStateException(probes[i] + " is not found as a saved url");
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.out.println(String.format("%nindex: %s, %.1f bytes per url, %d of %d lookups rejected by the filter",
+				index, (double) index.getBytes() / index.size(), index.getFiltered(), index.getLookups()));
+	}
+
+	private static String savedUrl(final int i) {
+		return "https://news" + (i % 500) + ".example.com/2018/" + (i % 12 + 1) + "/story-" + i + "?id=" + i;
+	}
+
+	/**
+	 * @return Another form of a saved url, the same once canonicalized.
+	 */
+	private static String variant(final String url, final int i) {
+		switch (i / 2 % 4) {
+			case 0:
+				return url.replace("https://", "http://");
+			case 1:
+				return url + (url.indexOf('?') < 0 ? "?" : "&") + "utm_source=feed&utm_medium=rss";
+			case 2:
+				return url.replace("example.com/", "EXAMPLE.com:" + (url.startsWith("https") ? 443 : 80) + "/");
+			default:
+				return (url.indexOf('?') < 0 ? url + "/" : url.replace("?", "/?")) + "#comments";
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String canonicalize() {
+		return UrlCanonicalizer.canonicalize(probes[next++ & (PROBES - 1)]);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public long lookup() {
+		return index.lookup(probes[next++ & (PROBES - 1)]);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public long lookupNew() {
+		return index.lookup(newUrls[next++ & (PROBES - 1)]);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(BATCH)
+	public int ingest(final Ingestion ingestion) {
+		final int batch = ingestion.batches++;
+		for (int i = 0; i < BATCH; i++) {
+			final String url;
+			if (i % 2 == 0) {
+				url = variant("http://example.com/articles/" + (BookmarkDataset.FIRST_BOOKMARK_ID
+						+ ingestion.random.nextInt(Ingestion.LISTED)), i);
+			} else {
+				url = "http://example.com/" + batch + "/" + i;
+			}
+			ingestion.client.addBookmark(url, "Title", null, false);
+			ingestion.adds++;
+		}
+		return batch;
+	}
+
+	/**
+	 * A client saving urls into an account of {@link #LISTED} bookmarks in Unread.
+	 */
+	@State(Scope.Benchmark)
+	public static class Ingestion {
+
+		static final int LISTED = 500;
+
+		@Param({"false", "true"})
+		public boolean dedup;
+
+		InstapaperStubServer server;
+		FullInstaClient client;
+		final Random random = new Random(42);
+		int batches;
+		long adds;
+
+		@Setup
+		public void setUp() throws IOException {
+			server = new InstapaperStubServer().dataset(new BookmarkDataset(LISTED))
+					.latency(LatencyDistribution.fixed(5)).start();
+			final InstaClientConfig config = ClientFixture.configFor(server);
+			config.getProperties().put(InstaClientConfig.PROPERTY_URL_INDEX, String.valueOf(dedup));
+			client = new FullInstaClient(ClientFixture.USERNAME, ClientFixture.PASSWORD, config);
+			client.listBookmarks(String.valueOf(LISTED), null);
+		}
+
+		@TearDown
+		public void tearDown() {
+			final long sent = server.getRequestCount("/api/1/bookmarks/add");
+			System.out.println(String.format("%ndedup %s: %d adds, %d sent, %.1f%% skipped", dedup, adds, sent,
+					adds > 0 ? 100.0 * (adds - sent) / adds : 0));
+			client.destroy();
+			server.stop();
+		}
+	}
+}
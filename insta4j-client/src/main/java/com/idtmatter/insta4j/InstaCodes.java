@@ -124,15 +124,15 @@ public class InstaCodes {
 			this.reason = reasonPhrase;
 			this.exceptionClass = exceptionClass;
 
-			if (code >= 200 || code <= 201) {
+			if (code >= 200 && code <= 201) {
 				this.family = Family.SUCCESSFUL;
-			} else if (code >= 400 || code <= 500) {
+			} else if (code >= 400 && code <= 500) {
 				this.family = Family.HTTP_ERROR;
-			} else if (code >= 1040 || code <= 1045) {
+			} else if (code >= 1040 && code <= 1045) {
 				this.family = Family.GENERAL_ERROR;
-			} else if (code >= 1220 || code <= 1246) {
+			} else if (code >= 1220 && code <= 1246) {
 				this.family = Family.BOOKMARK_ERROR;
-			} else if (code >= 1250 || code <= 1252) {
+			} else if (code >= 1250 && code <= 1252) {
 				this.family = Family.FOLDER_ERROR;
 			} else {
 				this.family = Family.OTHER;
@@ -0,0 +1,361 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.bulk;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idtmatter.insta4j.InstaCodes;
+import com.idtmatter.insta4j.client.InstaClient;
+import com.idtmatter.insta4j.client.InstaClientException;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+
+/**
+ * Saves a large list of urls into an account with a bounded number of addBookmark calls in flight.
+ * <p/>
+ * Urls are read lazily, so a dump of millions of links is never held in memory, and at most twice the parallelism
+ * is queued ahead of the running calls. A url that fails, e.g. with 1240 (invalid url) or 1220/1221 (domain
+ * errors), is recorded in the {@link ImportResult} and the import goes on. Pacing is left to the client: a
+ * {@link com.idtmatter.insta4j.client.FullInstaClient} configured with a rate limit makes the workers wait for
+ * their slot and queues 1040 answers again instead of failing them.
+ * <p/>
+ * With a checkpoint file the importer writes how many urls in a row are done, every hundred urls and at the end.
+ * A later run over the same urls skips that many and resumes from there. Urls finished past the first unfinished
+ * one are sent again on resume, which is harmless: Instapaper updates a bookmark saved twice.
+ * <p/>
+ * <blockquote><pre>
+ *     ImportResult result = new BulkImporter(client, 8).checkpoint(new File("dump.txt.done"))
+ *         .importUrls(new FileInputStream("dump.txt"));
+ * </pre></blockquote>
+ */
+public class BulkImporter {
+
+	private static final Logger log = LoggerFactory.getLogger(BulkImporter.class);
+	private static final Pattern ERROR_CODE = Pattern.compile("^\\[(\\d{1,9})\\]");
+	private static final int CHECKPOINT_INTERVAL = 100;
+
+	private final InstaClient client;
+	private final int parallelism;
+	private String folderId;
+	private Boolean resolveFinalUrl;
+	private File checkpoint;
+	private final AtomicBoolean stopped = new AtomicBoolean();
+
+	/**
+	 * @param client      The client saving the bookmarks, shared by the workers
+	 * @param parallelism The number of addBookmark calls in flight
+	 */
+	public BulkImporter(final InstaClient client, final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1 but was " + parallelism);
+		}
+		this.client = client;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @param folderId The folder the urls are saved to, null for Unread
+	 */
+	public BulkImporter folder(final String folderId) {
+		this.folderId = folderId;
+		return this;
+	}
+
+	/**
+	 * @param resolveFinalUrl false if the urls are known to be final, which spares Instapaper following redirects
+	 */
+	public BulkImporter resolveFinalUrl(final Boolean resolveFinalUrl) {
+		this.resolveFinalUrl = resolveFinalUrl;
+		return this;
+	}
+
+	/**
+	 * @param checkpoint The file keeping the progress of the import, created if missing
+	 */
+	public BulkImporter checkpoint(final File checkpoint) {
+		this.checkpoint = checkpoint;
+		return this;
+	}
+
+	/**
+	 * Stops a running import from another thread, the calls in flight complete and the checkpoint is written.
+	 */
+	public void stop() {
+		stopped.set(true);
+	}
+
+	/**
+	 * Imports the urls of a text stream, one per line in UTF-8. Blank lines and lines starting with # are skipped
+	 * and do not count as urls. The stream is closed.
+	 *
+	 * @throws IOException If the stream or the checkpoint can not be read or the checkpoint can not be written.
+	 */
+	public ImportResult importUrls(final InputStream in) throws IOException {
+		final LineIterator lines = new LineIterator(new BufferedReader(new InputStreamReader(in, "UTF-8")));
+		try {
+			return importUrls(lines);
+		} catch (ReadFailure e) {
+			throw e.getCause();
+		} finally {
+			lines.reader.close();
+		}
+	}
+
+	/**
+	 * @throws IOException If the checkpoint can not be read or written.
+	 */
+	public ImportResult importUrls(final Iterable<String> urls) throws IOException {
+		return importUrls(urls.iterator());
+	}
+
+	private ImportResult importUrls(final Iterator<String> urls) throws IOException {
+		stopped.set(false);
+		final long start = System.currentTimeMillis();
+		final long done = readCheckpoint();
+		final Progress progress = new Progress(done);
+		final List<ImportItem> items = Collections.synchronizedList(new ArrayList<ImportItem>());
+		final Semaphore queued = new Semaphore(parallelism * 2);
+		final ExecutorService workers = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "insta4j-import-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		long index = 0;
+		try {
+			while (!stopped.get() && urls.hasNext()) {
+				final String url = urls.next();
+				if (index < done) {
+					index++;
+					continue;
+				}
+				queued.acquire();
+				final long position = index++;
+				workers.execute(new Runnable() {
+					public void run() {
+						try {
+							final ImportItem item = add(position, url);
+							items.add(item);
+							progress.done(position);
+						} finally {
+							queued.release();
+						}
+					}
+				});
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			stopped.set(true);
+		} finally {
+			// waits for the calls in flight
+			queued.acquireUninterruptibly(parallelism * 2);
+			workers.shutdown();
+		}
+		progress.write();
+		final List<ImportItem> sorted = new ArrayList<ImportItem>(items);
+		Collections.sort(sorted, new Comparator<ImportItem>() {
+			public int compare(final ImportItem left, final ImportItem right) {
+				return left.getIndex() < right.getIndex() ? -1 : (left.getIndex() == right.getIndex() ? 0 : 1);
+			}
+		});
+		final ImportResult result = new ImportResult(sorted, Math.min(index, done), !stopped.get(),
+				System.currentTimeMillis() - start);
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Imported %s", result));
+		}
+		return result;
+	}
+
+	private ImportItem add(final long index, final String url) {
+		try {
+			final InstaRecordBean bookmark = client.addBookmark(url, null, folderId, resolveFinalUrl);
+			if (bookmark == null || bookmark.bookmark_id == null) {
+				return new ImportItem(index, url, null, null, "No bookmark in the response");
+			}
+			return new ImportItem(index, url, bookmark.bookmark_id, null, null);
+		} catch (InstaClientException e) {
+			return new ImportItem(index, url, null, e.getCode() != null ? e.getCode() : codeOf(e), e.getMessage());
+		} catch (RuntimeException e) {
+			// e.g. an IllegalArgumentException for 1242 or a broken connection
+			return new ImportItem(index, url, null, codeOf(e), e.getMessage() != null ? e.getMessage() : e
+					.toString());
+		}
+	}
+
+	/**
+	 * @return The code of the "[code] message" raised for an error record, null for any other exception.
+	 */
+	private static InstaCodes.Code codeOf(final RuntimeException e) {
+		if (e.getMessage() == null) {
+			return null;
+		}
+		final Matcher matcher = ERROR_CODE.matcher(e.getMessage());
+		return matcher.find() ? InstaCodes.Code.fromCode(Integer.parseInt(matcher.group(1))) : null;
+	}
+
+	private long readCheckpoint() throws IOException {
+		if (checkpoint == null || !checkpoint.exists()) {
+			return 0;
+		}
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(checkpoint),
+				"UTF-8"));
+		try {
+			final String line = reader.readLine();
+			return line != null && line.trim().length() > 0 ? Long.parseLong(line.trim()) : 0;
+		} catch (NumberFormatException e) {
+			throw new IOException(String.format("%s is not an import checkpoint", checkpoint));
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Tracks the urls done in a row from the start, workers finish out of order.
+	 */
+	private final class Progress {
+		private long inRow;
+		private final TreeSet<Long> ahead = new TreeSet<Long>();
+		private int sinceWrite;
+
+		Progress(final long inRow) {
+			this.inRow = inRow;
+		}
+
+		synchronized void done(final long index) {
+			if (index == inRow) {
+				inRow++;
+				while (!ahead.isEmpty() && ahead.first() == inRow) {
+					ahead.remove(ahead.first());
+					inRow++;
+				}
+			} else {
+				ahead.add(index);
+			}
+			if (++sinceWrite >= CHECKPOINT_INTERVAL) {
+				try {
+					write();
+				} catch (IOException e) {
+					log.warn(String.format("Failed to write the checkpoint %s due to error %s", checkpoint,
+							e.getMessage()));
+				}
+			}
+		}
+
+		/**
+		 * Replaces the checkpoint through a temporary file, a crash leaves either the old or the new count.
+		 */
+		synchronized void write() throws IOException {
+			sinceWrite = 0;
+			if (checkpoint == null) {
+				return;
+			}
+			final File temporary = new File(checkpoint.getPath() + ".tmp");
+			final OutputStream out = new FileOutputStream(temporary);
+			try {
+				out.write((inRow + "\n").getBytes("UTF-8"));
+				out.flush();
+			} finally {
+				out.close();
+			}
+			if (!temporary.renameTo(checkpoint) && !(checkpoint.delete() && temporary.renameTo(checkpoint))) {
+				throw new IOException(String.format("Failed to replace %s", checkpoint));
+			}
+		}
+	}
+
+	/**
+	 * The urls of a text stream, one per line.
+	 */
+	private static final class LineIterator implements Iterator<String> {
+		final BufferedReader reader;
+		private String next;
+
+		LineIterator(final BufferedReader reader) {
+			this.reader = reader;
+		}
+
+		public boolean hasNext() {
+			try {
+				while (next == null) {
+					final String line = reader.readLine();
+					if (line == null) {
+						return false;
+					}
+					final String url = line.trim();
+					if (url.length() > 0 && !url.startsWith("#")) {
+						next = url;
+					}
+				}
+				return true;
+			} catch (IOException e) {
+				throw new ReadFailure(e);
+			}
+		}
+
+		public String next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final String url = next;
+			next = null;
+			return url;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Carries an IOException of the url stream out of the iterator.
+	 */
+	private static final class ReadFailure extends RuntimeException {
+		ReadFailure(final IOException cause) {
+			super(cause);
+		}
+
+		@Override
+		public IOException getCause() {
+			return (IOException) super.getCause();
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.bulk;
+
+import com.idtmatter.insta4j.InstaCodes;
+
+/**
+ * The outcome of importing a single url, either the id of the saved bookmark or the error it failed with.
+ */
+public final class ImportItem {
+
+	private final long index;
+	private final String url;
+	private final String bookmarkId;
+	private final InstaCodes.Code code;
+	private final String message;
+
+	ImportItem(final long index, final String url, final String bookmarkId, final InstaCodes.Code code,
+			final String message) {
+		this.index = index;
+		this.url = url;
+		this.bookmarkId = bookmarkId;
+		this.code = code;
+		this.message = message;
+	}
+
+	/**
+	 * @return The position of the url in the imported urls, counting from 0.
+	 */
+	public long getIndex() {
+		return index;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return The id of the saved bookmark, null if the url failed.
+	 */
+	public String getBookmarkId() {
+		return bookmarkId;
+	}
+
+	/**
+	 * @return The Instapaper code the url failed with, e.g. 1240 (invalid url) or 1221 (domain opted out), null if
+	 *         it was saved or failed without a code such as a broken connection.
+	 */
+	public InstaCodes.Code getCode() {
+		return code;
+	}
+
+	/**
+	 * @return The error message, null if the url was saved.
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+	public boolean isAdded() {
+		return bookmarkId != null;
+	}
+
+	@Override
+	public String toString() {
+		return isAdded() ? String.format("#%d %s -> %s", index, url, bookmarkId) : String.format("#%d %s failed: %s",
+				index, url, message);
+	}
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.bulk;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The items of one run of a {@link BulkImporter}, ordered like the imported urls.
+ */
+public final class ImportResult {
+
+	private final List<ImportItem> items;
+	private final long skipped;
+	private final boolean complete;
+	private final long elapsedMillis;
+	private final int added;
+
+	ImportResult(final List<ImportItem> items, final long skipped, final boolean complete, final long elapsedMillis) {
+		this.items = Collections.unmodifiableList(items);
+		this.skipped = skipped;
+		this.complete = complete;
+		this.elapsedMillis = elapsedMillis;
+		int count = 0;
+		for (final ImportItem item : items) {
+			if (item.isAdded()) {
+				count++;
+			}
+		}
+		this.added = count;
+	}
+
+	/**
+	 * @return The urls attempted by this run, urls skipped on resume are not included.
+	 */
+	public List<ImportItem> getItems() {
+		return items;
+	}
+
+	/**
+	 * @return The urls that could not be saved.
+	 */
+	public List<ImportItem> getFailures() {
+		final List<ImportItem> failures = new ArrayList<ImportItem>();
+		for (final ImportItem item : items) {
+			if (!item.isAdded()) {
+				failures.add(item);
+			}
+		}
+		return failures;
+	}
+
+	public int getAdded() {
+		return added;
+	}
+
+	public int getFailed() {
+		return items.size() - added;
+	}
+
+	/**
+	 * @return The urls skipped because the checkpoint of an earlier run had them done.
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+
+	/**
+	 * @return false if the run was stopped before the last url.
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	/**
+	 * @return The urls attempted per second over the run.
+	 */
+	public double getItemsPerSecond() {
+		return elapsedMillis == 0 ? 0 : items.size() * 1000.0 / elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d added, %d failed, %d skipped in %dms (%.1f/s)%s", added, getFailed(), skipped,
+				elapsedMillis, getItemsPerSecond(), complete ? "" : ", stopped");
+	}
+}
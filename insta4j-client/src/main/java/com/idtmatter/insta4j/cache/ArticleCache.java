@@ -0,0 +1,435 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.cache;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the text view of bookmarks, keyed by bookmark_id and valid as long as the hash of the bookmark is the one
+ * the text was fetched with. Instapaper changes the hash whenever the bookmark changes.
+ * <p/>
+ * A text is only served to the account it was fetched for: the cache may be shared by the clients of many accounts,
+ * and Instapaper would refuse the text of a bookmark of another account.
+ * <p/>
+ * Texts are kept in a least recently used heap tier bounded in bytes, and written through to an optional gzip
+ * compressed disk tier, also bounded in bytes, which outlives the process. A text evicted from the heap is read
+ * back from disk.
+ *
+ * @see com.idtmatter.insta4j.client.FullInstaClient#getBookmark(String, String, String)
+ */
+public class ArticleCache {
+
+	private static final Logger log = LoggerFactory.getLogger(ArticleCache.class);
+	private static final String SUFFIX = ".html.gz";
+
+	private final long maxHeapBytes;
+	private final File directory;
+	private final long maxDiskBytes;
+
+	private final LinkedHashMap<Long, Entry> heap = new LinkedHashMap<Long, Entry>(64, 0.75f, true);
+	private long heapBytes;
+	private final LinkedHashMap<Long, Stored> disk = new LinkedHashMap<Long, Stored>(64, 0.75f, true);
+	private long diskBytes;
+
+	private final AtomicLong heapHits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong staleMisses = new AtomicLong();
+	private final AtomicLong heapEvictions = new AtomicLong();
+	private final AtomicLong diskEvictions = new AtomicLong();
+
+	/**
+	 * A heap only cache.
+	 */
+	public ArticleCache(final long maxHeapBytes) {
+		this(maxHeapBytes, null, 0);
+	}
+
+	/**
+	 * @param directory    The directory of the disk tier, null for none. Texts cached there by an earlier process
+	 *                     are used.
+	 * @param maxDiskBytes The most compressed bytes kept on disk
+	 */
+	public ArticleCache(final long maxHeapBytes, final File directory, final long maxDiskBytes) {
+		this.maxHeapBytes = maxHeapBytes;
+		this.directory = directory;
+		this.maxDiskBytes = maxDiskBytes;
+		if (directory != null) {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IllegalArgumentException("Can not create the cache directory " + directory);
+			}
+			loadDiskIndex();
+		}
+	}
+
+	/**
+	 * The text of a bookmark cached without an account, see {@link #get(String, long, String)}.
+	 */
+	public String get(final long bookmarkId, final String hash) {
+		return get(null, bookmarkId, hash);
+	}
+
+	/**
+	 * @param account The username the text is read for
+	 * @param hash    The current hash of the bookmark
+	 * @return The cached text, null if it is not cached, was cached for another hash or for another account.
+	 */
+	public String get(final String account, final long bookmarkId, final String hash) {
+		final String owner = owner(account);
+		synchronized (heap) {
+			final Entry entry = heap.get(bookmarkId);
+			if (entry != null) {
+				if (entry.hash.equals(hash) && entry.owner.equals(owner)) {
+					heapHits.incrementAndGet();
+					return entry.text;
+				}
+				if (entry.owner.equals(owner)) {
+					removeFromHeap(bookmarkId);
+				}
+			}
+		}
+		final Stored stored = directory != null ? stored(bookmarkId) : null;
+		if (stored != null) {
+			final String text = readFromDisk(owner, bookmarkId, hash, stored);
+			if (text != null) {
+				diskHits.incrementAndGet();
+				putInHeap(owner, bookmarkId, hash, text);
+				return text;
+			}
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Caches the text of a bookmark without an account, see {@link #put(String, long, String, String)}.
+	 */
+	public void put(final long bookmarkId, final String hash, final String text) {
+		put(null, bookmarkId, hash, text);
+	}
+
+	/**
+	 * Caches the text of a bookmark for an account, replacing the text of any other hash.
+	 *
+	 * @param account The username the text was read for
+	 */
+	public void put(final String account, final long bookmarkId, final String hash, final String text) {
+		if (hash == null || text == null) {
+			return;
+		}
+		final String owner = owner(account);
+		putInHeap(owner, bookmarkId, hash, text);
+		if (directory != null) {
+			writeToDisk(owner, bookmarkId, hash, text);
+		}
+	}
+
+	private static String owner(final String account) {
+		return account != null ? account : "";
+	}
+
+	/**
+	 * Drops the text of a bookmark from both tiers.
+	 */
+	public void remove(final long bookmarkId) {
+		synchronized (heap) {
+			removeFromHeap(bookmarkId);
+		}
+		if (directory != null) {
+			synchronized (disk) {
+				final Stored removed = disk.remove(bookmarkId);
+				if (removed != null) {
+					diskBytes -= removed.size;
+					delete(file(bookmarkId));
+				}
+			}
+		}
+	}
+
+	private void putInHeap(final String owner, final long bookmarkId, final String hash, final String text) {
+		// a String takes about two bytes a character
+		final long size = 2L * text.length();
+		if (size > maxHeapBytes) {
+			return;
+		}
+		synchronized (heap) {
+			removeFromHeap(bookmarkId);
+			heap.put(bookmarkId, new Entry(owner, hash, text));
+			heapBytes += size;
+			final Iterator<Map.Entry<Long, Entry>> eldest = heap.entrySet().iterator();
+			while (heapBytes > maxHeapBytes && eldest.hasNext()) {
+				heapBytes -= 2L * eldest.next().getValue().text.length();
+				eldest.remove();
+				heapEvictions.incrementAndGet();
+			}
+		}
+	}
+
+	private void removeFromHeap(final long bookmarkId) {
+		final Entry removed = heap.remove(bookmarkId);
+		if (removed != null) {
+			heapBytes -= 2L * removed.text.length();
+		}
+	}
+
+	private Stored stored(final long bookmarkId) {
+		synchronized (disk) {
+			return disk.get(bookmarkId);
+		}
+	}
+
+	/**
+	 * @param stored The file the index held when the read started
+	 * @return The text if the file was written for the hash and account, the file is deleted if it was written for
+	 *         another hash of the account, unless it was replaced meanwhile.
+	 */
+	private String readFromDisk(final String owner, final long bookmarkId, final String hash, final Stored stored) {
+		final File file = file(bookmarkId);
+		try {
+			final DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(
+					new FileInputStream(file))));
+			try {
+				final String cachedHash = in.readUTF();
+				if (!in.readUTF().equals(owner)) {
+					// the text of another account, left in place
+					return null;
+				}
+				if (!cachedHash.equals(hash)) {
+					staleMisses.incrementAndGet();
+				} else {
+					return readText(in);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			log.warn(String.format("Failed to read the cached text %s due to error %s", file, e.getMessage()));
+		}
+		synchronized (disk) {
+			// a file written for a new hash while this one was read is kept
+			if (disk.get(bookmarkId) == stored) {
+				disk.remove(bookmarkId);
+				diskBytes -= stored.size;
+				delete(file);
+			}
+		}
+		return null;
+	}
+
+	private void writeToDisk(final String owner, final long bookmarkId, final String hash, final String text) {
+		final File file = file(bookmarkId);
+		final File temporary = new File(directory, bookmarkId + SUFFIX + "." + Thread.currentThread().getId());
+		try {
+			final DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(
+					new FileOutputStream(temporary))));
+			try {
+				out.writeUTF(hash);
+				out.writeUTF(owner);
+				out.write(text.getBytes("UTF-8"));
+			} finally {
+				out.close();
+			}
+			synchronized (disk) {
+				final Stored replaced = disk.remove(bookmarkId);
+				if (replaced != null) {
+					diskBytes -= replaced.size;
+				}
+				delete(file);
+				if (!temporary.renameTo(file)) {
+					throw new IOException("Can not rename " + temporary);
+				}
+				disk.put(bookmarkId, new Stored(file.length()));
+				diskBytes += file.length();
+				evictFromDisk();
+			}
+		} catch (IOException e) {
+			delete(temporary);
+			log.warn(String.format("Failed to cache the text of bookmark %d due to error %s", bookmarkId,
+					e.getMessage()));
+		}
+	}
+
+	private void evictFromDisk() {
+		final Iterator<Map.Entry<Long, Stored>> eldest = disk.entrySet().iterator();
+		while (diskBytes > maxDiskBytes && eldest.hasNext()) {
+			final Map.Entry<Long, Stored> entry = eldest.next();
+			diskBytes -= entry.getValue().size;
+			delete(file(entry.getKey()));
+			eldest.remove();
+			diskEvictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Indexes the files of an earlier process, least recently written first.
+	 */
+	private void loadDiskIndex() {
+		final List<File> files = new ArrayList<File>();
+		for (final File file : directory.listFiles()) {
+			if (file.getName().endsWith(SUFFIX)) {
+				files.add(file);
+			} else if (file.getName().contains(SUFFIX + ".")) {
+				// left over by a crash while writing
+				delete(file);
+			}
+		}
+		Collections.sort(files, new Comparator<File>() {
+			public int compare(final File left, final File right) {
+				final long l = left.lastModified();
+				final long r = right.lastModified();
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+		});
+		synchronized (disk) {
+			for (final File file : files) {
+				final String name = file.getName();
+				try {
+					final long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+					disk.put(id, new Stored(file.length()));
+					diskBytes += file.length();
+				} catch (NumberFormatException e) {
+					// not a file of the cache
+				}
+			}
+			evictFromDisk();
+		}
+	}
+
+	private static String readText(final InputStream in) throws IOException {
+		final ByteArrayOutputStream text = new ByteArrayOutputStream(16 * 1024);
+		final byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			text.write(buffer, 0, read);
+		}
+		return text.toString("UTF-8");
+	}
+
+	private File file(final long bookmarkId) {
+		return new File(directory, bookmarkId + SUFFIX);
+	}
+
+	private static void delete(final File file) {
+		if (file.exists() && !file.delete()) {
+			log.warn(String.format("Failed to delete the cached text %s", file));
+		}
+	}
+
+	/**
+	 * @return Texts found in the heap tier.
+	 */
+	public long getHeapHits() {
+		return heapHits.get();
+	}
+
+	/**
+	 * @return Texts found in the disk tier only.
+	 */
+	public long getDiskHits() {
+		return diskHits.get();
+	}
+
+	/**
+	 * @return Texts not found, including those cached for an older hash.
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return Texts found on disk for an older hash of the bookmark.
+	 */
+	public long getStaleMisses() {
+		return staleMisses.get();
+	}
+
+	public long getHeapEvictions() {
+		return heapEvictions.get();
+	}
+
+	public long getDiskEvictions() {
+		return diskEvictions.get();
+	}
+
+	/**
+	 * @return The estimated heap taken by the cached texts.
+	 */
+	public long getHeapBytes() {
+		synchronized (heap) {
+			return heapBytes;
+		}
+	}
+
+	/**
+	 * @return The compressed bytes of the disk tier.
+	 */
+	public long getDiskBytes() {
+		synchronized (disk) {
+			return diskBytes;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("ArticleCache[heap hits %d, disk hits %d, misses %d, heap evictions %d, "
+				+ "disk evictions %d]", getHeapHits(), getDiskHits(), getMisses(), getHeapEvictions(),
+				getDiskEvictions());
+	}
+
+	/**
+	 * A file of the disk tier, each file written gets a new instance.
+	 */
+	private static final class Stored {
+		final long size;
+
+		Stored(final long size) {
+			this.size = size;
+		}
+	}
+
+	private static final class Entry {
+		final String owner;
+		final String hash;
+		final String text;
+
+		Entry(final String owner, final String hash, final String text) {
+			this.owner = owner;
+			this.hash = hash;
+			this.text = text;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.util.List;
+import java.util.Map;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.sun.istack.NotNull;
+
+/**
+ * The non blocking counterpart of {@link InstaClient}: every call returns at once with an {@link InstaFuture}
+ * that completes with the value, or the exception, of the matching {@link InstaClient} method.
+ *
+ * @see FullAsyncInstaClient
+ */
+public interface AsyncInstaClient {
+
+	InstaFuture<InstaRecordBean> verifyCredentials();
+
+	InstaFuture<Map<String, String>> authorize(@NotNull String username, @NotNull String password);
+
+	InstaFuture<List<InstaRecordBean>> listBookmarks(String limit, String folderId, String... bookmarkId);
+
+	InstaFuture<InstaRecordBean> updateReadProgress(@NotNull String bookmarkId, @NotNull Double progress,
+			@NotNull Long progressTimestamp);
+
+	InstaFuture<InstaRecordBean> addBookmark(String url, String title, String folder_id, Boolean resolve_final_url);
+
+	InstaFuture<Boolean> deleteBookmark(String bookmark_id);
+
+	InstaFuture<InstaRecordBean> starBookmark(String bookmark_id);
+
+	InstaFuture<InstaRecordBean> unstarBookmark(String bookmark_id);
+
+	InstaFuture<InstaRecordBean> archiveBookmark(String bookmark_id);
+
+	InstaFuture<InstaRecordBean> unarchiveBookmark(String bookmark_id);
+
+	InstaFuture<InstaRecordBean> moveBookmark(@NotNull String bookmark_id, @NotNull String folder_id);
+
+	InstaFuture<String> getBookmark(@NotNull String bookmark_id, @NotNull String folder_id);
+
+	InstaFuture<String> getBookmark(@NotNull String bookmark_id, @NotNull String folder_id, String hash);
+
+	InstaFuture<List<InstaRecordBean>> listFolders();
+
+	InstaFuture<InstaRecordBean> createFolder(@NotNull String title);
+
+	InstaFuture<Boolean> deleteFolder(@NotNull String folder_id);
+
+	InstaFuture<List<InstaRecordBean>> setFolderOrder(Map<Integer, Long> folderPositionMap);
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+
+/**
+ * The records of a bookmarks/list response sorted by type as they are decoded, so callers do not have to scan the
+ * response once per {@link RecordType} with {@link FullInstaClient#selectRecordsByType(List, RecordType)}.
+ *
+ * @see InstaClient#listBookmarkResult(String, String, String...)
+ */
+public class BookmarkListResult {
+
+	private InstaRecordBean meta;
+	private InstaRecordBean user;
+	private final List<InstaRecordBean> bookmarks;
+	private final List<String> deleteIds = new ArrayList<String>();
+	private List<InstaRecordBean> errors = Collections.emptyList();
+	private List<InstaRecordBean> others = Collections.emptyList();
+
+	BookmarkListResult(final int expectedBookmarks) {
+		bookmarks = new ArrayList<InstaRecordBean>(expectedBookmarks);
+	}
+
+	/**
+	 * Files a record of the response under its type.
+	 */
+	void add(final InstaRecordBean record) {
+		final RecordType type = RecordType.fromType(record.type);
+		if (type == RecordType.BOOKMARK) {
+			bookmarks.add(record);
+		} else if (type == RecordType.USER) {
+			user = record;
+		} else if (type == RecordType.META) {
+			meta = record;
+			addDeleteIds(record.delete_ids);
+		} else if (type == RecordType.ERROR) {
+			if (errors.isEmpty()) {
+				errors = new ArrayList<InstaRecordBean>(1);
+			}
+			errors.add(record);
+		} else {
+			if (others.isEmpty()) {
+				others = new ArrayList<InstaRecordBean>();
+			}
+			others.add(record);
+		}
+	}
+
+	private void addDeleteIds(final String ids) {
+		if (ids == null) {
+			return;
+		}
+		int start = 0;
+		for (int i = 0; i <= ids.length(); i++) {
+			if (i == ids.length() || ids.charAt(i) == ',') {
+				final String id = ids.substring(start, i).trim();
+				if (id.length() > 0) {
+					deleteIds.add(id);
+				}
+				start = i + 1;
+			}
+		}
+	}
+
+	/**
+	 * @return The meta record, null if the response had none.
+	 */
+	public InstaRecordBean getMeta() {
+		return meta;
+	}
+
+	/**
+	 * @return The current user, null if the response had none.
+	 */
+	public InstaRecordBean getUser() {
+		return user;
+	}
+
+	/**
+	 * @return The bookmark records in the order of the response.
+	 */
+	public List<InstaRecordBean> getBookmarks() {
+		return bookmarks;
+	}
+
+	/**
+	 * @return The bookmark_id values of the have parameter that are no longer in the folder, from the delete_ids
+	 *         of the meta record.
+	 */
+	public List<String> getDeleteIds() {
+		return deleteIds;
+	}
+
+	/**
+	 * @return The error records, empty unless the response carried a success code as an error record.
+	 */
+	public List<InstaRecordBean> getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @return The records of a type this client does not know about.
+	 */
+	public List<InstaRecordBean> getOthers() {
+		return others;
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaConfigSnapshot;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.sun.istack.NotNull;
+
+/**
+ * An {@link AsyncInstaClient} running the calls of a {@link FullInstaClient} on an executor, so requests are signed
+ * with the same OAuth filter and responses go through the same error mapping as the blocking calls.
+ * <p/>
+ * The calling thread never waits for the network, but this is not non-blocking I/O: each call still blocks a thread
+ * of the executor on the Jersey client for as long as its request takes, the libraries target java 1.5 and have no
+ * asynchronous http transport. How many requests can be in flight is decided by the executor: the default one uses
+ * a virtual thread per call when the JVM supports them (java 21+), so thousands of concurrent calls only need a few
+ * carrier threads; on older JVMs it falls back to a pool of {@link InstaClientConfig#PROPERTY_ASYNC_POOL_SIZE}
+ * daemon threads, 64 by default, which caps the calls in flight and queues the ones above it.
+ * <p/>
+ * <blockquote><pre>
+ *     AsyncInstaClient async = FullAsyncInstaClient.create(FullInstaClient.create(username, password));
+ *     async.listBookmarks("500", null).addCallback(new InstaCallback&lt;List&lt;InstaRecordBean&gt;&gt;() {...});
+ * </pre></blockquote>
+ */
+public class FullAsyncInstaClient implements AsyncInstaClient {
+
+	private static final Logger log = LoggerFactory.getLogger(FullAsyncInstaClient.class);
+
+	/**
+	 * The number of threads of the fallback executor used when virtual threads are not available.
+	 */
+	public static final int DEFAULT_POOL_SIZE = InstaConfigSnapshot.DEFAULT_ASYNC_POOL_SIZE;
+
+	private final FullInstaClient client;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+
+	/**
+	 * @param client   The blocking client doing the work
+	 * @param executor Runs the calls, it is not shut down by {@link #shutdown()}
+	 */
+	public FullAsyncInstaClient(final FullInstaClient client, final ExecutorService executor) {
+		this(client, executor, false);
+	}
+
+	private FullAsyncInstaClient(final FullInstaClient client, final ExecutorService executor,
+			final boolean ownsExecutor) {
+		this.client = client;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+	}
+
+	/**
+	 * @param client The blocking client doing the work
+	 * @return An async client on top of {@link #defaultExecutor(int)}, sized by the
+	 *         {@link InstaClientConfig#PROPERTY_ASYNC_POOL_SIZE} of the client
+	 */
+	public static FullAsyncInstaClient create(final FullInstaClient client) {
+		return new FullAsyncInstaClient(client, defaultExecutor(client.getRuntime().getConfig().getAsyncPoolSize()),
+				true);
+	}
+
+	/**
+	 * @return An executor starting a virtual thread per call when the JVM supports them, otherwise a pool of
+	 *         {@link #DEFAULT_POOL_SIZE} daemon threads.
+	 */
+	public static ExecutorService defaultExecutor() {
+		return defaultExecutor(DEFAULT_POOL_SIZE);
+	}
+
+	/**
+	 * @param poolSize The number of threads of the pool used when virtual threads are not available
+	 * @return An executor starting a virtual thread per call when the JVM supports them, otherwise a pool of daemon
+	 *         threads.
+	 */
+	public static ExecutorService defaultExecutor(final int poolSize) {
+		try {
+			final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (NoSuchMethodException e) {
+			// virtual threads need java 21
+		} catch (Exception e) {
+			log.warn(String.format("Virtual threads are not usable due to error %s", e.getMessage()));
+		}
+		return Executors.newFixedThreadPool(poolSize, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, "insta4j-async-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Stops the executor created by {@link #create(FullInstaClient)}, calls already submitted still complete.
+	 */
+	public void shutdown() {
+		if (ownsExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	public FullInstaClient getClient() {
+		return client;
+	}
+
+	private <V> InstaFuture<V> submit(final Callable<V> call) {
+		final InstaFuture<V> future = new InstaFuture<V>(call);
+		executor.execute(future);
+		return future;
+	}
+
+	public InstaFuture<InstaRecordBean> verifyCredentials() {
+		return submit(new Callable<InstaRecordBean>() {
+			public InstaRecordBean call() {
+				return client.verifyCredentials();
+			}
+		});
+	}
+
+	public InstaFuture<Map<String, String>> authorize(@NotNull final String username,
+			@NotNull final String password) {
+		return submit(new Callable<Map<String, String>>() {
+			public Map<String, String> call() {
+				return client.authorize(username, password);
+			}
+		});
+	}
+
+	public InstaFuture<List<InstaRecordBean>> listBookmarks(final String limit, final String folderId,
+			final String... bookmarkId) {
+		return submit(new Callable<List<InstaRecordBean>>() {
+			public List<InstaRecordBean> call() {
+				return client.listBookmarks(limit, folderId, bookmarkId);
+			}
+		});
+	}
+
+	public InstaFuture<InstaRecordBean> updateReadProgress(@NotNull final String bookmarkId,
+			@NotNull final Double progress, @NotNull final Long progressTimestamp) {
+		return submit(new Callable<InstaRecordBean>() {
+			public InstaRecordBean call() {
+				return client.updateReadProgress(bookmarkId, progress, progressTimestamp);
+			}
+		});
+	}
+
+	public InstaFuture<InstaRecordBean> addBookmark(final String url, final String title, final String folder_id,
+			final Boolean resolve_final_url) {
+		return submit(new Callable<InstaRecordBean>() {
+			public InstaRecordBean call() {
+				return client.addBookmark(url, title, folder_id, resolve_final_url);
+			}
+		});
+	}
+
+	public InstaFuture<Boolean> deleteBookmark(final String bookmark_id) {
+		return submit(new Callable<Boolean>() {
+			public Boolean call() {
+				return client.deleteBookmark(bookmark_id);
+			}
+		});
+	}
+
+	public InstaFuture<InstaRecordBean> starBookmark(final String bookmark_id) {
+		return submit(new Callable<InstaRecordBean>() {
+			public InstaRecordBean call() {
+				return client.starBookmark(bookmark_id);
+			}
+		});
+	}
+
+	public InstaFuture<InstaRecordBean> unstarBookmark(final String bookmark_id) {
+		return submit(new Callable<InstaRecordBean>() {
+			public InstaRecordBean call() {
+				return client.unstarBookmark(bookmark_id);
+			}
+		});
+	}
+
+	public InstaFuture<InstaRecordBean> archiveBookmark(final String bookmark_id) {
+		return submit(new Callable<InstaRecordBean>() {
+			public InstaRecordBean call() {
+				return client.archiveBookmark(bookmark_id);
+			}
+		});
+	}
+
+	public InstaFuture<InstaRecordBean> unarchiveBookmark(final String bookmark_id) {
+		return submit(new Callable<InstaRecordBean>() {
+			public InstaRecordBean call() {
+				return client.unarchiveBookmark(bookmark_id);
+			}
+		});
+	}
+
+	public InstaFuture<InstaRecordBean> moveBookmark(@NotNull final String bookmark_id,
+			@NotNull final String folder_id) {
+		return submit(new Callable<InstaRecordBean>() {
+			public InstaRecordBean call() {
+				return client.moveBookmark(bookmark_id, folder_id);
+			}
+		});
+	}
+
+	public InstaFuture<String> getBookmark(@NotNull final String bookmark_id, @NotNull final String folder_id) {
+		return submit(new Callable<String>() {
+			public String call() {
+				return client.getBookmark(bookmark_id, folder_id);
+			}
+		});
+	}
+
+	public InstaFuture<String> getBookmark(@NotNull final String bookmark_id, @NotNull final String folder_id,
+			final String hash) {
+		return submit(new Callable<String>() {
+			public String call() {
+				return client.getBookmark(bookmark_id, folder_id, hash);
+			}
+		});
+	}
+
+	public InstaFuture<List<InstaRecordBean>> listFolders() {
+		return submit(new Callable<List<InstaRecordBean>>() {
+			public List<InstaRecordBean> call() {
+				return client.listFolders();
+			}
+		});
+	}
+
+	public InstaFuture<InstaRecordBean> createFolder(@NotNull final String title) {
+		return submit(new Callable<InstaRecordBean>() {
+			public InstaRecordBean call() {
+				return client.createFolder(title);
+			}
+		});
+	}
+
+	public InstaFuture<Boolean> deleteFolder(@NotNull final String folder_id) {
+		return submit(new Callable<Boolean>() {
+			public Boolean call() {
+				return client.deleteFolder(folder_id);
+			}
+		});
+	}
+
+	public InstaFuture<List<InstaRecordBean>> setFolderOrder(final Map<Integer, Long> folderPositionMap) {
+		return submit(new Callable<List<InstaRecordBean>>() {
+			public List<InstaRecordBean> call() {
+				return client.setFolderOrder(folderPositionMap);
+			}
+		});
+	}
+}
@@ -16,6 +16,8 @@ package com.idtmatter.insta4j.client;
 
 import static java.util.Arrays.asList;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -24,39 +26,53 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.Callable;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
-import javax.ws.rs.core.UriBuilder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.idtmatter.insta4j.InstaCodes;
-import com.idtmatter.insta4j.client.config.DefaultInstaClientConfig;
+import com.idtmatter.insta4j.cache.ArticleCache;
 import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaConfigSnapshot;
+import com.idtmatter.insta4j.dedup.UrlIndex;
 import com.idtmatter.insta4j.jaxb.InstaRecordBean;
-import com.idtmatter.insta4j.jsonp.JAXBContextResolver;
+import com.idtmatter.insta4j.metrics.InstaMetrics;
+import com.idtmatter.insta4j.jsonp.RecordCodec;
+import com.idtmatter.insta4j.jsonp.RecordCodecs;
+import com.idtmatter.insta4j.jsonp.RecordReader;
+import com.idtmatter.insta4j.jsonp.TypedRecordHandler;
+import com.idtmatter.insta4j.jsonp.TypedRecordReader;
+import com.idtmatter.insta4j.mirror.BookmarkMirror;
+import com.idtmatter.insta4j.mirror.MirroredBookmarks;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.model.Folder;
+import com.idtmatter.insta4j.model.User;
+import com.idtmatter.insta4j.ratelimit.RateLimitFilter;
+import com.idtmatter.insta4j.ratelimit.RateLimiter;
+import com.idtmatter.insta4j.retry.RetryPolicy;
+import com.idtmatter.insta4j.token.TokenStore;
 import com.sun.istack.NotNull;
 import com.sun.istack.Nullable;
 import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.ClientResponse;
-import com.sun.jersey.api.client.GenericType;
 import com.sun.jersey.api.client.WebResource;
-import com.sun.jersey.api.client.config.ClientConfig;
-import com.sun.jersey.api.client.config.DefaultClientConfig;
-import com.sun.jersey.api.client.filter.ClientFilter;
-import com.sun.jersey.api.client.filter.LoggingFilter;
 import com.sun.jersey.client.impl.CopyOnWriteHashMap;
 import com.sun.jersey.core.util.MultivaluedMapImpl;
-import com.sun.jersey.oauth.client.OAuthClientFilter;
-import com.sun.jersey.oauth.signature.OAuthParameters;
-import com.sun.jersey.oauth.signature.OAuthSecrets;
 
 /**
  * An Java client for Full API based on documentation at
  * http://www.instapaper.com/api/full
+ * <p/>
+ * The client is thread safe. Its account and token are held in one immutable
+ * {@link InstaCredentials}, replaced in one step when the client authorizes,
+ * and each request is signed with the credentials it read when it was built,
+ * so a request is never signed with the token of one account and the secret of
+ * another.
  * 
  * @author dzontak@gmail.com
  * @author Sajit Kunnumkal
@@ -64,15 +80,22 @@ import com.sun.jersey.oauth.signature.OAuthSecrets;
 public class FullInstaClient implements InstaClient {
 
     private static final Logger log = LoggerFactory.getLogger(FullInstaClient.class);
-    private static final String INSTAPAPER_BASE_API_URL = "https://www.instapaper.com";
+    private final InstaRuntime runtime;
+    private final boolean ownsRuntime;
     private final Client client;
-    private final InstaClientConfig instaConfig;
-    private String _token = null;
-    private String _tokenSecret = null;
-    private final Stack<ClientFilter> filterStack = new Stack<ClientFilter>();
+    private final RecordCodec codec;
+    private final ArticleCache articleCache;
+    private final SingleFlight singleFlight;
+    private final String baseUrl;
+    private final TokenStore tokenStore;
+    private volatile InstaCredentials credentials;
+    // kept to authorize again when Instapaper refuses the token, null if the
+    // client was given a token
+    private volatile String password;
+    private MirroredBookmarks mirror;
     private CopyOnWriteHashMap<String, Object> properties;
 
-    public Map<String, Object> getProperties() {
+    public synchronized Map<String, Object> getProperties() {
         if (properties == null) {
             properties = new CopyOnWriteHashMap<String, Object>();
         }
@@ -80,7 +103,7 @@ public class FullInstaClient implements InstaClient {
     }
 
     public FullInstaClient() {
-        this(null, null);
+        this((String) null, (String) null);
     }
 
     public FullInstaClient(final InstaClientConfig instaClientConfig) {
@@ -88,13 +111,12 @@ public class FullInstaClient implements InstaClient {
     }
 
     public FullInstaClient(@Nullable final String username, @Nullable final String password) {
-        this(username, password, new DefaultInstaClientConfig());
+        this(username, password, InstaConfigSnapshot.getDefault());
     }
 
     /**
-     * Sets up the Jersy {@link Client} with
-     * {@link com.idtmatter.insta4j.jsonp.JAXBContextResolver} and
-     * {@link OAuthClientFilter} Gets an OAuth access token for a user via
+     * Sets up an {@link InstaRuntime} of its own for the client, released by
+     * {@link #destroy()}. Gets an OAuth access token for a user via
      * {@link #authorize(String, String)}
      * 
      * @param username
@@ -108,47 +130,145 @@ public class FullInstaClient implements InstaClient {
      */
     public FullInstaClient(@Nullable final String username, @Nullable final String password,
             final InstaClientConfig instaClientConfig) {
-        this.instaConfig = instaClientConfig;
-        // maps json to Jaxb bean InstaRecordBean
-        final ClientConfig config = new DefaultClientConfig();
-        config.getClasses().add(JAXBContextResolver.class);
-        client = Client.create(config);
-        if (log.isDebugEnabled()) {
-            client.addFilter(new LoggingFilter());
-        }
-
-        // create a new OAuth client oAuthClientFilter passing the needed info
-        final OAuthClientFilter oAuthClientFilter = new OAuthClientFilter(client.getProviders(),
-                new OAuthParameters().consumerKey((String) instaConfig
-                        .getProperty(InstaClientConfig.PROPERTY_CONSUMER_KEY)),
-                new OAuthSecrets().consumerSecret((String) instaConfig
-                        .getProperty(InstaClientConfig.PROPERTY_CONSUMER_SECRET)));
-        // Add oAuthClientFilter to the client
-        client.addFilter(oAuthClientFilter);
-        /**
-         * store a reference to the oAuth filter on the stack so that we can
-         * easily remove it when we are registering a filter with token and
-         * token secret after authorization is successfull.
-         */
-        filterStack.push(oAuthClientFilter);
+        this(new InstaRuntime(instaClientConfig), true, new InstaCredentials(username, null, null), null);
 
         /**
          * TODO: the initial authorization request should be made by the users
          * of this client, and probably not during constructions of this object.
          */
         // get the token and tokenSecret for the user.
-        authorize(username, password);
+        try {
+            authorize(username, password);
+        } catch (RuntimeException e) {
+            // the caller never gets the client to destroy
+            runtime.destroy();
+            throw e;
+        }
+    }
 
+    /**
+     * Sets up an {@link InstaRuntime} of its own for the client and starts
+     * with the token of the account kept in the store, without a request. If
+     * the store has no token for the account, or Instapaper later refuses it
+     * with 401 or 403, the client authorizes via
+     * {@link #authorize(String, String)} and stores the new token.
+     * 
+     * @param username
+     *            Instapaper username
+     * @param password
+     *            Optional Instapaper password
+     * @param instaClientConfig
+     *            The client configuration.
+     * @param tokenStore
+     *            Keeps the token of the account between runs
+     */
+    public FullInstaClient(final String username, @Nullable final String password,
+            final InstaClientConfig instaClientConfig, final TokenStore tokenStore) {
+        this(new InstaRuntime(instaClientConfig), true, new InstaCredentials(username, null, null), tokenStore);
+        try {
+            login(password);
+        } catch (RuntimeException e) {
+            runtime.destroy();
+            throw e;
+        }
+    }
+
+    /**
+     * Sets up an {@link InstaRuntime} of its own for the client of an account
+     * already authorized, without a request. Without the password the client
+     * can not authorize again if Instapaper refuses the token.
+     * 
+     * @param credentials
+     *            The username and access token of the account
+     * @param instaClientConfig
+     *            The client configuration.
+     */
+    public FullInstaClient(final InstaCredentials credentials, final InstaClientConfig instaClientConfig) {
+        this(new InstaRuntime(instaClientConfig), true, credentials, null);
     }
 
-    private FullInstaClient token(final String token) {
-        this._token = token;
-        return this;
+    /**
+     * A client of an account on a shared runtime, see
+     * {@link InstaRuntime#client(String, String, String)}.
+     */
+    FullInstaClient(final InstaRuntime runtime, final InstaCredentials credentials, final TokenStore tokenStore) {
+        this(runtime, false, credentials, tokenStore);
     }
 
-    private FullInstaClient tokenSecret(final String tokenSecret) {
-        this._tokenSecret = tokenSecret;
-        return this;
+    private FullInstaClient(final InstaRuntime runtime, final boolean ownsRuntime,
+            final InstaCredentials credentials, final TokenStore tokenStore) {
+        this.runtime = runtime;
+        this.ownsRuntime = ownsRuntime;
+        this.client = runtime.getClient();
+        this.codec = runtime.getCodec();
+        this.articleCache = runtime.getArticleCache();
+        this.baseUrl = runtime.getBaseUrl();
+        this.singleFlight = runtime.isCoalesceReads() ? new SingleFlight() : null;
+        this.credentials = credentials;
+        this.tokenStore = tokenStore;
+    }
+
+    /**
+     * Starts with the stored token of the account, or authorizes it if the
+     * store has none.
+     */
+    void login(final String password) {
+        this.password = password != null ? password : "";
+        final InstaCredentials stored = loadToken(credentials.getUsername());
+        if (stored != null) {
+            authorized(stored);
+        } else {
+            authorize(credentials.getUsername(), password);
+        }
+    }
+
+    /**
+     * The read-through mirror of the account, kept in a directory named after
+     * the username under {@link InstaClientConfig#PROPERTY_MIRROR_DIRECTORY}.
+     * A process started after another one synced the account reads its
+     * folders and bookmarks from disk until they are older than
+     * {@link InstaClientConfig#PROPERTY_MIRROR_MAX_AGE}.
+     * 
+     * @return The mirror of the account, null if no mirror directory is
+     *         configured.
+     * @throws ClientHandlerException
+     *             If the mirror can not be read.
+     */
+    public synchronized MirroredBookmarks getMirror() {
+        final InstaConfigSnapshot instaConfig = runtime.getConfig();
+        final Object directory = instaConfig.getProperty(InstaClientConfig.PROPERTY_MIRROR_DIRECTORY);
+        if (mirror == null && directory != null) {
+            final String username = credentials.getUsername();
+            final String account = (username != null ? username : "default").replaceAll("[^A-Za-z0-9._@-]", "_");
+            try {
+                mirror = new MirroredBookmarks(this, new BookmarkMirror(new File(directory.toString(), account)),
+                        instaConfig.getMirrorMaxAge());
+            } catch (IOException e) {
+                throw new ClientHandlerException(e);
+            }
+        }
+        return mirror;
+    }
+
+    /**
+     * Releases the resources of the client. A client with a runtime of its
+     * own also releases the runtime, see {@link InstaRuntime#destroy()}, the
+     * runtime shared by the clients of {@link InstaRuntime#client(String, String, String)}
+     * stays open.
+     */
+    public void destroy() {
+        synchronized (this) {
+            if (mirror != null) {
+                try {
+                    mirror.getMirror().close();
+                } catch (IOException e) {
+                    log.warn(String.format("Failed to close the mirror due to error %s", e.getMessage()));
+                }
+            }
+        }
+        if (ownsRuntime) {
+            runtime.destroy();
+        }
     }
 
     public static FullInstaClient create(final String username, final String password) {
@@ -165,43 +285,135 @@ public class FullInstaClient implements InstaClient {
         return new FullInstaClient();
     }
 
-    private void authorized(@NotNull final String token, @NotNull final String tokenSecret) {
-        token(token);
-        tokenSecret(tokenSecret);
-        // remove the auth filter already registered either in the constructor
-        // or by this method.
-        client.removeFilter(filterStack.pop());
-        // now add a oAuth filter with the token and secret
-        final OAuthClientFilter oAuthClientFilter = new OAuthClientFilter(client.getProviders(), new OAuthParameters()
-                .consumerKey((String) instaConfig.getProperty(InstaClientConfig.PROPERTY_CONSUMER_KEY)).token(_token),
-                new OAuthSecrets().consumerSecret(
-                        (String) instaConfig.getProperty(InstaClientConfig.PROPERTY_CONSUMER_SECRET)).tokenSecret(
-                        _tokenSecret));
-        client.addFilter(oAuthClientFilter);
-        /**
-         * push the newly registered filter on the stack so we can track it and
-         * unregisterd it before authorizing next time.
-         */
-        filterStack.push(oAuthClientFilter);
+    private void authorized(@NotNull final InstaCredentials authorized) {
+        // requests sent from now on are signed with the new token, requests
+        // in flight keep the credentials they were built with
+        credentials = authorized;
 
         if (log.isDebugEnabled()) {
-            log.debug(String.format("oAuth authorized token=%s, tokenSecret=%s", token, tokenSecret));
+            log.debug(String.format("oAuth authorized token=%s, tokenSecret=%s", authorized.getToken(), authorized
+                    .getTokenSecret()));
         }
     }
 
+    /**
+     * Gets a new token after Instapaper refused the one a request was signed
+     * with. Requests refused together authorize the account once.
+     * 
+     * @param refused
+     *            The credentials of the refused request
+     * @return The credentials to sign the request with again, null if the
+     *         client has no password to authorize with.
+     */
+    synchronized InstaCredentials reauthorize(final InstaCredentials refused) {
+        final InstaCredentials current = credentials;
+        if (current != refused && current.isAuthorized()) {
+            // authorized again since the request was sent
+            return current;
+        }
+        if (password == null || current.getUsername() == null) {
+            return null;
+        }
+        final InstaCredentials stored = loadToken(current.getUsername());
+        if (stored != null && refused.isAuthorized() && !stored.getToken().equals(refused.getToken())) {
+            // stored by another process
+            authorized(stored);
+            return stored;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Token of %s refused, authorizing again", current.getUsername()));
+        }
+        authorize(current.getUsername(), password);
+        return credentials;
+    }
+
+    private InstaCredentials loadToken(final String username) {
+        if (tokenStore == null || username == null) {
+            return null;
+        }
+        try {
+            final InstaCredentials stored = tokenStore.load(username);
+            return stored != null && stored.isAuthorized() ? stored : null;
+        } catch (IOException e) {
+            log.warn(String.format("Failed to load the token of %s due to error %s", username, e.getMessage()));
+            return null;
+        }
+    }
+
+    private void storeToken(final InstaCredentials authorized) {
+        if (tokenStore == null || authorized.getUsername() == null) {
+            return;
+        }
+        try {
+            tokenStore.store(authorized);
+        } catch (IOException e) {
+            log.warn(String.format("Failed to store the token of %s due to error %s", authorized.getUsername(), e
+                    .getMessage()));
+        }
+    }
+
+    /**
+     * @return The account of the client and its access token, if authorized.
+     */
+    public InstaCredentials getCredentials() {
+        return credentials;
+    }
+
+    /**
+     * @return The runtime the client sends its requests through.
+     */
+    public InstaRuntime getRuntime() {
+        return runtime;
+    }
+
+    /**
+     * A resource of the Instapaper api for a request of the account, the
+     * filters of the shared Jersey client read the account from its
+     * properties.
+     */
+    private WebResource resource(final String path) {
+        final WebResource resource = resource(path, credentials);
+        if (password != null) {
+            resource.setProperty(ReauthorizingFilter.PROPERTY_CLIENT, this);
+        }
+        return resource;
+    }
+
+    private WebResource resource(final String path, final InstaCredentials account) {
+        final WebResource resource = client.resource(baseUrl).path(path);
+        resource.setProperty(InstaRuntime.PROPERTY_CREDENTIALS, account);
+        if (account.getUsername() != null) {
+            resource.setProperty(RateLimitFilter.PROPERTY_ACCOUNT, account.getUsername());
+        }
+        if (singleFlight != null) {
+            resource.setProperty(SingleFlight.PROPERTY_SINGLE_FLIGHT, singleFlight);
+        }
+        return resource;
+    }
+
     /**
      * Returns the currently logged in user. Output on success: A user object,
      * e.g. [{"type":"user","user_id":54321,"username":"TestUserOMGLOL"}]
+     * <p/>
+     * With {@link #getSingleFlight() coalesced reads}, concurrent callers get
+     * the same record, which must be treated as read-only.
      * 
      * @return A record representing the currently logged in user or an error
      *         record.
      */
     public InstaRecordBean verifyCredentials() {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/account/verify_credentials");
+        return coalesce("verify_credentials", new Callable<InstaRecordBean>() {
+            public InstaRecordBean call() {
+                return postVerifyCredentials();
+            }
+        });
+    }
+
+    private InstaRecordBean postVerifyCredentials() {
+        final WebResource resource = resource("/api/1/account/verify_credentials");
         final ClientResponse response = processResponse(resource.type(MediaType.APPLICATION_FORM_URLENCODED)
                 .accept(MediaType.APPLICATION_JSON).post(ClientResponse.class));
-        final List<InstaRecordBean> instaRecordBeans = response.getEntity(new GenericType<List<InstaRecordBean>>() {
-        });
+        final List<InstaRecordBean> instaRecordBeans = decode(response);
 
         return instaRecordBeans.iterator().hasNext() ? instaRecordBeans.iterator().next() : null;
     }
@@ -225,8 +437,9 @@ public class FullInstaClient implements InstaClient {
      *             be what Instapaper Full api returns in case of an error.
      */
     public Map<String, String> authorize(@NotNull final String username, @NotNull final String password) {
-        final WebResource resource = client.resource(UriBuilder.fromUri(
-                INSTAPAPER_BASE_API_URL + "/api/1/oauth/access_token").build());
+        // signed with the consumer key alone
+        final WebResource resource = resource("/api/1/oauth/access_token", new InstaCredentials(username, null,
+                null));
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("x_auth_username", username);
         postData.add("x_auth_password", password);
@@ -243,7 +456,13 @@ public class FullInstaClient implements InstaClient {
         aouthTokenMap.put(oauth_token_secret[0], oauth_token_secret[1]);
 
         // signal the client that oAuth token and secret had been recived.
-        authorized(aouthTokenMap.get("oauth_token"), aouthTokenMap.get("oauth_token_secret"));
+        final InstaCredentials authorized = new InstaCredentials(username, aouthTokenMap.get("oauth_token"),
+                aouthTokenMap.get("oauth_token_secret"));
+        // the password first, a thread seeing the new credentials
+        // reauthorizes with the password they belong to
+        this.password = password != null ? password : "";
+        authorized(authorized);
+        storeToken(authorized);
 
         return aouthTokenMap;
     }
@@ -298,10 +517,188 @@ public class FullInstaClient implements InstaClient {
      *            it in the output with a new hash value.
      *            </p>
      * @return One meta object, the current user, and between 0 and limit
-     *         bookmarks.
+     *         bookmarks. With {@link #getSingleFlight() coalesced reads} each
+     *         caller gets its own list, but concurrent callers share the
+     *         records in it, which must be treated as read-only.
      */
     public List<InstaRecordBean> listBookmarks(final String limit, final String folderId, final String... bookmarkId) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/bookmarks/list");
+        final String key = "bookmarks/list?limit=" + limit + "&folder_id=" + folderId + "&have="
+                + (bookmarkId != null ? collectionToDelimitedString(asList(bookmarkId), ",") : null);
+        final List<InstaRecordBean> records = coalesceList(key, new Callable<List<InstaRecordBean>>() {
+            public List<InstaRecordBean> call() {
+                return processJsonResponse(postListBookmarks(limit, folderId, bookmarkId));
+            }
+        });
+        if (getUrlIndex() != null) {
+            for (final InstaRecordBean record : records) {
+                indexListed(folderId, record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * The variant of {@link #listBookmarks(String, String, String...)} that
+     * sorts the records by type while they are decoded.
+     * 
+     * @return The meta record, the user, the bookmarks and the delete_ids of
+     *         the response.
+     * @see #listBookmarks(String, String, String...)
+     */
+    public BookmarkListResult listBookmarkResult(final String limit, final String folderId,
+            final String... bookmarkId) {
+        final ClientResponse response = postListBookmarks(limit, folderId, bookmarkId);
+        if (response.getType() == null || !MediaType.APPLICATION_JSON_TYPE.isCompatible(response.getType())) {
+            processResponse(response);
+        }
+        final BookmarkListResult result = new BookmarkListResult(expectedRecords(limit));
+        try {
+            final RecordReader records = codec.newReader(response.getEntityInputStream());
+            try {
+                InstaRecordBean record;
+                while ((record = records.read()) != null) {
+                    checkErrorRecord(record);
+                    result.add(record);
+                    indexListed(folderId, record);
+                }
+            } finally {
+                records.close();
+            }
+        } catch (IOException e) {
+            response.close();
+            throw new ClientHandlerException(e);
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of bookmarks a list call asks for, 25 unless a valid
+     *         limit is given.
+     */
+    private static int expectedRecords(final String limit) {
+        if (limit != null) {
+            try {
+                return Math.min(Math.max(Integer.parseInt(limit.trim()), 1), 500);
+            } catch (NumberFormatException e) {
+                // the service falls back to its default too
+            }
+        }
+        return 25;
+    }
+
+    /**
+     * The streaming variant of {@link #listBookmarks(String, String, String...)}:
+     * each record is decoded from the response and handed to the handler
+     * before the next one is read, so memory use does not grow with the number
+     * of records.
+     * 
+     * @param handler
+     *            Receives the meta, user and bookmark records in the order of
+     *            the response
+     * @return The number of records handled.
+     * @see #listBookmarks(String, String, String...)
+     */
+    public int streamBookmarks(final String limit, final String folderId, final InstaRecordHandler handler,
+            final String... bookmarkId) {
+        final InstaRecordIterator records = iterateBookmarks(limit, folderId, bookmarkId);
+        int count = 0;
+        try {
+            while (records.hasNext()) {
+                handler.onRecord(records.next());
+                count++;
+            }
+        } finally {
+            records.close();
+        }
+        return count;
+    }
+
+    /**
+     * The typed variant of
+     * {@link #streamBookmarks(String, String, InstaRecordHandler, String...)}:
+     * bookmarks and the user are handed over as {@link Bookmark} and
+     * {@link com.idtmatter.insta4j.model.User} records, decoded straight from
+     * the response by the default codec.
+     * 
+     * @param handler
+     *            Receives the records in the order of the response, the meta
+     *            record through {@link TypedRecordHandler#onRecord}
+     * @return The number of records handled.
+     * @see #listBookmarks(String, String, String...)
+     */
+    public int streamBookmarkRecords(final String limit, final String folderId, final TypedRecordHandler handler,
+            final String... bookmarkId) {
+        final ClientResponse response = postListBookmarks(limit, folderId, bookmarkId);
+        if (response.getType() == null || !MediaType.APPLICATION_JSON_TYPE.isCompatible(response.getType())) {
+            processResponse(response);
+        }
+        final UrlIndex urlIndex = getUrlIndex();
+        final TypedRecordHandler checked = new TypedRecordHandler() {
+            public void onBookmark(final Bookmark bookmark) {
+                if (urlIndex != null) {
+                    indexListed(urlIndex, folderId, bookmark.getUrl(), bookmark.getPrivateSource(),
+                            bookmark.getBookmarkId());
+                }
+                handler.onBookmark(bookmark);
+            }
+
+            public void onFolder(final Folder folder) {
+                handler.onFolder(folder);
+            }
+
+            public void onUser(final User user) {
+                handler.onUser(user);
+            }
+
+            public void onRecord(final InstaRecordBean record) {
+                checkErrorRecord(record);
+                indexListed(folderId, record);
+                handler.onRecord(record);
+            }
+        };
+        int count = 0;
+        try {
+            final TypedRecordReader records = new TypedRecordReader(codec, response.getEntityInputStream());
+            try {
+                while (records.read(checked)) {
+                    count++;
+                }
+            } finally {
+                records.close();
+            }
+        } catch (IOException e) {
+            response.close();
+            throw new ClientHandlerException(e);
+        }
+        return count;
+    }
+
+    /**
+     * The streaming variant of {@link #listBookmarks(String, String, String...)}
+     * as an iterator, records are decoded as they are asked for.
+     * 
+     * @return The records of the response, to be closed if not read to the
+     *         end.
+     * @see #listBookmarks(String, String, String...)
+     */
+    public InstaRecordIterator iterateBookmarks(final String limit, final String folderId,
+            final String... bookmarkId) {
+        final ClientResponse response = postListBookmarks(limit, folderId, bookmarkId);
+        // errors come as json error records, anything else is mapped from the
+        // http status
+        if (response.getType() == null || !MediaType.APPLICATION_JSON_TYPE.isCompatible(response.getType())) {
+            processResponse(response);
+        }
+        try {
+            return new InstaRecordIterator(codec.newReader(response.getEntityInputStream()), this);
+        } catch (IOException e) {
+            response.close();
+            throw new ClientHandlerException(e);
+        }
+    }
+
+    private ClientResponse postListBookmarks(final String limit, final String folderId, final String... bookmarkId) {
+        final WebResource resource = resource("/api/1/bookmarks/list");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         if (limit != null) {
             postData.add("limit", limit);
@@ -312,12 +709,8 @@ public class FullInstaClient implements InstaClient {
         if (bookmarkId != null) {
             postData.add("have", collectionToDelimitedString(asList(bookmarkId), ","));
         }
-
-        final List<InstaRecordBean> instaRecordBeans = processJsonResponse(resource
-                .type(MediaType.APPLICATION_FORM_URLENCODED).accept(MediaType.APPLICATION_JSON)
-                .post(ClientResponse.class, postData));
-
-        return instaRecordBeans;
+        return resource.type(MediaType.APPLICATION_FORM_URLENCODED).accept(MediaType.APPLICATION_JSON)
+                .post(ClientResponse.class, postData);
     }
 
     /**
@@ -396,7 +789,7 @@ public class FullInstaClient implements InstaClient {
 
     public InstaRecordBean updateReadProgress(@NotNull final String bookmarkId, @NotNull final Double progress,
             @NotNull final Long progressTimestamp) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path(
+        final WebResource resource = resource(
                 "/api/1/bookmarks/update_read_progress");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("bookmark_id", bookmarkId);
@@ -411,6 +804,13 @@ public class FullInstaClient implements InstaClient {
 
     /**
      * /api/1/bookmarks/add Adds a new unread bookmark to the user's account.
+     * <p/>
+     * With a {@link #getUrlIndex() url index}, a url already in the Unread
+     * folder whose bookmark_id is known is not sent again, unless a title is
+     * given: the bookmark keeps its place, and the returned record is partial,
+     * it only holds the type, url and bookmark_id, without the title, hash or
+     * progress Instapaper would answer. A url recorded without its bookmark_id
+     * is sent, so the index learns the id.
      * 
      * @param url
      *            : Required, except when using private sources (see below).
@@ -494,7 +894,18 @@ public class FullInstaClient implements InstaClient {
 
     public InstaRecordBean addBookmark(final String url, final String title, final String folder_id,
             final Boolean resolve_final_url) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/bookmarks/add");
+        final UrlIndex urlIndex = getUrlIndex();
+        if (urlIndex != null && folder_id == null && title == null) {
+            final long known = urlIndex.lookup(url);
+            if (known > 0) {
+                final InstaRecordBean saved = new InstaRecordBean();
+                saved.type = "bookmark";
+                saved.url = url;
+                saved.bookmark_id = String.valueOf(known);
+                return saved;
+            }
+        }
+        final WebResource resource = resource("/api/1/bookmarks/add");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("url", url);
 
@@ -511,7 +922,19 @@ public class FullInstaClient implements InstaClient {
         final List<InstaRecordBean> instaRecordBeans = processJsonResponse(resource
                 .type(MediaType.APPLICATION_FORM_URLENCODED).accept(MediaType.APPLICATION_JSON)
                 .post(ClientResponse.class, postData));
-        return (instaRecordBeans.iterator().hasNext() ? instaRecordBeans.iterator().next() : null);
+        final InstaRecordBean saved = instaRecordBeans.iterator().hasNext() ? instaRecordBeans.iterator().next() : null;
+        if (urlIndex != null) {
+            if (folder_id == null) {
+                final long id = saved != null ? bookmarkIdOf(saved.bookmark_id) : 0;
+                urlIndex.add(url, id);
+                if (saved != null && saved.url != null) {
+                    urlIndex.add(saved.url, id);
+                }
+            } else {
+                urlIndex.remove(url);
+            }
+        }
+        return saved;
     }
 
     /**
@@ -523,13 +946,14 @@ public class FullInstaClient implements InstaClient {
      * @return True on sucess
      */
     public Boolean deleteBookmark(final String bookmark_id) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/bookmarks/delete");
+        final WebResource resource = resource("/api/1/bookmarks/delete");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("bookmark_id", bookmark_id);
 
         final List<InstaRecordBean> instaRecordBeans = processJsonResponse(resource
                 .type(MediaType.APPLICATION_FORM_URLENCODED).accept(MediaType.APPLICATION_JSON)
                 .post(ClientResponse.class, postData));
+        forgetBookmark(bookmark_id);
         return (instaRecordBeans.iterator().hasNext() ? true : false);
     }
 
@@ -541,7 +965,7 @@ public class FullInstaClient implements InstaClient {
      * @return The modified bookmark on success.
      */
     public InstaRecordBean starBookmark(final String bookmark_id) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/bookmarks/star");
+        final WebResource resource = resource("/api/1/bookmarks/star");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("bookmark_id", bookmark_id);
 
@@ -559,7 +983,7 @@ public class FullInstaClient implements InstaClient {
      * @return The modified bookmark on success.
      */
     public InstaRecordBean unstarBookmark(final String bookmark_id) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/bookmarks/unstar");
+        final WebResource resource = resource("/api/1/bookmarks/unstar");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("bookmark_id", bookmark_id);
 
@@ -577,13 +1001,14 @@ public class FullInstaClient implements InstaClient {
      * @return The modified bookmark on success.
      */
     public InstaRecordBean archiveBookmark(final String bookmark_id) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/bookmarks/archive");
+        final WebResource resource = resource("/api/1/bookmarks/archive");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("bookmark_id", bookmark_id);
 
         final List<InstaRecordBean> instaRecordBeans = processJsonResponse(resource
                 .type(MediaType.APPLICATION_FORM_URLENCODED).accept(MediaType.APPLICATION_JSON)
                 .post(ClientResponse.class, postData));
+        forgetBookmark(bookmark_id);
         return instaRecordBeans.iterator().hasNext() ? instaRecordBeans.iterator().next() : null;
     }
 
@@ -595,15 +1020,19 @@ public class FullInstaClient implements InstaClient {
      * @return The modified bookmark on success.
      */
     public InstaRecordBean unarchiveBookmark(final String bookmark_id) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/bookmarks/unarchive");
+        final WebResource resource = resource("/api/1/bookmarks/unarchive");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("bookmark_id", bookmark_id);
 
         final List<InstaRecordBean> instaRecordBeans = processJsonResponse(resource
                 .type(MediaType.APPLICATION_FORM_URLENCODED).accept(MediaType.APPLICATION_JSON)
                 .post(ClientResponse.class, postData));
-
-        return instaRecordBeans.iterator().hasNext() ? instaRecordBeans.iterator().next() : null;
+        final InstaRecordBean unarchived = instaRecordBeans.iterator().hasNext() ? instaRecordBeans.iterator().next()
+                : null;
+        if (unarchived != null) {
+            indexListed("unread", unarchived);
+        }
+        return unarchived;
     }
 
     /**
@@ -616,7 +1045,7 @@ public class FullInstaClient implements InstaClient {
      * @return The modified bookmark on success.
      */
     public InstaRecordBean moveBookmark(@NotNull final String bookmark_id, @NotNull final String folder_id) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/bookmarks/move");
+        final WebResource resource = resource("/api/1/bookmarks/move");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("bookmark_id", bookmark_id);
         postData.add("folder_id", folder_id);
@@ -624,6 +1053,7 @@ public class FullInstaClient implements InstaClient {
         final List<InstaRecordBean> instaRecordBeans = processJsonResponse(resource
                 .type(MediaType.APPLICATION_FORM_URLENCODED).accept(MediaType.APPLICATION_JSON)
                 .post(ClientResponse.class, postData));
+        forgetBookmark(bookmark_id);
         return instaRecordBeans.iterator().hasNext() ? instaRecordBeans.iterator().next() : null;
     }
 
@@ -640,7 +1070,7 @@ public class FullInstaClient implements InstaClient {
      *         structure if anything goes wrong.
      */
     public String getBookmark(@NotNull final String bookmark_id, @NotNull final String folder_id) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/bookmarks/get_text");
+        final WebResource resource = resource("/api/1/bookmarks/get_text");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("bookmark_id", bookmark_id);
         postData.add("folder_id", folder_id);
@@ -651,6 +1081,158 @@ public class FullInstaClient implements InstaClient {
         return response.getEntity(String.class);
     }
 
+    /**
+     * The cached variant of {@link #getBookmark(String, String)}: the text is
+     * fetched once per hash of the bookmark and then served from the
+     * {@link ArticleCache} named by
+     * {@link InstaClientConfig#PROPERTY_ARTICLE_CACHE}.
+     * 
+     * @param hash
+     *            The current hash of the bookmark, from bookmarks/list
+     * @return The text-view HTML of the bookmark.
+     */
+    public String getBookmark(@NotNull final String bookmark_id, @NotNull final String folder_id,
+            @Nullable final String hash) {
+        final long id = bookmarkIdOf(bookmark_id);
+        if (articleCache == null || hash == null || id <= 0) {
+            return getBookmark(bookmark_id, folder_id);
+        }
+        // texts are only shared within the account they were read for
+        final String account = credentials.getUsername();
+        String text = articleCache.get(account, id, hash);
+        if (text == null) {
+            text = getBookmark(bookmark_id, folder_id);
+            articleCache.put(account, id, hash, text);
+        }
+        return text;
+    }
+
+    /**
+     * @return The cache of bookmark texts, null if
+     *         {@link InstaClientConfig#PROPERTY_ARTICLE_CACHE} is not set.
+     */
+    public ArticleCache getArticleCache() {
+        return articleCache;
+    }
+
+    /**
+     * @return The limiter pacing the requests of the client, null if it is not
+     *         rate limited.
+     */
+    public RateLimiter getRateLimiter() {
+        return runtime.getRateLimiter();
+    }
+
+    /**
+     * @return The policy retrying the transient errors of the client, its
+     *         counters tell how many requests were sent again, null if
+     *         retries are off.
+     */
+    public RetryPolicy getRetryPolicy() {
+        return runtime.getRetryPolicy();
+    }
+
+    /**
+     * @return The calls shared between concurrent identical reads, null if
+     *         reads are not coalesced.
+     */
+    public SingleFlight getSingleFlight() {
+        return singleFlight;
+    }
+
+    /**
+     * @return The per endpoint latencies and counters of the requests of the
+     *         client, null if {@link InstaClientConfig#PROPERTY_METRICS} is not
+     *         set.
+     */
+    public InstaMetrics getMetrics() {
+        return runtime.getMetrics();
+    }
+
+    /**
+     * @return The urls of the Unread folder of the account, shared with the
+     *         other clients of the account on the runtime, null if
+     *         {@link InstaClientConfig#PROPERTY_URL_INDEX} is not set.
+     * @see InstaRuntime#getUrlIndex(String)
+     */
+    public UrlIndex getUrlIndex() {
+        return runtime.getUrlIndex(credentials.getUsername());
+    }
+
+    /**
+     * Keeps the url index in step with a listed record: a bookmark of the
+     * Unread folder is recorded, one listed in any other folder but Starred is
+     * forgotten, as are the delete_ids of the meta record.
+     */
+    private void indexListed(final String folderId, final InstaRecordBean record) {
+        final UrlIndex urlIndex = getUrlIndex();
+        if (urlIndex == null) {
+            return;
+        }
+        if ("bookmark".equals(record.type)) {
+            indexListed(urlIndex, folderId, record.url, record.private_source, bookmarkIdOf(record.bookmark_id));
+        } else if (record.delete_ids != null) {
+            for (final String id : record.delete_ids.split(",")) {
+                forgetBookmark(id);
+            }
+        }
+    }
+
+    private static void indexListed(final UrlIndex urlIndex, final String folderId, final String url,
+            final String privateSource, final long bookmarkId) {
+        if (url == null || (privateSource != null && privateSource.length() > 0)) {
+            return;
+        }
+        if (folderId == null || "unread".equals(folderId)) {
+            urlIndex.add(url, bookmarkId);
+        } else if (!"starred".equals(folderId)) {
+            urlIndex.remove(url);
+        }
+    }
+
+    private void forgetBookmark(final String bookmarkId) {
+        final UrlIndex urlIndex = getUrlIndex();
+        if (urlIndex != null) {
+            urlIndex.removeBookmark(bookmarkIdOf(bookmarkId));
+        }
+    }
+
+    private static long bookmarkIdOf(final String bookmarkId) {
+        if (bookmarkId != null) {
+            try {
+                return Long.parseLong(bookmarkId.trim());
+            } catch (NumberFormatException e) {
+                // not a numeric bookmark_id
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Runs a read, or joins the identical read in flight.
+     */
+    private <V> V coalesce(final String key, final Callable<V> call) {
+        if (singleFlight != null) {
+            return singleFlight.execute(key, call);
+        }
+        try {
+            return call.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ClientHandlerException(e);
+        }
+    }
+
+    /**
+     * Runs a read of records, each caller gets its own copy of the shared list
+     * but the records themselves are shared.
+     */
+    private List<InstaRecordBean> coalesceList(final String key, final Callable<List<InstaRecordBean>> call) {
+        final List<InstaRecordBean> records = coalesce(key, call);
+        return singleFlight != null ? new ArrayList<InstaRecordBean>(records) : records;
+    }
+
     /**
      * A list of the account’s user-created folders.
      * <p/>
@@ -658,14 +1240,19 @@ public class FullInstaClient implements InstaClient {
      * @return A list of the account’s user-created folders. This only includes
      *         organizational folders and does not include RSS-feed folders or
      *         starred-subscription folders, as the implementation of those is
-     *         changing in the near future
+     *         changing in the near future. Concurrent callers may share the
+     *         records, see {@link #listBookmarks(String, String, String...)}.
      */
     public List<InstaRecordBean> listFolders() {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/folders/list");
-        // TODO: instapaper documentation suggests to always do a post, is get
-        // ok here.
-        return processJsonResponse(resource.type(MediaType.APPLICATION_FORM_URLENCODED)
-                .accept(MediaType.APPLICATION_JSON).get(ClientResponse.class));
+        return coalesceList("folders/list", new Callable<List<InstaRecordBean>>() {
+            public List<InstaRecordBean> call() {
+                final WebResource resource = resource("/api/1/folders/list");
+                // TODO: instapaper documentation suggests to always do a post,
+                // is get ok here.
+                return processJsonResponse(resource.type(MediaType.APPLICATION_FORM_URLENCODED)
+                        .accept(MediaType.APPLICATION_JSON).get(ClientResponse.class));
+            }
+        });
     }
 
     /**
@@ -680,7 +1267,7 @@ public class FullInstaClient implements InstaClient {
      *             Is thrown if user already has a folder with this title
      */
     public InstaRecordBean createFolder(@NotNull final String title) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/folders/add");
+        final WebResource resource = resource("/api/1/folders/add");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("title", title);
 
@@ -702,7 +1289,7 @@ public class FullInstaClient implements InstaClient {
      *             the message.
      */
     public Boolean deleteFolder(@NotNull final String folder_id) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/folders/delete");
+        final WebResource resource = resource("/api/1/folders/delete");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         postData.add("folder_id", folder_id);
 
@@ -723,7 +1310,7 @@ public class FullInstaClient implements InstaClient {
      *         changing in the near future
      */
     public List<InstaRecordBean> setFolderOrder(final Map<Integer, Long> folderPositionMap) {
-        final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/api/1/folders/set_order");
+        final WebResource resource = resource("/api/1/folders/set_order");
         final MultivaluedMap<String, String> postData = new MultivaluedMapImpl();
         final StringBuilder stringBuilder = new StringBuilder();
         final Set<Integer> folderIds = folderPositionMap.keySet();
@@ -803,7 +1390,14 @@ public class FullInstaClient implements InstaClient {
             if (exceptionClass == null) {
                 return response;
             } else {
-                // raise an exception
+                // raise an exception, reading the body closes the response and
+                // gives the connection back to a pooled transport
+                final String entity = response.getEntity(String.class);
+                if (exceptionClass.equals(InstaClientException.class)) {
+                    // keeps the code so that callers can tell a transient
+                    // error from a bad request
+                    throw new InstaClientException(entity, code);
+                }
                 try {
                     throw exceptionClass.getConstructor(String.class).newInstance(code.getReasonPhrase());
                 } catch (InstantiationException e) {
@@ -816,8 +1410,11 @@ public class FullInstaClient implements InstaClient {
                     // ignore
                 }
 
-                throw new RuntimeException(response.getEntity(String.class));
+                throw new RuntimeException(entity);
             }
+        } else if (response.getStatus() >= 500) {
+            // a 502, 503 or 504 of a gateway, transient like a 500
+            throw new InstaClientException(response.getEntity(String.class), InstaCodes.Code._500);
         } else {
             // no code returned in the response everything must be ok.
             return response;
@@ -839,25 +1436,57 @@ public class FullInstaClient implements InstaClient {
      */
 
     private List<InstaRecordBean> processJsonResponse(final ClientResponse response) {
-        final List<InstaRecordBean> recordBeans = response.getEntity(new GenericType<List<InstaRecordBean>>() {
-        });
-        final List<InstaRecordBean> errorRecords = selectRecordsByType(recordBeans, RecordType.ERROR);
+        if (response.getStatus() >= 500) {
+            // a server error has no error record to decode
+            processResponse(response);
+        }
+        final List<InstaRecordBean> recordBeans = decode(response);
         // Should only contain zero or 1 codeEnum record.
-        final InstaRecordBean errorRecord = (errorRecords.isEmpty() ? null : errorRecords.iterator().next());
-        if (errorRecord != null) {
-            final int code = Integer.parseInt(errorRecord.error_code);
-            final InstaCodes.Code codeEnum = InstaCodes.Code.fromCode(code);
-            final Class<? extends RuntimeException> exceptionClass = codeEnum != null ? codeEnum.getExceptionClass()
-                    : null;
-            if (exceptionClass == null) {
-                // {@link InstaCodes.Code#exceptionClass} is null the code is a
-                // success code return the records
-                return recordBeans;
-            } else {
-                throw raiseRuntimeException(errorRecord, codeEnum, exceptionClass);
+        for (final InstaRecordBean recordBean : recordBeans) {
+            if (RecordType.fromType(recordBean.type) == RecordType.ERROR) {
+                checkErrorRecord(recordBean);
+                break;
             }
-        } else {
-            return recordBeans;
+        }
+        return recordBeans;
+    }
+
+    /**
+     * Decodes the json records of the response with the {@link RecordCodec}
+     * of the client.
+     * 
+     * @param response
+     *            jersey client response
+     * @return The records of the response
+     */
+    private List<InstaRecordBean> decode(final ClientResponse response) {
+        try {
+            return RecordCodecs.readAll(codec.newReader(response.getEntityInputStream()));
+        } catch (IOException e) {
+            response.close();
+            throw new ClientHandlerException(e);
+        }
+    }
+
+    /**
+     * Throws the exception assigned to the Instapaper error code of an error
+     * record, does nothing for any other record or a success code.
+     * 
+     * @param record
+     *            A record of a response
+     */
+    void checkErrorRecord(final InstaRecordBean record) {
+        if (!RecordType.ERROR.type().equals(record.type)) {
+            return;
+        }
+        final int code = Integer.parseInt(record.error_code);
+        final InstaCodes.Code codeEnum = InstaCodes.Code.fromCode(code);
+        final Class<? extends RuntimeException> exceptionClass = codeEnum != null ? codeEnum.getExceptionClass()
+                : null;
+        // {@link InstaCodes.Code#exceptionClass} is null the code is a
+        // success code
+        if (exceptionClass != null) {
+            throw raiseRuntimeException(record, codeEnum, exceptionClass);
         }
     }
 
@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+/**
+ * Receives the outcome of an {@link AsyncInstaClient} call once the response has been processed.
+ *
+ * @param <V> The type of the call result
+ */
+public interface InstaCallback<V> {
+
+	/**
+	 * @param result The same value the blocking {@link InstaClient} method would have returned.
+	 */
+	void onSuccess(V result);
+
+	/**
+	 * @param cause The exception the blocking {@link InstaClient} method would have thrown, e.g. an
+	 *              {@link InstaClientException} or a {@link com.idtmatter.insta4j.InvalidCredentialsException}
+	 */
+	void onFailure(Throwable cause);
+}
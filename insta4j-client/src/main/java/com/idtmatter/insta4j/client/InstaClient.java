@@ -15,6 +15,7 @@
 package com.idtmatter.insta4j.client;
 
 import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.jsonp.TypedRecordHandler;
 import com.sun.istack.NotNull;
 
 import java.util.List;
@@ -32,6 +33,14 @@ public interface InstaClient {
 
 	List<InstaRecordBean> listBookmarks(String limit, String folderId, String... bookmarkId);
 
+	BookmarkListResult listBookmarkResult(String limit, String folderId, String... bookmarkId);
+
+	int streamBookmarks(String limit, String folderId, InstaRecordHandler handler, String... bookmarkId);
+
+	int streamBookmarkRecords(String limit, String folderId, TypedRecordHandler handler, String... bookmarkId);
+
+	InstaRecordIterator iterateBookmarks(String limit, String folderId, String... bookmarkId);
+
 	InstaRecordBean updateReadProgress(@NotNull String bookmarkId, @NotNull Double progress,
 			@NotNull Long progressTimestamp);
 
@@ -51,6 +60,8 @@ public interface InstaClient {
 
 	String getBookmark(@NotNull String bookmark_id, @NotNull String folder_id);
 
+	String getBookmark(@NotNull String bookmark_id, @NotNull String folder_id, String hash);
+
 	List<InstaRecordBean> listFolders();
 
 	InstaRecordBean createFolder(@NotNull String title);
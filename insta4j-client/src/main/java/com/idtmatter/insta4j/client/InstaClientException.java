@@ -45,4 +45,11 @@ public class InstaClientException extends RuntimeException {
 		super(message);
 		this._code = code;
 	}
+
+	/**
+	 * @return The Instapaper or http code of the error, null if it is not known.
+	 */
+	public InstaCodes.Code getCode() {
+		return _code;
+	}
 }
@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+/**
+ * The account a request is sent for: the username and the OAuth access token and token secret returned by
+ * {@link FullInstaClient#authorize(String, String)}. Both are null before the account is authorized, its requests
+ * are then signed with the consumer key alone.
+ * <p/>
+ * Instances are immutable, a client replaces its credentials as a whole so a request is never signed with the
+ * token of one authorization and the secret of another.
+ */
+public final class InstaCredentials {
+
+	private final String username;
+	private final String token;
+	private final String tokenSecret;
+
+	public InstaCredentials(final String username, final String token, final String tokenSecret) {
+		this.username = username;
+		this.token = token;
+		this.tokenSecret = tokenSecret;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public String getToken() {
+		return token;
+	}
+
+	public String getTokenSecret() {
+		return tokenSecret;
+	}
+
+	/**
+	 * @return true if the account has an access token.
+	 */
+	public boolean isAuthorized() {
+		return token != null && tokenSecret != null;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("InstaCredentials[username=%s, authorized=%s]", username, isAuthorized());
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The pending result of an {@link AsyncInstaClient} call. Callbacks can be registered instead of blocking on
+ * {@link #get()}, they run on the thread completing the call, or on the registering thread if the call already
+ * completed.
+ *
+ * @param <V> The type of the call result
+ */
+public class InstaFuture<V> extends FutureTask<V> {
+
+	private static final Logger log = LoggerFactory.getLogger(InstaFuture.class);
+
+	private final List<InstaCallback<? super V>> callbacks = new ArrayList<InstaCallback<? super V>>(1);
+	private boolean completed;
+
+	public InstaFuture(final Callable<V> callable) {
+		super(callable);
+	}
+
+	/**
+	 * Registers a callback notified once the call completes.
+	 *
+	 * @param callback The callback
+	 * @return This future, so callbacks can be chained
+	 */
+	public InstaFuture<V> addCallback(final InstaCallback<? super V> callback) {
+		synchronized (callbacks) {
+			if (!completed) {
+				callbacks.add(callback);
+				return this;
+			}
+		}
+		notify(callback);
+		return this;
+	}
+
+	/**
+	 * Waits for the call like {@link #get()} but throws the exception of the blocking call as is, rather than
+	 * wrapped in an {@link ExecutionException}.
+	 *
+	 * @return The call result
+	 */
+	public V join() {
+		try {
+			return get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted while waiting for the Instapaper response");
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new RuntimeException(cause);
+		}
+	}
+
+	@Override
+	protected void done() {
+		final List<InstaCallback<? super V>> pending;
+		synchronized (callbacks) {
+			completed = true;
+			pending = new ArrayList<InstaCallback<? super V>>(callbacks);
+			callbacks.clear();
+		}
+		for (final InstaCallback<? super V> callback : pending) {
+			notify(callback);
+		}
+	}
+
+	private void notify(final InstaCallback<? super V> callback) {
+		final V result;
+		try {
+			result = get();
+		} catch (InterruptedException e) {
+			// done() is only called once the outcome is known, get() does not block here
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			safely(callback, null, e.getCause());
+			return;
+		} catch (CancellationException e) {
+			safely(callback, null, e);
+			return;
+		}
+		safely(callback, result, null);
+	}
+
+	private void safely(final InstaCallback<? super V> callback, final V result, final Throwable cause) {
+		try {
+			if (cause == null) {
+				callback.onSuccess(result);
+			} else {
+				callback.onFailure(cause);
+			}
+		} catch (RuntimeException e) {
+			log.warn(String.format("Callback %s failed due to error %s", callback, e.getMessage()), e);
+		}
+	}
+}
@@ -0,0 +1,30 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+
+/**
+ * Receives the records of a streamed response as soon as each one is decoded.
+ *
+ * @see InstaClient#streamBookmarks(String, String, InstaRecordHandler, String...)
+ */
+public interface InstaRecordHandler {
+
+	/**
+	 * @param record The meta, user or bookmark record just decoded, it is not referenced by the client afterwards.
+	 */
+	void onRecord(InstaRecordBean record);
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.jsonp.RecordReader;
+import com.sun.jersey.api.client.ClientHandlerException;
+
+/**
+ * Iterates over the records of a streamed response, decoding each one when it is asked for. The response is
+ * closed once the last record is read, callers stopping early must {@link #close()} the iterator to give the
+ * connection back.
+ * <p/>
+ * An error record raises the exception assigned to its code in {@link com.idtmatter.insta4j.InstaCodes.Code}, an
+ * unreadable response a {@link ClientHandlerException}, like the non streaming calls.
+ *
+ * @see InstaClient#iterateBookmarks(String, String, String...)
+ */
+public class InstaRecordIterator implements Iterator<InstaRecordBean>, Closeable {
+
+	private final RecordReader reader;
+	private final FullInstaClient client;
+	private InstaRecordBean next;
+	private boolean closed;
+
+	InstaRecordIterator(final RecordReader reader, final FullInstaClient client) {
+		this.reader = reader;
+		this.client = client;
+	}
+
+	public boolean hasNext() {
+		if (next == null && !closed) {
+			try {
+				next = reader.read();
+			} catch (IOException e) {
+				close();
+				throw new ClientHandlerException(e);
+			}
+			if (next == null) {
+				close();
+			} else {
+				try {
+					client.checkErrorRecord(next);
+				} catch (RuntimeException e) {
+					next = null;
+					close();
+					throw e;
+				}
+			}
+		}
+		return next != null;
+	}
+
+	public InstaRecordBean next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		final InstaRecordBean record = next;
+		next = null;
+		return record;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException("Records are read only");
+	}
+
+	/**
+	 * Closes the response, the remaining records are dropped.
+	 */
+	public void close() {
+		if (!closed) {
+			closed = true;
+			try {
+				reader.close();
+			} catch (IOException e) {
+				// nothing left to read
+			}
+		}
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.io.File;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idtmatter.insta4j.cache.ArticleCache;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaConfigSnapshot;
+import com.idtmatter.insta4j.client.transport.InstaTransport;
+import com.idtmatter.insta4j.client.transport.InstaTransports;
+import com.idtmatter.insta4j.dedup.UrlIndex;
+import com.idtmatter.insta4j.jsonp.JAXBContextResolver;
+import com.idtmatter.insta4j.jsonp.RecordCodec;
+import com.idtmatter.insta4j.jsonp.RecordCodecs;
+import com.idtmatter.insta4j.metrics.InstaMetrics;
+import com.idtmatter.insta4j.ratelimit.RateLimitFilter;
+import com.idtmatter.insta4j.ratelimit.RateLimiter;
+import com.idtmatter.insta4j.retry.RetryFilter;
+import com.idtmatter.insta4j.retry.RetryPolicy;
+import com.idtmatter.insta4j.token.TokenStore;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
+import com.sun.jersey.api.client.filter.LoggingFilter;
+
+/**
+ * The parts of an InstaClient that do not belong to an account: the {@link InstaTransport} and its connections, the
+ * Jersey {@link Client} with its filters, the {@link RecordCodec}, the text cache, the rate limiter, the retry
+ * policy, the metrics and the url indexes of the accounts. A service acting for many accounts creates one runtime and a lightweight
+ * {@link FullInstaClient} per account from it, which holds little more than the {@link InstaCredentials} of the
+ * account and signs each of its requests with them.
+ * <p/>
+ * <blockquote><pre>
+ *     InstaRuntime runtime = new InstaRuntime(config);
+ *     FullInstaClient alice = runtime.client("alice", token, tokenSecret);
+ *     FullInstaClient bob = runtime.login("bob", password);
+ *     ...
+ *     runtime.destroy();
+ * </pre></blockquote>
+ * <p/>
+ * The filters of the Jersey client are, from the first to the last: the {@link RetryFilter}, the
+ * {@link RateLimitFilter} pacing each request by its account, the filter authorizing an account again when its
+ * token is refused, the signing filter, the filter invalidating the shared reads of the account, the logging filter
+ * in debug and the metrics filter.
+ * <p/>
+ * A runtime is thread safe. A {@link FullInstaClient} created with a configuration has a runtime of its own,
+ * released by {@link FullInstaClient#destroy()}.
+ */
+public class InstaRuntime {
+
+	/**
+	 * The request property holding the {@link InstaCredentials} a request is signed with.
+	 */
+	public static final String PROPERTY_CREDENTIALS = "insta4j.credentials";
+
+	private static final Logger log = LoggerFactory.getLogger(InstaRuntime.class);
+	private static final String INSTAPAPER_BASE_API_URL = "https://www.instapaper.com";
+
+	private final InstaConfigSnapshot config;
+	private final String baseUrl;
+	private final InstaTransport transport;
+	private final Client client;
+	private final RecordCodec codec;
+	private final ArticleCache articleCache;
+	private final RateLimiter rateLimiter;
+	private final RetryPolicy retryPolicy;
+	private final InstaMetrics metrics;
+	private final boolean coalesceReads;
+	private final ConcurrentMap<String, UrlIndex> urlIndexes;
+
+	/**
+	 * Creates a runtime of the shared {@link InstaConfigSnapshot#getDefault()} configuration.
+	 */
+	public InstaRuntime() {
+		this(InstaConfigSnapshot.getDefault());
+	}
+
+	/**
+	 * Sets up the Jersey {@link Client} with
+	 * {@link com.idtmatter.insta4j.jsonp.JAXBContextResolver} on the {@link InstaTransport} named by
+	 * {@link InstaClientConfig#PROPERTY_TRANSPORT}, responses are decoded by the {@link RecordCodec} named by
+	 * {@link InstaClientConfig#PROPERTY_CODEC}.
+	 *
+	 * @param instaConfig The configuration shared by the clients of the runtime, later changes to it are not seen
+	 *                    by the runtime.
+	 */
+	public InstaRuntime(final InstaClientConfig instaConfig) {
+		this.config = InstaConfigSnapshot.of(instaConfig);
+		final String configuredBaseUrl = config.getString(InstaClientConfig.PROPERTY_API_BASE_URL);
+		this.baseUrl = configuredBaseUrl != null ? configuredBaseUrl : INSTAPAPER_BASE_API_URL;
+		// maps json to Jaxb bean InstaRecordBean
+		final ClientConfig clientConfig = new DefaultClientConfig();
+		clientConfig.getClasses().add(JAXBContextResolver.class);
+		transport = InstaTransports.create(config);
+		client = transport.createClient(clientConfig);
+		codec = RecordCodecs.create(config.getProperty(InstaClientConfig.PROPERTY_CODEC), client.getProviders());
+		articleCache = createArticleCache(config);
+		rateLimiter = createRateLimiter(config);
+		retryPolicy = createRetryPolicy(config);
+		metrics = createMetrics(config);
+		coalesceReads = config.isCoalesceReads();
+		urlIndexes = createUrlIndexes(config);
+
+		// Jersey puts each filter added in front of the others, the last one
+		// added sees a request first
+		if (metrics != null) {
+			// the last filter, records every attempt as sent on the wire
+			client.addFilter(metrics.filter());
+		}
+		if (log.isDebugEnabled() || config.getPropertyAsFeature(InstaClientConfig.PROPERTY_LOG_HTTP_TRAFFIC)) {
+			client.addFilter(new LoggingFilter());
+		}
+		if (coalesceReads) {
+			// closest to the transport, so that every attempt of a change
+			// invalidates the reads in flight
+			client.addFilter(SingleFlight.sharedInvalidatingFilter());
+		}
+		client.addFilter(new SigningFilter(config.getString(InstaClientConfig.PROPERTY_CONSUMER_KEY), config
+				.getString(InstaClientConfig.PROPERTY_CONSUMER_SECRET)));
+		// authorizes again and sends a request refused with 401 or 403 once more
+		client.addFilter(new ReauthorizingFilter());
+		if (rateLimiter != null) {
+			// in front of the signing filter so that retries are signed again
+			client.addFilter(new RateLimitFilter(rateLimiter, config.getRateLimitRetries()));
+		}
+		if (retryPolicy != null) {
+			// retries go through the rate limit and signing filters again
+			client.addFilter(new RetryFilter(retryPolicy));
+		}
+	}
+
+	/**
+	 * Creates the client of an account already authorized, without a request.
+	 *
+	 * @param username    The Instapaper username, the key of the account for the rate limiter
+	 * @param token       The OAuth access token of the account
+	 * @param tokenSecret The OAuth access token secret of the account
+	 */
+	public FullInstaClient client(final String username, final String token, final String tokenSecret) {
+		return new FullInstaClient(this, new InstaCredentials(username, token, tokenSecret), null);
+	}
+
+	/**
+	 * Creates the client of an account and gets its access token via {@link FullInstaClient#authorize(String,
+	 * String)}.
+	 *
+	 * @throws InstaClientException If username and password are not valid.
+	 */
+	public FullInstaClient login(final String username, final String password) {
+		return login(username, password, null);
+	}
+
+	/**
+	 * Creates the client of an account with the token kept in the store, without a request. The client authorizes
+	 * the account if the store has no token for it, or when Instapaper refuses the token with 401 or 403, and then
+	 * stores the new token.
+	 *
+	 * @param tokenStore Keeps the tokens between runs, may be null
+	 * @throws InstaClientException If the client had to authorize and username and password are not valid.
+	 */
+	public FullInstaClient login(final String username, final String password, final TokenStore tokenStore) {
+		final FullInstaClient instaClient = new FullInstaClient(this, new InstaCredentials(username, null, null),
+				tokenStore);
+		instaClient.login(password);
+		return instaClient;
+	}
+
+	/**
+	 * Releases the Jersey client and closes the connections of the transport, unless the transport was handed
+	 * over in the configuration and may be shared with other runtimes. The clients of the runtime must not be
+	 * used afterwards.
+	 */
+	public void destroy() {
+		client.destroy();
+		if (!(config.getProperty(InstaClientConfig.PROPERTY_TRANSPORT) instanceof InstaTransport)) {
+			transport.shutdown();
+		}
+	}
+
+	/**
+	 * @return The snapshot of the configuration the runtime was created with.
+	 */
+	public InstaConfigSnapshot getConfig() {
+		return config;
+	}
+
+	/**
+	 * @return The base url of the Instapaper api, e.g. https://www.instapaper.com
+	 */
+	public String getBaseUrl() {
+		return baseUrl;
+	}
+
+	Client getClient() {
+		return client;
+	}
+
+	RecordCodec getCodec() {
+		return codec;
+	}
+
+	/**
+	 * @return The cache of bookmark texts, null if {@link InstaClientConfig#PROPERTY_ARTICLE_CACHE} is not set.
+	 */
+	public ArticleCache getArticleCache() {
+		return articleCache;
+	}
+
+	/**
+	 * @return The limiter pacing the requests of the clients, null if they are not rate limited.
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * @return The policy retrying the transient errors of the clients, null if retries are off.
+	 */
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * @return The per endpoint latencies and counters of the requests of the clients, null if
+	 *         {@link InstaClientConfig#PROPERTY_METRICS} is not set.
+	 */
+	public InstaMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * @param username The Instapaper username
+	 * @return The url index of the account, created on first use and shared by the clients of the account, null if
+	 *         {@link InstaClientConfig#PROPERTY_URL_INDEX} is not set.
+	 */
+	public UrlIndex getUrlIndex(final String username) {
+		if (urlIndexes == null) {
+			return null;
+		}
+		final String account = username != null ? username : "";
+		final UrlIndex index = urlIndexes.get(account);
+		if (index != null) {
+			return index;
+		}
+		final UrlIndex created = new UrlIndex();
+		final UrlIndex raced = urlIndexes.putIfAbsent(account, created);
+		return raced != null ? raced : created;
+	}
+
+	/**
+	 * @return true unless {@link InstaClientConfig#PROPERTY_COALESCE_READS} is false.
+	 */
+	public boolean isCoalesceReads() {
+		return coalesceReads;
+	}
+
+	/**
+	 * @return The limiter named by {@link InstaClientConfig#PROPERTY_RATE_LIMITER} or shared by the clients of the
+	 *         consumer key if a rate is configured, else null.
+	 */
+	private static RateLimiter createRateLimiter(final InstaConfigSnapshot config) {
+		final Object limiter = config.getProperty(InstaClientConfig.PROPERTY_RATE_LIMITER);
+		if (limiter instanceof RateLimiter) {
+			return (RateLimiter) limiter;
+		}
+		if (config.getProperty(InstaClientConfig.PROPERTY_CONSUMER_RATE) == null
+				&& config.getProperty(InstaClientConfig.PROPERTY_ACCOUNT_RATE) == null) {
+			return null;
+		}
+		return RateLimiter.forConsumerKey(config.getString(InstaClientConfig.PROPERTY_CONSUMER_KEY), config
+				.getConsumerRate(), config.getAccountRate());
+	}
+
+	/**
+	 * @return The policy named by {@link InstaClientConfig#PROPERTY_RETRY_POLICY} or a policy of
+	 *         {@link InstaClientConfig#PROPERTY_RETRY_ATTEMPTS} attempts, null if requests are attempted once.
+	 */
+	private static RetryPolicy createRetryPolicy(final InstaConfigSnapshot config) {
+		final Object policy = config.getProperty(InstaClientConfig.PROPERTY_RETRY_POLICY);
+		if (policy instanceof RetryPolicy) {
+			return (RetryPolicy) policy;
+		}
+		final int attempts = config.getRetryAttempts();
+		return attempts > 1 ? new RetryPolicy(attempts, 100, 5000) : null;
+	}
+
+	/**
+	 * @return The metrics named by {@link InstaClientConfig#PROPERTY_METRICS}, null if nothing is recorded.
+	 */
+	private static InstaMetrics createMetrics(final InstaClientConfig config) {
+		final Object metrics = config.getProperty(InstaClientConfig.PROPERTY_METRICS);
+		if (metrics == null || metrics instanceof InstaMetrics) {
+			return (InstaMetrics) metrics;
+		}
+		return Boolean.valueOf(metrics.toString().trim()) ? new InstaMetrics() : null;
+	}
+
+	/**
+	 * @return The url indexes by account if {@link InstaClientConfig#PROPERTY_URL_INDEX} is true, else null.
+	 */
+	private static ConcurrentMap<String, UrlIndex> createUrlIndexes(final InstaClientConfig config) {
+		final Object enabled = config.getProperty(InstaClientConfig.PROPERTY_URL_INDEX);
+		if (enabled == null) {
+			return null;
+		}
+		if (!(enabled instanceof Boolean || enabled instanceof String)) {
+			throw new IllegalArgumentException(String.format("The property %s must be true or false but was %s, "
+					+ "the runtime keeps an index per account", InstaClientConfig.PROPERTY_URL_INDEX, enabled));
+		}
+		return Boolean.valueOf(enabled.toString().trim()) ? new ConcurrentHashMap<String, UrlIndex>() : null;
+	}
+
+	private static ArticleCache createArticleCache(final InstaConfigSnapshot config) {
+		final Object cache = config.getProperty(InstaClientConfig.PROPERTY_ARTICLE_CACHE);
+		if (cache == null || cache instanceof ArticleCache) {
+			return (ArticleCache) cache;
+		}
+		final Object directory = config.getProperty(InstaClientConfig.PROPERTY_ARTICLE_CACHE_DIRECTORY);
+		return new ArticleCache(config.getArticleCacheBytes(), directory != null ? new File(directory.toString())
+				: null, config.getArticleCacheDiskBytes());
+	}
+}
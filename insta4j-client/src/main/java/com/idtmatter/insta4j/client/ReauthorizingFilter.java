@@ -0,0 +1,60 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+/**
+ * Sends a request refused with 401 or 403 once more after the {@link FullInstaClient} set on it under
+ * {@link #PROPERTY_CLIENT} authorized its account again, e.g. because the stored token it started with was revoked.
+ * Requests of clients without a password are answered as they are. If the password is refused as well, the error
+ * of the authorization is raised.
+ * <p/>
+ * The filter has to be in front of the signing filter, which signs the request again with the new token.
+ */
+class ReauthorizingFilter extends ClientFilter {
+
+	/**
+	 * The request property holding the client that can authorize the account of a request again.
+	 */
+	static final String PROPERTY_CLIENT = "insta4j.client";
+
+	@Override
+	public ClientResponse handle(final ClientRequest request) throws ClientHandlerException {
+		final ClientResponse response = getNext().handle(request);
+		final int status = response.getStatus();
+		if (status != 401 && status != 403) {
+			return response;
+		}
+		final FullInstaClient owner = (FullInstaClient) request.getProperties().get(PROPERTY_CLIENT);
+		if (owner == null) {
+			return response;
+		}
+		final InstaCredentials refused = (InstaCredentials) request.getProperties().get(
+				InstaRuntime.PROPERTY_CREDENTIALS);
+		final InstaCredentials renewed = owner.reauthorize(refused);
+		if (renewed == null) {
+			return response;
+		}
+		response.close();
+		request.getProperties().put(InstaRuntime.PROPERTY_CREDENTIALS, renewed);
+		// signed again by the signing filter with the new token
+		request.getHeaders().remove("Authorization");
+		return getNext().handle(request);
+	}
+}
@@ -14,6 +14,9 @@
 
 package com.idtmatter.insta4j.client;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * An enumeration for {@link com.idtmatter.insta4j.jaxb.InstaRecordBean#type} field
  *
@@ -25,6 +28,14 @@ public enum RecordType {
 	META("meta"),
 	USER("user"),
 	ERROR("error");
+	private static final Map<String, RecordType> BY_TYPE = new HashMap<String, RecordType>();
+
+	static {
+		for (final RecordType type : RecordType.values()) {
+			BY_TYPE.put(type._type, type);
+		}
+	}
+
 	private final String _type;
 
 	RecordType(final String type) {
@@ -41,12 +52,7 @@ public enum RecordType {
 	 * @param recordType the string type
 	 * @return the matching {@link RecordType} or null is no matching type is defined
 	 */
-	public static RecordType fromType(final int recordType) {
-		for (final RecordType type : RecordType.values()) {
-			if (type._type.equals(recordType)) {
-				return type;
-			}
-		}
-		return null;
+	public static RecordType fromType(final String recordType) {
+		return recordType != null ? BY_TYPE.get(recordType) : null;
 	}
 }
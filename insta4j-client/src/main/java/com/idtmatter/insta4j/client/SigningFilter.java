@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import com.idtmatter.insta4j.client.oauth.OAuthSigner;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+/**
+ * Signs each request with the consumer key of the runtime and the {@link InstaCredentials} set on the request under
+ * {@link InstaRuntime#PROPERTY_CREDENTIALS}, so one Jersey client sends the requests of any number of accounts.
+ * <p/>
+ * A request that already carries an Authorization header is sent as it is, the retrying filters remove the header
+ * to have a retry signed again with a fresh nonce.
+ */
+class SigningFilter extends ClientFilter {
+
+	private static final String AUTHORIZATION = "Authorization";
+
+	private final OAuthSigner signer;
+
+	SigningFilter(final String consumerKey, final String consumerSecret) {
+		this.signer = new OAuthSigner(consumerKey, consumerSecret);
+	}
+
+	@Override
+	public ClientResponse handle(final ClientRequest request) throws ClientHandlerException {
+		if (!request.getHeaders().containsKey(AUTHORIZATION)) {
+			final InstaCredentials credentials = (InstaCredentials) request.getProperties().get(
+					InstaRuntime.PROPERTY_CREDENTIALS);
+			if (credentials != null && credentials.isAuthorized()) {
+				signer.sign(request, credentials.getToken(), credentials.getTokenSecret());
+			} else {
+				signer.sign(request, null, null);
+			}
+		}
+		return getNext().handle(request);
+	}
+}
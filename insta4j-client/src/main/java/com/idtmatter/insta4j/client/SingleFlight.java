@@ -0,0 +1,232 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.jersey.api.client.ClientHandler;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+/**
+ * Lets concurrent identical read calls of a client share one request: the first caller sends it, callers arriving
+ * while it is in flight wait for it and get the same decoded result, or the same exception. The result is not
+ * copied, so callers must not change it.
+ * <p/>
+ * A result is only shared while it is in flight, nothing is cached. Every request that may change the account goes
+ * through the {@link #invalidatingFilter()}, which moves the client to a new generation before and after it is sent,
+ * so a read started before a change is never joined by a caller arriving after it.
+ */
+public class SingleFlight {
+
+	/**
+	 * The request property holding the SingleFlight of the client sending a request, see
+	 * {@link #sharedInvalidatingFilter()}.
+	 */
+	public static final String PROPERTY_SINGLE_FLIGHT = "insta4j.singleflight";
+
+	/**
+	 * The endpoints that never change the account, any other request invalidates the reads in flight.
+	 */
+	private static final Set<String> READ_ONLY = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			"/api/1/account/verify_credentials", "/api/1/bookmarks/list", "/api/1/bookmarks/get_text",
+			"/api/1/folders/list")));
+
+	private final ConcurrentMap<String, Flight<?>> flights = new ConcurrentHashMap<String, Flight<?>>();
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong executed = new AtomicLong();
+	private final AtomicLong shared = new AtomicLong();
+
+	/**
+	 * Runs the call unless an identical one of the current generation is in flight, then waits for its result.
+	 *
+	 * @param key  Identifies the call, e.g. the endpoint and its parameters
+	 * @param call Sends the request and decodes its result
+	 * @return The result of the call, shared with the callers that joined it
+	 */
+	@SuppressWarnings("unchecked")
+	public <V> V execute(final String key, final Callable<V> call) {
+		while (true) {
+			final long current = generation.get();
+			final Flight<?> existing = flights.get(key);
+			if (existing != null && existing.generation == current) {
+				shared.incrementAndGet();
+				return (V) existing.await();
+			}
+			final Flight<V> flight = new Flight<V>(current);
+			final boolean leader = existing == null ? flights.putIfAbsent(key, flight) == null : flights.replace(key,
+					existing, flight);
+			if (leader) {
+				executed.incrementAndGet();
+				try {
+					return flight.run(call);
+				} finally {
+					flights.remove(key, flight);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops callers from joining the reads in flight, they send their own request.
+	 */
+	public void invalidate() {
+		generation.incrementAndGet();
+	}
+
+	/**
+	 * @return A filter invalidating the reads in flight around every request that may change the account.
+	 */
+	public ClientFilter invalidatingFilter() {
+		return new ClientFilter() {
+			@Override
+			public ClientResponse handle(final ClientRequest request) throws ClientHandlerException {
+				return SingleFlight.this.handle(getNext(), request);
+			}
+		};
+	}
+
+	/**
+	 * @return A filter for a Jersey client shared by many clients, invalidating the reads in flight of the
+	 *         SingleFlight set on each request under {@link #PROPERTY_SINGLE_FLIGHT}.
+	 */
+	public static ClientFilter sharedInvalidatingFilter() {
+		return new ClientFilter() {
+			@Override
+			public ClientResponse handle(final ClientRequest request) throws ClientHandlerException {
+				final SingleFlight flight = (SingleFlight) request.getProperties().get(PROPERTY_SINGLE_FLIGHT);
+				return flight != null ? flight.handle(getNext(), request) : getNext().handle(request);
+			}
+		};
+	}
+
+	private ClientResponse handle(final ClientHandler next, final ClientRequest request) {
+		if (isReadOnly(request)) {
+			return next.handle(request);
+		}
+		invalidate();
+		try {
+			return next.handle(request);
+		} finally {
+			invalidate();
+		}
+	}
+
+	/**
+	 * @return true if the request can not change the account. A bookmarks/list with progress in its have
+	 *         parameter updates the bookmarks and is not read only.
+	 */
+	@SuppressWarnings("unchecked")
+	static boolean isReadOnly(final ClientRequest request) {
+		final String path = request.getURI().getPath();
+		if (!READ_ONLY.contains(path)) {
+			return false;
+		}
+		final Object entity = request.getEntity();
+		if (!(entity instanceof Map)) {
+			return true;
+		}
+		final List<String> have = ((Map<String, List<String>>) entity).get("have");
+		if (have != null) {
+			for (final String value : have) {
+				for (final String entry : value.split(",")) {
+					// id:hash:progress:progress_timestamp
+					if (entry.indexOf(':') != entry.lastIndexOf(':')) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The calls that sent a request.
+	 */
+	public long getExecuted() {
+		return executed.get();
+	}
+
+	/**
+	 * @return The calls that joined a request in flight instead of sending their own.
+	 */
+	public long getShared() {
+		return shared.get();
+	}
+
+	private static final class Flight<V> {
+		final long generation;
+		private final CountDownLatch done = new CountDownLatch(1);
+		private V result;
+		private RuntimeException exception;
+		private Error error;
+
+		Flight(final long generation) {
+			this.generation = generation;
+		}
+
+		V run(final Callable<V> call) {
+			try {
+				result = call.call();
+				return result;
+			} catch (RuntimeException e) {
+				exception = e;
+				throw e;
+			} catch (Error e) {
+				error = e;
+				throw e;
+			} catch (Exception e) {
+				exception = new ClientHandlerException(e);
+				throw exception;
+			} finally {
+				done.countDown();
+			}
+		}
+
+		V await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					done.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			if (error != null) {
+				throw error;
+			}
+			if (exception != null) {
+				throw exception;
+			}
+			return result;
+		}
+	}
+}
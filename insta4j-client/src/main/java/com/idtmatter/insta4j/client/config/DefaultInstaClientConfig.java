@@ -15,50 +15,24 @@
 package com.idtmatter.insta4j.client.config;
 
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
-import org.apache.commons.configuration.Configuration;
-import org.apache.commons.configuration.ConfigurationException;
-import org.apache.commons.configuration.PropertiesConfiguration;
-
+/**
+ * A modifiable client configuration, starting as a copy of the shared {@link InstaConfigSnapshot#getDefault()}: the
+ * insta4j.properties file and the system properties are read once per process, not once per configuration.
+ */
 public class DefaultInstaClientConfig implements InstaClientConfig {
 
 	private final Map<String, Boolean> features = new HashMap<String, Boolean>();
 
-	private final Map<String, Object> properties = new HashMap<String, Object>();
+	private final Map<String, Object> properties;
 
+	/**
+	 * @throws IllegalArgumentException If neither insta4j.properties nor the system properties hold the consumer
+	 *                                  key and secret.
+	 */
 	public DefaultInstaClientConfig() {
-		init();
-	}
-
-	private void init() {
-	    Configuration conf = null;
-		try {
-		    conf = new PropertiesConfiguration(PROPERTY_JINSTAPAPER_PROPERTY_NAME);
-		    
-		} catch (ConfigurationException e) {
-		}
-
-		for (final String name : new String[]{PROPERTY_CONSUMER_KEY, PROPERTY_CONSUMER_SECRET}) {
-			final String value = System.getProperty(name);
-			if (value != null) {
-				conf.setProperty(name, value);
-			}
-		}
-
-		if (conf.getProperty(PROPERTY_CONSUMER_KEY) == null ||
-				conf.getProperty(PROPERTY_CONSUMER_SECRET) == null) {
-			throw new IllegalArgumentException(String.format("No consumerKey and/or consumerSecret found in %s file. " +
-					"You have to provide these as system properties.", PROPERTY_JINSTAPAPER_PROPERTY_NAME));
-		}
-
-		Iterator it = conf.getKeys();
-		while (it.hasNext()) {
-		    String key = (String)it.next();
-		    String value = conf.getString(key);
-		    properties.put(key, value);
-		}
+		properties = new HashMap<String, Object>(InstaConfigSnapshot.getDefault().getProperties());
 	}
 
 	/**
@@ -94,7 +68,8 @@ public class DefaultInstaClientConfig implements InstaClientConfig {
 	 * {@inheritDoc}
 	 */
 	public boolean getPropertyAsFeature(final String name) {
-		final Boolean v = (Boolean) getProperties().get(name);
-		return (v != null) ? v : false;
+		// properties read from insta4j.properties are Strings
+		final Object v = getProperties().get(name);
+		return v != null && (v instanceof Boolean ? (Boolean) v : Boolean.valueOf(v.toString().trim()));
 	}
 }
@@ -58,6 +58,162 @@ public interface InstaClientConfig extends FeaturesAndProperties {
 	 */
 	public static final String PROPERTY_LOG_HTTP_TRAFFIC = "insta4j.log.http.traffic";
 
+	/**
+	 * Property holds the base url of the Instapaper Full api, e.g. https://www.instapaper.com
+	 * If the property is absent then the public Instapaper service is used. Benchmarks and tests point
+	 * this at a local stub server.
+	 */
+	public static final String PROPERTY_API_BASE_URL = "insta4j.api.base.url";
+
+	/**
+	 * Property holds the http transport used by the InstaClient, either "urlconnection" (the jdk HttpURLConnection,
+	 * the default), "pooled" (a keep-alive connection pool) or the class name of a
+	 * {@link com.idtmatter.insta4j.client.transport.InstaTransport} with a public constructor taking an
+	 * {@link InstaClientConfig}.
+	 */
+	public static final String PROPERTY_TRANSPORT = "insta4j.transport";
+
+	/**
+	 * Property holds the maximum number of open connections of the pooled transport.
+	 * The value is an integer, if the property is absent then the default value is 20.
+	 */
+	public static final String PROPERTY_MAX_CONNECTIONS = "insta4j.transport.max.connections";
+
+	/**
+	 * Property holds the maximum number of open connections to a single host of the pooled transport.
+	 * The value is an integer, if the property is absent then the maximum number of connections is used.
+	 */
+	public static final String PROPERTY_MAX_CONNECTIONS_PER_ROUTE = "insta4j.transport.max.connections.per.route";
+
+	/**
+	 * Property holds the time in milliseconds after which an unused pooled connection is closed.
+	 * The value is an integer, if the property is absent then the default value is 30000.
+	 */
+	public static final String PROPERTY_IDLE_TIMEOUT = "insta4j.transport.idle.timeout";
+
+	/**
+	 * Property holds the connect timeout in milliseconds of both transports.
+	 * The value is an integer, if the property is absent or 0 then the connect never times out.
+	 */
+	public static final String PROPERTY_CONNECT_TIMEOUT = "insta4j.transport.connect.timeout";
+
+	/**
+	 * Property holds the read timeout in milliseconds of both transports.
+	 * The value is an integer, if the property is absent or 0 then reads never time out.
+	 */
+	public static final String PROPERTY_READ_TIMEOUT = "insta4j.transport.read.timeout";
+
+	/**
+	 * Property holds the decoder of json responses, either "insta4j" (a decoder written for the Instapaper records,
+	 * the default), "jackson" (the Jackson streaming parser), "jaxb" (the Jersey jaxb binding) or the class name of a
+	 * {@link com.idtmatter.insta4j.jsonp.RecordCodec} with a public no argument constructor.
+	 */
+	public static final String PROPERTY_CODEC = "insta4j.codec";
+
+	/**
+	 * Property holds the directory under which {@link com.idtmatter.insta4j.client.FullInstaClient#getMirror()}
+	 * keeps an on-disk mirror of each account, as a String or a {@link java.io.File}. If the property is absent the
+	 * client has no mirror.
+	 */
+	public static final String PROPERTY_MIRROR_DIRECTORY = "insta4j.mirror.directory";
+
+	/**
+	 * Property holds the time in milliseconds the mirror answers without going to Instapaper.
+	 * The value is an integer, if the property is absent then the default value is 60000.
+	 */
+	public static final String PROPERTY_MIRROR_MAX_AGE = "insta4j.mirror.max.age";
+
+	/**
+	 * Property holds the cache of bookmark texts used by
+	 * {@link com.idtmatter.insta4j.client.FullInstaClient#getBookmark(String, String, String)}, either an
+	 * {@link com.idtmatter.insta4j.cache.ArticleCache} instance to share between clients or the maximum heap in bytes
+	 * the cache of the client may take. If the property is absent texts are not cached.
+	 */
+	public static final String PROPERTY_ARTICLE_CACHE = "insta4j.cache.articles";
+
+	/**
+	 * Property holds the directory of the compressed disk tier of the text cache, as a String or a
+	 * {@link java.io.File}. If the property is absent texts are only cached in the heap.
+	 */
+	public static final String PROPERTY_ARTICLE_CACHE_DIRECTORY = "insta4j.cache.articles.directory";
+
+	/**
+	 * Property holds the maximum bytes of the disk tier of the text cache.
+	 * The value is an integer, if the property is absent then the default value is 268435456 (256MB).
+	 */
+	public static final String PROPERTY_ARTICLE_CACHE_DISK_BYTES = "insta4j.cache.articles.disk.bytes";
+
+	/**
+	 * Property holds a {@link com.idtmatter.insta4j.ratelimit.RateLimiter} pacing the requests of the client. If the
+	 * property is absent but one of the rates below is set, the limiter shared by the clients of the consumer key
+	 * is used.
+	 */
+	public static final String PROPERTY_RATE_LIMITER = "insta4j.ratelimit";
+
+	/**
+	 * Property holds the requests per second all accounts of the consumer key may send together.
+	 * The value is a number, if the property is absent then the consumer key is not limited.
+	 */
+	public static final String PROPERTY_CONSUMER_RATE = "insta4j.ratelimit.consumer.rate";
+
+	/**
+	 * Property holds the requests per second a single account may send.
+	 * The value is a number, if the property is absent then an account starts at the consumer rate, or at
+	 * {@link com.idtmatter.insta4j.ratelimit.RateLimiter#DEFAULT_ACCOUNT_RATE} without one, and slows down when
+	 * Instapaper answers 1040.
+	 */
+	public static final String PROPERTY_ACCOUNT_RATE = "insta4j.ratelimit.account.rate";
+
+	/**
+	 * Property holds how often a request rate limited with 1040 is queued again before the error is raised.
+	 * The value is an integer, if the property is absent then the default value is 8.
+	 */
+	public static final String PROPERTY_RATE_LIMIT_RETRIES = "insta4j.ratelimit.retries";
+
+	/**
+	 * Property holds the {@link com.idtmatter.insta4j.retry.RetryPolicy} sending requests again after http 500 and
+	 * 1246, to share its retry budget between clients. If the property is absent each
+	 * {@link com.idtmatter.insta4j.client.InstaRuntime} has a policy of {@link #PROPERTY_RETRY_ATTEMPTS} attempts.
+	 */
+	public static final String PROPERTY_RETRY_POLICY = "insta4j.retry";
+
+	/**
+	 * Property holds how often a request failed with a transient error is attempted in all.
+	 * The value is an integer, if the property is absent then the default value is 3, 1 turns retries off.
+	 */
+	public static final String PROPERTY_RETRY_ATTEMPTS = "insta4j.retry.attempts";
+
+	/**
+	 * Property tells whether concurrent identical calls of listBookmarks, listFolders and verifyCredentials share
+	 * one request, see {@link com.idtmatter.insta4j.client.SingleFlight}.
+	 * The value is a boolean, if the property is absent then the default value is "true".
+	 */
+	public static final String PROPERTY_COALESCE_READS = "insta4j.coalesce.reads";
+
+	/**
+	 * Property holds the number of threads of the executor of
+	 * {@link com.idtmatter.insta4j.client.FullAsyncInstaClient#create(com.idtmatter.insta4j.client.FullInstaClient)}
+	 * on a JVM without virtual threads, which caps the calls in flight.
+	 * The value is an integer, if the property is absent then the default value is 64.
+	 */
+	public static final String PROPERTY_ASYNC_POOL_SIZE = "insta4j.async.pool.size";
+
+	/**
+	 * Property holds the {@link com.idtmatter.insta4j.metrics.InstaMetrics} recording the requests of the client, to
+	 * share between clients, or "true" for metrics of the {@link com.idtmatter.insta4j.client.InstaRuntime} alone. If
+	 * the property is absent nothing is recorded.
+	 */
+	public static final String PROPERTY_METRICS = "insta4j.metrics";
+
+	/**
+	 * Property tells whether the clients keep a {@link com.idtmatter.insta4j.dedup.UrlIndex} of the urls in the Unread
+	 * folder of their account, letting addBookmark answer a url saved before without a request. The index of an
+	 * account is shared by its clients on a {@link com.idtmatter.insta4j.client.InstaRuntime}, see
+	 * {@link com.idtmatter.insta4j.client.InstaRuntime#getUrlIndex(String)}.
+	 * The value is a boolean, if the property is absent then every url is sent.
+	 */
+	public static final String PROPERTY_URL_INDEX = "insta4j.dedup.urls";
+
 
 	/**
 	 * Get a feature that is boolean property of the property bag.
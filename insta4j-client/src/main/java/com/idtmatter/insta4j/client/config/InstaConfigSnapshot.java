@@ -0,0 +1,417 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client.config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
+
+/**
+ * An immutable client configuration, parsed once. The tuning properties are checked and converted when the
+ * snapshot is made and read through typed accessors, e.g. {@link #getReadTimeout()}, so a malformed value fails
+ * when the configuration is loaded rather than when the first client is created.
+ * <p/>
+ * The snapshot of insta4j.properties and the system properties is loaded on first use and shared by all clients
+ * created without a configuration, see {@link #getDefault()}. {@link #reload()} reads the file again and swaps the
+ * shared snapshot in one step: clients and runtimes created afterwards use the new values, those already created
+ * keep the snapshot they started with.
+ * <p/>
+ * <blockquote><pre>
+ *     InstaConfigSnapshot config = InstaConfigSnapshot.getDefault()
+ *         .with(InstaClientConfig.PROPERTY_TRANSPORT, "pooled");
+ *     InstaRuntime runtime = new InstaRuntime(config);
+ * </pre></blockquote>
+ */
+public final class InstaConfigSnapshot implements InstaClientConfig {
+
+	/**
+	 * Default value of {@link InstaClientConfig#PROPERTY_MAX_CONNECTIONS}
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+
+	/**
+	 * Default value of {@link InstaClientConfig#PROPERTY_IDLE_TIMEOUT}
+	 */
+	public static final int DEFAULT_IDLE_TIMEOUT = 30000;
+
+	/**
+	 * Default value of {@link InstaClientConfig#PROPERTY_ASYNC_POOL_SIZE}
+	 */
+	public static final int DEFAULT_ASYNC_POOL_SIZE = 64;
+
+	private static final AtomicReference<InstaConfigSnapshot> DEFAULT = new AtomicReference<InstaConfigSnapshot>();
+
+	/**
+	 * The system properties read on top of insta4j.properties are the consumer key, the consumer secret and the
+	 * properties starting with this prefix.
+	 */
+	private static final String SYSTEM_PROPERTY_PREFIX = "insta4j.";
+
+	private final Map<String, Object> properties;
+	private final Map<String, Boolean> features;
+
+	private final int connectTimeout;
+	private final int readTimeout;
+	private final int maxConnections;
+	private final int maxConnectionsPerRoute;
+	private final int idleTimeout;
+	private final long articleCacheBytes;
+	private final long articleCacheDiskBytes;
+	private final long mirrorMaxAge;
+	private final double consumerRate;
+	private final double accountRate;
+	private final int rateLimitRetries;
+	private final int retryAttempts;
+	private final boolean coalesceReads;
+	private final int asyncPoolSize;
+
+	/**
+	 * @param properties The properties of the configuration, copied
+	 * @throws IllegalArgumentException If a tuning property is not a number.
+	 */
+	public InstaConfigSnapshot(final Map<String, ?> properties) {
+		this(properties, Collections.<String, Boolean>emptyMap());
+	}
+
+	/**
+	 * @param properties The properties of the configuration, copied
+	 * @param features   The features of the configuration, copied
+	 * @throws IllegalArgumentException If a tuning property is not a number.
+	 */
+	public InstaConfigSnapshot(final Map<String, ?> properties, final Map<String, Boolean> features) {
+		this.properties = Collections.unmodifiableMap(new HashMap<String, Object>(properties));
+		this.features = Collections.unmodifiableMap(new HashMap<String, Boolean>(features));
+		connectTimeout = (int) getLong(PROPERTY_CONNECT_TIMEOUT, 0);
+		readTimeout = (int) getLong(PROPERTY_READ_TIMEOUT, 0);
+		maxConnections = (int) getLong(PROPERTY_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS);
+		maxConnectionsPerRoute = (int) getLong(PROPERTY_MAX_CONNECTIONS_PER_ROUTE, maxConnections);
+		idleTimeout = (int) getLong(PROPERTY_IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+		articleCacheBytes = getLong(PROPERTY_ARTICLE_CACHE, 0);
+		articleCacheDiskBytes = getLong(PROPERTY_ARTICLE_CACHE_DISK_BYTES, 256L * 1024 * 1024);
+		mirrorMaxAge = getLong(PROPERTY_MIRROR_MAX_AGE, 60000L);
+		consumerRate = getDouble(PROPERTY_CONSUMER_RATE, 0);
+		accountRate = getDouble(PROPERTY_ACCOUNT_RATE, 0);
+		rateLimitRetries = (int) getLong(PROPERTY_RATE_LIMIT_RETRIES, 8);
+		retryAttempts = (int) getLong(PROPERTY_RETRY_ATTEMPTS, 3);
+		final Object coalesce = this.properties.get(PROPERTY_COALESCE_READS);
+		coalesceReads = coalesce == null || toBoolean(coalesce);
+		asyncPoolSize = (int) getLong(PROPERTY_ASYNC_POOL_SIZE, DEFAULT_ASYNC_POOL_SIZE);
+		if (asyncPoolSize < 1) {
+			throw new IllegalArgumentException(String.format("The property %s must be at least 1 but was %d",
+					PROPERTY_ASYNC_POOL_SIZE, asyncPoolSize));
+		}
+	}
+
+	/**
+	 * @return The configuration itself if it is a snapshot, else a snapshot of its properties and features.
+	 */
+	public static InstaConfigSnapshot of(final InstaClientConfig config) {
+		if (config instanceof InstaConfigSnapshot) {
+			return (InstaConfigSnapshot) config;
+		}
+		return new InstaConfigSnapshot(config.getProperties(), config.getFeatures());
+	}
+
+	/**
+	 * @return The snapshot shared by the clients created without a configuration, loaded on first use.
+	 * @throws IllegalArgumentException If the consumer key or secret is missing, see {@link #load()}.
+	 */
+	public static InstaConfigSnapshot getDefault() {
+		final InstaConfigSnapshot current = DEFAULT.get();
+		if (current != null) {
+			return current;
+		}
+		DEFAULT.compareAndSet(null, load());
+		return DEFAULT.get();
+	}
+
+	/**
+	 * Loads insta4j.properties and the system properties again and makes them the default snapshot. If loading
+	 * fails the default snapshot is left as it was.
+	 *
+	 * @return The new default snapshot.
+	 * @throws IllegalArgumentException If the consumer key or secret is missing or a tuning property is not a
+	 *                                  number.
+	 */
+	public static InstaConfigSnapshot reload() {
+		final InstaConfigSnapshot loaded = load();
+		DEFAULT.set(loaded);
+		return loaded;
+	}
+
+	/**
+	 * Replaces the default snapshot, e.g. with one made by {@link #with(String, Object)}.
+	 */
+	public static void setDefault(final InstaConfigSnapshot snapshot) {
+		if (snapshot == null) {
+			throw new IllegalArgumentException("The default configuration can not be null");
+		}
+		DEFAULT.set(snapshot);
+	}
+
+	/**
+	 * Reads insta4j.properties from the classpath, if there is one, and the system properties
+	 * {@link #PROPERTY_CONSUMER_KEY}, {@link #PROPERTY_CONSUMER_SECRET} and those starting with insta4j., which take
+	 * precedence over the file.
+	 *
+	 * @throws IllegalArgumentException If the consumer key or secret is missing or a tuning property is not a
+	 *                                  number.
+	 */
+	public static InstaConfigSnapshot load() {
+		final Map<String, Object> properties = new HashMap<String, Object>();
+		final PropertiesConfiguration file = new PropertiesConfiguration();
+		// values are kept whole, e.g. a title with commas
+		file.setDelimiterParsingDisabled(true);
+		file.setFileName(PROPERTY_JINSTAPAPER_PROPERTY_NAME);
+		try {
+			file.load();
+			final Iterator<?> keys = file.getKeys();
+			while (keys.hasNext()) {
+				final String key = (String) keys.next();
+				properties.put(key, file.getString(key));
+			}
+		} catch (ConfigurationException e) {
+			// no insta4j.properties, the system properties must hold the consumer key and secret
+		}
+		final Properties system = System.getProperties();
+		synchronized (system) {
+			for (final Map.Entry<Object, Object> entry : system.entrySet()) {
+				if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof String)) {
+					continue;
+				}
+				final String name = (String) entry.getKey();
+				if (name.startsWith(SYSTEM_PROPERTY_PREFIX) || PROPERTY_CONSUMER_KEY.equals(name)
+						|| PROPERTY_CONSUMER_SECRET.equals(name)) {
+					properties.put(name, entry.getValue());
+				}
+			}
+		}
+		if (properties.get(PROPERTY_CONSUMER_KEY) == null || properties.get(PROPERTY_CONSUMER_SECRET) == null) {
+			throw new IllegalArgumentException(String.format("No consumerKey and/or consumerSecret found in %s file. "
+					+ "You have to provide these as system properties.", PROPERTY_JINSTAPAPER_PROPERTY_NAME));
+		}
+		return new InstaConfigSnapshot(properties);
+	}
+
+	/**
+	 * @return A copy of this snapshot with a property set, or removed if the value is null.
+	 */
+	public InstaConfigSnapshot with(final String name, final Object value) {
+		final Map<String, Object> copy = new HashMap<String, Object>(properties);
+		if (value != null) {
+			copy.put(name, value);
+		} else {
+			copy.remove(name);
+		}
+		return new InstaConfigSnapshot(copy, features);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Map<String, Boolean> getFeatures() {
+		return features;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean getFeature(final String featureName) {
+		final Boolean v = features.get(featureName);
+		return (v != null) ? v : false;
+	}
+
+	/**
+	 * @return The properties, which can not be modified.
+	 */
+	public Map<String, Object> getProperties() {
+		return properties;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object getProperty(final String propertyName) {
+		return properties.get(propertyName);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean getPropertyAsFeature(final String name) {
+		final Object v = properties.get(name);
+		return v != null && toBoolean(v);
+	}
+
+	/**
+	 * @return The property as a String, null if it is absent.
+	 */
+	public String getString(final String name) {
+		final Object value = properties.get(name);
+		return value != null ? value.toString() : null;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_CONNECT_TIMEOUT}, 0 if the connect never times out.
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_READ_TIMEOUT}, 0 if reads never time out.
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_MAX_CONNECTIONS}.
+	 */
+	public int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_MAX_CONNECTIONS_PER_ROUTE}.
+	 */
+	public int getMaxConnectionsPerRoute() {
+		return maxConnectionsPerRoute;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_IDLE_TIMEOUT}.
+	 */
+	public int getIdleTimeout() {
+		return idleTimeout;
+	}
+
+	/**
+	 * @return The heap in bytes of the text cache given by {@link #PROPERTY_ARTICLE_CACHE}, 0 if the property is
+	 *         absent or holds a cache instance.
+	 */
+	public long getArticleCacheBytes() {
+		return articleCacheBytes;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_ARTICLE_CACHE_DISK_BYTES}.
+	 */
+	public long getArticleCacheDiskBytes() {
+		return articleCacheDiskBytes;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_MIRROR_MAX_AGE}.
+	 */
+	public long getMirrorMaxAge() {
+		return mirrorMaxAge;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_CONSUMER_RATE}, 0 if the consumer key is not limited.
+	 */
+	public double getConsumerRate() {
+		return consumerRate;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_ACCOUNT_RATE}, 0 if accounts are not limited.
+	 */
+	public double getAccountRate() {
+		return accountRate;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_RATE_LIMIT_RETRIES}.
+	 */
+	public int getRateLimitRetries() {
+		return rateLimitRetries;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_RETRY_ATTEMPTS}.
+	 */
+	public int getRetryAttempts() {
+		return retryAttempts;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_COALESCE_READS}.
+	 */
+	public boolean isCoalesceReads() {
+		return coalesceReads;
+	}
+
+	/**
+	 * @return The value of {@link #PROPERTY_ASYNC_POOL_SIZE}.
+	 */
+	public int getAsyncPoolSize() {
+		return asyncPoolSize;
+	}
+
+	/**
+	 * @return The property given as a {@link Number} or a String, the default value if it is absent or holds an
+	 *         instance such as a cache.
+	 */
+	private long getLong(final String name, final long defaultValue) {
+		final Object value = properties.get(name);
+		if (value instanceof Number) {
+			return ((Number) value).longValue();
+		} else if (!(value instanceof String)) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(((String) value).trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(String.format("The property %s must be an integer but was %s", name,
+					value));
+		}
+	}
+
+	private double getDouble(final String name, final double defaultValue) {
+		final Object value = properties.get(name);
+		if (value instanceof Number) {
+			return ((Number) value).doubleValue();
+		} else if (!(value instanceof String)) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(((String) value).trim());
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(String.format("The property %s must be a number but was %s", name,
+					value));
+		}
+	}
+
+	private static boolean toBoolean(final Object value) {
+		return value instanceof Boolean ? (Boolean) value : Boolean.valueOf(value.toString().trim());
+	}
+
+	@Override
+	public String toString() {
+		final Map<String, Object> shown = new HashMap<String, Object>(properties);
+		if (shown.containsKey(PROPERTY_CONSUMER_SECRET)) {
+			shown.put(PROPERTY_CONSUMER_SECRET, "***");
+		}
+		return "InstaConfigSnapshot" + shown;
+	}
+}
@@ -0,0 +1,431 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client.oauth;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+
+/**
+ * Signs requests with OAuth 1.0a HMAC-SHA1 as the Jersey oauth-client does, with far less work per request: the
+ * HMAC key of each token secret is made once and cached, every thread reuses its {@link Mac} and its buffers, and
+ * the parameters, the signature base string, the nonce and the signature are written into those buffers instead of
+ * intermediate Strings. The Authorization header is the only String made per request.
+ * <p/>
+ * A signer is thread safe and shared by the accounts of a consumer key.
+ */
+public class OAuthSigner {
+
+	/**
+	 * The token secrets whose keys are kept, the cache is dropped as a whole when it grows past it.
+	 */
+	private static final int MAX_KEYS = 65536;
+
+	private static final String HMAC_SHA1 = "HmacSHA1";
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+	private static final char[] BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/"
+			.toCharArray();
+
+	private final String consumerKey;
+	private final String encodedConsumerSecret;
+	private final SecretKeySpec consumerOnlyKey;
+	private final ConcurrentMap<String, SecretKeySpec> keys = new ConcurrentHashMap<String, SecretKeySpec>();
+	private final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+
+	public OAuthSigner(final String consumerKey, final String consumerSecret) {
+		this.consumerKey = consumerKey;
+		final StringBuilder encoded = new StringBuilder();
+		encode(consumerSecret != null ? consumerSecret : "", encoded);
+		this.encodedConsumerSecret = encoded.toString();
+		this.consumerOnlyKey = key(encodedConsumerSecret + "&");
+	}
+
+	/**
+	 * Signs the request and adds its Authorization header.
+	 *
+	 * @param token       The access token, null to sign with the consumer key alone
+	 * @param tokenSecret The secret of the access token
+	 */
+	public void sign(final ClientRequest request, final String token, final String tokenSecret) {
+		request.getHeaders().add("Authorization", sign(request.getMethod(), request.getURI(), form(request), token,
+				tokenSecret));
+	}
+
+	/**
+	 * @param form The form parameters of the request, null if the body is not a form
+	 * @return The value of the Authorization header of the request.
+	 */
+	public String sign(final String method, final URI uri, final MultivaluedMap<String, String> form,
+			final String token, final String tokenSecret) {
+		final Buffers buffers = this.buffers.get();
+		return sign(method, uri, form, token, tokenSecret, System.currentTimeMillis() / 1000, buffers.random
+				.nextLong(), buffers);
+	}
+
+	/**
+	 * Signs with the given timestamp and nonce, for tests comparing the signature with another implementation.
+	 */
+	String sign(final String method, final URI uri, final MultivaluedMap<String, String> form, final String token,
+			final String tokenSecret, final long timestamp, final long nonce) {
+		return sign(method, uri, form, token, tokenSecret, timestamp, nonce, buffers.get());
+	}
+
+	private String sign(final String method, final URI uri, final MultivaluedMap<String, String> form,
+			final String token, final String tokenSecret, final long timestamp, final long nonce,
+			final Buffers buffers) {
+		final StringBuilder nonceChars = buffers.nonce;
+		nonceChars.setLength(0);
+		for (int shift = 60; shift >= 0; shift -= 4) {
+			nonceChars.append(HEX[(int) (nonce >>> shift) & 0xf]);
+		}
+		final StringBuilder timestampChars = buffers.timestamp;
+		timestampChars.setLength(0);
+		timestampChars.append(timestamp);
+
+		// the parameters, encoded and sorted
+		final Parameters parameters = buffers.parameters;
+		parameters.clear();
+		parameters.add("oauth_consumer_key", consumerKey);
+		parameters.add("oauth_nonce", nonceChars);
+		parameters.add("oauth_signature_method", "HMAC-SHA1");
+		parameters.add("oauth_timestamp", timestampChars);
+		if (token != null) {
+			parameters.add("oauth_token", token);
+		}
+		parameters.add("oauth_version", "1.0");
+		final String query = uri.getRawQuery();
+		if (query != null) {
+			addQuery(parameters, query);
+		}
+		if (form != null) {
+			for (final Map.Entry<String, List<String>> entry : form.entrySet()) {
+				for (final String value : entry.getValue()) {
+					parameters.add(entry.getKey(), value != null ? value : "");
+				}
+			}
+		}
+		parameters.sort();
+
+		// the signature base string, ascii only
+		final StringBuilder base = buffers.base;
+		base.setLength(0);
+		base.append(method.toUpperCase()).append('&');
+		appendBaseUrl(uri, buffers.url);
+		encode(buffers.url, base);
+		base.append('&');
+		parameters.appendEncoded(base);
+
+		final byte[] signature = mac(tokenSecret != null && token != null ? tokenKey(tokenSecret) : consumerOnlyKey,
+				base, buffers);
+
+		final StringBuilder header = buffers.header;
+		header.setLength(0);
+		header.append("OAuth oauth_consumer_key=\"");
+		encode(consumerKey, header);
+		header.append("\", oauth_nonce=\"").append(nonceChars);
+		header.append("\", oauth_signature=\"");
+		final StringBuilder base64 = buffers.base64;
+		base64.setLength(0);
+		appendBase64(signature, base64);
+		encode(base64, header);
+		header.append("\", oauth_signature_method=\"HMAC-SHA1\", oauth_timestamp=\"").append(timestampChars);
+		if (token != null) {
+			header.append("\", oauth_token=\"");
+			encode(token, header);
+		}
+		header.append("\", oauth_version=\"1.0\"");
+		return header.toString();
+	}
+
+	private SecretKeySpec tokenKey(final String tokenSecret) {
+		SecretKeySpec key = keys.get(tokenSecret);
+		if (key == null) {
+			final StringBuilder secret = new StringBuilder(encodedConsumerSecret.length() + tokenSecret.length() + 1);
+			secret.append(encodedConsumerSecret).append('&');
+			encode(tokenSecret, secret);
+			key = key(secret.toString());
+			if (keys.size() >= MAX_KEYS) {
+				keys.clear();
+			}
+			keys.put(tokenSecret, key);
+		}
+		return key;
+	}
+
+	private static SecretKeySpec key(final String secret) {
+		try {
+			return new SecretKeySpec(secret.getBytes("UTF-8"), HMAC_SHA1);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] mac(final SecretKeySpec key, final StringBuilder base, final Buffers buffers) {
+		final int length = base.length();
+		if (buffers.bytes.length < length) {
+			buffers.bytes = new byte[Math.max(length, buffers.bytes.length * 2)];
+		}
+		final byte[] bytes = buffers.bytes;
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) base.charAt(i);
+		}
+		try {
+			if (buffers.macKey != key) {
+				buffers.mac.init(key);
+				buffers.macKey = key;
+			}
+			buffers.mac.update(bytes, 0, length);
+			buffers.mac.doFinal(buffers.signature, 0);
+			return buffers.signature;
+		} catch (GeneralSecurityException e) {
+			buffers.macKey = null;
+			throw new ClientHandlerException(e);
+		}
+	}
+
+	/**
+	 * Appends scheme://host[:port]/path, without the default port, the query or the fragment.
+	 */
+	private static void appendBaseUrl(final URI uri, final StringBuilder url) {
+		url.setLength(0);
+		final String scheme = uri.getScheme().toLowerCase();
+		url.append(scheme).append("://").append(uri.getHost().toLowerCase());
+		final int port = uri.getPort();
+		if (port != -1 && !(port == 80 && "http".equals(scheme)) && !(port == 443 && "https".equals(scheme))) {
+			url.append(':').append(port);
+		}
+		final String path = uri.getRawPath();
+		url.append(path != null && path.length() > 0 ? path : "/");
+	}
+
+	private static void addQuery(final Parameters parameters, final String query) {
+		try {
+			for (final String pair : query.split("&")) {
+				if (pair.length() == 0) {
+					continue;
+				}
+				final int equals = pair.indexOf('=');
+				parameters.add(URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), "UTF-8"),
+						equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static MultivaluedMap<String, String> form(final ClientRequest request) {
+		final Object entity = request.getEntity();
+		if (!(entity instanceof MultivaluedMap)) {
+			return null;
+		}
+		final Object type = request.getHeaders().getFirst("Content-Type");
+		return type != null
+				&& MediaType.APPLICATION_FORM_URLENCODED_TYPE.isCompatible(type instanceof MediaType ? (MediaType) type
+						: MediaType.valueOf(type.toString())) ? (MultivaluedMap<String, String>) entity : null;
+	}
+
+	/**
+	 * Percent encodes as RFC 3986 asks for OAuth: everything but letters, digits and -._~ as %XX of its UTF-8 bytes.
+	 */
+	static void encode(final CharSequence value, final StringBuilder out) {
+		final int length = value.length();
+		for (int i = 0; i < length; i++) {
+			final char c = value.charAt(i);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '.'
+					|| c == '_' || c == '~') {
+				out.append(c);
+			} else if (c < 0x80) {
+				appendByte(c, out);
+			} else if (c < 0x800) {
+				appendByte(0xc0 | (c >> 6), out);
+				appendByte(0x80 | (c & 0x3f), out);
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				appendByte(0xf0 | (codePoint >> 18), out);
+				appendByte(0x80 | ((codePoint >> 12) & 0x3f), out);
+				appendByte(0x80 | ((codePoint >> 6) & 0x3f), out);
+				appendByte(0x80 | (codePoint & 0x3f), out);
+			} else if (c >= 0xd800 && c <= 0xdfff) {
+				// a lone surrogate is written as ?, as String.getBytes does
+				appendByte('?', out);
+			} else {
+				appendByte(0xe0 | (c >> 12), out);
+				appendByte(0x80 | ((c >> 6) & 0x3f), out);
+				appendByte(0x80 | (c & 0x3f), out);
+			}
+		}
+	}
+
+	private static void appendByte(final int b, final StringBuilder out) {
+		out.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+	}
+
+	private static void appendBase64(final byte[] bytes, final StringBuilder out) {
+		int i = 0;
+		for (; i + 2 < bytes.length; i += 3) {
+			final int triple = ((bytes[i] & 0xff) << 16) | ((bytes[i + 1] & 0xff) << 8) | (bytes[i + 2] & 0xff);
+			out.append(BASE64[triple >> 18]).append(BASE64[(triple >> 12) & 0x3f]).append(BASE64[(triple >> 6) & 0x3f])
+					.append(BASE64[triple & 0x3f]);
+		}
+		final int left = bytes.length - i;
+		if (left > 0) {
+			final int triple = ((bytes[i] & 0xff) << 16) | (left > 1 ? (bytes[i + 1] & 0xff) << 8 : 0);
+			out.append(BASE64[triple >> 18]).append(BASE64[(triple >> 12) & 0x3f]);
+			out.append(left > 1 ? BASE64[(triple >> 6) & 0x3f] : '=').append('=');
+		}
+	}
+
+	/**
+	 * The parameters of a request, encoded one after the other into one buffer.
+	 */
+	private static final class Parameters {
+		private final StringBuilder chars = new StringBuilder(512);
+		// name start, name end (value start - 1), value end
+		private int[] bounds = new int[3 * 16];
+		private int[] order = new int[16];
+		private int size;
+
+		void clear() {
+			chars.setLength(0);
+			size = 0;
+		}
+
+		void add(final CharSequence name, final CharSequence value) {
+			if (size == order.length) {
+				final int[] grownBounds = new int[bounds.length * 2];
+				System.arraycopy(bounds, 0, grownBounds, 0, bounds.length);
+				bounds = grownBounds;
+				final int[] grownOrder = new int[order.length * 2];
+				System.arraycopy(order, 0, grownOrder, 0, order.length);
+				order = grownOrder;
+			}
+			bounds[3 * size] = chars.length();
+			encode(name, chars);
+			bounds[3 * size + 1] = chars.length();
+			encode(value, chars);
+			bounds[3 * size + 2] = chars.length();
+			order[size] = size;
+			size++;
+		}
+
+		/**
+		 * Sorts by encoded name, then encoded value.
+		 */
+		void sort() {
+			for (int i = 1; i < size; i++) {
+				final int current = order[i];
+				int j = i - 1;
+				while (j >= 0 && compare(order[j], current) > 0) {
+					order[j + 1] = order[j];
+					j--;
+				}
+				order[j + 1] = current;
+			}
+		}
+
+		private int compare(final int left, final int right) {
+			final int byName = compare(bounds[3 * left], bounds[3 * left + 1], bounds[3 * right],
+					bounds[3 * right + 1]);
+			return byName != 0 ? byName : compare(bounds[3 * left + 1], bounds[3 * left + 2], bounds[3 * right + 1],
+					bounds[3 * right + 2]);
+		}
+
+		private int compare(final int leftStart, final int leftEnd, final int rightStart, final int rightEnd) {
+			final int length = Math.min(leftEnd - leftStart, rightEnd - rightStart);
+			for (int i = 0; i < length; i++) {
+				final int diff = chars.charAt(leftStart + i) - chars.charAt(rightStart + i);
+				if (diff != 0) {
+					return diff;
+				}
+			}
+			return (leftEnd - leftStart) - (rightEnd - rightStart);
+		}
+
+		/**
+		 * Appends name=value&amp;... encoded once more for the base string, the parameters only hold unreserved
+		 * characters and % escapes.
+		 */
+		void appendEncoded(final StringBuilder base) {
+			for (int i = 0; i < size; i++) {
+				final int parameter = order[i];
+				if (i > 0) {
+					base.append("%26");
+				}
+				appendEscaped(bounds[3 * parameter], bounds[3 * parameter + 1], base);
+				base.append("%3D");
+				appendEscaped(bounds[3 * parameter + 1], bounds[3 * parameter + 2], base);
+			}
+		}
+
+		private void appendEscaped(final int start, final int end, final StringBuilder base) {
+			for (int i = start; i < end; i++) {
+				final char c = chars.charAt(i);
+				if (c == '%') {
+					base.append("%25");
+				} else {
+					base.append(c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The Mac and buffers of a thread.
+	 */
+	private static final class Buffers {
+		final Mac mac;
+		SecretKeySpec macKey;
+		final byte[] signature;
+		byte[] bytes = new byte[1024];
+		final StringBuilder base = new StringBuilder(1024);
+		final StringBuilder url = new StringBuilder(128);
+		final StringBuilder header = new StringBuilder(320);
+		final StringBuilder base64 = new StringBuilder(32);
+		final StringBuilder nonce = new StringBuilder(16);
+		final StringBuilder timestamp = new StringBuilder(16);
+		final Parameters parameters = new Parameters();
+		final Random random = new Random(new SecureRandom().nextLong());
+
+		Buffers() {
+			try {
+				mac = Mac.getInstance(HMAC_SHA1);
+			} catch (GeneralSecurityException e) {
+				throw new IllegalStateException(e);
+			}
+			signature = new byte[mac.getMacLength()];
+		}
+	}
+}
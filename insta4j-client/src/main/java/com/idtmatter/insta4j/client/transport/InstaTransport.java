@@ -0,0 +1,41 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client.transport;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+
+/**
+ * Creates the Jersey {@link Client} an InstaClient sends its requests with, and owns the connections behind it.
+ * <p/>
+ * The transport is chosen with {@link com.idtmatter.insta4j.client.config.InstaClientConfig#PROPERTY_TRANSPORT},
+ * see {@link InstaTransports#create(com.idtmatter.insta4j.client.config.InstaClientConfig)}.
+ *
+ * @see UrlConnectionTransport
+ * @see PooledTransport
+ */
+public interface InstaTransport {
+
+	/**
+	 * @param config The Jersey configuration with the providers of the InstaClient
+	 * @return A new client sending its requests through this transport.
+	 */
+	Client createClient(ClientConfig config);
+
+	/**
+	 * Closes the connections held by the transport, clients created by it must not be used afterwards.
+	 */
+	void shutdown();
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client.transport;
+
+import java.lang.reflect.InvocationTargetException;
+
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+
+/**
+ * Creates the {@link InstaTransport} configured by {@link InstaClientConfig#PROPERTY_TRANSPORT}.
+ */
+public final class InstaTransports {
+
+	/**
+	 * {@link InstaClientConfig#PROPERTY_TRANSPORT} value of {@link UrlConnectionTransport}
+	 */
+	public static final String URL_CONNECTION = "urlconnection";
+
+	/**
+	 * {@link InstaClientConfig#PROPERTY_TRANSPORT} value of {@link PooledTransport}
+	 */
+	public static final String POOLED = "pooled";
+
+	private InstaTransports() {
+	}
+
+	/**
+	 * @param instaConfig The client configuration
+	 * @return The transport named by {@link InstaClientConfig#PROPERTY_TRANSPORT}, a {@link UrlConnectionTransport}
+	 *         if the property is absent.
+	 * @throws IllegalArgumentException If the property names neither a known transport nor an {@link InstaTransport}
+	 *                                  class.
+	 */
+	public static InstaTransport create(final InstaClientConfig instaConfig) {
+		final Object transport = instaConfig.getProperty(InstaClientConfig.PROPERTY_TRANSPORT);
+		if (transport instanceof InstaTransport) {
+			return (InstaTransport) transport;
+		}
+		final String name = transport != null ? transport.toString().trim() : URL_CONNECTION;
+		if (URL_CONNECTION.equalsIgnoreCase(name)) {
+			return new UrlConnectionTransport(instaConfig);
+		} else if (POOLED.equalsIgnoreCase(name)) {
+			return new PooledTransport(instaConfig);
+		}
+		try {
+			return Class.forName(name).asSubclass(InstaTransport.class).getConstructor(InstaClientConfig.class)
+					.newInstance(instaConfig);
+		} catch (InvocationTargetException e) {
+			throw new IllegalArgumentException(String.format("The transport %s could not be created", name),
+					e.getCause());
+		} catch (Exception e) {
+			throw new IllegalArgumentException(String.format("%s is not a known transport nor an %s with a %s "
+					+ "constructor", name, InstaTransport.class.getName(), InstaClientConfig.class.getSimpleName()), e);
+		}
+	}
+}
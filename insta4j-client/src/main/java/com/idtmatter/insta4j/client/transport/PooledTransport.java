@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client.transport;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaConfigSnapshot;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.client.apache4.ApacheHttpClient4;
+import com.sun.jersey.client.apache4.config.ApacheHttpClient4Config;
+
+/**
+ * A keep-alive connection pool on top of Apache HttpClient 4. Unlike the jdk, which keeps only a handful of idle
+ * connections per host and opens (and handshakes) a new one for every request above that, the pool keeps up to
+ * {@link InstaClientConfig#PROPERTY_MAX_CONNECTIONS} connections open and reuses them across threads and clients.
+ * <p/>
+ * A daemon thread closes the connections that stayed unused for {@link InstaClientConfig#PROPERTY_IDLE_TIMEOUT}
+ * milliseconds, before the server drops them on its side.
+ * <p/>
+ * The pool belongs to the transport, all the clients created by one transport share it:
+ * <blockquote><pre>
+ *     config.getProperties().put(InstaClientConfig.PROPERTY_TRANSPORT, new PooledTransport(config));
+ * </pre></blockquote>
+ */
+public class PooledTransport implements InstaTransport {
+
+	private static final Logger log = LoggerFactory.getLogger(PooledTransport.class);
+
+	private final ThreadSafeClientConnManager connectionManager;
+	private final HttpParams httpParams;
+	private final long idleTimeout;
+	private final IdleConnectionMonitor monitor;
+
+	public PooledTransport(final InstaClientConfig instaConfig) {
+		final InstaConfigSnapshot config = InstaConfigSnapshot.of(instaConfig);
+		final int maxConnections = config.getMaxConnections();
+		final int maxPerRoute = config.getMaxConnectionsPerRoute();
+		idleTimeout = config.getIdleTimeout();
+
+		connectionManager = new ThreadSafeClientConnManager();
+		connectionManager.setMaxTotal(maxConnections);
+		connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+		httpParams = new BasicHttpParams();
+		HttpConnectionParams.setConnectionTimeout(httpParams, config.getConnectTimeout());
+		HttpConnectionParams.setSoTimeout(httpParams, config.getReadTimeout());
+		HttpConnectionParams.setTcpNoDelay(httpParams, true);
+
+		monitor = new IdleConnectionMonitor();
+		monitor.start();
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Pooled transport maxConnections=%d, maxPerRoute=%d, idleTimeout=%dms",
+					maxConnections, maxPerRoute, idleTimeout));
+		}
+	}
+
+	public Client createClient(final ClientConfig config) {
+		config.getProperties().put(ApacheHttpClient4Config.PROPERTY_CONNECTION_MANAGER, connectionManager);
+		config.getProperties().put(ApacheHttpClient4Config.PROPERTY_HTTP_PARAMS, httpParams);
+		// the Instapaper api authenticates with oAuth, a shared pool must not carry cookies between users
+		config.getProperties().put(ApacheHttpClient4Config.PROPERTY_DISABLE_COOKIES, Boolean.TRUE);
+		return ApacheHttpClient4.create(config);
+	}
+
+	/**
+	 * @return The connection manager of the pool.
+	 */
+	public ClientConnectionManager getConnectionManager() {
+		return connectionManager;
+	}
+
+	/**
+	 * @return The number of open connections, leased or idle.
+	 */
+	public int getConnectionsInPool() {
+		return connectionManager.getConnectionsInPool();
+	}
+
+	public void shutdown() {
+		monitor.shutdown();
+		connectionManager.shutdown();
+	}
+
+	private class IdleConnectionMonitor extends Thread {
+
+		private volatile boolean running = true;
+
+		IdleConnectionMonitor() {
+			super("insta4j-idle-connection-monitor");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			final long period = Math.max(1000, Math.min(idleTimeout / 2, 5000));
+			try {
+				while (running) {
+					synchronized (this) {
+						wait(period);
+					}
+					connectionManager.closeExpiredConnections();
+					connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+				}
+			} catch (InterruptedException e) {
+				// shutting down
+			}
+		}
+
+		void shutdown() {
+			running = false;
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+}
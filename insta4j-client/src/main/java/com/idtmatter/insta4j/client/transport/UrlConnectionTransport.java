@@ -0,0 +1,46 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client.transport;
+
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaConfigSnapshot;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+
+/**
+ * The default transport, a Jersey client on top of the jdk {@link java.net.HttpURLConnection}. Connections are kept
+ * alive by the jdk, which keeps at most http.maxConnections (5 by default) idle connections per host.
+ */
+public class UrlConnectionTransport implements InstaTransport {
+
+	private final int connectTimeout;
+	private final int readTimeout;
+
+	public UrlConnectionTransport(final InstaClientConfig instaConfig) {
+		final InstaConfigSnapshot config = InstaConfigSnapshot.of(instaConfig);
+		this.connectTimeout = config.getConnectTimeout();
+		this.readTimeout = config.getReadTimeout();
+	}
+
+	public Client createClient(final ClientConfig config) {
+		config.getProperties().put(ClientConfig.PROPERTY_CONNECT_TIMEOUT, connectTimeout);
+		config.getProperties().put(ClientConfig.PROPERTY_READ_TIMEOUT, readTimeout);
+		return Client.create(config);
+	}
+
+	public void shutdown() {
+		// connections belong to the jdk keep-alive cache
+	}
+}
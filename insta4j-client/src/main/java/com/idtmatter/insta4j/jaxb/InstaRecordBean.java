@@ -89,6 +89,13 @@ public class InstaRecordBean implements Serializable {
 	@XmlElement
 	public Long position;
 
+	/**
+	 * Meta
+	 */
+	//[{"type":"meta","delete_ids":"12345,12346"}]
+	@XmlElement
+	public String delete_ids;
+
 	/**
 	 * Gives the object representation in form of json
 	 * e.g. [{"type":"folder","folder_id":1190085,"title":"news","sync_to_mobile":"1","position":1310749195}]
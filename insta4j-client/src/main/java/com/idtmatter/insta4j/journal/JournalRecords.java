@@ -0,0 +1,115 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.journal;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * The binary records of the journal file. A record is its payload length (int), its kind (byte), the payload and a
+ * CRC32 of kind and payload (int), the framing of the mirror files: a record torn by a crash is recognised and
+ * ignored along with anything after it.
+ */
+final class JournalRecords {
+
+	/**
+	 * sequence, operation code, bookmark_id, has folder_id, folder_id
+	 */
+	static final byte OPERATION = 1;
+	/**
+	 * sequence of an operation acknowledged, collapsed or given up
+	 */
+	static final byte DONE = 2;
+
+	private static final int OVERHEAD = 9;
+	private static final int MAX_PAYLOAD = 64 * 1024;
+
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+	private final DataOutputStream out = new DataOutputStream(bytes);
+	private final CRC32 crc = new CRC32();
+
+	byte[] operation(final long sequence, final Operation operation, final String bookmarkId, final String folderId)
+			throws IOException {
+		begin(OPERATION);
+		out.writeLong(sequence);
+		out.writeByte(operation.getCode());
+		out.writeUTF(bookmarkId);
+		out.writeBoolean(folderId != null);
+		out.writeUTF(folderId != null ? folderId : "");
+		return end();
+	}
+
+	byte[] done(final long sequence) throws IOException {
+		begin(DONE);
+		out.writeLong(sequence);
+		return end();
+	}
+
+	private void begin(final byte kind) throws IOException {
+		bytes.reset();
+		out.writeInt(0);
+		out.writeByte(kind);
+	}
+
+	private byte[] end() throws IOException {
+		out.writeInt(0);
+		out.flush();
+		final byte[] record = bytes.toByteArray();
+		final int length = record.length - OVERHEAD;
+		putInt(record, 0, length);
+		crc.reset();
+		crc.update(record, 4, length + 1);
+		putInt(record, record.length - 4, (int) crc.getValue());
+		return record;
+	}
+
+	private static void putInt(final byte[] bytes, final int offset, final int value) {
+		bytes[offset] = (byte) (value >>> 24);
+		bytes[offset + 1] = (byte) (value >>> 16);
+		bytes[offset + 2] = (byte) (value >>> 8);
+		bytes[offset + 3] = (byte) value;
+	}
+
+	/**
+	 * Checks the record at the position of the buffer.
+	 *
+	 * @return The payload of the record as a buffer positioned at the kind, the source buffer is moved past the
+	 *         record. Null if the buffer ends or the record is torn or corrupt, the source buffer is then left where
+	 *         it was.
+	 */
+	ByteBuffer next(final ByteBuffer source) {
+		final int start = source.position();
+		if (source.remaining() < OVERHEAD) {
+			return null;
+		}
+		final int length = source.getInt(start);
+		if (length < 0 || length > MAX_PAYLOAD || length > source.remaining() - OVERHEAD) {
+			return null;
+		}
+		final byte[] payload = new byte[length + 1];
+		source.position(start + 4);
+		source.get(payload);
+		crc.reset();
+		crc.update(payload, 0, payload.length);
+		if ((int) crc.getValue() != source.getInt()) {
+			source.position(start);
+			return null;
+		}
+		return ByteBuffer.wrap(payload);
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.journal;
+
+/**
+ * The bookmark changes an {@link OperationJournal} keeps until Instapaper acknowledges them.
+ */
+public enum Operation {
+	STAR(1, Slot.STARRED), UNSTAR(2, Slot.STARRED), ARCHIVE(3, Slot.FOLDER), UNARCHIVE(4, Slot.FOLDER),
+	MOVE(5, Slot.FOLDER), DELETE(6, Slot.DELETED);
+
+	/**
+	 * The state of a bookmark an operation sets, the last operation setting it wins.
+	 */
+	enum Slot {
+		STARRED, FOLDER, DELETED
+	}
+
+	private final byte code;
+	private final Slot slot;
+
+	Operation(final int code, final Slot slot) {
+		this.code = (byte) code;
+		this.slot = slot;
+	}
+
+	/**
+	 * @return true if this operation makes an earlier one on the same bookmark pointless, e.g. unstar after star or
+	 *         delete after anything.
+	 */
+	boolean supersedes(final Operation earlier) {
+		return slot == Slot.DELETED || slot == earlier.slot;
+	}
+
+	/**
+	 * @return The code of the operation in the journal file.
+	 */
+	byte getCode() {
+		return code;
+	}
+
+	static Operation fromCode(final byte code) {
+		for (final Operation operation : values()) {
+			if (operation.code == code) {
+				return operation;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,705 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idtmatter.insta4j.InstaCodes;
+import com.idtmatter.insta4j.client.InstaClient;
+import com.idtmatter.insta4j.client.InstaClientException;
+import com.idtmatter.insta4j.retry.RetryPolicy;
+import com.sun.jersey.api.client.ClientHandlerException;
+
+/**
+ * Keeps star, unstar, archive, unarchive, move and delete calls in a write-ahead journal and sends them to
+ * Instapaper in the background, so an application acts on a bookmark at once even while Instapaper is slow or out
+ * of reach.
+ * <p/>
+ * An operation is appended to the journal and forced to disk before the call returns. Callers appending together
+ * share one force, so a burst of operations costs a few fsyncs rather than one each. The operations are then sent
+ * with a bounded number of calls in flight, one at a time per bookmark and in the order they were appended. An
+ * operation failing with a connection error, http 5xx, 1246 or 1040 is sent again after a growing delay until it
+ * succeeds; any other error, e.g. 1241 for a bookmark deleted meanwhile, gives it up.
+ * <p/>
+ * Operations waiting to be sent collapse: a star followed by an unstar of the same bookmark sends the unstar alone,
+ * an archive followed by an unarchive or a move sends the last one, a delete drops whatever was waiting for the
+ * bookmark. The state Instapaper ends up with is the one the last operation sets, in fewer calls.
+ * <p/>
+ * Each operation sent, collapsed or given up is marked done in the journal. A journal opened again, e.g. after a
+ * crash, sends the operations not marked done, up to the first record a crash may have torn. A done mark is only
+ * forced along with the next operation, so an operation acknowledged just before a crash may be sent twice, which
+ * Instapaper shrugs off. A record that fails to be written is cut off the journal again, while a journal that fails
+ * to force an operation refuses further ones, which must then wait for a journal opened again on the directory. A
+ * directory must only be used by one journal at a time.
+ * <p/>
+ * <blockquote><pre>
+ *     OperationJournal journal = new OperationJournal(client, new File("journal"), 4);
+ *     journal.archive(bookmarkId);
+ *     ...
+ *     journal.close();
+ * </pre></blockquote>
+ */
+public class OperationJournal {
+
+	/**
+	 * The name of the journal file in the directory.
+	 */
+	public static final String FILE = "operations";
+
+	private static final Logger log = LoggerFactory.getLogger(OperationJournal.class);
+	private static final RetryPolicy TRANSIENT = new RetryPolicy();
+	private static final long COMPACT_BYTES = 1024 * 1024;
+	private static final long MAX_RETRY_DELAY = 5 * 60 * 1000L;
+	private static final AtomicInteger JOURNALS = new AtomicInteger();
+
+	private final InstaClient client;
+	private final File file;
+	private final int parallelism;
+	private volatile long retryDelay = 1000;
+
+	private final JournalRecords records = new JournalRecords();
+	private final Map<String, Bookmark> bookmarks = new HashMap<String, Bookmark>();
+	private final LinkedHashSet<Bookmark> ready = new LinkedHashSet<Bookmark>();
+	private FileOutputStream out;
+	private long nextSequence = 1;
+	private long written;
+	private long length;
+	private IOException failure;
+	private int pending;
+	private int inFlight;
+	private boolean closed;
+
+	private final Object forcing = new Object();
+	private volatile long forced;
+
+	private final ExecutorService workers;
+	private final ScheduledExecutorService timer;
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong collapsed = new AtomicLong();
+	private final AtomicLong retried = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+
+	/**
+	 * Opens the journal in the directory, creating it if needed, and starts sending the operations a previous
+	 * journal left undone.
+	 *
+	 * @param client      The client sending the operations, shared by the workers
+	 * @param directory   The directory of the journal file
+	 * @param parallelism The number of calls in flight
+	 * @throws IOException If the directory can not be created or the journal can not be read or written.
+	 */
+	public OperationJournal(final InstaClient client, final File directory, final int parallelism)
+			throws IOException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1 but was " + parallelism);
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can not create the journal directory " + directory);
+		}
+		this.client = client;
+		this.file = new File(directory, FILE);
+		this.parallelism = parallelism;
+		final Map<Long, Entry> undone = load();
+		final String name = "insta4j-journal-" + JOURNALS.incrementAndGet();
+		workers = Executors.newFixedThreadPool(parallelism, daemon(name + "-worker-"));
+		timer = Executors.newSingleThreadScheduledExecutor(daemon(name + "-retry-"));
+		synchronized (this) {
+			out = new FileOutputStream(file, true);
+			length = out.getChannel().size();
+			for (final Entry entry : undone.values()) {
+				enqueue(entry);
+			}
+			forced = written;
+			dispatch();
+		}
+		if (!undone.isEmpty() && log.isDebugEnabled()) {
+			log.debug(String.format("Replaying %d operations of %s", pending, file));
+		}
+	}
+
+	/**
+	 * @param millis The delay before an operation failed with a transient error is sent again, doubled on each
+	 *               failure up to 5 minutes, 1 second by default
+	 */
+	public OperationJournal retryDelay(final long millis) {
+		if (millis < 1) {
+			throw new IllegalArgumentException("retryDelay must be at least 1ms but was " + millis);
+		}
+		this.retryDelay = millis;
+		return this;
+	}
+
+	/**
+	 * @return The sequence number of the operation in the journal.
+	 * @throws IOException If the operation can not be written to the journal.
+	 */
+	public long star(final String bookmarkId) throws IOException {
+		return append(Operation.STAR, bookmarkId, null);
+	}
+
+	/**
+	 * @see #star(String)
+	 */
+	public long unstar(final String bookmarkId) throws IOException {
+		return append(Operation.UNSTAR, bookmarkId, null);
+	}
+
+	/**
+	 * @see #star(String)
+	 */
+	public long archive(final String bookmarkId) throws IOException {
+		return append(Operation.ARCHIVE, bookmarkId, null);
+	}
+
+	/**
+	 * @see #star(String)
+	 */
+	public long unarchive(final String bookmarkId) throws IOException {
+		return append(Operation.UNARCHIVE, bookmarkId, null);
+	}
+
+	/**
+	 * @see #star(String)
+	 */
+	public long move(final String bookmarkId, final String folderId) throws IOException {
+		if (folderId == null) {
+			throw new IllegalArgumentException("folderId is required");
+		}
+		return append(Operation.MOVE, bookmarkId, folderId);
+	}
+
+	/**
+	 * @see #star(String)
+	 */
+	public long delete(final String bookmarkId) throws IOException {
+		return append(Operation.DELETE, bookmarkId, null);
+	}
+
+	private long append(final Operation operation, final String bookmarkId, final String folderId)
+			throws IOException {
+		if (bookmarkId == null) {
+			throw new IllegalArgumentException("bookmarkId is required");
+		}
+		final Entry entry;
+		synchronized (this) {
+			if (closed) {
+				throw new IllegalStateException("The journal " + file + " is closed");
+			}
+			checkFailure();
+			entry = new Entry(nextSequence, operation, bookmarkId, folderId);
+			write(records.operation(entry.sequence, operation, bookmarkId, folderId));
+			nextSequence++;
+			entry.position = written;
+			// queued in journal order, sent once forced
+			enqueue(entry);
+		}
+		try {
+			force(entry.position);
+		} catch (IOException e) {
+			synchronized (this) {
+				dequeue(entry);
+			}
+			throw e;
+		}
+		synchronized (this) {
+			dispatch();
+		}
+		return entry.sequence;
+	}
+
+	/**
+	 * Drops an entry that may not have reached the disk, it is never sent.
+	 */
+	private void dequeue(final Entry entry) {
+		final Bookmark bookmark = bookmarks.get(entry.bookmarkId);
+		if (bookmark == null || !bookmark.entries.remove(entry)) {
+			return;
+		}
+		pending--;
+		if (bookmark.entries.isEmpty()) {
+			bookmarks.remove(bookmark.bookmarkId);
+		}
+		ready(bookmark);
+		notifyAll();
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			final IOException e = new IOException("The journal " + file + " failed due to error " + failure.getMessage());
+			e.initCause(failure);
+			throw e;
+		}
+	}
+
+	/**
+	 * Forces the journal up to the record at the position, unless a force started after it was written did.
+	 */
+	private void force(final long position) throws IOException {
+		synchronized (forcing) {
+			if (forced >= position) {
+				return;
+			}
+			final long target;
+			final FileChannel channel;
+			synchronized (this) {
+				checkFailure();
+				if (out == null) {
+					throw new IOException("The journal " + file + " is closed");
+				}
+				target = written;
+				channel = out.getChannel();
+			}
+			try {
+				channel.force(false);
+			} catch (IOException e) {
+				// the records after the last force may or may not be on disk, none of them is sent
+				synchronized (this) {
+					failure = e;
+				}
+				throw e;
+			}
+			forced = target;
+		}
+	}
+
+	/**
+	 * Appends the record, cutting off what was written of it on an error: {@link #load()} stops at a torn record and
+	 * would not read the records behind it.
+	 */
+	private void write(final byte[] record) throws IOException {
+		try {
+			out.write(record);
+		} catch (IOException e) {
+			try {
+				out.getChannel().truncate(length);
+			} catch (IOException truncation) {
+				log.warn(String.format("Failed to cut a torn record off %s due to error %s", file,
+						truncation.getMessage()));
+				failure = e;
+			}
+			throw e;
+		}
+		length += record.length;
+		written++;
+	}
+
+	/**
+	 * Queues the entry behind the operations waiting for the bookmark, dropping those it supersedes.
+	 */
+	private void enqueue(final Entry entry) {
+		Bookmark bookmark = bookmarks.get(entry.bookmarkId);
+		if (bookmark == null) {
+			bookmark = new Bookmark(entry.bookmarkId);
+			bookmarks.put(entry.bookmarkId, bookmark);
+		}
+		for (final Iterator<Entry> it = bookmark.entries.iterator(); it.hasNext();) {
+			final Entry waiting = it.next();
+			if (!waiting.inFlight && entry.operation.supersedes(waiting.operation)) {
+				it.remove();
+				pending--;
+				collapsed.incrementAndGet();
+				done(waiting);
+				if (bookmark.retrying == waiting) {
+					bookmark.retrying = null;
+				}
+			}
+		}
+		bookmark.entries.add(entry);
+		pending++;
+		ready(bookmark);
+	}
+
+	private void ready(final Bookmark bookmark) {
+		if (!bookmark.entries.isEmpty() && !bookmark.entries.getFirst().inFlight && bookmark.retrying == null) {
+			ready.add(bookmark);
+		} else {
+			ready.remove(bookmark);
+		}
+	}
+
+	/**
+	 * Hands the next forced operation of the ready bookmarks to the workers while calls are available.
+	 */
+	private void dispatch() {
+		for (final Iterator<Bookmark> it = ready.iterator(); it.hasNext() && inFlight < parallelism && !closed;) {
+			final Bookmark bookmark = it.next();
+			final Entry entry = bookmark.entries.getFirst();
+			if (entry.position > forced) {
+				continue;
+			}
+			it.remove();
+			entry.inFlight = true;
+			inFlight++;
+			workers.execute(new Runnable() {
+				public void run() {
+					send(bookmark, entry);
+				}
+			});
+		}
+	}
+
+	private void send(final Bookmark bookmark, final Entry entry) {
+		RuntimeException failure = null;
+		try {
+			call(entry);
+			sent.incrementAndGet();
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+		synchronized (this) {
+			inFlight--;
+			entry.inFlight = false;
+			if (failure != null && isTransient(failure)) {
+				retried.incrementAndGet();
+				entry.attempts++;
+				retryLater(bookmark, entry);
+			} else {
+				if (failure != null) {
+					failed.incrementAndGet();
+					log.warn(String.format("Gave up %s of bookmark %s due to error %s", entry.operation,
+							entry.bookmarkId, failure.getMessage()));
+				}
+				bookmark.entries.remove(entry);
+				pending--;
+				done(entry);
+				if (bookmark.entries.isEmpty()) {
+					bookmarks.remove(bookmark.bookmarkId);
+				}
+				compactIfIdle();
+			}
+			ready(bookmark);
+			dispatch();
+			notifyAll();
+		}
+	}
+
+	private void call(final Entry entry) {
+		switch (entry.operation) {
+			case STAR:
+				client.starBookmark(entry.bookmarkId);
+				break;
+			case UNSTAR:
+				client.unstarBookmark(entry.bookmarkId);
+				break;
+			case ARCHIVE:
+				client.archiveBookmark(entry.bookmarkId);
+				break;
+			case UNARCHIVE:
+				client.unarchiveBookmark(entry.bookmarkId);
+				break;
+			case MOVE:
+				client.moveBookmark(entry.bookmarkId, entry.folderId);
+				break;
+			case DELETE:
+				client.deleteBookmark(entry.bookmarkId);
+				break;
+			default:
+				throw new IllegalStateException("Unknown operation " + entry.operation);
+		}
+	}
+
+	/**
+	 * @return true if Instapaper may accept the operation later: the connection failed, http 5xx, 1246 or the rate
+	 *         limit is still exceeded after the retries of the client.
+	 */
+	static boolean isTransient(final RuntimeException e) {
+		if (e instanceof ClientHandlerException) {
+			return true;
+		}
+		if (e instanceof InstaClientException) {
+			final InstaCodes.Code code = ((InstaClientException) e).getCode();
+			return code == InstaCodes.Code._1040 || TRANSIENT.isRetryable(code);
+		}
+		return false;
+	}
+
+	private void retryLater(final Bookmark bookmark, final Entry entry) {
+		if (closed) {
+			return;
+		}
+		bookmark.retrying = entry;
+		final long delay = Math.min(retryDelay << Math.min(entry.attempts - 1, 20), MAX_RETRY_DELAY);
+		timer.schedule(new Runnable() {
+			public void run() {
+				synchronized (OperationJournal.this) {
+					if (bookmark.retrying == entry) {
+						bookmark.retrying = null;
+						ready(bookmark);
+						dispatch();
+					}
+				}
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Marks the entry done, forced along with the next operation.
+	 */
+	private void done(final Entry entry) {
+		if (out == null) {
+			return;
+		}
+		try {
+			write(records.done(entry.sequence));
+		} catch (IOException e) {
+			log.warn(String.format("Failed to mark %s of bookmark %s done in %s due to error %s, it will be sent again",
+					entry.operation, entry.bookmarkId, file, e.getMessage()));
+		}
+	}
+
+	/**
+	 * Empties the journal once nothing is left to send.
+	 */
+	private void compactIfIdle() {
+		if (pending > 0 || inFlight > 0 || out == null) {
+			return;
+		}
+		try {
+			final FileChannel channel = out.getChannel();
+			if (channel.size() > COMPACT_BYTES) {
+				channel.truncate(0);
+				length = 0;
+				channel.force(false);
+			}
+		} catch (IOException e) {
+			log.warn(String.format("Failed to compact %s due to error %s", file, e.getMessage()));
+		}
+	}
+
+	/**
+	 * Reads the operations not marked done and rewrites the journal with them alone.
+	 *
+	 * @return The undone operations by sequence.
+	 */
+	private Map<Long, Entry> load() throws IOException {
+		final Map<Long, Entry> undone = new TreeMap<Long, Entry>();
+		if (!file.exists()) {
+			return undone;
+		}
+		final ByteBuffer journal = read(file);
+		ByteBuffer record;
+		while ((record = records.next(journal)) != null) {
+			final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array()));
+			final byte kind = in.readByte();
+			final long sequence = in.readLong();
+			nextSequence = Math.max(nextSequence, sequence + 1);
+			if (kind == JournalRecords.OPERATION) {
+				final Operation operation = Operation.fromCode(in.readByte());
+				final String bookmarkId = in.readUTF();
+				final String folderId = in.readBoolean() ? in.readUTF() : null;
+				if (operation == null) {
+					throw new IOException("Unknown operation in " + file);
+				}
+				undone.put(sequence, new Entry(sequence, operation, bookmarkId, folderId));
+			} else if (kind == JournalRecords.DONE) {
+				undone.remove(sequence);
+			} else {
+				throw new IOException("Unknown journal record kind " + kind);
+			}
+		}
+		if (journal.hasRemaining()) {
+			log.warn(String.format("Ignoring %d bytes after the last valid record of %s", journal.remaining(), file));
+		}
+		rewrite(undone);
+		return undone;
+	}
+
+	/**
+	 * Replaces the journal through a temporary file, a crash leaves either the old or the new journal.
+	 */
+	private void rewrite(final Map<Long, Entry> undone) throws IOException {
+		final File temporary = new File(file.getPath() + ".tmp");
+		final FileOutputStream rewritten = new FileOutputStream(temporary);
+		try {
+			for (final Entry entry : undone.values()) {
+				rewritten.write(records.operation(entry.sequence, entry.operation, entry.bookmarkId, entry.folderId));
+			}
+			rewritten.getChannel().force(false);
+		} finally {
+			rewritten.close();
+		}
+		if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+			throw new IOException(String.format("Failed to replace %s", file));
+		}
+	}
+
+	private static ByteBuffer read(final File file) throws IOException {
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			final FileChannel channel = in.getChannel();
+			final ByteBuffer bytes = ByteBuffer.allocate((int) channel.size());
+			while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+				// reads the whole journal, compacted when idle
+			}
+			bytes.flip();
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Waits until every operation appended so far was sent or given up.
+	 *
+	 * @return false if operations are still waiting when the timeout expires.
+	 */
+	public synchronized boolean awaitEmpty(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		while (pending > 0) {
+			final long left = deadline - System.currentTimeMillis();
+			if (left <= 0) {
+				return false;
+			}
+			wait(left);
+		}
+		return true;
+	}
+
+	/**
+	 * Stops sending, waits for the calls in flight and closes the journal. The operations still waiting are sent by
+	 * the next journal opened on the directory.
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+		}
+		timer.shutdownNow();
+		workers.shutdown();
+		try {
+			workers.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (forcing) {
+			synchronized (this) {
+				try {
+					out.getChannel().force(false);
+				} finally {
+					out.close();
+					out = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The number of operations waiting to be sent or in flight.
+	 */
+	public synchronized int getPending() {
+		return pending;
+	}
+
+	/**
+	 * @return The number of operations Instapaper acknowledged.
+	 */
+	public long getSent() {
+		return sent.get();
+	}
+
+	/**
+	 * @return The number of operations dropped before sending because a later one superseded them.
+	 */
+	public long getCollapsed() {
+		return collapsed.get();
+	}
+
+	/**
+	 * @return The number of transient failures, each followed by another attempt.
+	 */
+	public long getRetried() {
+		return retried.get();
+	}
+
+	/**
+	 * @return The number of operations given up after an error that is not transient.
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	private static ThreadFactory daemon(final String prefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * The operations waiting for one bookmark, sent one at a time.
+	 */
+	private static final class Bookmark {
+		final String bookmarkId;
+		final LinkedList<Entry> entries = new LinkedList<Entry>();
+		/**
+		 * The first entry while it waits for its next attempt.
+		 */
+		Entry retrying;
+
+		Bookmark(final String bookmarkId) {
+			this.bookmarkId = bookmarkId;
+		}
+	}
+
+	private static final class Entry {
+		final long sequence;
+		final Operation operation;
+		final String bookmarkId;
+		final String folderId;
+		/**
+		 * The number of records written up to this one, it may be sent once the journal is forced that far.
+		 */
+		long position;
+		int attempts;
+		boolean inFlight;
+
+		Entry(final long sequence, final Operation operation, final String bookmarkId, final String folderId) {
+			this.sequence = sequence;
+			this.operation = operation;
+			this.bookmarkId = bookmarkId;
+			this.folderId = folderId;
+		}
+	}
+}
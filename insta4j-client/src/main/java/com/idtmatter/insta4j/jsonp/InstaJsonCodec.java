@@ -0,0 +1,33 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The default codec, a decoder written for the Instapaper record schema: it reads the UTF-8 bytes of the response
+ * and stores each value straight into its {@link com.idtmatter.insta4j.jaxb.InstaRecordBean} field, without a
+ * generic json tree, reflection or intermediate strings for numbers, booleans and field names.
+ * <p/>
+ * Values are converted the way the jaxb binding does: "0"/"1" become booleans, numbers given as strings become
+ * numbers, and fields unknown to the record are skipped.
+ */
+public class InstaJsonCodec implements RecordCodec {
+
+	public RecordReader newReader(final InputStream in) {
+		return new InstaJsonReader(in);
+	}
+}
@@ -0,0 +1,617 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.idtmatter.insta4j.client.RecordType;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+
+/**
+ * The reader of {@link InstaJsonCodec}. Bytes are decoded into a char buffer reused for every value, strings are
+ * only created for the string fields of the record. Values go to a {@link RecordSlot} which is then turned into an
+ * {@link InstaRecordBean} or, for the typed reads, into a {@link com.idtmatter.insta4j.model.Bookmark},
+ * {@link com.idtmatter.insta4j.model.Folder} or {@link com.idtmatter.insta4j.model.User} without boxing.
+ */
+final class InstaJsonReader implements RecordReader {
+
+	private static final int UNKNOWN = -1;
+	private static final int TYPE = 0;
+	private static final int USER_ID = 1;
+	private static final int USERNAME = 2;
+	private static final int SUBSCRIPTION_IS_ACTIVE = 3;
+	private static final int BOOKMARK_ID = 4;
+	private static final int URL = 5;
+	private static final int TITLE = 6;
+	private static final int DESCRIPTION = 7;
+	private static final int TIME = 8;
+	private static final int STARRED = 9;
+	private static final int PRIVATE_SOURCE = 10;
+	private static final int HASH = 11;
+	private static final int PROGRESS = 12;
+	private static final int PROGRESS_TIMESTAMP = 13;
+	private static final int ERROR_CODE = 14;
+	private static final int MESSAGE = 15;
+	private static final int FOLDER_ID = 16;
+	private static final int SYNC_TO_MOBILE = 17;
+	private static final int POSITION = 18;
+	private static final int DELETE_IDS = 19;
+
+	/**
+	 * Field names indexed by the constants above.
+	 */
+	private static final String[] NAMES = {"type", "user_id", "username", "subscription_is_active", "bookmark_id",
+			"url", "title", "description", "time", "starred", "private_source", "hash", "progress",
+			"progress_timestamp", "error_code", "message", "folder_id", "sync_to_mobile", "position",
+			"delete_ids"};
+
+	/**
+	 * Field indexes by name length, so a name is compared with one or two candidates only.
+	 */
+	private static final int[][] NAMES_BY_LENGTH;
+
+	static {
+		int longest = 0;
+		for (final String name : NAMES) {
+			longest = Math.max(longest, name.length());
+		}
+		NAMES_BY_LENGTH = new int[longest + 1][0];
+		for (int i = 0; i < NAMES.length; i++) {
+			final int[] candidates = NAMES_BY_LENGTH[NAMES[i].length()];
+			final int[] grown = new int[candidates.length + 1];
+			System.arraycopy(candidates, 0, grown, 0, candidates.length);
+			grown[candidates.length] = i;
+			NAMES_BY_LENGTH[NAMES[i].length()] = grown;
+		}
+	}
+
+	/**
+	 * The buffers of the last reader closed by the thread, picked up by its next reader.
+	 */
+	private static final ThreadLocal<Buffers> RECYCLED = new ThreadLocal<Buffers>();
+
+	/**
+	 * The record types, shared instead of allocating the same few strings for every record.
+	 */
+	private static final String[] TYPES = new String[RecordType.values().length];
+
+	static {
+		for (final RecordType type : RecordType.values()) {
+			TYPES[type.ordinal()] = type.type();
+		}
+	}
+
+	private final InputStream in;
+	private Buffers buffers;
+	private final byte[] buffer;
+	private int position;
+	private int limit;
+	private char[] chars;
+	private int length;
+	private boolean started;
+	private boolean array;
+	private boolean first = true;
+	private boolean finished;
+	private boolean typed;
+	private final RecordSlot slot = new RecordSlot();
+
+	InstaJsonReader(final InputStream in) {
+		this.in = in;
+		buffers = RECYCLED.get();
+		if (buffers != null) {
+			// a thread may read two responses at once, each reader owns its buffers until closed
+			RECYCLED.set(null);
+		} else {
+			buffers = new Buffers();
+		}
+		buffer = buffers.bytes;
+		chars = buffers.chars;
+	}
+
+	public InstaRecordBean read() throws IOException {
+		typed = false;
+		return nextRecord() ? slot.toBean() : null;
+	}
+
+	/**
+	 * Reads the next record, bookmarks, folders and users are decoded straight into their typed record.
+	 *
+	 * @param handler Receives the record
+	 * @return False once all the records have been read.
+	 */
+	boolean read(final TypedRecordHandler handler) throws IOException {
+		typed = true;
+		if (!nextRecord()) {
+			return false;
+		}
+		final String type = slot.type;
+		if (RecordType.BOOKMARK.type().equals(type)) {
+			handler.onBookmark(slot.toBookmark());
+		} else if (RecordType.FOLDER.type().equals(type)) {
+			handler.onFolder(slot.toFolder());
+		} else if (RecordType.USER.type().equals(type)) {
+			handler.onUser(slot.toUser());
+		} else {
+			handler.onRecord(slot.toBean());
+		}
+		return true;
+	}
+
+	public void close() throws IOException {
+		finished = true;
+		if (buffers != null) {
+			buffers.chars = chars;
+			RECYCLED.set(buffers);
+			buffers = null;
+		}
+		in.close();
+	}
+
+	/**
+	 * Decodes the next record into the slot.
+	 *
+	 * @return False once all the records have been read.
+	 */
+	private boolean nextRecord() throws IOException {
+		if (finished) {
+			return false;
+		}
+		int c = nextToken();
+		if (!started) {
+			started = true;
+			if (c == '[') {
+				array = true;
+				c = nextToken();
+			}
+		} else if (array && !first) {
+			if (c == ',') {
+				c = nextToken();
+			} else if (c != ']') {
+				throw error("Expected , or ] after a record", c);
+			}
+		}
+		if (c == -1 || (array && c == ']')) {
+			finished = true;
+			return false;
+		}
+		if (c != '{') {
+			throw error("Expected a record", c);
+		}
+		first = false;
+		slot.clear();
+		readRecord();
+		if (!array) {
+			finished = true;
+		}
+		return true;
+	}
+
+	private void readRecord() throws IOException {
+		int c = nextToken();
+		if (c == '}') {
+			return;
+		}
+		while (true) {
+			if (c != '"') {
+				throw error("Expected a field name", c);
+			}
+			readString();
+			final int field = field();
+			c = nextToken();
+			if (c != ':') {
+				throw error("Expected :", c);
+			}
+			readValue(field, nextToken());
+			c = nextToken();
+			if (c == '}') {
+				return;
+			} else if (c != ',') {
+				throw error("Expected , or } in a record", c);
+			}
+			c = nextToken();
+		}
+	}
+
+	/**
+	 * @return The field index of the name in the char buffer.
+	 */
+	private int field() {
+		if (length < NAMES_BY_LENGTH.length) {
+			for (final int candidate : NAMES_BY_LENGTH[length]) {
+				if (matches(NAMES[candidate])) {
+					return candidate;
+				}
+			}
+		}
+		return UNKNOWN;
+	}
+
+	private void readValue(final int field, final int c) throws IOException {
+		if (c == '"') {
+			readString();
+		} else if (c == '-' || (c >= '0' && c <= '9')) {
+			readNumber(c);
+		} else if (c == 't') {
+			literal("rue");
+			text("true");
+		} else if (c == 'f') {
+			literal("alse");
+			text("false");
+		} else if (c == 'n') {
+			literal("ull");
+			return;
+		} else if (c == '{' || c == '[') {
+			skipStructure();
+			return;
+		} else {
+			throw error("Expected a value", c);
+		}
+		switch (field) {
+			case TYPE:
+				slot.type = type();
+				break;
+			case USER_ID:
+				if (typed) {
+					slot.userIdValue = longValue();
+				} else {
+					slot.userId = string();
+				}
+				break;
+			case USERNAME:
+				slot.username = string();
+				break;
+			case SUBSCRIPTION_IS_ACTIVE:
+				slot.subscriptionIsActive = bool();
+				break;
+			case BOOKMARK_ID:
+				if (typed) {
+					slot.bookmarkIdValue = longValue();
+				} else {
+					slot.bookmarkId = string();
+				}
+				break;
+			case URL:
+				slot.url = string();
+				break;
+			case TITLE:
+				slot.title = string();
+				break;
+			case DESCRIPTION:
+				slot.description = string();
+				break;
+			case TIME:
+				if (length > 0) {
+					slot.time = longValue();
+					slot.hasTime = true;
+				}
+				break;
+			case STARRED:
+				slot.starred = bool();
+				break;
+			case PRIVATE_SOURCE:
+				slot.privateSource = length == 0 ? "" : string();
+				break;
+			case HASH:
+				slot.hash = string();
+				break;
+			case PROGRESS:
+				if (length > 0) {
+					slot.progress = doubleValue();
+					slot.hasProgress = true;
+				}
+				break;
+			case PROGRESS_TIMESTAMP:
+				if (length > 0) {
+					slot.progressTimestamp = longValue();
+					slot.hasProgressTimestamp = true;
+				}
+				break;
+			case ERROR_CODE:
+				slot.errorCode = string();
+				break;
+			case MESSAGE:
+				slot.message = string();
+				break;
+			case FOLDER_ID:
+				if (typed) {
+					slot.folderIdValue = longValue();
+				} else {
+					slot.folderId = string();
+				}
+				break;
+			case SYNC_TO_MOBILE:
+				slot.syncToMobile = bool();
+				break;
+			case POSITION:
+				if (length > 0) {
+					slot.position = longValue();
+					slot.hasPosition = true;
+				}
+				break;
+			case DELETE_IDS:
+				slot.deleteIds = string();
+				break;
+			default:
+				// a field the record does not bind
+		}
+	}
+
+	private String string() {
+		return new String(chars, 0, length);
+	}
+
+	private String type() {
+		for (final String type : TYPES) {
+			if (matches(type)) {
+				return type;
+			}
+		}
+		return string();
+	}
+
+	private boolean matches(final String name) {
+		if (name.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (name.charAt(i) != chars[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Boolean bool() {
+		if (length == 0) {
+			return null;
+		}
+		return (length == 1 && chars[0] == '1') || (length == 4 && chars[0] == 't');
+	}
+
+	private long longValue() throws IOException {
+		if (length == 0) {
+			return 0L;
+		}
+		final boolean negative = chars[0] == '-';
+		long value = 0;
+		for (int i = negative ? 1 : 0; i < length; i++) {
+			final char c = chars[i];
+			if (c < '0' || c > '9') {
+				// a decimal or exponent, let the jdk parse it
+				try {
+					return (long) Double.parseDouble(string());
+				} catch (NumberFormatException e) {
+					throw new IOException(String.format("%s is not a number", string()));
+				}
+			}
+			value = value * 10 + (c - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	private double doubleValue() throws IOException {
+		if (length == 1 && chars[0] >= '0' && chars[0] <= '9') {
+			// progress is mostly 0 or 1
+			return chars[0] - '0';
+		}
+		try {
+			return Double.parseDouble(string());
+		} catch (NumberFormatException e) {
+			throw new IOException(String.format("%s is not a number", string()));
+		}
+	}
+
+	private void text(final String text) {
+		length = 0;
+		for (int i = 0; i < text.length(); i++) {
+			append(text.charAt(i));
+		}
+	}
+
+	private void readNumber(int c) throws IOException {
+		length = 0;
+		while (c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E' || (c >= '0' && c <= '9')) {
+			append((char) c);
+			c = next();
+		}
+		if (c >= 0) {
+			// the byte after the number belongs to the next token
+			position--;
+		}
+	}
+
+	/**
+	 * Decodes a string value, the opening quote already read, into the char buffer.
+	 */
+	private void readString() throws IOException {
+		length = 0;
+		while (true) {
+			copyAscii();
+			final int b = next();
+			if (b == '"') {
+				return;
+			} else if (b == '\\') {
+				escape();
+			} else if (b < 0x80) {
+				if (b < 0) {
+					throw error("Unterminated string", b);
+				}
+				append((char) b);
+			} else if ((b & 0xE0) == 0xC0) {
+				append((char) (((b & 0x1F) << 6) | continuation()));
+			} else if ((b & 0xF0) == 0xE0) {
+				append((char) (((b & 0x0F) << 12) | (continuation() << 6) | continuation()));
+			} else if ((b & 0xF8) == 0xF0) {
+				final int codePoint = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6)
+						| continuation();
+				// a supplementary character, as a surrogate pair
+				append((char) (((codePoint - 0x10000) >> 10) + 0xD800));
+				append((char) (((codePoint - 0x10000) & 0x3FF) + 0xDC00));
+			} else {
+				throw error("Invalid UTF-8 byte", b);
+			}
+		}
+	}
+
+	/**
+	 * Copies the run of plain ascii characters at the current position of the byte buffer, the bulk of most
+	 * strings, without going through {@link #next()} for each byte.
+	 */
+	private void copyAscii() {
+		final byte[] bytes = buffer;
+		int p = position;
+		int n = length;
+		char[] cs = chars;
+		while (p < limit) {
+			final byte b = bytes[p];
+			// non ascii bytes are negative
+			if (b < 0x20 || b == '"' || b == '\\') {
+				break;
+			}
+			if (n == cs.length) {
+				length = n;
+				grow();
+				cs = chars;
+			}
+			cs[n++] = (char) b;
+			p++;
+		}
+		position = p;
+		length = n;
+	}
+
+	private int continuation() throws IOException {
+		final int b = next();
+		if ((b & 0xC0) != 0x80) {
+			throw error("Invalid UTF-8 continuation byte", b);
+		}
+		return b & 0x3F;
+	}
+
+	private void escape() throws IOException {
+		final int c = next();
+		switch (c) {
+			case '"':
+			case '\\':
+			case '/':
+				append((char) c);
+				break;
+			case 'b':
+				append('\b');
+				break;
+			case 'f':
+				append('\f');
+				break;
+			case 'n':
+				append('\n');
+				break;
+			case 'r':
+				append('\r');
+				break;
+			case 't':
+				append('\t');
+				break;
+			case 'u':
+				int value = 0;
+				for (int i = 0; i < 4; i++) {
+					final int h = next();
+					final int digit = Character.digit(h, 16);
+					if (digit < 0) {
+						throw error("Invalid unicode escape", h);
+					}
+					value = (value << 4) | digit;
+				}
+				append((char) value);
+				break;
+			default:
+				throw error("Invalid escape", c);
+		}
+	}
+
+	private void literal(final String rest) throws IOException {
+		for (int i = 0; i < rest.length(); i++) {
+			final int c = next();
+			if (c != rest.charAt(i)) {
+				throw error("Invalid literal", c);
+			}
+		}
+	}
+
+	/**
+	 * Skips an object or array value, the opening bracket already read.
+	 */
+	private void skipStructure() throws IOException {
+		int depth = 1;
+		while (depth > 0) {
+			final int c = next();
+			if (c == '"') {
+				readString();
+			} else if (c == '{' || c == '[') {
+				depth++;
+			} else if (c == '}' || c == ']') {
+				depth--;
+			} else if (c < 0) {
+				throw error("Unterminated value", c);
+			}
+		}
+	}
+
+	private void append(final char c) {
+		if (length == chars.length) {
+			grow();
+		}
+		chars[length++] = c;
+	}
+
+	private void grow() {
+		final char[] larger = new char[chars.length * 2];
+		System.arraycopy(chars, 0, larger, 0, length);
+		chars = larger;
+	}
+
+	/**
+	 * @return The next byte which is not white space, or -1 at the end of the stream.
+	 */
+	private int nextToken() throws IOException {
+		int c;
+		do {
+			c = next();
+		} while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+		return c;
+	}
+
+	private int next() throws IOException {
+		if (position == limit) {
+			limit = in.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0) {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[position++] & 0xFF;
+	}
+
+	private static final class Buffers {
+		final byte[] bytes = new byte[8192];
+		char[] chars = new char[256];
+	}
+
+	private IOException error(final String message, final int c) {
+		return new IOException(String.format("%s but got %s", message, c < 0 ? "the end of the response"
+				: "'" + (char) c + "'"));
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.Providers;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.sun.jersey.api.client.GenericType;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+
+/**
+ * Decodes records through the Jersey json provider and the {@link JAXBContextResolver}, the way the client always
+ * did. The whole response is bound before the first record is returned.
+ */
+public class JaxbRecordCodec implements RecordCodec {
+
+	private static final Type RECORD_LIST_TYPE = new GenericType<List<InstaRecordBean>>() {
+	}.getType();
+
+	private static final Annotation[] NO_ANNOTATIONS = new Annotation[0];
+
+	private final MessageBodyReader<List> listReader;
+
+	/**
+	 * @param providers The providers of a Jersey client registering the {@link JAXBContextResolver}
+	 */
+	public JaxbRecordCodec(final Providers providers) {
+		listReader = providers.getMessageBodyReader(List.class, RECORD_LIST_TYPE, NO_ANNOTATIONS,
+				MediaType.APPLICATION_JSON_TYPE);
+		if (listReader == null) {
+			throw new IllegalStateException("No json provider found for " + RECORD_LIST_TYPE);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public RecordReader newReader(final InputStream in) throws IOException {
+		final List<InstaRecordBean> records;
+		try {
+			records = listReader.readFrom(List.class, RECORD_LIST_TYPE, NO_ANNOTATIONS,
+					MediaType.APPLICATION_JSON_TYPE, new MultivaluedMapImpl(), in);
+		} catch (WebApplicationException e) {
+			in.close();
+			throw new IOException(String.format("The response could not be bound due to error %s", e.getMessage()));
+		}
+		final Iterator<InstaRecordBean> iterator = records.iterator();
+		return new RecordReader() {
+			public InstaRecordBean read() {
+				return iterator.hasNext() ? iterator.next() : null;
+			}
+
+			public void close() throws IOException {
+				in.close();
+			}
+		};
+	}
+}
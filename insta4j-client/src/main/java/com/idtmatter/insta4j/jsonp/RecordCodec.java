@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes the json records of an Instapaper Full api response into {@link com.idtmatter.insta4j.jaxb.InstaRecordBean}s.
+ * <p/>
+ * The codec of a client is chosen with {@link com.idtmatter.insta4j.client.config.InstaClientConfig#PROPERTY_CODEC},
+ * see {@link RecordCodecs#create(Object, javax.ws.rs.ext.Providers)}. Implementations must be thread safe, readers
+ * are used by a single thread.
+ *
+ * @see InstaJsonCodec
+ * @see JacksonRecordCodec
+ * @see JaxbRecordCodec
+ */
+public interface RecordCodec {
+
+	/**
+	 * @param in A UTF-8 encoded json record or array of records, closed with the reader
+	 * @return A reader decoding the records of the stream.
+	 * @throws IOException If the stream can not be read
+	 */
+	RecordReader newReader(InputStream in) throws IOException;
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.ws.rs.ext.Providers;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+
+/**
+ * Creates the {@link RecordCodec} configured by
+ * {@link com.idtmatter.insta4j.client.config.InstaClientConfig#PROPERTY_CODEC}.
+ */
+public final class RecordCodecs {
+
+	/**
+	 * Codec name of {@link InstaJsonCodec}, the default
+	 */
+	public static final String INSTA4J = "insta4j";
+
+	/**
+	 * Codec name of {@link JacksonRecordCodec}
+	 */
+	public static final String JACKSON = "jackson";
+
+	/**
+	 * Codec name of {@link JaxbRecordCodec}
+	 */
+	public static final String JAXB = "jaxb";
+
+	private RecordCodecs() {
+	}
+
+	/**
+	 * @param codec     A {@link RecordCodec} instance, a codec name, the class name of a {@link RecordCodec} with a
+	 *                  public no argument constructor, or null for the default codec
+	 * @param providers The providers of the Jersey client, used by the {@link JaxbRecordCodec}
+	 * @return The codec.
+	 * @throws IllegalArgumentException If the codec is unknown
+	 */
+	public static RecordCodec create(final Object codec, final Providers providers) {
+		if (codec instanceof RecordCodec) {
+			return (RecordCodec) codec;
+		}
+		final String name = codec != null ? codec.toString().trim() : INSTA4J;
+		if (INSTA4J.equalsIgnoreCase(name)) {
+			return new InstaJsonCodec();
+		} else if (JACKSON.equalsIgnoreCase(name)) {
+			return new JacksonRecordCodec();
+		} else if (JAXB.equalsIgnoreCase(name)) {
+			return new JaxbRecordCodec(providers);
+		}
+		try {
+			return Class.forName(name).asSubclass(RecordCodec.class).newInstance();
+		} catch (Exception e) {
+			throw new IllegalArgumentException(String.format("%s is not a known codec nor a %s class", name,
+					RecordCodec.class.getName()), e);
+		}
+	}
+
+	/**
+	 * Reads all the records and closes the reader.
+	 *
+	 * @return The records in the order of the response.
+	 */
+	public static List<InstaRecordBean> readAll(final RecordReader reader) throws IOException {
+		try {
+			final List<InstaRecordBean> records = new ArrayList<InstaRecordBean>();
+			InstaRecordBean record;
+			while ((record = reader.read()) != null) {
+				records.add(record);
+			}
+			return records;
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+
+/**
+ * Reads the records of a response one at a time.
+ *
+ * @see RecordCodec
+ */
+public interface RecordReader extends Closeable {
+
+	/**
+	 * @return The next record of the response, or null once all the records have been read.
+	 * @throws IOException If the response can not be read or is not a json record or array of records.
+	 */
+	InstaRecordBean read() throws IOException;
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.model.Folder;
+import com.idtmatter.insta4j.model.User;
+
+/**
+ * The values of the record being decoded by {@link InstaJsonReader}, reused for every record. Numbers and booleans
+ * are kept unboxed until the record is turned into an {@link InstaRecordBean}.
+ */
+final class RecordSlot {
+
+	String type;
+	String userId;
+	long userIdValue;
+	String username;
+	Boolean subscriptionIsActive;
+	String bookmarkId;
+	long bookmarkIdValue;
+	String url;
+	String title;
+	String description;
+	long time;
+	boolean hasTime;
+	Boolean starred;
+	String privateSource;
+	String hash;
+	double progress;
+	boolean hasProgress;
+	long progressTimestamp;
+	boolean hasProgressTimestamp;
+	String errorCode;
+	String message;
+	String folderId;
+	long folderIdValue;
+	Boolean syncToMobile;
+	long position;
+	boolean hasPosition;
+	String deleteIds;
+
+	void clear() {
+		type = null;
+		userId = null;
+		userIdValue = 0;
+		username = null;
+		subscriptionIsActive = null;
+		bookmarkId = null;
+		bookmarkIdValue = 0;
+		url = null;
+		title = null;
+		description = null;
+		hasTime = false;
+		time = 0;
+		starred = null;
+		privateSource = null;
+		hash = null;
+		hasProgress = false;
+		progress = 0;
+		hasProgressTimestamp = false;
+		progressTimestamp = 0;
+		errorCode = null;
+		message = null;
+		folderId = null;
+		folderIdValue = 0;
+		syncToMobile = null;
+		hasPosition = false;
+		position = 0;
+		deleteIds = null;
+	}
+
+	InstaRecordBean toBean() {
+		final InstaRecordBean bean = new InstaRecordBean();
+		bean.type = type;
+		bean.user_id = userId != null || userIdValue == 0 ? userId : Long.toString(userIdValue);
+		bean.username = username;
+		bean.subscription_is_active = subscriptionIsActive;
+		bean.bookmark_id = bookmarkId != null || bookmarkIdValue == 0 ? bookmarkId : Long.toString(bookmarkIdValue);
+		bean.url = url;
+		bean.title = title;
+		bean.description = description;
+		bean.time = hasTime ? Long.valueOf(time) : null;
+		bean.starred = starred;
+		bean.private_source = privateSource;
+		bean.hash = hash;
+		bean.progress = hasProgress ? Double.valueOf(progress) : null;
+		bean.progress_timestamp = hasProgressTimestamp ? Long.valueOf(progressTimestamp) : null;
+		bean.error_code = errorCode;
+		bean.message = message;
+		bean.folder_id = folderId != null || folderIdValue == 0 ? folderId : Long.toString(folderIdValue);
+		bean.sync_to_mobile = syncToMobile;
+		bean.position = hasPosition ? Long.valueOf(position) : null;
+		bean.delete_ids = deleteIds;
+		return bean;
+	}
+
+	Bookmark toBookmark() {
+		return new Bookmark(bookmarkIdValue, url, title, description, time, isTrue(starred), privateSource, hash,
+				(float) progress, progressTimestamp);
+	}
+
+	Folder toFolder() {
+		return new Folder(folderIdValue, title, isTrue(syncToMobile), position);
+	}
+
+	User toUser() {
+		return new User(userIdValue, username, isTrue(subscriptionIsActive));
+	}
+
+	private static boolean isTrue(final Boolean value) {
+		return value != null && value;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.xml.bind.annotation.XmlElement;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+
+/**
+ * Reads the records of an Instapaper json response one at a time, token by token, instead of binding the whole
+ * array like {@link JAXBContextResolver} does. Only the record being read is held in memory, whatever the size of
+ * the response.
+ * <p/>
+ * Values are converted the way the jaxb binding does: "0"/"1" become booleans, numbers given as strings become
+ * numbers, and fields unknown to {@link InstaRecordBean} are skipped.
+ *
+ * @author dzontak@gmail.com
+ */
+public final class StreamingRecordReader implements RecordReader {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/**
+	 * The {@link XmlElement} fields of {@link InstaRecordBean} by json name.
+	 */
+	private static final Map<String, Field> FIELDS = new HashMap<String, Field>();
+
+	static {
+		for (final Field field : InstaRecordBean.class.getFields()) {
+			if (field.isAnnotationPresent(XmlElement.class)) {
+				FIELDS.put(field.getName(), field);
+			}
+		}
+	}
+
+	private final JsonParser parser;
+	private boolean started;
+	private boolean array;
+	private boolean finished;
+
+	/**
+	 * @param in The response body, closed by {@link #close()}
+	 */
+	public StreamingRecordReader(final InputStream in) throws IOException {
+		this.parser = JSON_FACTORY.createJsonParser(in);
+	}
+
+	public InstaRecordBean read() throws IOException {
+		if (finished) {
+			return null;
+		}
+		JsonToken token = parser.nextToken();
+		if (!started) {
+			started = true;
+			if (token == JsonToken.START_ARRAY) {
+				array = true;
+				token = parser.nextToken();
+			}
+		}
+		if (token == null || token == JsonToken.END_ARRAY) {
+			finished = true;
+			return null;
+		}
+		if (token != JsonToken.START_OBJECT) {
+			throw new JsonParseException("Expected a record but got " + token, parser.getCurrentLocation());
+		}
+		final InstaRecordBean record = readRecord();
+		if (!array) {
+			finished = true;
+		}
+		return record;
+	}
+
+	private InstaRecordBean readRecord() throws IOException {
+		final InstaRecordBean record = new InstaRecordBean();
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			final Field field = FIELDS.get(parser.getCurrentName());
+			final JsonToken value = parser.nextToken();
+			if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+				parser.skipChildren();
+			} else if (field != null && value != JsonToken.VALUE_NULL) {
+				set(record, field, parser.getText());
+			}
+		}
+		return record;
+	}
+
+	private void set(final InstaRecordBean record, final Field field, final String text) throws JsonParseException {
+		final Class<?> type = field.getType();
+		try {
+			if (type == String.class) {
+				field.set(record, text);
+			} else if (text.length() == 0) {
+				// the api sends "" for unset numbers, jaxb leaves them null
+			} else if (type == Boolean.class) {
+				field.set(record, "1".equals(text) || "true".equalsIgnoreCase(text));
+			} else if (type == Long.class) {
+				field.set(record, Long.valueOf(text));
+			} else if (type == Double.class) {
+				field.set(record, Double.valueOf(text));
+			}
+		} catch (NumberFormatException e) {
+			throw new JsonParseException(String.format("%s is not a valid %s for %s", text, type.getSimpleName(),
+					field.getName()), parser.getCurrentLocation(), e);
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public void close() throws IOException {
+		finished = true;
+		parser.close();
+	}
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.model.Folder;
+import com.idtmatter.insta4j.model.User;
+
+/**
+ * Receives the records of a response decoded into the typed records of {@link com.idtmatter.insta4j.model}.
+ *
+ * @see TypedRecordReader
+ */
+public interface TypedRecordHandler {
+
+	void onBookmark(Bookmark bookmark);
+
+	void onFolder(Folder folder);
+
+	void onUser(User user);
+
+	/**
+	 * @param record A record without a typed counterpart: meta, error or a type unknown to the client
+	 */
+	void onRecord(InstaRecordBean record);
+}
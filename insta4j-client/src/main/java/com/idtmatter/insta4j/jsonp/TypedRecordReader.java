@@ -0,0 +1,82 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.idtmatter.insta4j.client.RecordType;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.model.Folder;
+import com.idtmatter.insta4j.model.User;
+
+/**
+ * Reads the records of a response as typed records. With an {@link InstaJsonCodec} the bytes are decoded straight
+ * into them, any other codec goes through the {@link InstaRecordBean} adapters.
+ */
+public final class TypedRecordReader implements Closeable {
+
+	private final InstaJsonReader direct;
+	private final RecordReader beans;
+
+	/**
+	 * @param codec The codec of the client
+	 * @param in    A UTF-8 encoded json record or array of records, closed with the reader
+	 */
+	public TypedRecordReader(final RecordCodec codec, final InputStream in) throws IOException {
+		if (codec instanceof InstaJsonCodec) {
+			direct = new InstaJsonReader(in);
+			beans = null;
+		} else {
+			direct = null;
+			beans = codec.newReader(in);
+		}
+	}
+
+	/**
+	 * @param handler Receives the next record
+	 * @return False once all the records have been read.
+	 * @throws IOException If the response can not be read or is not a json record or array of records.
+	 */
+	public boolean read(final TypedRecordHandler handler) throws IOException {
+		if (direct != null) {
+			return direct.read(handler);
+		}
+		final InstaRecordBean record = beans.read();
+		if (record == null) {
+			return false;
+		}
+		if (RecordType.BOOKMARK.type().equals(record.type)) {
+			handler.onBookmark(Bookmark.fromBean(record));
+		} else if (RecordType.FOLDER.type().equals(record.type)) {
+			handler.onFolder(Folder.fromBean(record));
+		} else if (RecordType.USER.type().equals(record.type)) {
+			handler.onUser(User.fromBean(record));
+		} else {
+			handler.onRecord(record);
+		}
+		return true;
+	}
+
+	public void close() throws IOException {
+		if (direct != null) {
+			direct.close();
+		} else {
+			beans.close();
+		}
+	}
+}
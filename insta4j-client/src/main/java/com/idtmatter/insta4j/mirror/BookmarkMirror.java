@@ -0,0 +1,425 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.mirror;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.model.Folder;
+import com.idtmatter.insta4j.sync.SyncChanges;
+
+/**
+ * An on-disk copy of the folders and bookmarks of one account, so a new process can start from local state instead
+ * of listing everything again.
+ * <p/>
+ * Changes are appended to a segment file and forced to disk before they are applied in memory. Once the segment
+ * outgrows the last snapshot the whole state is compacted into a new snapshot and a new segment is started. Both
+ * are read back through a {@link MappedByteBuffer} when the mirror is opened: the newest complete snapshot, then
+ * the segments written after it, up to the first torn record a crash may have left.
+ * <p/>
+ * Files are named snapshot-&lt;generation&gt; and segment-&lt;generation&gt;, a snapshot holds everything written
+ * to the segments of lower generations. A directory must only be written by one mirror at a time.
+ *
+ * @see MirroredBookmarks
+ */
+public class BookmarkMirror {
+
+	private static final Logger log = LoggerFactory.getLogger(BookmarkMirror.class);
+
+	/**
+	 * The folder key of unread, bookmarks/list without folder_id.
+	 */
+	public static final String UNREAD = "unread";
+
+	private static final String SNAPSHOT = "snapshot-";
+	private static final String SEGMENT = "segment-";
+	private static final long MIN_COMPACT_BYTES = 1024 * 1024;
+
+	private final File directory;
+	private final MirrorRecords records = new MirrorRecords();
+	private final Map<String, Map<Long, Bookmark>> bookmarks = new HashMap<String, Map<Long, Bookmark>>();
+	private final Map<String, Long> syncedAt = new HashMap<String, Long>();
+	private List<Folder> folders = Collections.emptyList();
+	private long foldersSyncedAt;
+
+	private long generation;
+	private long snapshotBytes;
+	private long segmentBytes;
+	private FileOutputStream segment;
+
+	/**
+	 * Loads the mirror in the directory, creating it if needed.
+	 *
+	 * @throws IOException If the directory can not be created or read.
+	 */
+	public BookmarkMirror(final File directory) throws IOException {
+		this.directory = directory;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can not create the mirror directory " + directory);
+		}
+		load();
+	}
+
+	/**
+	 * @param folderId unread (or null), starred, archive or a folder_id
+	 * @return A copy of the bookmarks of the folder, empty if it was never synced.
+	 */
+	public synchronized List<Bookmark> getBookmarks(final String folderId) {
+		final Map<Long, Bookmark> folder = bookmarks.get(key(folderId));
+		return folder != null ? new ArrayList<Bookmark>(folder.values()) : new ArrayList<Bookmark>();
+	}
+
+	/**
+	 * @return The bookmark if it is in the folder, else null.
+	 */
+	public synchronized Bookmark getBookmark(final String folderId, final long bookmarkId) {
+		final Map<Long, Bookmark> folder = bookmarks.get(key(folderId));
+		return folder != null ? folder.get(bookmarkId) : null;
+	}
+
+	/**
+	 * @return The user-created folders, in the order they were listed.
+	 */
+	public synchronized List<Folder> getFolders() {
+		return folders;
+	}
+
+	/**
+	 * @return The unix time in milliseconds of the last sync of the folder, 0 if it was never synced.
+	 */
+	public synchronized long getSyncedAt(final String folderId) {
+		final Long at = syncedAt.get(key(folderId));
+		return at != null ? at : 0;
+	}
+
+	/**
+	 * @return The unix time in milliseconds the folders were last listed at, 0 if they never were.
+	 */
+	public synchronized long getFoldersSyncedAt() {
+		return foldersSyncedAt;
+	}
+
+	/**
+	 * Writes the changes of a sync of a folder to disk, then applies them.
+	 *
+	 * @param syncedAt The unix time in milliseconds of the sync
+	 */
+	public synchronized void apply(final String folderId, final SyncChanges changes, final long syncedAt)
+			throws IOException {
+		final String key = key(folderId);
+		for (final Bookmark bookmark : changes.getAdded()) {
+			append(records.begin(MirrorRecords.PUT_BOOKMARK).putString(key).putBookmark(bookmark).end());
+		}
+		for (final Bookmark bookmark : changes.getChanged()) {
+			append(records.begin(MirrorRecords.PUT_BOOKMARK).putString(key).putBookmark(bookmark).end());
+		}
+		for (final Long id : changes.getDeleted()) {
+			append(records.begin(MirrorRecords.DELETE_BOOKMARK).putString(key).putLong(id).end());
+		}
+		append(records.begin(MirrorRecords.FOLDER_SYNCED).putString(key).putLong(syncedAt).end());
+		force();
+
+		final Map<Long, Bookmark> folder = folder(key);
+		for (final Bookmark bookmark : changes.getAdded()) {
+			folder.put(bookmark.getBookmarkId(), bookmark);
+		}
+		for (final Bookmark bookmark : changes.getChanged()) {
+			folder.put(bookmark.getBookmarkId(), bookmark);
+		}
+		for (final Long id : changes.getDeleted()) {
+			folder.remove(id);
+		}
+		this.syncedAt.put(key, syncedAt);
+		compactIfNeeded();
+	}
+
+	/**
+	 * Writes the folders of a folders/list call to disk, then replaces the known folders with them.
+	 */
+	public synchronized void replaceFolders(final List<Folder> folders, final long syncedAt) throws IOException {
+		append(foldersRecord(folders, syncedAt));
+		force();
+		this.folders = Collections.unmodifiableList(new ArrayList<Folder>(folders));
+		this.foldersSyncedAt = syncedAt;
+		compactIfNeeded();
+	}
+
+	/**
+	 * Compacts the state into a new snapshot and starts a new segment, then deletes the files the snapshot
+	 * replaces.
+	 */
+	public synchronized void snapshot() throws IOException {
+		final long next = generation + 1;
+		final File temporary = new File(directory, SNAPSHOT + next + ".tmp");
+		final FileOutputStream out = new FileOutputStream(temporary);
+		long written = 0;
+		try {
+			int count = 0;
+			for (final Map.Entry<String, Map<Long, Bookmark>> folder : bookmarks.entrySet()) {
+				for (final Bookmark bookmark : folder.getValue().values()) {
+					written += write(out, records.begin(MirrorRecords.PUT_BOOKMARK).putString(folder.getKey())
+							.putBookmark(bookmark).end());
+					count++;
+				}
+			}
+			for (final Map.Entry<String, Long> synced : syncedAt.entrySet()) {
+				written += write(out, records.begin(MirrorRecords.FOLDER_SYNCED).putString(synced.getKey())
+						.putLong(synced.getValue()).end());
+				count++;
+			}
+			written += write(out, foldersRecord(folders, foldersSyncedAt));
+			count++;
+			written += write(out, records.begin(MirrorRecords.END).putInt(count).end());
+			out.getChannel().force(true);
+		} finally {
+			out.close();
+		}
+		if (!temporary.renameTo(new File(directory, SNAPSHOT + next))) {
+			throw new IOException("Can not rename " + temporary);
+		}
+		closeSegment();
+		generation = next;
+		snapshotBytes = written;
+		openSegment(0);
+		deleteBefore(next);
+	}
+
+	/**
+	 * Closes the segment being written, the mirror can not be changed afterwards.
+	 */
+	public synchronized void close() throws IOException {
+		closeSegment();
+	}
+
+	private void load() throws IOException {
+		final File[] snapshots = files(SNAPSHOT);
+		long loaded = 0;
+		for (int i = snapshots.length - 1; i >= 0 && loaded == 0; i--) {
+			if (replay(snapshots[i], true) >= 0) {
+				loaded = generation(snapshots[i], SNAPSHOT);
+				snapshotBytes = snapshots[i].length();
+			} else {
+				log.warn(String.format("Ignoring the incomplete mirror snapshot %s", snapshots[i]));
+				clear();
+			}
+		}
+		generation = loaded;
+		long validBytes = 0;
+		for (final File file : files(SEGMENT)) {
+			final long segmentGeneration = generation(file, SEGMENT);
+			if (segmentGeneration >= loaded) {
+				validBytes = replay(file, false);
+				generation = segmentGeneration;
+			}
+		}
+		openSegment(validBytes);
+		deleteBefore(loaded);
+	}
+
+	/**
+	 * Applies the records of a file.
+	 *
+	 * @param snapshot True to require the {@link MirrorRecords#END} record of a complete snapshot
+	 * @return The length of the valid records, -1 for an incomplete snapshot.
+	 */
+	private long replay(final File file, final boolean snapshot) throws IOException {
+		final RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			final long length = in.length();
+			if (length == 0) {
+				return snapshot ? -1 : 0;
+			}
+			final MappedByteBuffer mapped = in.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			int count = 0;
+			ByteBuffer record;
+			while ((record = records.next(mapped)) != null) {
+				final byte kind = record.get();
+				if (kind == MirrorRecords.END) {
+					return record.getInt() == count ? mapped.position() : -1;
+				}
+				apply(kind, record);
+				count++;
+			}
+			if (mapped.position() < length) {
+				log.warn(String.format("Ignoring %d bytes after the last valid record of %s",
+						length - mapped.position(), file));
+			}
+			return snapshot ? -1 : mapped.position();
+		} finally {
+			in.close();
+		}
+	}
+
+	private void apply(final byte kind, final ByteBuffer record) throws IOException {
+		switch (kind) {
+			case MirrorRecords.PUT_BOOKMARK: {
+				final String key = MirrorRecords.getString(record);
+				final Bookmark bookmark = MirrorRecords.getBookmark(record);
+				folder(key).put(bookmark.getBookmarkId(), bookmark);
+				break;
+			}
+			case MirrorRecords.DELETE_BOOKMARK: {
+				final String key = MirrorRecords.getString(record);
+				folder(key).remove(record.getLong());
+				break;
+			}
+			case MirrorRecords.FOLDER_SYNCED:
+				syncedAt.put(MirrorRecords.getString(record), record.getLong());
+				break;
+			case MirrorRecords.FOLDERS: {
+				foldersSyncedAt = record.getLong();
+				final int count = record.getInt();
+				final List<Folder> listed = new ArrayList<Folder>(count);
+				for (int i = 0; i < count; i++) {
+					listed.add(MirrorRecords.getFolder(record));
+				}
+				folders = Collections.unmodifiableList(listed);
+				break;
+			}
+			default:
+				throw new IOException("Unknown mirror record kind " + kind);
+		}
+	}
+
+	private byte[] foldersRecord(final List<Folder> folders, final long syncedAt) throws IOException {
+		records.begin(MirrorRecords.FOLDERS).putLong(syncedAt).putInt(folders.size());
+		for (final Folder folder : folders) {
+			records.putFolder(folder);
+		}
+		return records.end();
+	}
+
+	private void append(final byte[] record) throws IOException {
+		if (segment == null) {
+			throw new IOException("The mirror " + directory + " is closed");
+		}
+		segmentBytes += write(segment, record);
+	}
+
+	private static int write(final FileOutputStream out, final byte[] record) throws IOException {
+		out.write(record);
+		return record.length;
+	}
+
+	private void force() throws IOException {
+		segment.getChannel().force(false);
+	}
+
+	private void compactIfNeeded() throws IOException {
+		if (segmentBytes > Math.max(MIN_COMPACT_BYTES, snapshotBytes)) {
+			snapshot();
+		}
+	}
+
+	/**
+	 * Opens the segment of the current generation for appending, cutting off what follows its valid records.
+	 */
+	private void openSegment(final long validBytes) throws IOException {
+		final File file = new File(directory, SEGMENT + generation);
+		final RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+		try {
+			if (truncate.length() > validBytes) {
+				truncate.setLength(validBytes);
+			}
+		} finally {
+			truncate.close();
+		}
+		segment = new FileOutputStream(file, true);
+		segmentBytes = validBytes;
+	}
+
+	private void closeSegment() throws IOException {
+		if (segment != null) {
+			segment.close();
+			segment = null;
+		}
+	}
+
+	private void deleteBefore(final long keep) {
+		for (final File file : directory.listFiles()) {
+			final String name = file.getName();
+			final boolean old = name.startsWith(SNAPSHOT) && !name.endsWith(".tmp") && generation(file, SNAPSHOT) < keep
+					|| name.startsWith(SEGMENT) && generation(file, SEGMENT) < keep || name.endsWith(".tmp");
+			if (old && !file.delete()) {
+				log.warn(String.format("Failed to delete the old mirror file %s", file));
+			}
+		}
+	}
+
+	/**
+	 * @return The files with the prefix by increasing generation.
+	 */
+	private File[] files(final String prefix) {
+		final List<File> matching = new ArrayList<File>();
+		for (final File file : directory.listFiles()) {
+			if (file.getName().startsWith(prefix) && generation(file, prefix) >= 0) {
+				matching.add(file);
+			}
+		}
+		Collections.sort(matching, new Comparator<File>() {
+			public int compare(final File left, final File right) {
+				final long l = generation(left, prefix);
+				final long r = generation(right, prefix);
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+		});
+		return matching.toArray(new File[matching.size()]);
+	}
+
+	private static long generation(final File file, final String prefix) {
+		try {
+			return Long.parseLong(file.getName().substring(prefix.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private Map<Long, Bookmark> folder(final String key) {
+		Map<Long, Bookmark> folder = bookmarks.get(key);
+		if (folder == null) {
+			folder = new LinkedHashMap<Long, Bookmark>();
+			bookmarks.put(key, folder);
+		}
+		return folder;
+	}
+
+	private void clear() {
+		bookmarks.clear();
+		syncedAt.clear();
+		folders = Collections.emptyList();
+		foldersSyncedAt = 0;
+	}
+
+	private static String key(final String folderId) {
+		return folderId != null ? folderId : UNREAD;
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.mirror;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.model.Folder;
+
+/**
+ * The binary records of the mirror files. A record is its payload length (int), its kind (byte), the payload and a
+ * CRC32 of kind and payload (int), so a record torn by a crash is recognised and ignored along with anything after
+ * it.
+ */
+final class MirrorRecords {
+
+	/**
+	 * folder key, bookmark
+	 */
+	static final byte PUT_BOOKMARK = 1;
+	/**
+	 * folder key, bookmark_id
+	 */
+	static final byte DELETE_BOOKMARK = 2;
+	/**
+	 * folder key, unix millis
+	 */
+	static final byte FOLDER_SYNCED = 3;
+	/**
+	 * unix millis, folder count, folders
+	 */
+	static final byte FOLDERS = 4;
+	/**
+	 * record count, last record of a complete snapshot
+	 */
+	static final byte END = 5;
+
+	/**
+	 * Length, kind and checksum around the payload.
+	 */
+	static final int OVERHEAD = 9;
+
+	private static final int MAX_PAYLOAD = 64 * 1024 * 1024;
+
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+	private final DataOutputStream out = new DataOutputStream(bytes);
+	private final CRC32 crc = new CRC32();
+	private byte[] payload = new byte[512];
+
+	/**
+	 * Starts a record, the payload is then written with the put methods and the record taken with {@link #end()}.
+	 */
+	MirrorRecords begin(final byte kind) throws IOException {
+		bytes.reset();
+		out.writeInt(0);
+		out.writeByte(kind);
+		return this;
+	}
+
+	MirrorRecords putLong(final long value) throws IOException {
+		out.writeLong(value);
+		return this;
+	}
+
+	MirrorRecords putInt(final int value) throws IOException {
+		out.writeInt(value);
+		return this;
+	}
+
+	MirrorRecords putString(final String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			final byte[] utf8 = value.getBytes("UTF-8");
+			out.writeInt(utf8.length);
+			out.write(utf8);
+		}
+		return this;
+	}
+
+	MirrorRecords putBookmark(final Bookmark bookmark) throws IOException {
+		out.writeLong(bookmark.getBookmarkId());
+		putString(bookmark.getUrl());
+		putString(bookmark.getTitle());
+		putString(bookmark.getDescription());
+		out.writeLong(bookmark.getTime());
+		out.writeBoolean(bookmark.isStarred());
+		putString(bookmark.getPrivateSource());
+		putString(bookmark.getHash());
+		out.writeFloat(bookmark.getProgress());
+		out.writeLong(bookmark.getProgressTimestamp());
+		return this;
+	}
+
+	MirrorRecords putFolder(final Folder folder) throws IOException {
+		out.writeLong(folder.getFolderId());
+		putString(folder.getTitle());
+		out.writeBoolean(folder.isSyncToMobile());
+		out.writeLong(folder.getPosition());
+		return this;
+	}
+
+	/**
+	 * @return The bytes of the record begun last.
+	 */
+	byte[] end() throws IOException {
+		out.flush();
+		final byte[] record = new byte[bytes.size() + 4];
+		final byte[] written = bytes.toByteArray();
+		System.arraycopy(written, 0, record, 0, written.length);
+		final int length = written.length - 5;
+		record[0] = (byte) (length >>> 24);
+		record[1] = (byte) (length >>> 16);
+		record[2] = (byte) (length >>> 8);
+		record[3] = (byte) length;
+		crc.reset();
+		crc.update(record, 4, length + 1);
+		final int checksum = (int) crc.getValue();
+		record[written.length] = (byte) (checksum >>> 24);
+		record[written.length + 1] = (byte) (checksum >>> 16);
+		record[written.length + 2] = (byte) (checksum >>> 8);
+		record[written.length + 3] = (byte) checksum;
+		return record;
+	}
+
+	/**
+	 * Checks the record at the position of the buffer.
+	 *
+	 * @return The payload of the record as a buffer positioned after the kind, the source buffer is moved past
+	 *         the record. Null if the buffer ends or the record is torn or corrupt, the source buffer is then left
+	 *         where it was.
+	 */
+	ByteBuffer next(final ByteBuffer source) {
+		final int start = source.position();
+		if (source.remaining() < OVERHEAD) {
+			return null;
+		}
+		final int length = source.getInt(start);
+		if (length < 0 || length > MAX_PAYLOAD || length > source.remaining() - OVERHEAD) {
+			return null;
+		}
+		if (payload.length < length + 1) {
+			payload = new byte[Math.max(length + 1, payload.length * 2)];
+		}
+		source.position(start + 4);
+		source.get(payload, 0, length + 1);
+		crc.reset();
+		crc.update(payload, 0, length + 1);
+		if ((int) crc.getValue() != source.getInt()) {
+			source.position(start);
+			return null;
+		}
+		return ByteBuffer.wrap(payload, 0, length + 1);
+	}
+
+	static String getString(final ByteBuffer record) throws UnsupportedEncodingException {
+		final int length = record.getInt();
+		if (length < 0) {
+			return null;
+		}
+		final String value = new String(record.array(), record.arrayOffset() + record.position(), length, "UTF-8");
+		record.position(record.position() + length);
+		return value;
+	}
+
+	static Bookmark getBookmark(final ByteBuffer record) throws UnsupportedEncodingException {
+		final long id = record.getLong();
+		final String url = getString(record);
+		final String title = getString(record);
+		final String description = getString(record);
+		final long time = record.getLong();
+		final boolean starred = record.get() != 0;
+		final String privateSource = getString(record);
+		final String hash = getString(record);
+		final float progress = record.getFloat();
+		final long progressTimestamp = record.getLong();
+		return new Bookmark(id, url, title, description, time, starred, privateSource, hash, progress,
+				progressTimestamp);
+	}
+
+	static Folder getFolder(final ByteBuffer record) throws UnsupportedEncodingException {
+		final long id = record.getLong();
+		final String title = getString(record);
+		final boolean syncToMobile = record.get() != 0;
+		return new Folder(id, title, syncToMobile, record.getLong());
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.mirror;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.idtmatter.insta4j.client.InstaClient;
+import com.idtmatter.insta4j.client.RecordType;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.model.Folder;
+import com.idtmatter.insta4j.sync.BookmarkSync;
+import com.idtmatter.insta4j.sync.SyncChanges;
+import com.sun.jersey.api.client.ClientHandlerException;
+
+/**
+ * Reads folders and bookmarks through a {@link BookmarkMirror}: the mirror answers while it is younger than the
+ * maximum age, once it is stale a folder is brought up to date with a {@link BookmarkSync} delta and the folders
+ * are listed again.
+ * <p/>
+ * <blockquote><pre>
+ *     MirroredBookmarks mirrored = new MirroredBookmarks(client, new BookmarkMirror(directory), 60000);
+ *     List&lt;Bookmark&gt; unread = mirrored.listBookmarks(null);
+ * </pre></blockquote>
+ *
+ * @see com.idtmatter.insta4j.client.FullInstaClient#getMirror()
+ */
+public class MirroredBookmarks {
+
+	private final InstaClient client;
+	private final BookmarkMirror mirror;
+	private final long maxAgeMillis;
+
+	/**
+	 * @param maxAgeMillis How long a synced folder is answered from the mirror alone
+	 */
+	public MirroredBookmarks(final InstaClient client, final BookmarkMirror mirror, final long maxAgeMillis) {
+		this.client = client;
+		this.mirror = mirror;
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * @param folderId unread (or null), starred, archive or a folder_id
+	 * @return The bookmarks of the folder, synced first if the mirror is stale.
+	 */
+	public List<Bookmark> listBookmarks(final String folderId) {
+		if (isStale(mirror.getSyncedAt(folderId))) {
+			refresh(folderId);
+		}
+		return mirror.getBookmarks(folderId);
+	}
+
+	/**
+	 * @return The user-created folders, listed first if the mirror is stale.
+	 */
+	public List<Folder> listFolders() {
+		if (isStale(mirror.getFoldersSyncedAt())) {
+			final List<Folder> folders = new ArrayList<Folder>();
+			for (final InstaRecordBean record : client.listFolders()) {
+				if (RecordType.fromType(record.type) == RecordType.FOLDER) {
+					folders.add(Folder.fromBean(record));
+				}
+			}
+			try {
+				mirror.replaceFolders(folders, System.currentTimeMillis());
+			} catch (IOException e) {
+				throw new ClientHandlerException(e);
+			}
+		}
+		return mirror.getFolders();
+	}
+
+	/**
+	 * Syncs the folder whatever the age of the mirror.
+	 *
+	 * @return The changes applied to the mirror.
+	 */
+	public SyncChanges refresh(final String folderId) {
+		final BookmarkSync sync = new BookmarkSync(client, folderId, BookmarkSync.MAX_LIMIT,
+				mirror.getBookmarks(folderId));
+		final SyncChanges changes = sync.sync();
+		try {
+			mirror.apply(folderId, changes, System.currentTimeMillis());
+		} catch (IOException e) {
+			throw new ClientHandlerException(e);
+		}
+		return changes;
+	}
+
+	public BookmarkMirror getMirror() {
+		return mirror;
+	}
+
+	private boolean isStale(final long syncedAt) {
+		return System.currentTimeMillis() - syncedAt >= maxAgeMillis;
+	}
+}
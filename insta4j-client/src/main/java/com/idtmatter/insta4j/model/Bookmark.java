@@ -0,0 +1,176 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.model;
+
+import com.idtmatter.insta4j.client.RecordType;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+
+/**
+ * An immutable bookmark with primitive ids, timestamps and progress, for applications keeping many of them in
+ * memory. A bookmark takes about half the heap of the {@link InstaRecordBean} it is made from, which carries the
+ * boxed and unused slots of every record type.
+ * <p/>
+ * Progress is held as a float, more precision than the 0.0 to 1.0 reading position needs.
+ *
+ * @see com.idtmatter.insta4j.jsonp.TypedRecordHandler
+ */
+public final class Bookmark {
+
+	private final long bookmarkId;
+	private final String url;
+	private final String title;
+	private final String description;
+	private final long time;
+	private final boolean starred;
+	private final String privateSource;
+	private final String hash;
+	private final float progress;
+	private final long progressTimestamp;
+
+	public Bookmark(final long bookmarkId, final String url, final String title, final String description,
+			final long time, final boolean starred, final String privateSource, final String hash,
+			final float progress, final long progressTimestamp) {
+		this.bookmarkId = bookmarkId;
+		this.url = url;
+		this.title = title;
+		this.description = description;
+		this.time = time;
+		this.starred = starred;
+		// most bookmarks have no private source, share the empty string
+		this.privateSource = privateSource != null && privateSource.length() == 0 ? "" : privateSource;
+		this.hash = hash;
+		this.progress = progress;
+		this.progressTimestamp = progressTimestamp;
+	}
+
+	/**
+	 * @param bean A record of type {@link RecordType#BOOKMARK}
+	 * @return The bookmark of the record, absent numbers are 0.
+	 * @throws IllegalArgumentException If the record is not a bookmark
+	 */
+	public static Bookmark fromBean(final InstaRecordBean bean) {
+		Records.checkType(bean, RecordType.BOOKMARK);
+		return new Bookmark(Records.toLong(bean.bookmark_id), bean.url, bean.title, bean.description,
+				Records.toLong(bean.time), Records.toBoolean(bean.starred), bean.private_source, bean.hash,
+				bean.progress != null ? bean.progress.floatValue() : 0f, Records.toLong(bean.progress_timestamp));
+	}
+
+	/**
+	 * @return A new {@link InstaRecordBean} of type {@link RecordType#BOOKMARK} with the fields of this bookmark.
+	 */
+	public InstaRecordBean toBean() {
+		final InstaRecordBean bean = new InstaRecordBean();
+		bean.type = RecordType.BOOKMARK.type();
+		bean.bookmark_id = Long.toString(bookmarkId);
+		bean.url = url;
+		bean.title = title;
+		bean.description = description;
+		bean.time = time;
+		bean.starred = starred;
+		bean.private_source = privateSource;
+		bean.hash = hash;
+		bean.progress = Records.toDouble(progress);
+		bean.progress_timestamp = progressTimestamp;
+		return bean;
+	}
+
+	/**
+	 * @return A copy of this bookmark read to the given progress, with the same hash until the service sends the
+	 *         new one.
+	 */
+	public Bookmark withProgress(final float progress, final long progressTimestamp) {
+		return new Bookmark(bookmarkId, url, title, description, time, starred, privateSource, hash, progress,
+				progressTimestamp);
+	}
+
+	public long getBookmarkId() {
+		return bookmarkId;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	/**
+	 * @return The unix time the bookmark was saved at.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public boolean isStarred() {
+		return starred;
+	}
+
+	public String getPrivateSource() {
+		return privateSource;
+	}
+
+	/**
+	 * @return The hash Instapaper changes whenever the bookmark changes, sent back in the have parameter of
+	 *         bookmarks/list.
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+	/**
+	 * @return How far the bookmark has been read, between 0.0 and 1.0.
+	 */
+	public float getProgress() {
+		return progress;
+	}
+
+	/**
+	 * @return The unix time the progress was recorded at.
+	 */
+	public long getProgressTimestamp() {
+		return progressTimestamp;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof Bookmark)) {
+			return false;
+		}
+		final Bookmark other = (Bookmark) o;
+		return bookmarkId == other.bookmarkId && time == other.time && starred == other.starred
+				&& Float.floatToIntBits(progress) == Float.floatToIntBits(other.progress)
+				&& progressTimestamp == other.progressTimestamp && Records.equal(url, other.url)
+				&& Records.equal(title, other.title) && Records.equal(description, other.description)
+				&& Records.equal(privateSource, other.privateSource) && Records.equal(hash, other.hash);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (bookmarkId ^ (bookmarkId >>> 32)) * 31 + (hash != null ? hash.hashCode() : 0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Bookmark[%d, %s, %s]", bookmarkId, hash, url);
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.model;
+
+import com.idtmatter.insta4j.client.RecordType;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+
+/**
+ * An immutable user-created folder with primitive id and position.
+ */
+public final class Folder {
+
+	private final long folderId;
+	private final String title;
+	private final boolean syncToMobile;
+	private final long position;
+
+	public Folder(final long folderId, final String title, final boolean syncToMobile, final long position) {
+		this.folderId = folderId;
+		this.title = title;
+		this.syncToMobile = syncToMobile;
+		this.position = position;
+	}
+
+	/**
+	 * @param bean A record of type {@link RecordType#FOLDER}
+	 * @return The folder of the record, absent numbers are 0.
+	 * @throws IllegalArgumentException If the record is not a folder
+	 */
+	public static Folder fromBean(final InstaRecordBean bean) {
+		Records.checkType(bean, RecordType.FOLDER);
+		return new Folder(Records.toLong(bean.folder_id), bean.title, Records.toBoolean(bean.sync_to_mobile),
+				Records.toLong(bean.position));
+	}
+
+	/**
+	 * @return A new {@link InstaRecordBean} of type {@link RecordType#FOLDER} with the fields of this folder.
+	 */
+	public InstaRecordBean toBean() {
+		final InstaRecordBean bean = new InstaRecordBean();
+		bean.type = RecordType.FOLDER.type();
+		bean.folder_id = Long.toString(folderId);
+		bean.title = title;
+		bean.sync_to_mobile = syncToMobile;
+		bean.position = position;
+		return bean;
+	}
+
+	public long getFolderId() {
+		return folderId;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public boolean isSyncToMobile() {
+		return syncToMobile;
+	}
+
+	/**
+	 * @return The sort position of the folder, folders are listed by increasing position.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof Folder)) {
+			return false;
+		}
+		final Folder other = (Folder) o;
+		return folderId == other.folderId && syncToMobile == other.syncToMobile && position == other.position
+				&& Records.equal(title, other.title);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (folderId ^ (folderId >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("Folder[%d, %s]", folderId, title);
+	}
+}
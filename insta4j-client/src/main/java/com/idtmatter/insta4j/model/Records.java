@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.model;
+
+import com.idtmatter.insta4j.client.RecordType;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+
+/**
+ * Conversions shared by the adapters between the typed records and {@link InstaRecordBean}.
+ */
+final class Records {
+
+	private Records() {
+	}
+
+	static void checkType(final InstaRecordBean bean, final RecordType type) {
+		if (!type.type().equals(bean.type)) {
+			throw new IllegalArgumentException(String.format("Expected a %s record but got %s", type.type(), bean));
+		}
+	}
+
+	static long toLong(final String value) {
+		return value != null && value.length() > 0 ? Long.parseLong(value) : 0L;
+	}
+
+	static long toLong(final Long value) {
+		return value != null ? value : 0L;
+	}
+
+	static boolean toBoolean(final Boolean value) {
+		return value != null && value;
+	}
+
+	/**
+	 * @return The double written like the float, e.g. 0.3 instead of 0.30000001192092896.
+	 */
+	static Double toDouble(final float value) {
+		return Double.valueOf(Float.toString(value));
+	}
+
+	static boolean equal(final Object a, final Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+}
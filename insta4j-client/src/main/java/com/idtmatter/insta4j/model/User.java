@@ -0,0 +1,94 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.model;
+
+import com.idtmatter.insta4j.client.RecordType;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+
+/**
+ * An immutable Instapaper account.
+ */
+public final class User {
+
+	private final long userId;
+	private final String username;
+	private final boolean subscriptionActive;
+
+	public User(final long userId, final String username, final boolean subscriptionActive) {
+		this.userId = userId;
+		this.username = username;
+		this.subscriptionActive = subscriptionActive;
+	}
+
+	/**
+	 * @param bean A record of type {@link RecordType#USER}
+	 * @return The user of the record, an absent id is 0.
+	 * @throws IllegalArgumentException If the record is not a user
+	 */
+	public static User fromBean(final InstaRecordBean bean) {
+		Records.checkType(bean, RecordType.USER);
+		return new User(Records.toLong(bean.user_id), bean.username, Records.toBoolean(bean.subscription_is_active));
+	}
+
+	/**
+	 * @return A new {@link InstaRecordBean} of type {@link RecordType#USER} with the fields of this user.
+	 */
+	public InstaRecordBean toBean() {
+		final InstaRecordBean bean = new InstaRecordBean();
+		bean.type = RecordType.USER.type();
+		bean.user_id = Long.toString(userId);
+		bean.username = username;
+		bean.subscription_is_active = subscriptionActive;
+		return bean;
+	}
+
+	public long getUserId() {
+		return userId;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	/**
+	 * @return True if the account has the subscription most of the Full api needs.
+	 */
+	public boolean isSubscriptionActive() {
+		return subscriptionActive;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof User)) {
+			return false;
+		}
+		final User other = (User) o;
+		return userId == other.userId && subscriptionActive == other.subscriptionActive
+				&& Records.equal(username, other.username);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (userId ^ (userId >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("User[%d, %s]", userId, username);
+	}
+}
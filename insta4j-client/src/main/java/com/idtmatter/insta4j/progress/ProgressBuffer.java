@@ -0,0 +1,356 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.progress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idtmatter.insta4j.client.InstaClient;
+
+/**
+ * Buffers the reading progress reported by readers and sends it behind their back: only the latest progress of each
+ * bookmark is kept, by progress_timestamp, and sent with updateReadProgress when the buffer is flushed. A reader
+ * reporting every few seconds while an article is open costs one request per bookmark and flush instead of one per
+ * report.
+ * <p/>
+ * The buffer is flushed every interval, as soon as the threshold of bookmarks is pending, by {@link #flush()} and by
+ * {@link #shutdown()}, which sends what is left. A flush sends with a bounded number of calls in flight, pacing is
+ * left to the client: a {@link com.idtmatter.insta4j.client.FullInstaClient} configured with a rate limit makes the
+ * workers wait for their slot. A progress that failed is kept for the next flush, unless a newer one was reported
+ * meanwhile, and dropped after {@link #MAX_ATTEMPTS} attempts.
+ * <p/>
+ * A report older than the one pending is ignored, and Instapaper ignores a progress older than the one it has, so
+ * the newest timestamp wins whatever the order of the reports and flushes.
+ * <p/>
+ * <blockquote><pre>
+ *     ProgressBuffer buffer = new ProgressBuffer(client, 4).interval(30000).threshold(500);
+ *     buffer.report(bookmarkId, 0.42, System.currentTimeMillis() / 1000);
+ *     ...
+ *     buffer.shutdown();
+ * </pre></blockquote>
+ */
+public class ProgressBuffer {
+
+	/**
+	 * The attempts to send a progress before it is dropped.
+	 */
+	public static final int MAX_ATTEMPTS = 3;
+
+	private static final Logger log = LoggerFactory.getLogger(ProgressBuffer.class);
+	private static final AtomicInteger BUFFERS = new AtomicInteger();
+
+	private final InstaClient client;
+	private final int parallelism;
+	private volatile long interval = 30000;
+	private volatile int threshold = 500;
+
+	private final ConcurrentMap<String, Progress> pending = new ConcurrentHashMap<String, Progress>();
+	private final AtomicInteger pendingCount = new AtomicInteger();
+	private final ReentrantLock flushing = new ReentrantLock();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final AtomicBoolean stopped = new AtomicBoolean();
+	private final ExecutorService workers;
+	private final ScheduledExecutorService timer;
+	private volatile boolean started;
+
+	private final AtomicLong reported = new AtomicLong();
+	private final AtomicLong sent = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * @param client      The client sending the progress, shared by the workers
+	 * @param parallelism The number of updateReadProgress calls in flight during a flush
+	 */
+	public ProgressBuffer(final InstaClient client, final int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be at least 1 but was " + parallelism);
+		}
+		this.client = client;
+		this.parallelism = parallelism;
+		final String name = "insta4j-progress-" + BUFFERS.incrementAndGet();
+		workers = Executors.newFixedThreadPool(parallelism, daemon(name + "-worker-"));
+		timer = Executors.newSingleThreadScheduledExecutor(daemon(name + "-flush-"));
+	}
+
+	/**
+	 * @param millis The time between two flushes, 30 seconds by default
+	 */
+	public ProgressBuffer interval(final long millis) {
+		if (millis < 1) {
+			throw new IllegalArgumentException("interval must be at least 1ms but was " + millis);
+		}
+		if (started) {
+			throw new IllegalStateException("The interval is set before the first report");
+		}
+		this.interval = millis;
+		return this;
+	}
+
+	/**
+	 * @param bookmarks The number of bookmarks pending that triggers a flush before the interval ends, 500 by
+	 *                  default
+	 */
+	public ProgressBuffer threshold(final int bookmarks) {
+		if (bookmarks < 1) {
+			throw new IllegalArgumentException("threshold must be at least 1 but was " + bookmarks);
+		}
+		this.threshold = bookmarks;
+		return this;
+	}
+
+	/**
+	 * Keeps the progress of a bookmark to be sent with the next flush, replacing a pending progress with an older
+	 * timestamp. Returns at once.
+	 *
+	 * @param bookmarkId        The bookmark read
+	 * @param progress          The progress between 0.0 and 1.0
+	 * @param progressTimestamp The Unix timestamp of the time the progress was recorded
+	 * @return false if a progress with a newer timestamp is already pending and this one is ignored.
+	 * @throws IllegalStateException If the buffer is shut down.
+	 */
+	public boolean report(final String bookmarkId, final double progress, final long progressTimestamp) {
+		if (stopped.get()) {
+			throw new IllegalStateException("The progress buffer is shut down");
+		}
+		start();
+		reported.incrementAndGet();
+		if (!offer(bookmarkId, new Progress(progress, progressTimestamp, 0))) {
+			return false;
+		}
+		if (pendingCount.get() >= threshold && flushScheduled.compareAndSet(false, true)) {
+			timer.execute(new Runnable() {
+				public void run() {
+					flushScheduled.set(false);
+					flushQuietly();
+				}
+			});
+		}
+		return true;
+	}
+
+	/**
+	 * @return true if the progress is pending, false if a newer one is.
+	 */
+	private boolean offer(final String bookmarkId, final Progress progress) {
+		while (true) {
+			final Progress current = pending.get(bookmarkId);
+			if (current == null) {
+				if (pending.putIfAbsent(bookmarkId, progress) == null) {
+					pendingCount.incrementAndGet();
+					return true;
+				}
+			} else if (current.timestamp > progress.timestamp) {
+				return false;
+			} else if (pending.replace(bookmarkId, current, progress)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Sends the progress pending now and waits until it is sent, flushes do not overlap.
+	 *
+	 * @return The number of bookmarks whose progress was sent.
+	 */
+	public int flush() {
+		flushing.lock();
+		try {
+			final List<Map.Entry<String, Progress>> batch = new ArrayList<Map.Entry<String, Progress>>(pending
+					.entrySet());
+			if (batch.isEmpty()) {
+				return 0;
+			}
+			final CountDownLatch done = new CountDownLatch(batch.size());
+			final AtomicInteger succeeded = new AtomicInteger();
+			for (final Map.Entry<String, Progress> entry : batch) {
+				// a newer report replaces the entry and stays pending for the next flush
+				if (!pending.remove(entry.getKey(), entry.getValue())) {
+					done.countDown();
+					continue;
+				}
+				pendingCount.decrementAndGet();
+				workers.execute(new Runnable() {
+					public void run() {
+						try {
+							if (send(entry.getKey(), entry.getValue())) {
+								succeeded.incrementAndGet();
+							}
+						} finally {
+							done.countDown();
+						}
+					}
+				});
+			}
+			done.await();
+			if (log.isDebugEnabled()) {
+				log.debug(String.format("Flushed the progress of %d bookmarks, %d pending", succeeded.get(),
+						pendingCount.get()));
+			}
+			return succeeded.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return 0;
+		} finally {
+			flushing.unlock();
+		}
+	}
+
+	private boolean send(final String bookmarkId, final Progress progress) {
+		try {
+			client.updateReadProgress(bookmarkId, progress.progress, progress.timestamp);
+			sent.incrementAndGet();
+			return true;
+		} catch (RuntimeException e) {
+			failed.incrementAndGet();
+			if (progress.attempts + 1 < MAX_ATTEMPTS) {
+				offer(bookmarkId, new Progress(progress.progress, progress.timestamp, progress.attempts + 1));
+			} else {
+				dropped.incrementAndGet();
+				log.warn(String.format("Dropped the progress %s of bookmark %s after %d attempts, last error %s",
+						progress.progress, bookmarkId, MAX_ATTEMPTS, e.getMessage()));
+			}
+			return false;
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			log.warn(String.format("Failed to flush the progress buffer due to error %s", e.getMessage()));
+		}
+	}
+
+	private void start() {
+		if (!started) {
+			synchronized (this) {
+				if (!started) {
+					timer.scheduleWithFixedDelay(new Runnable() {
+						public void run() {
+							flushQuietly();
+						}
+					}, interval, interval, TimeUnit.MILLISECONDS);
+					started = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the periodic flushes and sends the progress still pending, retrying the failed ones up to
+	 * {@link #MAX_ATTEMPTS} times. Reports are refused afterwards.
+	 */
+	public void shutdown() {
+		if (!stopped.compareAndSet(false, true)) {
+			return;
+		}
+		timer.shutdown();
+		try {
+			timer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		for (int attempt = 0; attempt < MAX_ATTEMPTS && !pending.isEmpty(); attempt++) {
+			flush();
+		}
+		workers.shutdown();
+	}
+
+	/**
+	 * @return The number of progress reports received.
+	 */
+	public long getReported() {
+		return reported.get();
+	}
+
+	/**
+	 * @return The number of updateReadProgress calls that succeeded.
+	 */
+	public long getSent() {
+		return sent.get();
+	}
+
+	/**
+	 * @return The number of updateReadProgress calls that failed.
+	 */
+	public long getFailed() {
+		return failed.get();
+	}
+
+	/**
+	 * @return The number of progress given up after {@link #MAX_ATTEMPTS} failed attempts.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return The number of bookmarks whose progress waits for a flush.
+	 */
+	public int getPending() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * @return The number of updateReadProgress calls in flight during a flush.
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	private static ThreadFactory daemon(final String prefix) {
+		return new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(final Runnable runnable) {
+				final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * A progress waiting to be sent, compared by identity in the pending map.
+	 */
+	private static final class Progress {
+		final double progress;
+		final long timestamp;
+		final int attempts;
+
+		Progress(final double progress, final long timestamp, final int attempts) {
+			this.progress = progress;
+			this.timestamp = timestamp;
+			this.attempts = attempts;
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.retry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.idtmatter.insta4j.InstaCodes;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+/**
+ * Sends a request again when it failed with a transient error and the {@link RetryPolicy} allows it. The last
+ * answer, or the exception of a broken connection, is handed to the client as it is once the policy gives up.
+ * <p/>
+ * The filter has to be the first of the client, so that every retry is paced by the rate limit filter and signed
+ * anew by the authentication filter after it.
+ */
+public class RetryFilter extends ClientFilter {
+
+	private static final Pattern ERROR_CODE = Pattern.compile("\"error_code\"\\s*:\\s*\"?(\\d{1,9})");
+	private static final int MAX_ERROR_BYTES = 4096;
+
+	private final RetryPolicy policy;
+
+	public RetryFilter(final RetryPolicy policy) {
+		this.policy = policy;
+	}
+
+	@Override
+	public ClientResponse handle(final ClientRequest request) throws ClientHandlerException {
+		final boolean idempotent = policy.isIdempotent(request.getURI().getPath(), form(request));
+		policy.onCall();
+		for (int attempt = 1; ; attempt++) {
+			final ClientResponse response;
+			try {
+				response = getNext().handle(request);
+			} catch (ClientHandlerException e) {
+				if (!idempotent || !(e.getCause() instanceof IOException)) {
+					throw e;
+				}
+				pause(request, policy.retry(attempt), e);
+				continue;
+			}
+			if (!idempotent || !isRetryable(response)) {
+				if (attempt > 1 && response.getStatus() < 400) {
+					policy.onRecovered();
+				}
+				return response;
+			}
+			final long delay = policy.retry(attempt);
+			if (delay < 0) {
+				return response;
+			}
+			response.close();
+			pause(request, delay, null);
+		}
+	}
+
+	/**
+	 * Waits before the next attempt and clears the signature of the previous one.
+	 *
+	 * @param failure Rethrown if the policy gives up
+	 */
+	private static void pause(final ClientRequest request, final long delay, final ClientHandlerException failure) {
+		if (delay < 0) {
+			throw failure;
+		}
+		if (delay > 0) {
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ClientHandlerException(e);
+			}
+		}
+		// signed again by the authentication filter with a fresh nonce
+		request.getHeaders().remove("Authorization");
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, List<String>> form(final ClientRequest request) {
+		final Object entity = request.getEntity();
+		return entity instanceof Map ? (Map<String, List<String>>) entity : null;
+	}
+
+	/**
+	 * @return true for a server error, whatever its status, or a 400 with a transient Instapaper error code.
+	 */
+	private boolean isRetryable(final ClientResponse response) {
+		final int status = response.getStatus();
+		if (status >= 500) {
+			return policy.isRetryable(status);
+		}
+		return status == 400 && policy.isRetryable(code(response));
+	}
+
+	/**
+	 * @return The code of a 400, its body is read for the Instapaper error code and then put back for the client.
+	 */
+	private static InstaCodes.Code code(final ClientResponse response) {
+		if (!response.hasEntity()) {
+			return InstaCodes.Code._400;
+		}
+		final byte[] body;
+		try {
+			body = read(response.getEntityInputStream());
+		} catch (IOException e) {
+			throw new ClientHandlerException(e);
+		}
+		response.setEntityInputStream(new ByteArrayInputStream(body));
+		try {
+			final Matcher matcher = ERROR_CODE.matcher(new String(body, 0, Math.min(body.length, MAX_ERROR_BYTES),
+					"UTF-8"));
+			return matcher.find() ? InstaCodes.Code.fromCode(Integer.parseInt(matcher.group(1)))
+					: InstaCodes.Code._400;
+		} catch (IOException e) {
+			return InstaCodes.Code._400;
+		}
+	}
+
+	private static byte[] read(final InputStream in) throws IOException {
+		try {
+			final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+			final byte[] buffer = new byte[1024];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				body.write(buffer, 0, read);
+			}
+			return body.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,241 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.retry;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.idtmatter.insta4j.InstaCodes;
+
+/**
+ * Decides which failed requests are sent again and when.
+ * <p/>
+ * Only transient errors are retried: every http 5xx, 502, 503 and 504 of a gateway or an overloaded service included,
+ * 1246 (unexpected error when saving bookmark), plus connections that broke before an answer was read. 1040 is left to the {@link com.idtmatter.insta4j.ratelimit.RateLimiter}, every
+ * other {@link InstaCodes.Code.Family#GENERAL_ERROR}, {@link InstaCodes.Code.Family#BOOKMARK_ERROR} and
+ * {@link InstaCodes.Code.Family#FOLDER_ERROR} is an answer about the request itself and fails it right away.
+ * <p/>
+ * A request is only sent again if doing so twice leaves the account as doing it once: reads, star, unstar, archive,
+ * unarchive, move, update_read_progress and set_order. bookmarks/add is retried when it names a url, Instapaper then
+ * updates the bookmark saved by the first attempt, but not for private sources which would be saved twice. Deleting
+ * a bookmark or adding and deleting folders is never retried, the first attempt may have been applied.
+ * <p/>
+ * Attempts are spread with full jitter, a random delay up to base * 2^attempt capped at the maximum delay, so clients
+ * failing together do not come back together. Retries are drawn from a budget refilled by a tenth of a retry per
+ * first attempt and holding up to 100 retries, so while Instapaper is down the policy adds at most 10% load instead
+ * of multiplying it.
+ * <p/>
+ * A policy is thread safe and may be shared by clients to share its budget.
+ *
+ * @see RetryFilter
+ */
+public class RetryPolicy {
+
+	private static final Set<String> IDEMPOTENT = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			"/api/1/account/verify_credentials", "/api/1/bookmarks/list", "/api/1/bookmarks/get_text",
+			"/api/1/bookmarks/update_read_progress", "/api/1/bookmarks/star", "/api/1/bookmarks/unstar",
+			"/api/1/bookmarks/archive", "/api/1/bookmarks/unarchive", "/api/1/bookmarks/move",
+			"/api/1/folders/list", "/api/1/folders/set_order")));
+
+	private static final String ADD_BOOKMARK = "/api/1/bookmarks/add";
+
+	private static final double BUDGET_RATIO = 0.1;
+	private static final double MIN_BUDGET = 10;
+	private static final double MAX_BUDGET = 100;
+
+	private final int maxAttempts;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+	private final Random random = new Random();
+
+	private double budget = MIN_BUDGET;
+
+	private final AtomicLong calls = new AtomicLong();
+	private final AtomicLong attempts = new AtomicLong();
+	private final AtomicLong retries = new AtomicLong();
+	private final AtomicLong budgetExhausted = new AtomicLong();
+	private final AtomicLong givenUp = new AtomicLong();
+	private final AtomicLong recovered = new AtomicLong();
+
+	/**
+	 * A policy of 3 attempts, 100ms apart at first and at most 5s.
+	 */
+	public RetryPolicy() {
+		this(3, 100, 5000);
+	}
+
+	/**
+	 * @param maxAttempts     Attempts of a request including the first one, 1 to never retry
+	 * @param baseDelayMillis The largest delay before the first retry
+	 * @param maxDelayMillis  The largest delay before any retry
+	 */
+	public RetryPolicy(final int maxAttempts, final long baseDelayMillis, final long maxDelayMillis) {
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("maxAttempts must be at least 1 but was " + maxAttempts);
+		}
+		this.maxAttempts = maxAttempts;
+		this.baseDelayMillis = baseDelayMillis;
+		this.maxDelayMillis = maxDelayMillis;
+	}
+
+	/**
+	 * @param status The http status of an answer
+	 * @return true if the status is a server error worth another attempt, whether {@link InstaCodes} names it or not.
+	 */
+	public boolean isRetryable(final int status) {
+		return status >= 500;
+	}
+
+	/**
+	 * @return true if the code is a transient error worth another attempt.
+	 */
+	public boolean isRetryable(final InstaCodes.Code code) {
+		if (code == null) {
+			return false;
+		}
+		switch (code.getFamily()) {
+		case HTTP_ERROR:
+			// a 4xx is about the request, not the service
+			return code.getCode() >= 500;
+		case BOOKMARK_ERROR:
+			return code == InstaCodes.Code._1246;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * @param path The path of the request, e.g. /api/1/bookmarks/star
+	 * @param form The form parameters of the request, may be null
+	 * @return true if the request may be sent twice.
+	 */
+	public boolean isIdempotent(final String path, final Map<String, List<String>> form) {
+		if (IDEMPOTENT.contains(path)) {
+			return true;
+		}
+		if (ADD_BOOKMARK.equals(path) && form != null) {
+			final List<String> privateSource = form.get("is_private_from_source");
+			final List<String> url = form.get("url");
+			return (privateSource == null || privateSource.isEmpty() || privateSource.get(0).length() == 0)
+					&& url != null && !url.isEmpty() && url.get(0) != null && url.get(0).length() > 0;
+		}
+		return false;
+	}
+
+	/**
+	 * Counts the first attempt of a request and refills the budget.
+	 */
+	void onCall() {
+		calls.incrementAndGet();
+		attempts.incrementAndGet();
+		synchronized (this) {
+			budget = Math.min(MAX_BUDGET, budget + BUDGET_RATIO);
+		}
+	}
+
+	/**
+	 * Asks for another attempt of a request that failed with a retryable error.
+	 *
+	 * @param attempt The number of the attempt that failed, 1 for the first
+	 * @return The delay in milliseconds before the next attempt, -1 if the request is not sent again.
+	 */
+	long retry(final int attempt) {
+		if (attempt >= maxAttempts) {
+			givenUp.incrementAndGet();
+			return -1;
+		}
+		final long delay;
+		synchronized (this) {
+			if (budget < 1) {
+				budgetExhausted.incrementAndGet();
+				givenUp.incrementAndGet();
+				return -1;
+			}
+			budget--;
+			final long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt - 1, 30));
+			delay = ceiling > 0 ? (long) (random.nextDouble() * ceiling) : 0;
+		}
+		retries.incrementAndGet();
+		attempts.incrementAndGet();
+		return delay;
+	}
+
+	/**
+	 * Counts a request that succeeded after at least one retry.
+	 */
+	void onRecovered() {
+		recovered.incrementAndGet();
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @return The requests sent, not counting their retries.
+	 */
+	public long getCalls() {
+		return calls.get();
+	}
+
+	/**
+	 * @return The retries sent.
+	 */
+	public long getRetries() {
+		return retries.get();
+	}
+
+	/**
+	 * @return The requests that succeeded after a retry.
+	 */
+	public long getRecovered() {
+		return recovered.get();
+	}
+
+	/**
+	 * @return The requests that failed with a retryable error and were not sent again, either out of attempts or
+	 *         out of budget.
+	 */
+	public long getGivenUp() {
+		return givenUp.get();
+	}
+
+	/**
+	 * @return The retries refused because the budget was spent.
+	 */
+	public long getBudgetExhausted() {
+		return budgetExhausted.get();
+	}
+
+	/**
+	 * @return The attempts sent per request, 1.0 if nothing was retried.
+	 */
+	public double getAmplification() {
+		final long sent = calls.get();
+		return sent == 0 ? 1.0 : (double) attempts.get() / sent;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d calls, %d retries (%.3fx), %d recovered, %d given up, %d over budget", getCalls(),
+				getRetries(), getAmplification(), getRecovered(), getGivenUp(), getBudgetExhausted());
+	}
+}
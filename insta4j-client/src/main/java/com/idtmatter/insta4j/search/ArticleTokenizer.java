@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the text view html of a bookmark into lower case terms: runs of letters and digits outside tags, with
+ * entities decoded and the content of script and style elements skipped. A tag separates terms, so does any other
+ * character. Terms longer than {@link #MAX_TERM_LENGTH} characters are dropped but still take a position.
+ */
+final class ArticleTokenizer {
+
+	static final int MAX_TERM_LENGTH = 64;
+
+	private ArticleTokenizer() {
+	}
+
+	/**
+	 * @return The terms of the html in order, the position of a term is its index.
+	 */
+	static List<String> tokenize(final String html) {
+		final List<String> terms = new ArrayList<String>(Math.max(16, html.length() / 6));
+		final StringBuilder term = new StringBuilder(MAX_TERM_LENGTH);
+		final int length = html.length();
+		int i = 0;
+		while (i < length) {
+			final char c = html.charAt(i);
+			if (c == '<') {
+				flush(term, terms);
+				i = skipTag(html, i);
+			} else if (c == '&') {
+				final int end = html.indexOf(';', i);
+				final int decoded = end > i && end - i <= 10 ? entity(html, i + 1, end) : -1;
+				if (decoded >= 0) {
+					append(term, terms, decoded);
+					i = end + 1;
+				} else {
+					flush(term, terms);
+					i++;
+				}
+			} else {
+				append(term, terms, c);
+				i++;
+			}
+		}
+		flush(term, terms);
+		return terms;
+	}
+
+	private static void append(final StringBuilder term, final List<String> terms, final int c) {
+		if (Character.isLetterOrDigit(c)) {
+			if (term.length() <= MAX_TERM_LENGTH) {
+				term.append(Character.toLowerCase((char) c));
+			}
+		} else {
+			flush(term, terms);
+		}
+	}
+
+	private static void flush(final StringBuilder term, final List<String> terms) {
+		if (term.length() > 0) {
+			// an over long term keeps its position so that phrases do not match across it
+			terms.add(term.length() <= MAX_TERM_LENGTH ? term.toString() : "");
+			term.setLength(0);
+		}
+	}
+
+	/**
+	 * @return The index after the tag starting at start, after the matching end tag for script and style.
+	 */
+	private static int skipTag(final String html, final int start) {
+		if (html.startsWith("<!--", start)) {
+			final int end = html.indexOf("-->", start + 4);
+			return end < 0 ? html.length() : end + 3;
+		}
+		final int end = html.indexOf('>', start);
+		if (end < 0) {
+			return html.length();
+		}
+		final String skipped = rawTextElement(html, start + 1);
+		if (skipped != null) {
+			final int close = indexOfIgnoreCase(html, "</" + skipped, end);
+			return close < 0 ? html.length() : skipTag(html, close);
+		}
+		return end + 1;
+	}
+
+	private static String rawTextElement(final String html, final int nameStart) {
+		if (html.regionMatches(true, nameStart, "script", 0, 6) && !isNameChar(html, nameStart + 6)) {
+			return "script";
+		}
+		if (html.regionMatches(true, nameStart, "style", 0, 5) && !isNameChar(html, nameStart + 5)) {
+			return "style";
+		}
+		return null;
+	}
+
+	private static boolean isNameChar(final String html, final int index) {
+		return index < html.length() && Character.isLetterOrDigit(html.charAt(index));
+	}
+
+	private static int indexOfIgnoreCase(final String html, final String target, final int from) {
+		for (int i = from; i <= html.length() - target.length(); i++) {
+			if (html.regionMatches(true, i, target, 0, target.length())) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return The character of the entity between start and end, e.g. amp or #8217, -1 if it is not known.
+	 */
+	private static int entity(final String html, final int start, final int end) {
+		if (start < end && html.charAt(start) == '#') {
+			try {
+				final int code = start + 1 < end && (html.charAt(start + 1) == 'x' || html.charAt(start + 1) == 'X')
+						? Integer.parseInt(html.substring(start + 2, end), 16)
+						: Integer.parseInt(html.substring(start + 1, end));
+				// characters beyond the basic plane are separators like any symbol
+				return code >= 0 && code <= 0xFFFF ? code : ' ';
+			} catch (NumberFormatException e) {
+				return -1;
+			}
+		}
+		final String name = html.substring(start, end);
+		if ("amp".equals(name) || "lt".equals(name) || "gt".equals(name) || "quot".equals(name)
+				|| "apos".equals(name) || "nbsp".equals(name) || "hellip".equals(name) || "mdash".equals(name)
+				|| "ndash".equals(name) || "rsquo".equals(name) || "lsquo".equals(name) || "rdquo".equals(name)
+				|| "ldquo".equals(name)) {
+			return ' ';
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,807 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.search;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.idtmatter.insta4j.client.InstaClient;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.sync.SyncChanges;
+
+/**
+ * A full-text index of the articles of one account, so a search reads local postings instead of fetching get_text
+ * for every bookmark.
+ * <p/>
+ * The text view html of each bookmark is split by {@link ArticleTokenizer} and every term keeps a posting list of
+ * the documents and positions it occurs at, as varints delta-encoded from the previous document and position.
+ * Documents get increasing numbers, so adding one appends to the lists of its terms. A bookmark indexed again or
+ * removed leaves a deleted document behind, the lists are rewritten without the deleted documents once they
+ * outnumber the live ones and whenever the index is saved.
+ * <p/>
+ * A query is a list of terms and "quoted phrases" that must all occur. Matching bookmarks are ranked by the sum of
+ * tf-idf of the query terms, newest indexed first on a tie, and returned as bookmark records.
+ * <p/>
+ * The index is written to a single file of the directory by {@link #save()}, through a temporary file so a crash
+ * leaves either the old or the new index, and loaded back when opened. A directory must only be written by one index
+ * at a time. Searches run concurrently, changes one at a time.
+ * <p/>
+ * <blockquote><pre>
+ *     SearchIndex index = new SearchIndex(new File("search"));
+ *     index.update(client, null, sync.sync());
+ *     List&lt;InstaRecordBean&gt; found = index.search("\"text view\" kindle");
+ *     index.save();
+ * </pre></blockquote>
+ */
+public class SearchIndex {
+
+	/**
+	 * The name of the index file in the directory.
+	 */
+	public static final String FILE = "search-index";
+
+	private static final Logger log = LoggerFactory.getLogger(SearchIndex.class);
+	private static final int MAGIC = 0x49345349;
+	private static final int VERSION = 1;
+	private static final int MIN_COMPACT_DOCUMENTS = 1024;
+
+	private final File file;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Map<String, Postings> postings = new HashMap<String, Postings>();
+	private final Map<Long, Integer> documentOf = new HashMap<Long, Integer>();
+	private final List<Bookmark> documents = new ArrayList<Bookmark>();
+	private final BitSet deleted = new BitSet();
+	private int deletedCount;
+	// bookmarks whose text could not be fetched, tried again by the next update
+	private final Map<Long, Fetch> unfetched = new LinkedHashMap<Long, Fetch>();
+
+	/**
+	 * Loads the index of the directory, creating the directory if needed.
+	 *
+	 * @throws IOException If the directory can not be created or the index can not be read.
+	 */
+	public SearchIndex(final File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can not create the search index directory " + directory);
+		}
+		this.file = new File(directory, FILE);
+		if (file.exists()) {
+			load();
+		}
+	}
+
+	/**
+	 * Indexes the text of a bookmark, replacing the text it was indexed with before.
+	 *
+	 * @param bookmark A bookmark record, e.g. from bookmarks/list
+	 * @param html     The text view of the bookmark, from get_text
+	 */
+	public void add(final InstaRecordBean bookmark, final String html) {
+		add(Bookmark.fromBean(bookmark), html);
+	}
+
+	/**
+	 * @see #add(InstaRecordBean, String)
+	 */
+	public void add(final Bookmark bookmark, final String html) {
+		final Map<String, Positions> terms = terms(html);
+		lock.writeLock().lock();
+		try {
+			delete(bookmark.getBookmarkId());
+			final int document = documents.size();
+			documents.add(bookmark);
+			documentOf.put(bookmark.getBookmarkId(), document);
+			for (final Map.Entry<String, Positions> term : terms.entrySet()) {
+				Postings list = postings.get(term.getKey());
+				if (list == null) {
+					list = new Postings();
+					postings.put(term.getKey(), list);
+				}
+				list.append(document, term.getValue());
+			}
+			compactIfNeeded();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The positions of each term of the html, counted outside the lock.
+	 */
+	private static Map<String, Positions> terms(final String html) {
+		final List<String> tokens = ArticleTokenizer.tokenize(html);
+		final Map<String, Positions> terms = new HashMap<String, Positions>(Math.max(16, tokens.size() / 2));
+		for (int position = 0; position < tokens.size(); position++) {
+			final String token = tokens.get(position);
+			if (token.length() == 0) {
+				continue;
+			}
+			Positions positions = terms.get(token);
+			if (positions == null) {
+				positions = new Positions();
+				terms.put(token, positions);
+			}
+			positions.add(position);
+		}
+		return terms;
+	}
+
+	/**
+	 * Removes a bookmark from the index.
+	 *
+	 * @return false if the bookmark was not indexed.
+	 */
+	public boolean remove(final long bookmarkId) {
+		lock.writeLock().lock();
+		try {
+			final boolean removed = delete(bookmarkId);
+			compactIfNeeded();
+			return removed;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private boolean delete(final long bookmarkId) {
+		final Integer document = documentOf.remove(bookmarkId);
+		if (document == null) {
+			return false;
+		}
+		documents.set(document, null);
+		deleted.set(document);
+		deletedCount++;
+		return true;
+	}
+
+	/**
+	 * @return true if the bookmark is indexed.
+	 */
+	public boolean contains(final long bookmarkId) {
+		lock.readLock().lock();
+		try {
+			return documentOf.containsKey(bookmarkId);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Applies the changes of a {@link com.idtmatter.insta4j.sync.BookmarkSync} of a folder: the text of the bookmarks
+	 * not indexed yet is fetched with {@link InstaClient#getBookmark(String, String, String)}, which an
+	 * {@link com.idtmatter.insta4j.cache.ArticleCache} may answer, and the deleted ones are removed. The hash of a
+	 * bookmark changes as it is starred or read further, an indexed bookmark only gets its new metadata. A bookmark
+	 * moved to another folder is indexed again by the sync of that folder.
+	 * <p/>
+	 * A text that can not be fetched, e.g. of a pdf, does not stop the update: the bookmark is listed by
+	 * {@link #getUnfetched()} and tried again by the next update, until it is fetched or deleted.
+	 *
+	 * @param folderId The folder synced, null for unread
+	 * @return The number of texts fetched.
+	 */
+	public int update(final InstaClient client, final String folderId, final SyncChanges changes) {
+		final Map<Long, Fetch> pending = new LinkedHashMap<Long, Fetch>();
+		synchronized (unfetched) {
+			for (final Long bookmarkId : changes.getDeleted()) {
+				unfetched.remove(bookmarkId);
+			}
+			pending.putAll(unfetched);
+		}
+		for (final Long bookmarkId : changes.getDeleted()) {
+			remove(bookmarkId);
+		}
+		for (final Bookmark bookmark : changes.getAdded()) {
+			pending.put(bookmark.getBookmarkId(), new Fetch(bookmark, folderId));
+		}
+		for (final Bookmark bookmark : changes.getChanged()) {
+			pending.put(bookmark.getBookmarkId(), new Fetch(bookmark, folderId));
+		}
+		int fetched = 0;
+		for (final Fetch fetch : pending.values()) {
+			final Bookmark bookmark = fetch.bookmark;
+			final long bookmarkId = bookmark.getBookmarkId();
+			if (contains(bookmarkId)) {
+				replaceMetadata(bookmark);
+				continue;
+			}
+			try {
+				add(bookmark, client.getBookmark(Long.toString(bookmarkId), fetch.folderId, bookmark.getHash()));
+				fetched++;
+				synchronized (unfetched) {
+					unfetched.remove(bookmarkId);
+				}
+			} catch (RuntimeException e) {
+				log.warn(String.format("Failed to fetch the text of bookmark %d due to error %s", bookmarkId,
+						e.getMessage()));
+				synchronized (unfetched) {
+					unfetched.put(bookmarkId, fetch);
+				}
+			}
+		}
+		return fetched;
+	}
+
+	/**
+	 * @return The bookmarks of the updates whose text could not be fetched yet.
+	 */
+	public List<Long> getUnfetched() {
+		synchronized (unfetched) {
+			return new ArrayList<Long>(unfetched.keySet());
+		}
+	}
+
+	private void replaceMetadata(final Bookmark bookmark) {
+		lock.writeLock().lock();
+		try {
+			final Integer document = documentOf.get(bookmark.getBookmarkId());
+			if (document != null) {
+				documents.set(document, bookmark);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @see #search(String, int)
+	 */
+	public List<InstaRecordBean> search(final String query) {
+		return search(query, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Finds the bookmarks whose text holds every term and "quoted phrase" of the query, case and punctuation aside.
+	 *
+	 * @param limit The maximum number of bookmarks returned
+	 * @return New bookmark records, best match first, empty if the query has no term.
+	 */
+	public List<InstaRecordBean> search(final String query, final int limit) {
+		final List<List<String>> phrases = parse(query);
+		if (phrases.isEmpty() || limit < 1) {
+			return new ArrayList<InstaRecordBean>();
+		}
+		lock.readLock().lock();
+		try {
+			final int live = documentOf.size();
+			int[] matches = null;
+			final List<Decoded[]> phraseLists = new ArrayList<Decoded[]>();
+			for (final List<String> phrase : phrases) {
+				final Decoded[] lists = new Decoded[phrase.size()];
+				for (int i = 0; i < lists.length; i++) {
+					final Postings list = postings.get(phrase.get(i));
+					if (list == null) {
+						return new ArrayList<InstaRecordBean>();
+					}
+					lists[i] = list.decode(deleted, lists.length > 1);
+					matches = matches == null ? lists[i].documents : intersect(matches, lists[i].documents);
+				}
+				phraseLists.add(lists);
+			}
+			for (final Decoded[] lists : phraseLists) {
+				if (lists.length > 1) {
+					matches = phrase(matches, lists);
+				}
+			}
+			final double[] scores = new double[matches.length];
+			for (final Decoded[] lists : phraseLists) {
+				for (final Decoded list : lists) {
+					final double idf = Math.log(1.0 + (double) live / list.documents.length);
+					// both are sorted, the matches are a subset of the list
+					int j = 0;
+					for (int i = 0; i < matches.length; i++) {
+						while (list.documents[j] != matches[i]) {
+							j++;
+						}
+						scores[i] += list.frequencies[j] * idf;
+					}
+				}
+			}
+			final int[] candidates = matches;
+			// a min heap of the best matches by index in the candidates, the worst on top. Candidates are sorted, a
+			// higher index is a document indexed later
+			final PriorityQueue<Integer> best = new PriorityQueue<Integer>(Math.max(1, Math.min(limit,
+					candidates.length)), new Comparator<Integer>() {
+				public int compare(final Integer left, final Integer right) {
+					final int byScore = Double.compare(scores[left], scores[right]);
+					return byScore != 0 ? byScore : left.compareTo(right);
+				}
+			});
+			for (int i = 0; i < candidates.length; i++) {
+				if (best.size() < limit) {
+					best.add(i);
+				} else if (best.comparator().compare(i, best.peek()) > 0) {
+					best.poll();
+					best.add(i);
+				}
+			}
+			final InstaRecordBean[] ranked = new InstaRecordBean[best.size()];
+			for (int i = ranked.length - 1; i >= 0; i--) {
+				ranked[i] = documents.get(candidates[best.poll()]).toBean();
+			}
+			return new ArrayList<InstaRecordBean>(Arrays.asList(ranked));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The phrases of the query, a term alone is a phrase of one term.
+	 */
+	static List<List<String>> parse(final String query) {
+		final List<List<String>> phrases = new ArrayList<List<String>>();
+		final String[] parts = query.split("\"", -1);
+		for (int i = 0; i < parts.length; i++) {
+			final List<String> terms = new ArrayList<String>();
+			for (final String term : ArticleTokenizer.tokenize(parts[i])) {
+				if (term.length() > 0) {
+					terms.add(term);
+				}
+			}
+			// odd parts are quoted
+			if (i % 2 == 1 && terms.size() > 1) {
+				phrases.add(terms);
+			} else {
+				for (final String term : terms) {
+					phrases.add(Collections.singletonList(term));
+				}
+			}
+		}
+		return phrases;
+	}
+
+	private static int[] intersect(final int[] left, final int[] right) {
+		final int[] both = new int[Math.min(left.length, right.length)];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while (i < left.length && j < right.length) {
+			if (left[i] < right[j]) {
+				i++;
+			} else if (left[i] > right[j]) {
+				j++;
+			} else {
+				both[count++] = left[i];
+				i++;
+				j++;
+			}
+		}
+		return count == both.length ? both : copyOf(both, count);
+	}
+
+	/**
+	 * @return The documents in which the terms of the lists follow each other.
+	 */
+	private static int[] phrase(final int[] documents, final Decoded[] lists) {
+		final int[] matching = new int[documents.length];
+		int count = 0;
+		for (final int document : documents) {
+			final int[][] positions = new int[lists.length][];
+			for (int i = 0; i < lists.length; i++) {
+				positions[i] = lists[i].positions[Arrays.binarySearch(lists[i].documents, document)];
+			}
+			if (follow(positions)) {
+				matching[count++] = document;
+			}
+		}
+		return copyOf(matching, count);
+	}
+
+	private static boolean follow(final int[][] positions) {
+		for (final int first : positions[0]) {
+			boolean all = true;
+			for (int i = 1; i < positions.length && all; i++) {
+				all = Arrays.binarySearch(positions[i], first + i) >= 0;
+			}
+			if (all) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int[] copyOf(final int[] values, final int length) {
+		final int[] copy = new int[length];
+		System.arraycopy(values, 0, copy, 0, length);
+		return copy;
+	}
+
+	private void compactIfNeeded() {
+		if (deletedCount >= MIN_COMPACT_DOCUMENTS && deletedCount > documentOf.size()) {
+			compact();
+		}
+	}
+
+	/**
+	 * Rewrites the posting lists without the deleted documents, the live documents keep their numbers.
+	 */
+	private void compact() {
+		if (deletedCount == 0) {
+			return;
+		}
+		for (final Iterator<Postings> it = postings.values().iterator(); it.hasNext();) {
+			final Postings list = it.next();
+			if (!list.compact(deleted)) {
+				it.remove();
+			}
+		}
+		if (log.isDebugEnabled()) {
+			log.debug(String.format("Compacted %d deleted documents out of %s", deletedCount, file));
+		}
+		// numbers of deleted documents are never reused, their slots stay empty
+		deleted.clear();
+		deletedCount = 0;
+	}
+
+	/**
+	 * Writes the index to its file, compacted.
+	 *
+	 * @throws IOException If the index can not be written, the previous file is then left in place.
+	 */
+	public void save() throws IOException {
+		lock.writeLock().lock();
+		try {
+			compact();
+			final File temporary = new File(file.getPath() + ".tmp");
+			final FileOutputStream stream = new FileOutputStream(temporary);
+			try {
+				final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 65536));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(documents.size());
+				out.writeInt(documentOf.size());
+				for (int document = 0; document < documents.size(); document++) {
+					final Bookmark bookmark = documents.get(document);
+					if (bookmark != null) {
+						out.writeInt(document);
+						writeBookmark(out, bookmark);
+					}
+				}
+				out.writeInt(postings.size());
+				for (final Map.Entry<String, Postings> term : postings.entrySet()) {
+					writeString(out, term.getKey());
+					term.getValue().writeTo(out);
+				}
+				out.flush();
+				stream.getChannel().force(false);
+			} finally {
+				stream.close();
+			}
+			if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+				throw new IOException(String.format("Failed to replace %s", file));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void load() throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 65536));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException(file + " is not a search index");
+			}
+			final int numbered = in.readInt();
+			for (int document = 0; document < numbered; document++) {
+				documents.add(null);
+			}
+			final int live = in.readInt();
+			for (int i = 0; i < live; i++) {
+				final int document = in.readInt();
+				final Bookmark bookmark = readBookmark(in);
+				documents.set(document, bookmark);
+				documentOf.put(bookmark.getBookmarkId(), document);
+			}
+			final int terms = in.readInt();
+			for (int i = 0; i < terms; i++) {
+				postings.put(readString(in), Postings.readFrom(in));
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void writeBookmark(final DataOutputStream out, final Bookmark bookmark) throws IOException {
+		out.writeLong(bookmark.getBookmarkId());
+		writeString(out, bookmark.getUrl());
+		writeString(out, bookmark.getTitle());
+		writeString(out, bookmark.getDescription());
+		out.writeLong(bookmark.getTime());
+		out.writeBoolean(bookmark.isStarred());
+		writeString(out, bookmark.getPrivateSource());
+		writeString(out, bookmark.getHash());
+		out.writeFloat(bookmark.getProgress());
+		out.writeLong(bookmark.getProgressTimestamp());
+	}
+
+	private static Bookmark readBookmark(final DataInputStream in) throws IOException {
+		final long id = in.readLong();
+		final String url = readString(in);
+		final String title = readString(in);
+		final String description = readString(in);
+		final long time = in.readLong();
+		final boolean starred = in.readBoolean();
+		final String privateSource = readString(in);
+		final String hash = readString(in);
+		final float progress = in.readFloat();
+		return new Bookmark(id, url, title, description, time, starred, privateSource, hash, progress, in
+				.readLong());
+	}
+
+	private static void writeString(final DataOutputStream out, final String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+		} else {
+			final byte[] utf8 = value.getBytes("UTF-8");
+			out.writeInt(utf8.length);
+			out.write(utf8);
+		}
+	}
+
+	private static String readString(final DataInputStream in) throws IOException {
+		final int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		final byte[] utf8 = new byte[length];
+		in.readFully(utf8);
+		return new String(utf8, "UTF-8");
+	}
+
+	/**
+	 * @return The number of bookmarks indexed.
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return documentOf.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of distinct terms indexed.
+	 */
+	public int getTermCount() {
+		lock.readLock().lock();
+		try {
+			return postings.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The bytes taken by the posting lists.
+	 */
+	public long getPostingBytes() {
+		lock.readLock().lock();
+		try {
+			long bytes = 0;
+			for (final Postings list : postings.values()) {
+				bytes += list.length;
+			}
+			return bytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * The increasing positions of a term in a document.
+	 */
+	private static final class Positions {
+		int[] values = new int[4];
+		int count;
+
+		void add(final int position) {
+			if (count == values.length) {
+				final int[] grown = new int[count * 2];
+				System.arraycopy(values, 0, grown, 0, count);
+				values = grown;
+			}
+			values[count++] = position;
+		}
+	}
+
+	/**
+	 * The documents of a term decoded for a query, positions only for phrases.
+	 */
+	private static final class Decoded {
+		int[] documents;
+		int[] frequencies;
+		int[][] positions;
+	}
+
+	/**
+	 * The posting list of a term: for each document by increasing number, the delta from the previous document, the
+	 * frequency and the deltas between positions, all varints.
+	 */
+	private static final class Postings {
+		byte[] bytes = new byte[16];
+		int length;
+		int documentCount;
+		int lastDocument = -1;
+
+		void append(final int document, final Positions positions) {
+			writeVarint(document - lastDocument);
+			writeVarint(positions.count);
+			int previous = 0;
+			for (int i = 0; i < positions.count; i++) {
+				writeVarint(positions.values[i] - previous);
+				previous = positions.values[i];
+			}
+			lastDocument = document;
+			documentCount++;
+		}
+
+		private void writeVarint(int value) {
+			if (length + 5 > bytes.length) {
+				final byte[] grown = new byte[Math.max(bytes.length * 2, length + 5)];
+				System.arraycopy(bytes, 0, grown, 0, length);
+				bytes = grown;
+			}
+			while ((value & ~0x7F) != 0) {
+				bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			bytes[length++] = (byte) value;
+		}
+
+		Decoded decode(final BitSet deleted, final boolean withPositions) {
+			final Decoded decoded = new Decoded();
+			decoded.documents = new int[documentCount];
+			decoded.frequencies = new int[documentCount];
+			decoded.positions = withPositions ? new int[documentCount][] : null;
+			final int[] offset = {0};
+			int document = -1;
+			int count = 0;
+			for (int i = 0; i < documentCount; i++) {
+				document += readVarint(offset);
+				final int frequency = readVarint(offset);
+				final boolean live = !deleted.get(document);
+				int[] positions = null;
+				if (withPositions && live) {
+					positions = new int[frequency];
+					int position = 0;
+					for (int p = 0; p < frequency; p++) {
+						position += readVarint(offset);
+						positions[p] = position;
+					}
+				} else {
+					for (int p = 0; p < frequency; p++) {
+						readVarint(offset);
+					}
+				}
+				if (live) {
+					decoded.documents[count] = document;
+					decoded.frequencies[count] = frequency;
+					if (withPositions) {
+						decoded.positions[count] = positions;
+					}
+					count++;
+				}
+			}
+			if (count < documentCount) {
+				decoded.documents = copyOf(decoded.documents, count);
+				decoded.frequencies = copyOf(decoded.frequencies, count);
+			}
+			return decoded;
+		}
+
+		private int readVarint(final int[] offset) {
+			int value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[offset[0]++];
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return value;
+		}
+
+		/**
+		 * Re-encodes the list without the deleted documents.
+		 *
+		 * @return false if no document is left.
+		 */
+		boolean compact(final BitSet deleted) {
+			final byte[] source = bytes;
+			final int sourceCount = documentCount;
+			bytes = new byte[Math.max(16, length)];
+			length = 0;
+			documentCount = 0;
+			lastDocument = -1;
+			final Postings reader = new Postings();
+			reader.bytes = source;
+			final int[] offset = {0};
+			final Positions positions = new Positions();
+			int document = -1;
+			for (int i = 0; i < sourceCount; i++) {
+				document += reader.readVarint(offset);
+				final int frequency = reader.readVarint(offset);
+				positions.count = 0;
+				int position = 0;
+				for (int p = 0; p < frequency; p++) {
+					position += reader.readVarint(offset);
+					positions.add(position);
+				}
+				if (!deleted.get(document)) {
+					append(document, positions);
+				}
+			}
+			if (length < bytes.length / 2) {
+				final byte[] trimmed = new byte[Math.max(16, length)];
+				System.arraycopy(bytes, 0, trimmed, 0, length);
+				bytes = trimmed;
+			}
+			return documentCount > 0;
+		}
+
+		void writeTo(final DataOutputStream out) throws IOException {
+			out.writeInt(documentCount);
+			out.writeInt(lastDocument);
+			out.writeInt(length);
+			out.write(bytes, 0, length);
+		}
+
+		static Postings readFrom(final DataInputStream in) throws IOException {
+			final Postings list = new Postings();
+			list.documentCount = in.readInt();
+			list.lastDocument = in.readInt();
+			list.length = in.readInt();
+			list.bytes = new byte[Math.max(16, list.length)];
+			in.readFully(list.bytes, 0, list.length);
+			return list;
+		}
+	}
+
+	/**
+	 * A bookmark to fetch the text of, with the folder it was synced in.
+	 */
+	private static final class Fetch {
+		final Bookmark bookmark;
+		final String folderId;
+
+		Fetch(final Bookmark bookmark, final String folderId) {
+			this.bookmark = bookmark;
+			this.folderId = folderId;
+		}
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.sync;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.idtmatter.insta4j.client.InstaClient;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.jsonp.TypedRecordHandler;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.model.Folder;
+import com.idtmatter.insta4j.model.User;
+
+/**
+ * Keeps a local copy of the bookmarks of one folder up to date with bookmarks/list. Every known bookmark is sent
+ * in the have parameter as bookmark_id:hash:progress:progress_timestamp, so the service only answers with the
+ * bookmarks that are new or whose hash changed, and the delete_ids of those gone from the folder. A poll with
+ * nothing to report costs the meta and user records only.
+ * <p/>
+ * Reading progress recorded with {@link #recordProgress(long, float, long)} is pushed by the next sync, Instapaper
+ * keeps it if it is more recent than its own.
+ * <p/>
+ * <blockquote><pre>
+ *     BookmarkSync unread = new BookmarkSync(client, null);
+ *     SyncChanges changes = unread.sync();
+ * </pre></blockquote>
+ */
+public class BookmarkSync {
+
+	/**
+	 * The largest limit bookmarks/list accepts.
+	 */
+	public static final int MAX_LIMIT = 500;
+
+	private final InstaClient client;
+	private final String folderId;
+	private final String limit;
+	private final Map<Long, Bookmark> bookmarks = new HashMap<Long, Bookmark>();
+
+	/**
+	 * @param client   The client to list bookmarks with
+	 * @param folderId unread (or null), starred, archive or a folder_id
+	 */
+	public BookmarkSync(final InstaClient client, final String folderId) {
+		this(client, folderId, MAX_LIMIT);
+	}
+
+	/**
+	 * @param limit The most bookmarks a sync downloads, between 1 and {@link #MAX_LIMIT}
+	 */
+	public BookmarkSync(final InstaClient client, final String folderId, final int limit) {
+		this(client, folderId, limit, Collections.<Bookmark>emptyList());
+	}
+
+	/**
+	 * @param known The bookmarks of the folder from an earlier sync, e.g. kept on disk
+	 */
+	public BookmarkSync(final InstaClient client, final String folderId, final int limit,
+			final Collection<Bookmark> known) {
+		if (limit < 1 || limit > MAX_LIMIT) {
+			throw new IllegalArgumentException("limit must be between 1 and " + MAX_LIMIT + ": " + limit);
+		}
+		this.client = client;
+		this.folderId = folderId;
+		this.limit = Integer.toString(limit);
+		for (final Bookmark bookmark : known) {
+			bookmarks.put(bookmark.getBookmarkId(), bookmark);
+		}
+	}
+
+	/**
+	 * Lists the folder with the local state as the have parameter and applies the answer.
+	 *
+	 * @return The bookmarks added, changed and deleted since the last sync.
+	 */
+	public synchronized SyncChanges sync() {
+		final List<Bookmark> received = new ArrayList<Bookmark>();
+		final List<Long> deleted = new ArrayList<Long>();
+		final String have = have();
+		client.streamBookmarkRecords(limit, folderId, new TypedRecordHandler() {
+			public void onBookmark(final Bookmark bookmark) {
+				received.add(bookmark);
+			}
+
+			public void onFolder(final Folder folder) {
+				// not part of a bookmark list
+			}
+
+			public void onUser(final User user) {
+				// not part of the folder state
+			}
+
+			public void onRecord(final InstaRecordBean record) {
+				parseIds(record.delete_ids, deleted);
+			}
+		}, have.length() > 0 ? new String[]{have} : null);
+
+		// applied once the whole response is read, a failed sync leaves the state as it was
+		final List<Bookmark> added = new ArrayList<Bookmark>();
+		final List<Bookmark> changed = new ArrayList<Bookmark>();
+		for (final Bookmark bookmark : received) {
+			if (bookmarks.put(bookmark.getBookmarkId(), bookmark) == null) {
+				added.add(bookmark);
+			} else {
+				changed.add(bookmark);
+			}
+		}
+		for (final Long id : deleted) {
+			bookmarks.remove(id);
+		}
+		return new SyncChanges(added, changed, deleted);
+	}
+
+	/**
+	 * Records reading progress made locally, sent to Instapaper by the next {@link #sync()}.
+	 *
+	 * @param timestamp The unix time the progress was made at
+	 * @return False if the bookmark is not in the local state.
+	 */
+	public synchronized boolean recordProgress(final long bookmarkId, final float progress, final long timestamp) {
+		final Bookmark bookmark = bookmarks.get(bookmarkId);
+		if (bookmark == null) {
+			return false;
+		}
+		bookmarks.put(bookmarkId, bookmark.withProgress(progress, timestamp));
+		return true;
+	}
+
+	/**
+	 * @return The local copy of the bookmark, null if it is not in the folder.
+	 */
+	public synchronized Bookmark getBookmark(final long bookmarkId) {
+		return bookmarks.get(bookmarkId);
+	}
+
+	/**
+	 * @return A snapshot of the local state of the folder.
+	 */
+	public synchronized List<Bookmark> getBookmarks() {
+		return new ArrayList<Bookmark>(bookmarks.values());
+	}
+
+	public synchronized int size() {
+		return bookmarks.size();
+	}
+
+	/**
+	 * @return The have parameter for the local state, bookmark_id:hash:progress:progress_timestamp entries
+	 *         separated by commas.
+	 */
+	String have() {
+		final StringBuilder have = new StringBuilder(bookmarks.size() * 40);
+		for (final Bookmark bookmark : bookmarks.values()) {
+			if (have.length() > 0) {
+				have.append(',');
+			}
+			have.append(bookmark.getBookmarkId());
+			if (bookmark.getHash() != null) {
+				have.append(':').append(bookmark.getHash()).append(':').append(progress(bookmark.getProgress()))
+						.append(':').append(bookmark.getProgressTimestamp());
+			}
+		}
+		return have.toString();
+	}
+
+	private static String progress(final float progress) {
+		final String text = Float.toString(progress);
+		// the service does not read exponents, e.g. 1.0E-4
+		return text.indexOf('E') < 0 ? text : new BigDecimal(text).toPlainString();
+	}
+
+	private static void parseIds(final String ids, final List<Long> into) {
+		if (ids == null) {
+			return;
+		}
+		for (final String id : ids.split(",")) {
+			final String trimmed = id.trim();
+			if (trimmed.length() > 0) {
+				into.add(Long.valueOf(trimmed));
+			}
+		}
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.sync;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.idtmatter.insta4j.model.Bookmark;
+
+/**
+ * What a {@link BookmarkSync#sync()} changed in the local state of a folder.
+ */
+public class SyncChanges {
+
+	private final List<Bookmark> added;
+	private final List<Bookmark> changed;
+	private final List<Long> deleted;
+
+	public SyncChanges(final List<Bookmark> added, final List<Bookmark> changed, final List<Long> deleted) {
+		this.added = Collections.unmodifiableList(added);
+		this.changed = Collections.unmodifiableList(changed);
+		this.deleted = Collections.unmodifiableList(deleted);
+	}
+
+	/**
+	 * @return The bookmarks new to the folder.
+	 */
+	public List<Bookmark> getAdded() {
+		return added;
+	}
+
+	/**
+	 * @return The new version of bookmarks whose hash changed: edited, starred or read further.
+	 */
+	public List<Bookmark> getChanged() {
+		return changed;
+	}
+
+	/**
+	 * @return The ids of bookmarks deleted, archived or moved out of the folder.
+	 */
+	public List<Long> getDeleted() {
+		return deleted;
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && changed.isEmpty() && deleted.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SyncChanges[added %d, changed %d, deleted %d]", added.size(), changed.size(),
+				deleted.size());
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.token;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.idtmatter.insta4j.client.InstaCredentials;
+
+/**
+ * Keeps the tokens in a directory, one file per account, encrypted with AES in CBC mode and authenticated with
+ * HMAC-SHA256 over the encrypted bytes. The file names are a keyed hash of the usernames, so the directory tells
+ * neither the accounts nor their tokens to someone without the key.
+ * <p/>
+ * The encryption and authentication keys are derived from the given key, 16 or 32 random bytes kept outside the
+ * directory, e.g. in a key store or a secret of the deployment. A file that was changed or written with another
+ * key fails to load with an IOException, a client then authorizes its account again.
+ * <p/>
+ * A file is replaced through a temporary file, a crash leaves either the old or the new token.
+ */
+public class EncryptedFileTokenStore implements TokenStore {
+
+	private static final int VERSION = 1;
+	private static final int IV_BYTES = 16;
+	private static final int MAC_BYTES = 32;
+	private static final String SUFFIX = ".token";
+
+	private final File directory;
+	private final SecretKeySpec encryptionKey;
+	private final SecretKeySpec macKey;
+	private final SecureRandom random = new SecureRandom();
+
+	/**
+	 * @param directory The directory of the token files, created if missing
+	 * @param key       The secret the keys of the store are derived from, 16 or 32 bytes
+	 * @throws IOException If the directory can not be created.
+	 */
+	public EncryptedFileTokenStore(final File directory, final byte[] key) throws IOException {
+		if (key == null || (key.length != 16 && key.length != 32)) {
+			throw new IllegalArgumentException("key must have 16 or 32 bytes");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException(String.format("Failed to create the token directory %s", directory));
+		}
+		this.directory = directory;
+		final SecretKeySpec master = new SecretKeySpec(key, "HmacSHA256");
+		final byte[] encryption = hmac(master, "insta4j token encryption".getBytes("UTF-8"));
+		final byte[] mac = hmac(master, "insta4j token authentication".getBytes("UTF-8"));
+		this.encryptionKey = new SecretKeySpec(encryption, 0, key.length, "AES");
+		this.macKey = new SecretKeySpec(mac, "HmacSHA256");
+	}
+
+	public InstaCredentials load(final String username) throws IOException {
+		final File file = fileOf(username);
+		if (!file.isFile()) {
+			return null;
+		}
+		final byte[] content = readFully(file);
+		if (content.length < 1 + IV_BYTES + MAC_BYTES || content[0] != VERSION) {
+			throw new IOException(String.format("%s is not a token file", file));
+		}
+		final int signed = content.length - MAC_BYTES;
+		final byte[] expected = new byte[MAC_BYTES];
+		System.arraycopy(content, signed, expected, 0, MAC_BYTES);
+		if (!MessageDigest.isEqual(expected, hmac(macKey, content, 0, signed))) {
+			throw new IOException(String.format("The token file %s was changed or written with another key", file));
+		}
+		final byte[] plain;
+		try {
+			final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			cipher.init(Cipher.DECRYPT_MODE, encryptionKey, new IvParameterSpec(content, 1, IV_BYTES));
+			plain = cipher.doFinal(content, 1 + IV_BYTES, signed - 1 - IV_BYTES);
+		} catch (GeneralSecurityException e) {
+			throw new IOException(String.format("Failed to decrypt %s due to error %s", file, e.getMessage()));
+		}
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain));
+		final String storedUsername = in.readUTF();
+		if (!storedUsername.equals(username)) {
+			throw new IOException(String.format("%s holds the token of another account", file));
+		}
+		return new InstaCredentials(storedUsername, in.readUTF(), in.readUTF());
+	}
+
+	public synchronized void store(final InstaCredentials credentials) throws IOException {
+		if (!credentials.isAuthorized()) {
+			throw new IllegalArgumentException("credentials without a token can not be stored");
+		}
+		final ByteArrayOutputStream plain = new ByteArrayOutputStream(128);
+		final DataOutputStream out = new DataOutputStream(plain);
+		out.writeUTF(credentials.getUsername());
+		out.writeUTF(credentials.getToken());
+		out.writeUTF(credentials.getTokenSecret());
+		out.flush();
+
+		final byte[] iv = new byte[IV_BYTES];
+		random.nextBytes(iv);
+		final byte[] encrypted;
+		try {
+			final Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, new IvParameterSpec(iv));
+			encrypted = cipher.doFinal(plain.toByteArray());
+		} catch (GeneralSecurityException e) {
+			throw new IOException(String.format("Failed to encrypt the token due to error %s", e.getMessage()));
+		}
+		final byte[] content = new byte[1 + IV_BYTES + encrypted.length + MAC_BYTES];
+		content[0] = VERSION;
+		System.arraycopy(iv, 0, content, 1, IV_BYTES);
+		System.arraycopy(encrypted, 0, content, 1 + IV_BYTES, encrypted.length);
+		final int signed = content.length - MAC_BYTES;
+		System.arraycopy(hmac(macKey, content, 0, signed), 0, content, signed, MAC_BYTES);
+		write(fileOf(credentials.getUsername()), content);
+	}
+
+	public synchronized void remove(final String username) throws IOException {
+		final File file = fileOf(username);
+		if (file.exists() && !file.delete()) {
+			throw new IOException(String.format("Failed to delete %s", file));
+		}
+	}
+
+	private File fileOf(final String username) throws IOException {
+		final byte[] hash = hmac(macKey, username.getBytes("UTF-8"));
+		final StringBuilder name = new StringBuilder(40);
+		for (int i = 0; i < 16; i++) {
+			name.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+		}
+		return new File(directory, name.append(SUFFIX).toString());
+	}
+
+	private static byte[] hmac(final SecretKeySpec key, final byte[] data) throws IOException {
+		return hmac(key, data, 0, data.length);
+	}
+
+	private static byte[] hmac(final SecretKeySpec key, final byte[] data, final int offset, final int length)
+			throws IOException {
+		try {
+			final Mac mac = Mac.getInstance("HmacSHA256");
+			mac.init(key);
+			mac.update(data, offset, length);
+			return mac.doFinal();
+		} catch (GeneralSecurityException e) {
+			throw new IOException(String.format("HmacSHA256 is not available due to error %s", e.getMessage()));
+		}
+	}
+
+	private static byte[] readFully(final File file) throws IOException {
+		final InputStream in = new FileInputStream(file);
+		try {
+			final ByteArrayOutputStream content = new ByteArrayOutputStream((int) file.length());
+			final byte[] buffer = new byte[1024];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				content.write(buffer, 0, read);
+			}
+			return content.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void write(final File file, final byte[] content) throws IOException {
+		final File temporary = new File(file.getPath() + ".tmp");
+		final OutputStream out = new FileOutputStream(temporary);
+		try {
+			out.write(content);
+			out.flush();
+		} finally {
+			out.close();
+		}
+		if (!temporary.renameTo(file) && !(file.delete() && temporary.renameTo(file))) {
+			throw new IOException(String.format("Failed to replace %s", file));
+		}
+	}
+}
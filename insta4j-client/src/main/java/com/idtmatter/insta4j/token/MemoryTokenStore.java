@@ -0,0 +1,48 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.token;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.idtmatter.insta4j.client.InstaCredentials;
+
+/**
+ * Keeps the tokens in the heap, for the clients of one process, e.g. to create the client of an account again
+ * without authorizing it again.
+ */
+public class MemoryTokenStore implements TokenStore {
+
+	private final ConcurrentMap<String, InstaCredentials> tokens = new ConcurrentHashMap<String, InstaCredentials>();
+
+	public InstaCredentials load(final String username) {
+		return tokens.get(username);
+	}
+
+	public void store(final InstaCredentials credentials) {
+		tokens.put(credentials.getUsername(), credentials);
+	}
+
+	public void remove(final String username) {
+		tokens.remove(username);
+	}
+
+	/**
+	 * @return The number of accounts with a stored token.
+	 */
+	public int size() {
+		return tokens.size();
+	}
+}
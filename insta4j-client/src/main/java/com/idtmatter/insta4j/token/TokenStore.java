@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.token;
+
+import java.io.IOException;
+
+import com.idtmatter.insta4j.client.InstaCredentials;
+
+/**
+ * Keeps the OAuth access tokens of accounts between runs, so a client can start with the token of its account
+ * instead of a blocking xAuth request to /api/1/oauth/access_token.
+ * <p/>
+ * A {@link com.idtmatter.insta4j.client.FullInstaClient} created with a store loads the token of its account from
+ * it, authorizes only if there is none and stores every token it gets, including the ones of a re-authorization
+ * after Instapaper refused a stored token with 401 or 403.
+ * <p/>
+ * Implementations have to be thread safe.
+ *
+ * @see MemoryTokenStore
+ * @see EncryptedFileTokenStore
+ */
+public interface TokenStore {
+
+	/**
+	 * @param username The Instapaper username
+	 * @return The stored credentials of the account, null if there are none.
+	 * @throws IOException If the store can not be read.
+	 */
+	InstaCredentials load(String username) throws IOException;
+
+	/**
+	 * Replaces the stored credentials of the account of {@link InstaCredentials#getUsername()}.
+	 *
+	 * @throws IOException If the store can not be written.
+	 */
+	void store(InstaCredentials credentials) throws IOException;
+
+	/**
+	 * Forgets the credentials of the account, e.g. when the user signs out.
+	 *
+	 * @throws IOException If the store can not be written.
+	 */
+	void remove(String username) throws IOException;
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.bulk;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idtmatter.insta4j.InstaCodes;
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.StubInstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.dedup.UrlIndex;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Runs the {@link BulkImporter} against an {@link InstapaperStubServer}.
+ */
+public class BulkImporterStubTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private InstapaperStubServer server;
+	private FullInstaClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(10)).account("jinstapaper@gmail.com", "open")
+				.start();
+		client = new FullInstaClient("jinstapaper@gmail.com", "open", new StubInstaClientConfig(server));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void shouldRecordFailuresAndGoOn() throws Exception {
+		final StringBuilder dump = new StringBuilder("# exported links\n");
+		for (int i = 0; i < 300; i++) {
+			dump.append(i % 10 == 0 ? "ftp://example.com/" : "http://example.com/").append(i).append("\n\n");
+		}
+		final long before = server.getDataset().getBookmarkIdCount();
+		final ImportResult result = new BulkImporter(client, 8).importUrls(new ByteArrayInputStream(dump.toString()
+				.getBytes("UTF-8")));
+		Assert.assertTrue(result.isComplete());
+		Assert.assertEquals(270, result.getAdded());
+		Assert.assertEquals(30, result.getFailed());
+		for (final ImportItem failure : result.getFailures()) {
+			Assert.assertEquals(InstaCodes.Code._1240, failure.getCode());
+			Assert.assertEquals(0, failure.getIndex() % 10);
+		}
+		Assert.assertEquals("http://example.com/299", result.getItems().get(299).getUrl());
+		Assert.assertEquals(270, server.getDataset().getBookmarkIdCount() - before);
+	}
+
+	@Test
+	public void shouldResumeFromCheckpoint() throws Exception {
+		final File checkpoint = new File(folder.getRoot(), "links.done");
+		final List<String> urls = new ArrayList<String>();
+		for (int i = 0; i < 500; i++) {
+			urls.add("http://example.com/" + i);
+		}
+		final BulkImporter importer = new BulkImporter(client, 4).checkpoint(checkpoint);
+		final ImportResult stopped = importer.importUrls(new Iterable<String>() {
+			public Iterator<String> iterator() {
+				final Iterator<String> all = urls.iterator();
+				return new Iterator<String>() {
+					private int read;
+
+					public boolean hasNext() {
+						return all.hasNext();
+					}
+
+					public String next() {
+						if (++read == 200) {
+							importer.stop();
+						}
+						return all.next();
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		});
+		Assert.assertFalse(stopped.isComplete());
+		Assert.assertEquals(200, stopped.getAdded());
+		Assert.assertTrue(checkpoint.exists());
+
+		final ImportResult resumed = importer.importUrls(urls);
+		Assert.assertTrue(resumed.isComplete());
+		Assert.assertEquals(200, resumed.getSkipped());
+		Assert.assertEquals(300, resumed.getAdded());
+		Assert.assertEquals(500, server.getRequestCount("/api/1/bookmarks/add"));
+		Assert.assertEquals(500, importer.importUrls(urls).getSkipped());
+	}
+
+	@Test
+	public void shouldAddUrlsOfTheUrlIndex() throws Exception {
+		final InstaClientConfig config = new StubInstaClientConfig(server);
+		config.getProperties().put(InstaClientConfig.PROPERTY_URL_INDEX, "true");
+		final FullInstaClient indexed = new FullInstaClient("jinstapaper@gmail.com", "open", config);
+		final UrlIndex index = indexed.getUrlIndex();
+		final List<String> urls = new ArrayList<String>();
+		for (int i = 0; i < 30; i++) {
+			urls.add("http://example.com/" + i);
+			// urls saved through the Simple api are recorded without their bookmark_id
+			if (i < 10) {
+				index.add("http://example.com/" + i, 0);
+			}
+		}
+		try {
+			final ImportResult first = new BulkImporter(indexed, 4).importUrls(urls);
+			Assert.assertEquals(30, first.getAdded());
+			Assert.assertEquals(0, first.getFailed());
+			Assert.assertEquals(30, server.getRequestCount("/api/1/bookmarks/add"));
+
+			final ImportResult again = new BulkImporter(indexed, 4).importUrls(urls);
+			Assert.assertEquals(30, again.getAdded());
+			Assert.assertEquals(0, again.getFailed());
+			for (int i = 0; i < 30; i++) {
+				Assert.assertEquals(first.getItems().get(i).getBookmarkId(), again.getItems().get(i).getBookmarkId());
+			}
+			Assert.assertEquals(30, server.getRequestCount("/api/1/bookmarks/add"));
+		} finally {
+			indexed.destroy();
+		}
+	}
+}
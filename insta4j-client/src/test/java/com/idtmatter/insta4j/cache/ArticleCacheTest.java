@@ -0,0 +1,125 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.cache;
+
+import java.io.File;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.InstaRuntime;
+import com.idtmatter.insta4j.client.StubInstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Checks the tiers, hash validation and counters of {@link ArticleCache}.
+ */
+public class ArticleCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldServeEvictedTextsFromDisk() {
+		final File directory = folder.newFolder("articles");
+		final ArticleCache cache = new ArticleCache(4000, directory, 1024 * 1024);
+		cache.put(1, "hashA", text('a', 1500));
+		cache.put(2, "hashB", text('b', 1500));
+		Assert.assertEquals(1, cache.getHeapEvictions());
+		Assert.assertEquals(text('b', 1500), cache.get(2, "hashB"));
+		Assert.assertEquals(text('a', 1500), cache.get(1, "hashA"));
+		Assert.assertEquals(1, cache.getHeapHits());
+		Assert.assertEquals(1, cache.getDiskHits());
+		Assert.assertTrue(cache.getDiskBytes() < 200);
+
+		Assert.assertNull(cache.get(1, "changed"));
+		Assert.assertEquals(1, cache.getMisses());
+		Assert.assertNull(new ArticleCache(4000, directory, 1024 * 1024).get(1, "hashA"));
+		Assert.assertEquals(text('b', 1500), new ArticleCache(4000, directory, 1024 * 1024).get(2, "hashB"));
+	}
+
+	@Test
+	public void shouldFetchEachHashOnce() throws Exception {
+		final InstapaperStubServer server = new InstapaperStubServer().dataset(new BookmarkDataset(10))
+				.account("jinstapaper@gmail.com", "open").start();
+		try {
+			final StubInstaClientConfig config = new StubInstaClientConfig(server);
+			config.getProperties().put(InstaClientConfig.PROPERTY_ARTICLE_CACHE, 1024 * 1024);
+			final FullInstaClient client = new FullInstaClient("jinstapaper@gmail.com", "open", config);
+			final InstaRecordBean bookmark = client.listBookmarks("1", null, (String[]) null).get(2);
+			final String text = client.getBookmark(bookmark.bookmark_id, "unread", bookmark.hash);
+			for (int i = 0; i < 10; i++) {
+				Assert.assertEquals(text, client.getBookmark(bookmark.bookmark_id, "unread", bookmark.hash));
+			}
+			Assert.assertEquals(1, server.getRequestCount("/api/1/bookmarks/get_text"));
+			Assert.assertEquals(10, client.getArticleCache().getHeapHits());
+			// a padded id names the same bookmark
+			Assert.assertEquals(text, client.getBookmark(" " + bookmark.bookmark_id + " ", "unread", bookmark.hash));
+			Assert.assertEquals(1, server.getRequestCount("/api/1/bookmarks/get_text"));
+			client.getBookmark(bookmark.bookmark_id, "unread", "changed");
+			Assert.assertEquals(2, server.getRequestCount("/api/1/bookmarks/get_text"));
+			client.destroy();
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void shouldKeepTextsOfEachAccount() throws Exception {
+		final InstapaperStubServer server = new InstapaperStubServer().dataset(new BookmarkDataset(10)).start();
+		try {
+			final File directory = folder.newFolder("shared");
+			final StubInstaClientConfig config = new StubInstaClientConfig(server);
+			config.getProperties().put(InstaClientConfig.PROPERTY_ARTICLE_CACHE, 1024 * 1024);
+			config.getProperties().put(InstaClientConfig.PROPERTY_ARTICLE_CACHE_DIRECTORY, directory);
+			final InstaRuntime runtime = new InstaRuntime(config);
+			final Map<String, String> tokenA = server.issueToken("a@example.com");
+			final Map<String, String> tokenB = server.issueToken("b@example.com");
+			final FullInstaClient a = runtime.client("a@example.com", tokenA.get("oauth_token"),
+					tokenA.get("oauth_token_secret"));
+			final FullInstaClient b = runtime.client("b@example.com", tokenB.get("oauth_token"),
+					tokenB.get("oauth_token_secret"));
+			final InstaRecordBean bookmark = a.listBookmarks("1", null, (String[]) null).get(2);
+			a.getBookmark(bookmark.bookmark_id, "unread", bookmark.hash);
+			a.getBookmark(bookmark.bookmark_id, "unread", bookmark.hash);
+			Assert.assertEquals(1, server.getRequestCount("/api/1/bookmarks/get_text"));
+
+			// the same bookmark_id and hash, asked for by another account, goes to Instapaper
+			b.getBookmark(bookmark.bookmark_id, "unread", bookmark.hash);
+			Assert.assertEquals(2, server.getRequestCount("/api/1/bookmarks/get_text"));
+			final long id = Long.parseLong(bookmark.bookmark_id);
+			Assert.assertNull(new ArticleCache(0, directory, 1024 * 1024).get("c@example.com", id, bookmark.hash));
+			runtime.destroy();
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static String text(final char c, final int length) {
+		final StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			text.append(c);
+		}
+		return text.toString();
+	}
+}
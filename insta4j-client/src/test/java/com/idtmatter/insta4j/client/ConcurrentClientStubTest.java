@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.client.oauth.OAuthSignerTest;
+import com.idtmatter.insta4j.client.transport.InstaTransport;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+/**
+ * Switches the account of a {@link FullInstaClient} while other threads send requests through it, every request
+ * must be signed with the token and the secret of one account.
+ */
+public class ConcurrentClientStubTest {
+
+	private static final int THREADS = 8;
+	private static final int CALLS = 150;
+
+	private InstapaperStubServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().account("alice", "alice-password").account("bob", "bob-password")
+				.requireKnownToken(true).start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void switchesAccountsWhileSending() throws Exception {
+		final VerifyingTransport transport = new VerifyingTransport();
+		final StubInstaClientConfig config = new StubInstaClientConfig(server);
+		config.getProperties().put(InstaClientConfig.PROPERTY_TRANSPORT, transport);
+		// every call sends its own request
+		config.getProperties().put(InstaClientConfig.PROPERTY_COALESCE_READS, false);
+		final FullInstaClient client = new FullInstaClient("alice", "alice-password", config);
+		final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			final List<Future<Set<String>>> futures = new ArrayList<Future<Set<String>>>();
+			for (int t = 0; t < THREADS; t++) {
+				futures.add(executor.submit(new Callable<Set<String>>() {
+					public Set<String> call() {
+						final Set<String> users = new HashSet<String>();
+						for (int i = 0; i < CALLS; i++) {
+							final InstaRecordBean user = client.verifyCredentials();
+							users.add(user.username);
+						}
+						return users;
+					}
+				}));
+			}
+			for (int i = 0; i < 40; i++) {
+				if (i % 2 == 0) {
+					client.authorize("bob", "bob-password");
+				} else {
+					client.authorize("alice", "alice-password");
+				}
+			}
+			final Set<String> users = new HashSet<String>();
+			for (final Future<Set<String>> future : futures) {
+				users.addAll(future.get());
+			}
+			users.removeAll(Arrays.asList("alice", "bob"));
+			Assert.assertEquals(Collections.emptySet(), users);
+			Assert.assertEquals(0, transport.unverified.get());
+			Assert.assertEquals(THREADS * CALLS + 41, transport.verified.get());
+			Assert.assertEquals("alice", client.getCredentials().getUsername());
+		} finally {
+			executor.shutdown();
+			client.destroy();
+		}
+	}
+
+	/**
+	 * Sends the requests over HttpURLConnection and checks their signature with the Jersey oauth-signature.
+	 */
+	private final class VerifyingTransport implements InstaTransport {
+		final AtomicInteger verified = new AtomicInteger();
+		final AtomicInteger unverified = new AtomicInteger();
+		private final Pattern token = Pattern.compile("oauth_token=\"([^\"]+)\"");
+
+		public Client createClient(final ClientConfig config) {
+			final Client client = Client.create(config);
+			// the filters of the runtime are added in front of it, it sees the requests as sent
+			client.addFilter(new ClientFilter() {
+				@Override
+				public ClientResponse handle(final ClientRequest request) throws ClientHandlerException {
+					verify(request);
+					return getNext().handle(request);
+				}
+			});
+			return client;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void verify(final ClientRequest request) {
+			final String header = request.getHeaders().getFirst("Authorization").toString();
+			final Matcher matcher = token.matcher(header);
+			final String tokenSecret = matcher.find() ? server.getTokenSecret(matcher.group(1)) : null;
+			final MultivaluedMap<String, String> form = request.getEntity() instanceof MultivaluedMap
+					? (MultivaluedMap<String, String>) request.getEntity() : null;
+			try {
+				if (OAuthSignerTest.verify(request.getMethod(), request.getURI(), form, header,
+						"stub-consumer-secret", tokenSecret)) {
+					verified.incrementAndGet();
+				} else {
+					unverified.incrementAndGet();
+				}
+			} catch (Exception e) {
+				throw new ClientHandlerException(e);
+			}
+		}
+
+		public void shutdown() {
+		}
+	}
+}
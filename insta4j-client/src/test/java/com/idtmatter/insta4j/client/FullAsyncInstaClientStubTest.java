@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.ErrorInjection;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.idtmatter.insta4j.stub.LatencyDistribution;
+
+/**
+ * Runs the {@link FullAsyncInstaClient} against the {@link InstapaperStubServer}.
+ */
+public class FullAsyncInstaClientStubTest {
+
+	private InstapaperStubServer server;
+	private FullAsyncInstaClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(100)).account("jinstapaper@gmail.com", "open")
+				.start();
+		client = FullAsyncInstaClient.create(new FullInstaClient("jinstapaper@gmail.com", "open",
+				new StubInstaClientConfig(server)));
+	}
+
+	@After
+	public void tearDown() {
+		client.shutdown();
+		server.stop();
+	}
+
+	@Test
+	public void shouldRunCallsConcurrently() throws Exception {
+		server.latency(LatencyDistribution.fixed(200));
+		final List<InstaFuture<List<InstaRecordBean>>> futures = new ArrayList<InstaFuture<List<InstaRecordBean>>>();
+		final long start = System.nanoTime();
+		for (int i = 0; i < 20; i++) {
+			futures.add(client.listBookmarks("10", null));
+		}
+		for (final InstaFuture<List<InstaRecordBean>> future : futures) {
+			Assert.assertEquals(12, future.join().size());
+		}
+		// 20 sequential calls would take at least 4 seconds
+		Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+	}
+
+	@Test
+	public void shouldNotifyCallbacks() throws Exception {
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicReference<InstaRecordBean> folder = new AtomicReference<InstaRecordBean>();
+		client.createFolder("news").addCallback(new InstaCallback<InstaRecordBean>() {
+			public void onSuccess(final InstaRecordBean result) {
+				folder.set(result);
+				done.countDown();
+			}
+
+			public void onFailure(final Throwable failure) {
+				done.countDown();
+			}
+		});
+		Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals("news", folder.get().title);
+	}
+
+	@Test
+	public void shouldFailFutureWithClientException() throws Exception {
+		server.inject(ErrorInjection.of(1240, 1.0));
+		final InstaFuture<InstaRecordBean> future = client.addBookmark("http://toilettwit.info/", null, null, false);
+		try {
+			future.join();
+			Assert.fail("The injected error should fail the future");
+		} catch (RuntimeException e) {
+			Assert.assertTrue(future.isDone());
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import static java.util.Arrays.asList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.InvalidCredentialsException;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.jsonp.TypedRecordHandler;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.model.Folder;
+import com.idtmatter.insta4j.model.User;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.ErrorInjection;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Runs the {@link FullInstaClient} against the {@link InstapaperStubServer}, no Instapaper account needed.
+ */
+public class FullInstaClientStubTest {
+
+	private InstapaperStubServer server;
+	private FullInstaClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(1000)).account("jinstapaper@gmail.com", "open")
+				.start();
+		client = new FullInstaClient("jinstapaper@gmail.com", "open", new StubInstaClientConfig(server));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void shouldListBookmarks() {
+		final List<InstaRecordBean> records = client.listBookmarks("500", null, (String[]) null);
+		Assert.assertEquals(502, records.size());
+		Assert.assertEquals("meta", records.get(0).type);
+		Assert.assertEquals("jinstapaper@gmail.com", records.get(1).username);
+		final List<InstaRecordBean> bookmarks = FullInstaClient.selectRecordsByType(records, RecordType.BOOKMARK);
+		Assert.assertEquals(500, bookmarks.size());
+		Assert.assertEquals(Boolean.FALSE, bookmarks.get(0).starred);
+		Assert.assertNotNull(bookmarks.get(0).hash);
+	}
+
+	@Test
+	public void shouldSkipBookmarksTheClientHas() {
+		final String newest = Long.toString(BookmarkDataset.FIRST_BOOKMARK_ID + 999);
+		final List<InstaRecordBean> records = client.listBookmarks("10", null, newest, "1");
+		final List<InstaRecordBean> bookmarks = FullInstaClient.selectRecordsByType(records, RecordType.BOOKMARK);
+		Assert.assertEquals(10, bookmarks.size());
+		Assert.assertFalse(newest.equals(bookmarks.get(0).bookmark_id));
+	}
+
+	@Test
+	public void shouldStarAndMoveBookmark() {
+		final InstaRecordBean added = client.addBookmark("http://toilettwit.info/", "ToileTTwiT", null, false);
+		Assert.assertEquals("ToileTTwiT", added.title);
+		Assert.assertEquals(Boolean.TRUE, client.starBookmark(added.bookmark_id).starred);
+		final InstaRecordBean folder = client.createFolder("news");
+		client.moveBookmark(added.bookmark_id, folder.folder_id);
+		Assert.assertTrue(server.getDataset().get(Long.parseLong(added.bookmark_id)).isIn(folder.folder_id));
+		Assert.assertTrue(client.getBookmark(added.bookmark_id, folder.folder_id).contains("ToileTTwiT"));
+	}
+
+	@Test
+	public void shouldStreamBookmarksLikeTheyAreListed() {
+		final List<InstaRecordBean> listed = client.listBookmarks("500", null, (String[]) null);
+		final List<InstaRecordBean> streamed = new ArrayList<InstaRecordBean>();
+		Assert.assertEquals(502, client.streamBookmarks("500", null, new InstaRecordHandler() {
+			public void onRecord(final InstaRecordBean record) {
+				streamed.add(record);
+			}
+		}));
+		for (int i = 0; i < listed.size(); i++) {
+			Assert.assertEquals(listed.get(i).toString(), streamed.get(i).toString());
+		}
+	}
+
+	@Test
+	public void shouldSortListResultByType() {
+		final InstaRecordBean added = client.addBookmark("http://toilettwit.info/", "ToileTTwiT", null, false);
+		final List<InstaRecordBean> listed = client.listBookmarks("500", null, (String[]) null);
+		client.deleteBookmark(added.bookmark_id);
+		final BookmarkListResult result = client.listBookmarkResult("500", null, added.bookmark_id);
+		Assert.assertEquals("meta", result.getMeta().type);
+		Assert.assertEquals(listed.get(1).user_id, result.getUser().user_id);
+		Assert.assertEquals(listed.size() - 2, result.getBookmarks().size());
+		Assert.assertEquals(listed.get(3).bookmark_id, result.getBookmarks().get(0).bookmark_id);
+		Assert.assertEquals(asList(added.bookmark_id), result.getDeleteIds());
+		Assert.assertTrue(result.getErrors().isEmpty());
+		Assert.assertSame(RecordType.META, RecordType.fromType("meta"));
+		Assert.assertNull(RecordType.fromType("highlight"));
+	}
+
+	@Test
+	public void shouldStreamTypedBookmarkRecords() {
+		final List<InstaRecordBean> listed = client.listBookmarks("500", null, (String[]) null);
+		final List<Bookmark> bookmarks = new ArrayList<Bookmark>();
+		Assert.assertEquals(502, client.streamBookmarkRecords("500", null, new TypedRecordHandler() {
+			public void onBookmark(final Bookmark bookmark) {
+				bookmarks.add(bookmark);
+			}
+
+			public void onFolder(final Folder folder) {
+				Assert.fail();
+			}
+
+			public void onUser(final User user) {
+				Assert.assertEquals(listed.get(1).user_id, Long.toString(user.getUserId()));
+			}
+
+			public void onRecord(final InstaRecordBean record) {
+				Assert.assertEquals("meta", record.type);
+			}
+		}));
+		for (int i = 0; i < bookmarks.size(); i++) {
+			Assert.assertEquals(Bookmark.fromBean(listed.get(i + 2)), bookmarks.get(i));
+		}
+	}
+
+	@Test
+	public void shouldCloseIteratorStoppedEarly() {
+		final InstaRecordIterator records = client.iterateBookmarks("500", null);
+		Assert.assertEquals("meta", records.next().type);
+		records.close();
+		Assert.assertFalse(records.hasNext());
+		Assert.assertEquals(3, client.listBookmarks("1", null, (String[]) null).size());
+	}
+
+	@Test(expected = InstaClientException.class)
+	public void shouldFailStreamOnErrorRecord() {
+		server.inject(ErrorInjection.of(1040, 1.0).on("/api/1/bookmarks"));
+		client.iterateBookmarks("500", null).hasNext();
+	}
+
+	@Test(expected = ResourceExistsException.class)
+	public void shouldRefuseDuplicateFolder() {
+		client.createFolder("news");
+		client.createFolder("news");
+	}
+
+	@Test(expected = InstaClientException.class)
+	public void shouldFailWhenRateLimited() {
+		server.inject(ErrorInjection.of(1040, 1.0).on("/api/1/bookmarks"));
+		client.starBookmark(Long.toString(BookmarkDataset.FIRST_BOOKMARK_ID));
+	}
+
+	@Test(expected = InvalidCredentialsException.class)
+	public void shouldRejectWrongPassword() {
+		client.authorize("jinstapaper@gmail.com", "ooloo");
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Runs the clients of many accounts on one {@link InstaRuntime}.
+ */
+public class InstaRuntimeStubTest {
+
+	private static final int ACCOUNTS = 1000;
+
+	private InstapaperStubServer server;
+	private InstaRuntime runtime;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(10)).account("jinstapaper@gmail.com", "open")
+				.start();
+		final StubInstaClientConfig config = new StubInstaClientConfig(server);
+		config.getProperties().put(InstaClientConfig.PROPERTY_TRANSPORT, "pooled");
+		config.getProperties().put(InstaClientConfig.PROPERTY_MAX_CONNECTIONS, "8");
+		runtime = new InstaRuntime(config);
+		executor = Executors.newFixedThreadPool(16);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+		runtime.destroy();
+		server.stop();
+	}
+
+	@Test
+	public void shouldSignEachRequestWithItsAccount() throws Exception {
+		final List<FullInstaClient> clients = new ArrayList<FullInstaClient>(ACCOUNTS);
+		for (int i = 0; i < ACCOUNTS; i++) {
+			final String username = "user" + i + "@example.com";
+			final Map<String, String> token = server.issueToken(username);
+			clients.add(runtime.client(username, token.get("oauth_token"), token.get("oauth_token_secret")));
+		}
+		final List<Future<String>> calls = new ArrayList<Future<String>>(ACCOUNTS);
+		for (final FullInstaClient client : clients) {
+			calls.add(executor.submit(new Callable<String>() {
+				public String call() {
+					return client.verifyCredentials().username;
+				}
+			}));
+		}
+		for (int i = 0; i < ACCOUNTS; i++) {
+			Assert.assertEquals(clients.get(i).getCredentials().getUsername(), calls.get(i).get());
+		}
+		// the accounts share the connections of the runtime
+		Assert.assertTrue(server.getConnectionCount() <= 8);
+	}
+
+	@Test
+	public void shouldLoginThroughSharedRuntime() {
+		final FullInstaClient client = runtime.login("jinstapaper@gmail.com", "open");
+		Assert.assertTrue(client.getCredentials().isAuthorized());
+		Assert.assertSame(runtime, client.getRuntime());
+		client.destroy();
+		// the runtime outlives the clients created from it
+		final FullInstaClient other = runtime.login("jinstapaper@gmail.com", "open");
+		Assert.assertEquals("jinstapaper@gmail.com", other.verifyCredentials().username);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.metrics.EndpointSnapshot;
+import com.idtmatter.insta4j.metrics.InstaMetrics;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.idtmatter.insta4j.stub.LatencyDistribution;
+
+/**
+ * Records the requests of a {@link FullInstaClient} against an {@link InstapaperStubServer} in {@link InstaMetrics}.
+ */
+public class MetricsStubTest {
+
+	private InstapaperStubServer server;
+	private InstaMetrics metrics;
+	private FullInstaClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(100)).latency(LatencyDistribution.fixed(5))
+				.account("jinstapaper@gmail.com", "open").start();
+		final StubInstaClientConfig config = new StubInstaClientConfig(server);
+		metrics = new InstaMetrics();
+		config.getProperties().put(InstaClientConfig.PROPERTY_METRICS, metrics);
+		client = new FullInstaClient("jinstapaper@gmail.com", "open", config);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void shouldRecordEndpoints() {
+		for (int i = 0; i < 10; i++) {
+			client.listBookmarks("50", null, (String[]) null);
+		}
+		try {
+			client.addBookmark("ftp://example.com/", null, null, null);
+			Assert.fail("The invalid url should fail the call");
+		} catch (InstaClientException e) {
+			// expected
+		}
+
+		final EndpointSnapshot list = metrics.snapshot("/api/1/bookmarks/list");
+		Assert.assertEquals(10, list.getRequests());
+		Assert.assertEquals(Long.valueOf(10), list.getStatuses().get(200));
+		Assert.assertEquals(0, list.getInFlight());
+		Assert.assertTrue(list.getLatency().getPercentile(0.5) >= 5000);
+		Assert.assertTrue(list.getRequestBytes() > 0);
+		Assert.assertTrue(list.getResponseBytes() > 10 * 50 * 100);
+		final EndpointSnapshot add = metrics.snapshot("/api/1/bookmarks/add");
+		Assert.assertEquals(Long.valueOf(1), add.getStatuses().get(400));
+		Assert.assertEquals(Long.valueOf(1), add.getErrorCodes().get(1240));
+
+		final String exposition = metrics.toPrometheus();
+		Assert.assertTrue(exposition.contains(
+				"insta4j_requests_total{endpoint=\"/api/1/bookmarks/list\",status=\"200\"} 10\n"));
+		Assert.assertTrue(exposition.contains("insta4j_errors_total{endpoint=\"/api/1/bookmarks/add\",code=\"1240\"} 1\n"));
+		Assert.assertTrue(exposition.contains(
+				"insta4j_request_duration_seconds{endpoint=\"/api/1/bookmarks/list\",quantile=\"0.99\"} 0.0"));
+	}
+}
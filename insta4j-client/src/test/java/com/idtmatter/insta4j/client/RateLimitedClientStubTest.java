@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.ratelimit.RateLimiter;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Runs a {@link FullInstaClient} paced by a {@link RateLimiter} against a stub throttling with 1040.
+ */
+public class RateLimitedClientStubTest {
+
+	private InstapaperStubServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().account("jinstapaper@gmail.com", "open").rateLimit(40).start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void shouldQueueRateLimitedRequestsInsteadOfFailing() throws Exception {
+		final StubInstaClientConfig config = new StubInstaClientConfig(server);
+		final RateLimiter limiter = new RateLimiter(0, 200);
+		config.getProperties().put(InstaClientConfig.PROPERTY_RATE_LIMITER, limiter);
+		// every call goes out, identical concurrent reads would otherwise share requests
+		config.getProperties().put(InstaClientConfig.PROPERTY_COALESCE_READS, "false");
+		final FullInstaClient client = new FullInstaClient("jinstapaper@gmail.com", "open", config);
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final long start = System.nanoTime();
+			final List<Future<InstaRecordBean>> calls = new ArrayList<Future<InstaRecordBean>>();
+			for (int i = 0; i < 160; i++) {
+				calls.add(executor.submit(new Callable<InstaRecordBean>() {
+					public InstaRecordBean call() {
+						return client.verifyCredentials();
+					}
+				}));
+			}
+			for (final Future<InstaRecordBean> call : calls) {
+				Assert.assertEquals("user", call.get().type);
+			}
+			final double rate = 160 / ((System.nanoTime() - start) / 1e9);
+			// the server takes a burst of 40 then 40 per second, the limiter backs off without stalling
+			Assert.assertTrue("160 calls at " + rate + "/s", rate < 160 / 3.0 && rate > 10);
+			Assert.assertTrue(server.getRateLimitedCount() > 0);
+			Assert.assertTrue(limiter.getRate("jinstapaper@gmail.com") < 200);
+		} finally {
+			executor.shutdown();
+			client.destroy();
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.idtmatter.insta4j.stub.LatencyDistribution;
+
+/**
+ * Runs concurrent reads of a {@link FullInstaClient} sharing their requests through a {@link SingleFlight}.
+ */
+public class SingleFlightStubTest {
+
+	private InstapaperStubServer server;
+	private FullInstaClient client;
+	private ExecutorService executor;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(10)).latency(LatencyDistribution.fixed(200))
+				.account("jinstapaper@gmail.com", "open").start();
+		client = new FullInstaClient("jinstapaper@gmail.com", "open", new StubInstaClientConfig(server));
+		executor = Executors.newFixedThreadPool(16);
+	}
+
+	@After
+	public void tearDown() {
+		executor.shutdown();
+		server.stop();
+	}
+
+	@Test
+	public void shouldShareConcurrentReads() throws Exception {
+		final CyclicBarrier start = new CyclicBarrier(16);
+		final List<Future<List<InstaRecordBean>>> calls = new ArrayList<Future<List<InstaRecordBean>>>();
+		for (int i = 0; i < 16; i++) {
+			calls.add(executor.submit(new Callable<List<InstaRecordBean>>() {
+				public List<InstaRecordBean> call() throws Exception {
+					start.await();
+					client.verifyCredentials();
+					return client.listFolders();
+				}
+			}));
+		}
+		for (final Future<List<InstaRecordBean>> call : calls) {
+			Assert.assertEquals(call.get().size(), calls.get(0).get().size());
+		}
+		// every caller has its own list
+		Assert.assertNotSame(calls.get(0).get(), calls.get(1).get());
+		Assert.assertTrue(server.getRequestCount("/api/1/folders/list") <= 2);
+		Assert.assertTrue(server.getRequestCount("/api/1/account/verify_credentials") <= 2);
+		Assert.assertEquals(32, client.getSingleFlight().getExecuted() + client.getSingleFlight().getShared());
+	}
+
+	@Test
+	public void shouldNotShareReadsAcrossChanges() throws Exception {
+		final int folders = client.listFolders().size();
+		final Future<List<InstaRecordBean>> before = executor.submit(new Callable<List<InstaRecordBean>>() {
+			public List<InstaRecordBean> call() {
+				return client.listFolders();
+			}
+		});
+		Thread.sleep(50);
+		client.createFolder("news");
+		Assert.assertEquals(folders + 1, client.listFolders().size());
+		Assert.assertEquals(folders, before.get().size());
+		Assert.assertEquals(3, server.getRequestCount("/api/1/folders/list"));
+	}
+}
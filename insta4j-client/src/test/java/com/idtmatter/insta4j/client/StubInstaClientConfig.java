@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * A client configuration pointing at an {@link InstapaperStubServer}, no insta4j.properties needed.
+ */
+public class StubInstaClientConfig implements InstaClientConfig {
+
+	private final Map<String, Boolean> features = new HashMap<String, Boolean>();
+	private final Map<String, Object> properties = new HashMap<String, Object>();
+
+	public StubInstaClientConfig(final InstapaperStubServer server) {
+		properties.put(PROPERTY_CONSUMER_KEY, "stub-consumer-key");
+		properties.put(PROPERTY_CONSUMER_SECRET, "stub-consumer-secret");
+		properties.put(PROPERTY_API_BASE_URL, server.getBaseUrl());
+	}
+
+	public Map<String, Boolean> getFeatures() {
+		return features;
+	}
+
+	public boolean getFeature(final String featureName) {
+		final Boolean v = features.get(featureName);
+		return (v != null) ? v : false;
+	}
+
+	public Map<String, Object> getProperties() {
+		return properties;
+	}
+
+	public Object getProperty(final String propertyName) {
+		return properties.get(propertyName);
+	}
+
+	public boolean getPropertyAsFeature(final String name) {
+		final Object v = properties.get(name);
+		return v != null && Boolean.valueOf(v.toString());
+	}
+}
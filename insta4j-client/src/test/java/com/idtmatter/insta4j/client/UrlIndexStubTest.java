@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+
+package com.idtmatter.insta4j.client;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.dedup.UrlIndex;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Runs a {@link FullInstaClient} answering the urls of its {@link UrlIndex} without a request.
+ */
+public class UrlIndexStubTest {
+
+	private static final String ADD = "/api/1/bookmarks/add";
+	private static final long FIRST = BookmarkDataset.FIRST_BOOKMARK_ID;
+
+	private InstapaperStubServer server;
+	private FullInstaClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(20)).account("jinstapaper@gmail.com", "open")
+				.start();
+		final InstaClientConfig config = new StubInstaClientConfig(server);
+		config.getProperties().put(InstaClientConfig.PROPERTY_URL_INDEX, "true");
+		client = new FullInstaClient("jinstapaper@gmail.com", "open", config);
+	}
+
+	@After
+	public void tearDown() {
+		client.destroy();
+		server.stop();
+	}
+
+	@Test
+	public void shouldSkipListedUrls() {
+		client.listBookmarks("500", null);
+		Assert.assertEquals(20, client.getUrlIndex().size());
+
+		final InstaRecordBean known = client.addBookmark("https://EXAMPLE.com/articles/" + FIRST
+				+ "/?utm_source=feed", null, null, null);
+		Assert.assertEquals(String.valueOf(FIRST), known.bookmark_id);
+		Assert.assertEquals(0, server.getRequestCount(ADD));
+
+		final InstaRecordBean added = client.addBookmark("http://example.com/new", "New", null, null);
+		Assert.assertEquals(1, server.getRequestCount(ADD));
+		Assert.assertEquals(added.bookmark_id, client.addBookmark("http://example.com/new#comments", null, null,
+				null).bookmark_id);
+		Assert.assertEquals(1, server.getRequestCount(ADD));
+
+		// a new title is sent for Instapaper to update the bookmark
+		Assert.assertEquals("Renamed", client.addBookmark("http://example.com/new", "Renamed", null, null).title);
+		Assert.assertEquals(2, server.getRequestCount(ADD));
+	}
+
+	@Test
+	public void shouldSendUrlsLeavingUnread() {
+		client.listBookmarks("500", null);
+		client.archiveBookmark(String.valueOf(FIRST));
+		client.deleteBookmark(String.valueOf(FIRST + 1));
+		Assert.assertEquals(18, client.getUrlIndex().size());
+
+		client.addBookmark("http://example.com/articles/" + FIRST, null, null, null);
+		client.addBookmark("http://example.com/articles/" + (FIRST + 1), null, null, null);
+		client.addBookmark("http://example.com/articles/" + (FIRST + 2), null, null, null);
+		Assert.assertEquals(2, server.getRequestCount(ADD));
+		Assert.assertEquals(20, client.getUrlIndex().size());
+	}
+
+	@Test
+	public void shouldKeepAnIndexPerAccount() {
+		server.account("other@gmail.com", "secret");
+		final InstaClientConfig config = new StubInstaClientConfig(server);
+		config.getProperties().put(InstaClientConfig.PROPERTY_URL_INDEX, "true");
+		final InstaRuntime runtime = new InstaRuntime(config);
+		try {
+			final FullInstaClient first = runtime.login("jinstapaper@gmail.com", "open");
+			final FullInstaClient second = runtime.login("other@gmail.com", "secret");
+			Assert.assertNotSame(first.getUrlIndex(), second.getUrlIndex());
+			Assert.assertSame(first.getUrlIndex(), runtime.login("jinstapaper@gmail.com", "open").getUrlIndex());
+
+			first.addBookmark("http://example.com/shared", null, null, null);
+			Assert.assertEquals(1, server.getRequestCount(ADD));
+			Assert.assertNotNull(second.addBookmark("http://example.com/shared", null, null, null).bookmark_id);
+			Assert.assertEquals(2, server.getRequestCount(ADD));
+			first.addBookmark("http://example.com/shared", null, null, null);
+			second.addBookmark("http://example.com/shared", null, null, null);
+			Assert.assertEquals(2, server.getRequestCount(ADD));
+		} finally {
+			runtime.destroy();
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.client.InstaRuntime;
+
+/**
+ * Checks the {@link InstaConfigSnapshot} parses once, can not be changed and is swapped by a reload.
+ */
+public class InstaConfigSnapshotTest {
+
+	@After
+	public void tearDown() {
+		System.clearProperty(InstaClientConfig.PROPERTY_CONSUMER_KEY);
+		System.clearProperty(InstaClientConfig.PROPERTY_CONSUMER_SECRET);
+		System.clearProperty(InstaClientConfig.PROPERTY_READ_TIMEOUT);
+		System.clearProperty(InstaClientConfig.PROPERTY_ACCOUNT_RATE);
+	}
+
+	@Test
+	public void parsesTuningProperties() {
+		final Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(InstaClientConfig.PROPERTY_READ_TIMEOUT, " 2500 ");
+		properties.put(InstaClientConfig.PROPERTY_MAX_CONNECTIONS, 64);
+		properties.put(InstaClientConfig.PROPERTY_ACCOUNT_RATE, "0.5");
+		properties.put(InstaClientConfig.PROPERTY_COALESCE_READS, "false");
+		properties.put(InstaClientConfig.PROPERTY_LOG_HTTP_TRAFFIC, "true");
+		final InstaConfigSnapshot config = new InstaConfigSnapshot(properties);
+		Assert.assertEquals(2500, config.getReadTimeout());
+		Assert.assertEquals(0, config.getConnectTimeout());
+		Assert.assertEquals(64, config.getMaxConnections());
+		Assert.assertEquals(64, config.getMaxConnectionsPerRoute());
+		Assert.assertEquals(0.5, config.getAccountRate(), 0);
+		Assert.assertEquals(3, config.getRetryAttempts());
+		Assert.assertEquals(InstaConfigSnapshot.DEFAULT_ASYNC_POOL_SIZE, config.getAsyncPoolSize());
+		Assert.assertEquals(8, config.with(InstaClientConfig.PROPERTY_ASYNC_POOL_SIZE, "8").getAsyncPoolSize());
+		Assert.assertFalse(config.isCoalesceReads());
+		Assert.assertTrue(config.getPropertyAsFeature(InstaClientConfig.PROPERTY_LOG_HTTP_TRAFFIC));
+
+		properties.put(InstaClientConfig.PROPERTY_READ_TIMEOUT, "1");
+		Assert.assertEquals("later changes are not seen", 2500, config.getReadTimeout());
+		try {
+			config.getProperties().put(InstaClientConfig.PROPERTY_READ_TIMEOUT, "1");
+			Assert.fail("a snapshot can not be changed");
+		} catch (UnsupportedOperationException expected) {
+		}
+		final InstaConfigSnapshot changed = config.with(InstaClientConfig.PROPERTY_READ_TIMEOUT, 100);
+		Assert.assertEquals(100, changed.getReadTimeout());
+		Assert.assertEquals(2500, config.getReadTimeout());
+
+		properties.put(InstaClientConfig.PROPERTY_RETRY_ATTEMPTS, "three");
+		try {
+			new InstaConfigSnapshot(properties);
+			Assert.fail("a malformed number fails when the snapshot is made");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	@Test
+	public void reloadSwapsTheDefault() {
+		// the test classpath has no insta4j.properties
+		System.setProperty(InstaClientConfig.PROPERTY_CONSUMER_KEY, "key");
+		System.setProperty(InstaClientConfig.PROPERTY_CONSUMER_SECRET, "secret");
+		System.setProperty(InstaClientConfig.PROPERTY_READ_TIMEOUT, "1000");
+		final InstaConfigSnapshot first = InstaConfigSnapshot.reload();
+		Assert.assertSame(first, InstaConfigSnapshot.getDefault());
+		Assert.assertEquals(1000, first.getReadTimeout());
+		Assert.assertEquals("key", new DefaultInstaClientConfig().getProperty(InstaClientConfig.PROPERTY_CONSUMER_KEY));
+
+		System.setProperty(InstaClientConfig.PROPERTY_READ_TIMEOUT, "2000");
+		Assert.assertEquals("read once", 1000, InstaConfigSnapshot.getDefault().getReadTimeout());
+		final InstaConfigSnapshot second = InstaConfigSnapshot.reload();
+		Assert.assertSame(second, InstaConfigSnapshot.getDefault());
+		Assert.assertEquals(2000, second.getReadTimeout());
+		Assert.assertEquals(1000, first.getReadTimeout());
+
+		System.clearProperty(InstaClientConfig.PROPERTY_CONSUMER_SECRET);
+		try {
+			InstaConfigSnapshot.reload();
+			Assert.fail("the consumer secret is missing");
+		} catch (IllegalArgumentException expected) {
+		}
+		Assert.assertSame("a failed reload keeps the default", second, InstaConfigSnapshot.getDefault());
+	}
+
+	@Test
+	public void reloadChangesRateLimits() {
+		System.setProperty(InstaClientConfig.PROPERTY_CONSUMER_KEY, "reloaded-key");
+		System.setProperty(InstaClientConfig.PROPERTY_CONSUMER_SECRET, "secret");
+		System.setProperty(InstaClientConfig.PROPERTY_ACCOUNT_RATE, "2");
+		InstaConfigSnapshot.reload();
+		final InstaRuntime first = new InstaRuntime();
+		Assert.assertEquals(2.0, first.getRateLimiter().getRate("account"), 0);
+
+		System.setProperty(InstaClientConfig.PROPERTY_ACCOUNT_RATE, "5");
+		InstaConfigSnapshot.reload();
+		final InstaRuntime second = new InstaRuntime();
+		Assert.assertEquals(5.0, second.getRateLimiter().getRate("account"), 0);
+		Assert.assertEquals(2.0, first.getRateLimiter().getRate("account"), 0);
+		final InstaRuntime third = new InstaRuntime();
+		Assert.assertSame("runtimes of the same rates share a limiter", second.getRateLimiter(),
+				third.getRateLimiter());
+		first.destroy();
+		second.destroy();
+		third.destroy();
+	}
+}
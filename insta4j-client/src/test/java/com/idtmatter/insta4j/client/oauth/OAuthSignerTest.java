@@ -0,0 +1,216 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client.oauth;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.ws.rs.core.MultivaluedMap;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.sun.jersey.api.uri.UriComponent;
+import com.sun.jersey.core.util.MultivaluedMapImpl;
+import com.sun.jersey.oauth.signature.HMAC_SHA1;
+import com.sun.jersey.oauth.signature.OAuthParameters;
+import com.sun.jersey.oauth.signature.OAuthRequest;
+import com.sun.jersey.oauth.signature.OAuthSecrets;
+import com.sun.jersey.oauth.signature.OAuthSignature;
+
+/**
+ * Checks the {@link OAuthSigner} signs exactly as the Jersey oauth-client.
+ */
+public class OAuthSignerTest {
+
+	private static final String CONSUMER_KEY = "consumer key+/~";
+	private static final String CONSUMER_SECRET = "consumer&secret=ü";
+
+	@Test
+	public void signsAsJersey() throws Exception {
+		final OAuthSigner signer = new OAuthSigner(CONSUMER_KEY, CONSUMER_SECRET);
+		final MultivaluedMap<String, String> form = new MultivaluedMapImpl();
+		form.add("url", "http://example.com/a b?c=d&e=ф");
+		form.add("title", "Tea & ☕ ~*+");
+		form.add("have", "12:ab:0.5:1300000000,13:cd");
+		form.add("have", "");
+		form.add("a", "z");
+		form.add("a", "b");
+		final URI[] uris = {URI.create("https://www.instapaper.com/api/1/bookmarks/add"),
+				URI.create("HTTP://Localhost:8080/api/1/bookmarks/list?limit=10&folder_id=unread&x=a%20b+c"),
+				URI.create("http://localhost:80/api/1/folders/list?flag"),
+				URI.create("https://localhost:443/")};
+		final List<MultivaluedMap<String, String>> bodies = new ArrayList<MultivaluedMap<String, String>>();
+		bodies.add(null);
+		bodies.add(form);
+		long nonce = 0x0123456789abcdefL;
+		for (final URI uri : uris) {
+			for (final String token : new String[] {null, "token/1", "token=2"}) {
+				final String secret = token == null ? null : "secret of " + token;
+				for (final MultivaluedMap<String, String> body : bodies) {
+					final String header = signer.sign("POST", uri, body, token, secret, 1300000000L + nonce % 1000,
+							nonce);
+					Assert.assertEquals(parse(jersey("POST", uri, body, token, secret, 1300000000L + nonce % 1000,
+							String.format("%016X", nonce))), parse(header));
+					Assert.assertTrue(verify("POST", uri, body, header, secret));
+					nonce = nonce * 31 + 7;
+				}
+			}
+		}
+	}
+
+	@Test
+	public void signsWithFreshNonces() throws Exception {
+		final OAuthSigner signer = new OAuthSigner(CONSUMER_KEY, CONSUMER_SECRET);
+		final URI uri = URI.create("https://www.instapaper.com/api/1/account/verify_credentials");
+		final String first = signer.sign("POST", uri, null, "token", "secret");
+		final String second = signer.sign("POST", uri, null, "token", "secret");
+		Assert.assertFalse(first.equals(second));
+		Assert.assertTrue(verify("POST", uri, null, first, "secret"));
+		Assert.assertTrue(verify("POST", uri, null, second, "secret"));
+	}
+
+	/**
+	 * Jersey 1.11 encodes a character out of the basic plane as ??, while the form body carries its UTF-8 bytes.
+	 */
+	@Test
+	public void encodesSupplementaryCharactersAsUtf8() {
+		final StringBuilder encoded = new StringBuilder();
+		OAuthSigner.encode("a🍵 ü~", encoded);
+		Assert.assertEquals("a%F0%9F%8D%B5%20%C3%BC~", encoded.toString());
+	}
+
+	private static String jersey(final String method, final URI uri, final MultivaluedMap<String, String> form,
+			final String token, final String secret, final long timestamp, final String nonce) throws Exception {
+		final OAuthParameters parameters = new OAuthParameters().consumerKey(CONSUMER_KEY).signatureMethod(
+				HMAC_SHA1.NAME).version().timestamp(Long.toString(timestamp)).nonce(nonce);
+		final OAuthSecrets secrets = new OAuthSecrets().consumerSecret(CONSUMER_SECRET);
+		if (token != null) {
+			parameters.token(token);
+			secrets.tokenSecret(secret);
+		}
+		final Request request = new Request(method, uri, form);
+		OAuthSignature.sign(request, parameters, secrets);
+		return request.headers.get("Authorization").get(0);
+	}
+
+	/**
+	 * @return The parameters of an Authorization header, Jersey writes them in no particular order.
+	 */
+	private static Map<String, String> parse(final String header) {
+		Assert.assertTrue(header, header.startsWith("OAuth "));
+		final Map<String, String> parameters = new TreeMap<String, String>();
+		for (final String parameter : header.substring("OAuth ".length()).split(", ")) {
+			final int equals = parameter.indexOf('=');
+			Assert.assertTrue(parameter, parameter.charAt(equals + 1) == '"' && parameter.endsWith("\""));
+			parameters.put(parameter.substring(0, equals), parameter.substring(equals + 2, parameter.length() - 1));
+		}
+		return parameters;
+	}
+
+	private static boolean verify(final String method, final URI uri, final MultivaluedMap<String, String> form,
+			final String header, final String secret) throws Exception {
+		return verify(method, uri, form, header, CONSUMER_SECRET, secret);
+	}
+
+	/**
+	 * Checks the signature of a request with the Jersey oauth-signature, for the tests of other packages.
+	 *
+	 * @param form        The form parameters of the request, null if the body is not a form
+	 * @param tokenSecret The secret of the token the request claims to be signed with, null if none
+	 */
+	public static boolean verify(final String method, final URI uri, final MultivaluedMap<String, String> form,
+			final String header, final String consumerSecret, final String tokenSecret) throws Exception {
+		final Request request = new Request(method, uri, form);
+		request.addHeaderValue("Authorization", header);
+		final OAuthParameters parameters = new OAuthParameters();
+		parameters.readRequest(request);
+		final OAuthSecrets secrets = new OAuthSecrets().consumerSecret(consumerSecret);
+		if (tokenSecret != null) {
+			secrets.tokenSecret(tokenSecret);
+		}
+		return OAuthSignature.verify(request, parameters, secrets);
+	}
+
+	/**
+	 * A request as the Jersey oauth signature sees it.
+	 */
+	private static final class Request implements OAuthRequest {
+		private final String method;
+		private final URI uri;
+		private final Map<String, List<String>> parameters = new TreeMap<String, List<String>>();
+		final Map<String, List<String>> headers = new TreeMap<String, List<String>>();
+
+		Request(final String method, final URI uri, final MultivaluedMap<String, String> form) {
+			this.method = method;
+			this.uri = uri;
+			add(UriComponent.decodeQuery(uri, true));
+			if (form != null) {
+				add(form);
+			}
+		}
+
+		private void add(final MultivaluedMap<String, String> values) {
+			for (final Map.Entry<String, List<String>> entry : values.entrySet()) {
+				List<String> list = parameters.get(entry.getKey());
+				if (list == null) {
+					list = new ArrayList<String>();
+					parameters.put(entry.getKey(), list);
+				}
+				list.addAll(entry.getValue());
+			}
+		}
+
+		public String getRequestMethod() {
+			return method;
+		}
+
+		public URL getRequestURL() {
+			try {
+				return uri.toURL();
+			} catch (MalformedURLException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		public Set<String> getParameterNames() {
+			return parameters.keySet();
+		}
+
+		public List<String> getParameterValues(final String name) {
+			return parameters.get(name);
+		}
+
+		public List<String> getHeaderValues(final String name) {
+			return headers.get(name);
+		}
+
+		public void addHeaderValue(final String name, final String value) {
+			List<String> values = headers.get(name);
+			if (values == null) {
+				values = new ArrayList<String>();
+				headers.put(name, values);
+			}
+			values.add(value);
+		}
+	}
+}
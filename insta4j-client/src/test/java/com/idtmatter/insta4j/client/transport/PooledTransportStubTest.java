@@ -0,0 +1,147 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.client.transport;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.InvalidCredentialsException;
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.StubInstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.ErrorInjection;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Runs the {@link FullInstaClient} on a {@link PooledTransport} against the {@link InstapaperStubServer}.
+ */
+public class PooledTransportStubTest {
+
+	private InstapaperStubServer server;
+	private InstaClientConfig config;
+	private PooledTransport transport;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(100)).account("jinstapaper@gmail.com", "open")
+				.start();
+		config = new StubInstaClientConfig(server);
+		config.getProperties().put(InstaClientConfig.PROPERTY_MAX_CONNECTIONS, "4");
+		transport = new PooledTransport(config);
+		config.getProperties().put(InstaClientConfig.PROPERTY_TRANSPORT, transport);
+	}
+
+	@After
+	public void tearDown() {
+		transport.shutdown();
+		server.stop();
+	}
+
+	@Test
+	public void shouldReuseConnectionsAcrossThreads() throws Exception {
+		final FullInstaClient client = new FullInstaClient("jinstapaper@gmail.com", "open", config);
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<List<InstaRecordBean>>> calls = new ArrayList<Future<List<InstaRecordBean>>>();
+			for (int i = 0; i < 200; i++) {
+				calls.add(executor.submit(new Callable<List<InstaRecordBean>>() {
+					public List<InstaRecordBean> call() {
+						return client.listBookmarks("10", null);
+					}
+				}));
+			}
+			for (final Future<List<InstaRecordBean>> call : calls) {
+				Assert.assertEquals(12, call.get().size());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		Assert.assertTrue(server.getConnectionCount() <= 4);
+		Assert.assertTrue(transport.getConnectionsInPool() <= 4);
+	}
+
+	@Test
+	public void shouldReleaseConnectionsOfFailedCalls() {
+		final FullInstaClient client = new FullInstaClient("jinstapaper@gmail.com", "open", config);
+		server.inject(ErrorInjection.of(500, 1.0));
+		for (int i = 0; i < 10; i++) {
+			try {
+				client.listFolders();
+				Assert.fail("The injected error should fail the call");
+			} catch (RuntimeException e) {
+				// expected
+			}
+		}
+		server.clearInjections();
+		Assert.assertNotNull(client.listFolders());
+		Assert.assertEquals(1, server.getConnectionCount());
+	}
+
+	@Test
+	public void shouldCreateTransportFromProperty() {
+		config.getProperties().put(InstaClientConfig.PROPERTY_TRANSPORT, "pooled");
+		final InstaTransport created = InstaTransports.create(config);
+		try {
+			Assert.assertTrue(created instanceof PooledTransport);
+		} finally {
+			created.shutdown();
+		}
+		config.getProperties().remove(InstaClientConfig.PROPERTY_TRANSPORT);
+		Assert.assertTrue(InstaTransports.create(config) instanceof UrlConnectionTransport);
+	}
+
+	@Test
+	public void shouldShutDownTheTransportWhenAuthorizationFails() {
+		config.getProperties().put(InstaClientConfig.PROPERTY_TRANSPORT, CountingTransport.class.getName());
+		final int before = CountingTransport.SHUTDOWNS.get();
+		try {
+			new FullInstaClient("jinstapaper@gmail.com", "wrong", config);
+			Assert.fail("The wrong password should fail the constructor");
+		} catch (InvalidCredentialsException e) {
+			// expected
+		}
+		Assert.assertEquals(before + 1, CountingTransport.SHUTDOWNS.get());
+	}
+
+	/**
+	 * A pooled transport counting its shutdowns.
+	 */
+	public static class CountingTransport extends PooledTransport {
+		static final AtomicInteger SHUTDOWNS = new AtomicInteger();
+
+		public CountingTransport(final InstaClientConfig config) {
+			super(config);
+		}
+
+		@Override
+		public void shutdown() {
+			SHUTDOWNS.incrementAndGet();
+			super.shutdown();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.journal;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.InstaClient;
+import com.idtmatter.insta4j.client.StubInstaClientConfig;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.idtmatter.insta4j.stub.StubBookmark;
+import com.sun.jersey.api.client.ClientHandlerException;
+
+/**
+ * Runs the {@link OperationJournal} against an {@link InstapaperStubServer}, and against a client that can not reach
+ * Instapaper at all.
+ */
+public class OperationJournalStubTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private InstapaperStubServer server;
+	private FullInstaClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(40)).account("jinstapaper@gmail.com", "open")
+				.start();
+		client = new FullInstaClient("jinstapaper@gmail.com", "open", new StubInstaClientConfig(server));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void shouldCollapseOperationsWaitingForTheSameBookmark() throws Exception {
+		final File directory = folder.newFolder("collapse");
+		final CountDownLatch gate = new CountDownLatch(1);
+		// the first operation of each bookmark hangs in flight, the others wait behind it
+		final OperationJournal offline = new OperationJournal(unreachable(gate), directory, 3).retryDelay(60000);
+		offline.star(id(0));
+		offline.unstar(id(0));
+		offline.star(id(0));
+		offline.archive(id(0));
+		offline.unarchive(id(0));
+		offline.archive(id(1));
+		offline.unarchive(id(1));
+		offline.archive(id(1));
+		offline.star(id(2));
+		offline.archive(id(2));
+		offline.delete(id(2));
+		Assert.assertEquals(4, offline.getCollapsed());
+		gate.countDown();
+		offline.close();
+		Assert.assertEquals(7, offline.getPending());
+
+		final OperationJournal journal = new OperationJournal(client, directory, 2);
+		Assert.assertTrue(journal.awaitEmpty(10, TimeUnit.SECONDS));
+		journal.close();
+		Assert.assertEquals(3, journal.getCollapsed());
+		Assert.assertEquals(4, journal.getSent());
+		Assert.assertEquals(1, server.getRequestCount("/api/1/bookmarks/star"));
+		Assert.assertEquals(0, server.getRequestCount("/api/1/bookmarks/unstar"));
+		Assert.assertEquals(1, server.getRequestCount("/api/1/bookmarks/archive"));
+		Assert.assertEquals(1, server.getRequestCount("/api/1/bookmarks/unarchive"));
+		Assert.assertEquals(1, server.getRequestCount("/api/1/bookmarks/delete"));
+		Assert.assertTrue(bookmark(0).isStarred());
+		Assert.assertEquals(StubBookmark.UNREAD, bookmark(0).getFolder());
+		Assert.assertEquals(StubBookmark.ARCHIVE, bookmark(1).getFolder());
+		Assert.assertNull(server.getDataset().get(BookmarkDataset.FIRST_BOOKMARK_ID + 2));
+	}
+
+	@Test
+	public void shouldReplayOnlyUnacknowledgedOperationsAfterACrash() throws Exception {
+		final File directory = folder.newFolder("crash");
+		final OperationJournal online = new OperationJournal(client, directory, 2);
+		online.star(id(0));
+		online.archive(id(1));
+		Assert.assertTrue(online.awaitEmpty(10, TimeUnit.SECONDS));
+		online.close();
+
+		final OperationJournal offline = new OperationJournal(unreachable(null), directory, 2).retryDelay(60000);
+		offline.star(id(2));
+		offline.archive(id(3));
+		offline.close();
+		// a record torn by the crash
+		final FileOutputStream torn = new FileOutputStream(new File(directory, OperationJournal.FILE), true);
+		torn.write(new byte[] {0, 0, 0, 30, 1, 0, 0});
+		torn.close();
+
+		final OperationJournal journal = new OperationJournal(client, directory, 2);
+		Assert.assertTrue(journal.awaitEmpty(10, TimeUnit.SECONDS));
+		journal.close();
+		Assert.assertEquals(2, server.getRequestCount("/api/1/bookmarks/star"));
+		Assert.assertEquals(2, server.getRequestCount("/api/1/bookmarks/archive"));
+		Assert.assertTrue(bookmark(2).isStarred());
+		Assert.assertEquals(StubBookmark.ARCHIVE, bookmark(3).getFolder());
+
+		final OperationJournal reopened = new OperationJournal(client, directory, 2);
+		Assert.assertEquals(0, reopened.getPending());
+		reopened.close();
+		Assert.assertEquals(2, server.getRequestCount("/api/1/bookmarks/star"));
+	}
+
+	@Test
+	public void shouldSendConcurrentOperationsInOrderPerBookmark() throws Exception {
+		final OperationJournal journal = new OperationJournal(client, folder.newFolder("concurrent"), 4);
+		final ExecutorService callers = Executors.newFixedThreadPool(8);
+		final List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int thread = 0; thread < 8; thread++) {
+			final int offset = thread;
+			futures.add(callers.submit(new Callable<Void>() {
+				public Void call() throws Exception {
+					// each thread owns the bookmarks offset, offset + 8...
+					for (int round = 0; round < 50; round++) {
+						for (int i = offset; i < 40; i += 8) {
+							if (round % 2 == 0) {
+								journal.star(id(i));
+								journal.archive(id(i));
+							} else {
+								journal.unstar(id(i));
+								journal.unarchive(id(i));
+							}
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		for (final Future<?> future : futures) {
+			future.get();
+		}
+		callers.shutdown();
+		Assert.assertTrue(journal.awaitEmpty(30, TimeUnit.SECONDS));
+		journal.close();
+		Assert.assertEquals(4000, journal.getSent() + journal.getCollapsed());
+		Assert.assertEquals(0, journal.getFailed());
+		for (int i = 0; i < 40; i++) {
+			Assert.assertFalse(bookmark(i).isStarred());
+			Assert.assertEquals(StubBookmark.UNREAD, bookmark(i).getFolder());
+		}
+	}
+
+	private StubBookmark bookmark(final int index) {
+		return server.getDataset().get(BookmarkDataset.FIRST_BOOKMARK_ID + index);
+	}
+
+	private static String id(final int index) {
+		return String.valueOf(BookmarkDataset.FIRST_BOOKMARK_ID + index);
+	}
+
+	/**
+	 * @param gate Holds the calls until it opens, null to fail them at once
+	 * @return A client whose every call fails to connect.
+	 */
+	private static InstaClient unreachable(final CountDownLatch gate) {
+		return (InstaClient) Proxy.newProxyInstance(InstaClient.class.getClassLoader(),
+				new Class<?>[] {InstaClient.class}, new InvocationHandler() {
+					public Object invoke(final Object proxy, final Method method, final Object[] args)
+							throws InterruptedException {
+						if (gate != null) {
+							gate.await();
+						}
+						throw new ClientHandlerException("Connection refused");
+					}
+				});
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+import javax.ws.rs.ext.Providers;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.config.DefaultClientConfig;
+
+/**
+ * Checks that the {@link InstaJsonCodec} decodes records like the {@link JaxbRecordCodec} does.
+ */
+public class InstaJsonCodecTest {
+
+	private static final String LIST = "[{\"type\":\"meta\"},"
+			+ "{\"type\":\"user\",\"user_id\":1615568,\"username\":\"jinstapaper@gmail.com\",\"subscription_is_active\":\"1\"},"
+			+ "{\"type\":\"bookmark\",\"bookmark_id\":184117327,\"url\":\"http:\\/\\/toilettwit.info\\/\","
+			+ "\"title\":\"ToileTTwiT \\u00e9\\\"quoted\\\"\",\"description\":\"line\\nbreak\",\"time\":1310438674,"
+			+ "\"starred\":\"0\",\"private_source\":\"\",\"hash\":\"nHlrTfNc\",\"progress\":0.25,"
+			+ "\"progress_timestamp\":0},\n"
+			+ " {\"type\":\"folder\",\"folder_id\":1190085,\"title\":\"news\",\"sync_to_mobile\":\"1\","
+			+ "\"position\":1310749195}]";
+
+	@Test
+	public void shouldDecodeLikeJaxb() throws IOException {
+		final List<InstaRecordBean> expected = decode(new JaxbRecordCodec(jerseyProviders()), LIST);
+		final List<InstaRecordBean> actual = decode(new InstaJsonCodec(), LIST);
+		Assert.assertEquals(4, actual.size());
+		for (int i = 0; i < expected.size(); i++) {
+			Assert.assertEquals(expected.get(i).toString(), actual.get(i).toString());
+		}
+		Assert.assertEquals("ToileTTwiT é\"quoted\"", actual.get(2).title);
+		Assert.assertEquals(Double.valueOf(0.25), actual.get(2).progress);
+		Assert.assertEquals(Boolean.FALSE, actual.get(2).starred);
+		Assert.assertEquals(Long.valueOf(1310749195L), actual.get(3).position);
+	}
+
+	@Test
+	public void shouldDecodeUtf8AndSkipUnknownFields() throws IOException {
+		final String json = "{\"type\":\"error\",\"error_code\":1240,\"extra\":{\"a\":[1,\"]\"]},"
+				+ "\"message\":\"Grüße 日本 😀\"}";
+		final List<InstaRecordBean> records = decode(new InstaJsonCodec(), json);
+		Assert.assertEquals(1, records.size());
+		Assert.assertEquals("error", records.get(0).type);
+		Assert.assertEquals("1240", records.get(0).error_code);
+		Assert.assertEquals("Grüße 日本 😀", records.get(0).message);
+	}
+
+	@Test
+	public void shouldDecodeEmptyArray() throws IOException {
+		Assert.assertTrue(decode(new InstaJsonCodec(), " [ ] ").isEmpty());
+	}
+
+	@Test(expected = IOException.class)
+	public void shouldRejectTruncatedResponse() throws IOException {
+		decode(new InstaJsonCodec(), "[{\"type\":\"meta\"},{\"type\":\"us");
+	}
+
+	private static List<InstaRecordBean> decode(final RecordCodec codec, final String json) throws IOException {
+		return RecordCodecs.readAll(codec.newReader(new ByteArrayInputStream(json.getBytes("UTF-8"))));
+	}
+
+	private static Providers jerseyProviders() {
+		final ClientConfig config = new DefaultClientConfig();
+		config.getClasses().add(JAXBContextResolver.class);
+		return Client.create(config).getProviders();
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.jsonp;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.model.Folder;
+import com.idtmatter.insta4j.model.User;
+
+/**
+ * Checks that typed records decoded directly match the {@link InstaRecordBean} adapters and are smaller than them.
+ */
+public class TypedRecordReaderTest {
+
+	private static final String LIST = "[{\"type\":\"meta\"},"
+			+ "{\"type\":\"user\",\"user_id\":1615568,\"username\":\"jinstapaper@gmail.com\",\"subscription_is_active\":\"1\"},"
+			+ "{\"type\":\"bookmark\",\"bookmark_id\":184117327,\"url\":\"http:\\/\\/toilettwit.info\\/\","
+			+ "\"title\":\"ToileTTwiT\",\"description\":\"\",\"time\":1310438674,"
+			+ "\"starred\":\"1\",\"private_source\":\"\",\"hash\":\"nHlrTfNc\",\"progress\":0.25,"
+			+ "\"progress_timestamp\":1310438700},"
+			+ "{\"type\":\"folder\",\"folder_id\":1190085,\"title\":\"news\",\"sync_to_mobile\":\"1\","
+			+ "\"position\":1310749195}]";
+
+	@Test
+	public void shouldDecodeLikeTheBeanAdapters() throws IOException {
+		final List<Object> direct = read(new InstaJsonCodec());
+		final List<Object> adapted = read(new JacksonRecordCodec());
+		Assert.assertEquals(4, direct.size());
+		Assert.assertEquals(adapted.subList(1, 4), direct.subList(1, 4));
+		Assert.assertEquals("meta", ((InstaRecordBean) direct.get(0)).type);
+
+		final User user = (User) direct.get(1);
+		Assert.assertEquals(1615568L, user.getUserId());
+		Assert.assertTrue(user.isSubscriptionActive());
+		final Bookmark bookmark = (Bookmark) direct.get(2);
+		Assert.assertEquals(184117327L, bookmark.getBookmarkId());
+		Assert.assertEquals(1310438674L, bookmark.getTime());
+		Assert.assertEquals(0.25f, bookmark.getProgress());
+		Assert.assertTrue(bookmark.isStarred());
+		final Folder folder = (Folder) direct.get(3);
+		Assert.assertEquals(1190085L, folder.getFolderId());
+		Assert.assertEquals(1310749195L, folder.getPosition());
+
+		Assert.assertEquals(bookmark, Bookmark.fromBean(bookmark.toBean()));
+		Assert.assertEquals(folder, Folder.fromBean(folder.toBean()));
+		Assert.assertEquals(user, User.fromBean(user.toBean()));
+	}
+
+	@Test
+	public void shouldUseLessMemoryPerBookmarkThanTheBean() throws IOException {
+		final Bookmark bookmark = (Bookmark) read(new InstaJsonCodec()).get(2);
+		final InstaRecordBean bean = RecordCodecs.readAll(new InstaJsonCodec().newReader(stream(LIST))).get(2);
+		final long typedSize = GraphLayout.parseInstance(bookmark).totalSize();
+		final long beanSize = GraphLayout.parseInstance(bean).totalSize();
+		// the shell of the bean alone has 14 more reference fields, plus the boxed numbers and the string id
+		Assert.assertTrue("bean " + beanSize + ", typed " + typedSize, beanSize - typedSize >= 100);
+	}
+
+	private static List<Object> read(final RecordCodec codec) throws IOException {
+		final List<Object> records = new ArrayList<Object>();
+		final TypedRecordReader reader = new TypedRecordReader(codec, stream(LIST));
+		try {
+			while (reader.read(new TypedRecordHandler() {
+				public void onBookmark(final Bookmark bookmark) {
+					records.add(bookmark);
+				}
+
+				public void onFolder(final Folder folder) {
+					records.add(folder);
+				}
+
+				public void onUser(final User user) {
+					records.add(user);
+				}
+
+				public void onRecord(final InstaRecordBean record) {
+					records.add(record);
+				}
+			})) {
+				// all records go to the handler
+			}
+		} finally {
+			reader.close();
+		}
+		return records;
+	}
+
+	private static ByteArrayInputStream stream(final String json) throws IOException {
+		return new ByteArrayInputStream(json.getBytes("UTF-8"));
+	}
+}
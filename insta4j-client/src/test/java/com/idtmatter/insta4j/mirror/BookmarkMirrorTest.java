@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.mirror;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.StubInstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.model.Folder;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.idtmatter.insta4j.sync.SyncChanges;
+
+/**
+ * Checks that a {@link BookmarkMirror} survives restarts, compaction and torn writes, and that
+ * {@link MirroredBookmarks} only goes to the service when the mirror is stale.
+ */
+public class BookmarkMirrorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldReloadAfterRestartAndSnapshot() throws IOException {
+		final File directory = folder.newFolder("account");
+		BookmarkMirror mirror = new BookmarkMirror(directory);
+		mirror.apply(null, added(1, 5000), 1000L);
+		mirror.apply("archive", new SyncChanges(bookmarks(9000, 1), bookmarks(1, 1), Collections.singletonList(2L)),
+				2000L);
+		mirror.replaceFolders(Collections.singletonList(new Folder(1190085L, "news", true, 1310749195L)), 3000L);
+		mirror.close();
+
+		mirror = new BookmarkMirror(directory);
+		Assert.assertEquals(5000, mirror.getBookmarks(null).size());
+		Assert.assertEquals(bookmarks(1, 1).get(0), mirror.getBookmark("archive", 1));
+		Assert.assertNull(mirror.getBookmark("archive", 2));
+		Assert.assertEquals(2000L, mirror.getSyncedAt("archive"));
+		Assert.assertEquals("news", mirror.getFolders().get(0).getTitle());
+
+		mirror.snapshot();
+		mirror.apply(null, new SyncChanges(new ArrayList<Bookmark>(), new ArrayList<Bookmark>(),
+				Collections.singletonList(3L)), 4000L);
+		mirror.close();
+		Assert.assertEquals(2, directory.list().length);
+
+		mirror = new BookmarkMirror(directory);
+		Assert.assertEquals(4999, mirror.getBookmarks(BookmarkMirror.UNREAD).size());
+		Assert.assertEquals(4000L, mirror.getSyncedAt(null));
+		Assert.assertEquals(3000L, mirror.getFoldersSyncedAt());
+		mirror.close();
+	}
+
+	@Test
+	public void shouldIgnoreTornRecords() throws IOException {
+		final File directory = folder.newFolder("account");
+		BookmarkMirror mirror = new BookmarkMirror(directory);
+		mirror.apply(null, added(1, 10), 1000L);
+		mirror.close();
+		final FileOutputStream torn = new FileOutputStream(new File(directory, "segment-0"), true);
+		torn.write(new byte[]{0, 0, 1, 0, 1, 42});
+		torn.close();
+
+		mirror = new BookmarkMirror(directory);
+		Assert.assertEquals(10, mirror.getBookmarks(null).size());
+		mirror.apply(null, added(11, 1), 2000L);
+		mirror.close();
+		Assert.assertEquals(11, new BookmarkMirror(directory).getBookmarks(null).size());
+	}
+
+	@Test
+	public void shouldReadThroughFromAnotherProcess() throws Exception {
+		final InstapaperStubServer server = new InstapaperStubServer().dataset(new BookmarkDataset(300))
+				.account("jinstapaper@gmail.com", "open").start();
+		final StubInstaClientConfig config = new StubInstaClientConfig(server);
+		config.getProperties().put(InstaClientConfig.PROPERTY_MIRROR_DIRECTORY, folder.getRoot());
+		try {
+			final FullInstaClient first = new FullInstaClient("jinstapaper@gmail.com", "open", config);
+			Assert.assertEquals(300, first.getMirror().listBookmarks(null).size());
+			first.destroy();
+			final FullInstaClient second = new FullInstaClient("jinstapaper@gmail.com", "open", config);
+			server.stop();
+			// answered from disk, the stub is gone
+			Assert.assertEquals(300, second.getMirror().listBookmarks(null).size());
+			second.destroy();
+		} finally {
+			server.stop();
+		}
+	}
+
+	private static SyncChanges added(final long firstId, final int count) {
+		return new SyncChanges(bookmarks(firstId, count), new ArrayList<Bookmark>(), new ArrayList<Long>());
+	}
+
+	private static List<Bookmark> bookmarks(final long firstId, final int count) {
+		final List<Bookmark> bookmarks = new ArrayList<Bookmark>(count);
+		for (long id = firstId; id < firstId + count; id++) {
+			bookmarks.add(new Bookmark(id, "http://toilettwit.info/" + id, "ToileTTwiT é " + id, "", 1310438674L,
+					id % 2 == 0, "", "nHlrTfNc", 0.25f, 1310438700L));
+		}
+		return bookmarks;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.progress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.StubInstaClientConfig;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+import com.idtmatter.insta4j.stub.StubBookmark;
+
+/**
+ * Runs the {@link ProgressBuffer} against an {@link InstapaperStubServer}.
+ */
+public class ProgressBufferStubTest {
+
+	private static final String UPDATE_READ_PROGRESS = "/api/1/bookmarks/update_read_progress";
+	private static final int BOOKMARKS = 10;
+
+	private InstapaperStubServer server;
+	private FullInstaClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(BOOKMARKS)).account("jinstapaper@gmail.com",
+				"open").start();
+		client = new FullInstaClient("jinstapaper@gmail.com", "open", new StubInstaClientConfig(server));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void shouldSendOnlyTheNewestProgressOfEachBookmark() throws Exception {
+		final ProgressBuffer buffer = new ProgressBuffer(client, 4).interval(60000).threshold(1000);
+		final List<Integer> reports = new ArrayList<Integer>();
+		for (int i = 0; i < BOOKMARKS * 200; i++) {
+			reports.add(i);
+		}
+		Collections.shuffle(reports);
+		final ExecutorService readers = Executors.newFixedThreadPool(8);
+		final List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int thread = 0; thread < 8; thread++) {
+			final int offset = thread;
+			futures.add(readers.submit(new Callable<Void>() {
+				public Void call() {
+					for (int i = offset; i < reports.size(); i += 8) {
+						final int report = reports.get(i);
+						// bookmark report % BOOKMARKS read up to report / BOOKMARKS
+						final int step = report / BOOKMARKS;
+						buffer.report(id(report % BOOKMARKS), step / 200.0, 1000000L + step);
+					}
+					return null;
+				}
+			}));
+		}
+		for (final Future<?> future : futures) {
+			future.get();
+		}
+		readers.shutdown();
+		Assert.assertEquals(BOOKMARKS, buffer.getPending());
+		Assert.assertEquals(BOOKMARKS, buffer.flush());
+		Assert.assertEquals(0, buffer.getPending());
+		Assert.assertEquals(BOOKMARKS * 200, buffer.getReported());
+		Assert.assertEquals(BOOKMARKS, server.getRequestCount(UPDATE_READ_PROGRESS));
+		for (int i = 0; i < BOOKMARKS; i++) {
+			final StubBookmark bookmark = server.getDataset().get(BookmarkDataset.FIRST_BOOKMARK_ID + i);
+			Assert.assertEquals(199 / 200.0, bookmark.getProgress(), 0.0);
+			Assert.assertEquals(1000199L, bookmark.getProgressTimestamp());
+		}
+		buffer.shutdown();
+	}
+
+	@Test
+	public void shouldIgnoreOlderReports() throws Exception {
+		final ProgressBuffer buffer = new ProgressBuffer(client, 1).interval(60000);
+		Assert.assertTrue(buffer.report(id(0), 0.5, 2000000L));
+		Assert.assertFalse(buffer.report(id(0), 0.9, 1999999L));
+		buffer.flush();
+		Assert.assertTrue(buffer.report(id(0), 0.1, 1500000L));
+		buffer.shutdown();
+		// the stub keeps the newest progress like Instapaper
+		final StubBookmark bookmark = server.getDataset().get(BookmarkDataset.FIRST_BOOKMARK_ID);
+		Assert.assertEquals(0.5, bookmark.getProgress(), 0.0);
+		Assert.assertEquals(2000000L, bookmark.getProgressTimestamp());
+		Assert.assertEquals(2, buffer.getSent());
+	}
+
+	@Test
+	public void shouldFlushAtTheThreshold() throws Exception {
+		final ProgressBuffer buffer = new ProgressBuffer(client, 2).interval(60000).threshold(5);
+		for (int i = 0; i < 5; i++) {
+			buffer.report(id(i), 0.5, 1000000L);
+		}
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (buffer.getSent() < 5 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		Assert.assertEquals(5, buffer.getSent());
+		Assert.assertEquals(5, server.getRequestCount(UPDATE_READ_PROGRESS));
+		buffer.shutdown();
+	}
+
+	@Test
+	public void shouldDrainOnShutdown() throws Exception {
+		final ProgressBuffer buffer = new ProgressBuffer(client, 2).interval(60000);
+		for (int i = 0; i < BOOKMARKS; i++) {
+			buffer.report(id(i), 0.25, 1000000L);
+			buffer.report(id(i), 0.75, 1000001L);
+		}
+		buffer.shutdown();
+		Assert.assertEquals(0, buffer.getPending());
+		Assert.assertEquals(BOOKMARKS, server.getRequestCount(UPDATE_READ_PROGRESS));
+		Assert.assertEquals(0.75, server.getDataset().get(BookmarkDataset.FIRST_BOOKMARK_ID).getProgress(), 0.0);
+		try {
+			buffer.report(id(0), 1.0, 1000002L);
+			Assert.fail("A report after shutdown must be refused");
+		} catch (IllegalStateException expected) {
+			// expected
+		}
+	}
+
+	private static String id(final int index) {
+		return String.valueOf(BookmarkDataset.FIRST_BOOKMARK_ID + index);
+	}
+}
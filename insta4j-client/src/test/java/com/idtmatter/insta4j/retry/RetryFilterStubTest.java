@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.retry;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.InstaCodes;
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.InstaClientException;
+import com.idtmatter.insta4j.client.StubInstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.ErrorInjection;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Runs the {@link RetryFilter} of a {@link FullInstaClient} against an {@link InstapaperStubServer} failing on purpose.
+ */
+public class RetryFilterStubTest {
+
+	private static final String FIRST = Long.toString(BookmarkDataset.FIRST_BOOKMARK_ID);
+
+	private InstapaperStubServer server;
+	private RetryPolicy policy;
+	private FullInstaClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(20)).account("jinstapaper@gmail.com", "open")
+				.start();
+		final StubInstaClientConfig config = new StubInstaClientConfig(server);
+		policy = new RetryPolicy(4, 1, 10);
+		config.getProperties().put(InstaClientConfig.PROPERTY_RETRY_POLICY, policy);
+		client = new FullInstaClient("jinstapaper@gmail.com", "open", config);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void shouldRetryTransientErrorsOfIdempotentCalls() {
+		Assert.assertEquals(InstaCodes.Code.Family.SUCCESSFUL, InstaCodes.Code._200.getFamily());
+		Assert.assertEquals(InstaCodes.Code.Family.HTTP_ERROR, InstaCodes.Code._500.getFamily());
+		Assert.assertEquals(InstaCodes.Code.Family.BOOKMARK_ERROR, InstaCodes.Code._1246.getFamily());
+		Assert.assertEquals(InstaCodes.Code.Family.FOLDER_ERROR, InstaCodes.Code._1251.getFamily());
+
+		server.inject(ErrorInjection.of(500, 0.05).on("/api/1/bookmarks/star"));
+		server.inject(ErrorInjection.of(1246, 0.05).on("/api/1/bookmarks/update_read_progress"));
+		// within the budget of a tenth of a retry per call
+		for (int i = 0; i < 100; i++) {
+			Assert.assertNotNull(client.starBookmark(FIRST));
+			Assert.assertNotNull(client.updateReadProgress(FIRST, 0.5, 1288584076L + i));
+		}
+		Assert.assertTrue(policy.getRetries() > 0);
+		Assert.assertEquals(policy.getRetries() + 200, server.getRequestCount("/api/1/bookmarks/star")
+				+ server.getRequestCount("/api/1/bookmarks/update_read_progress"));
+		Assert.assertTrue(policy.getAmplification() > 1.0 && policy.getAmplification() < 1.2);
+	}
+
+	@Test
+	public void shouldRetryGatewayErrors() {
+		server.inject(ErrorInjection.of(503, 1.0).on("/api/1/bookmarks/star").times(1));
+		server.inject(ErrorInjection.of(502, 1.0).on("/api/1/bookmarks/list").times(1));
+		Assert.assertNotNull(client.starBookmark(FIRST));
+		Assert.assertFalse(client.listBookmarks("10", null).isEmpty());
+		Assert.assertEquals(2, server.getRequestCount("/api/1/bookmarks/star"));
+		Assert.assertEquals(2, server.getRequestCount("/api/1/bookmarks/list"));
+		Assert.assertEquals(2, policy.getRetries());
+		Assert.assertEquals(2, policy.getRecovered());
+	}
+
+	@Test
+	public void shouldFailOnceGatewayErrorsOutlastTheAttempts() {
+		server.inject(ErrorInjection.of(504, 1.0).on("/api/1/bookmarks/star"));
+		try {
+			client.starBookmark(FIRST);
+			Assert.fail("The injected error should fail the call");
+		} catch (InstaClientException e) {
+			Assert.assertEquals(InstaCodes.Code._500, e.getCode());
+		}
+		Assert.assertEquals(4, server.getRequestCount("/api/1/bookmarks/star"));
+	}
+
+	@Test
+	public void shouldNotRetryFolderCreation() {
+		server.inject(ErrorInjection.of(500, 1.0).on("/api/1/folders/add"));
+		try {
+			client.createFolder("news");
+			Assert.fail("The injected error should fail the call");
+		} catch (InstaClientException e) {
+			Assert.assertEquals(InstaCodes.Code._500, e.getCode());
+		}
+		Assert.assertEquals(1, server.getRequestCount("/api/1/folders/add"));
+		Assert.assertEquals(0, policy.getRetries());
+	}
+
+	@Test
+	public void shouldBoundRetriesWithBudget() {
+		server.inject(ErrorInjection.of(500, 1.0).on("/api/1/bookmarks/star"));
+		for (int i = 0; i < 200; i++) {
+			try {
+				client.starBookmark(FIRST);
+				Assert.fail("The injected error should fail the call");
+			} catch (InstaClientException e) {
+				// expected
+			}
+		}
+		// 10 retries to start with and a tenth of one per call
+		Assert.assertTrue(policy.getRetries() <= 30);
+		Assert.assertTrue(policy.getBudgetExhausted() > 0);
+		Assert.assertTrue(policy.getAmplification() < 1.2);
+	}
+}
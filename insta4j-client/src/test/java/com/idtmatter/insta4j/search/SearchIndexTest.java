@@ -0,0 +1,181 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.search;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idtmatter.insta4j.client.InstaClient;
+import com.idtmatter.insta4j.jaxb.InstaRecordBean;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.sync.SyncChanges;
+
+/**
+ * Tests the {@link SearchIndex} and its {@link ArticleTokenizer}.
+ */
+public class SearchIndexTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldTokenizeTheTextOfTheHtml() {
+		Assert.assertEquals(Arrays.asList("the", "rock", "roll", "story", "café", "2012", "x"), ArticleTokenizer
+				.tokenize("<html><head><style>p { color: red }</style><script type=\"text/javascript\">var a = "
+						+ "'<p>';</script></head><body><!-- <p>hidden</p> --><p class=\"lead\">The Rock&amp;Roll "
+						+ "<b>Story</b></p><p>Caf&#233; 2012&nbsp;X</p></body></html>"));
+	}
+
+	@Test
+	public void shouldFindTermsAndPhrases() throws Exception {
+		final SearchIndex index = new SearchIndex(folder.newFolder("terms"));
+		index.add(bookmark(1, "a"), "<p>Instapaper saves web pages for later reading.</p>");
+		index.add(bookmark(2, "b"), "<p>Reading later on the kindle, pages saved from the web.</p>");
+		index.add(bookmark(3, "c"), "<p>Web pages web pages web pages.</p>");
+
+		// ties go to the bookmark indexed last
+		Assert.assertEquals(Arrays.asList(3L, 2L, 1L), ids(index.search("WEB pages")));
+		Assert.assertEquals(Arrays.asList(1L), ids(index.search("\"later reading\"")));
+		Assert.assertEquals(Arrays.asList(2L), ids(index.search("\"reading later\" kindle")));
+		Assert.assertEquals(Arrays.asList(3L, 1L), ids(index.search("\"web pages\"")));
+		Assert.assertTrue(index.search("web tablet").isEmpty());
+		Assert.assertTrue(index.search("  ").isEmpty());
+		Assert.assertEquals(1, index.search("web", 1).size());
+
+		final InstaRecordBean found = index.search("kindle").get(0);
+		Assert.assertEquals("bookmark", found.type);
+		Assert.assertEquals("http://example.com/2", found.url);
+		Assert.assertEquals("b", found.hash);
+	}
+
+	@Test
+	public void shouldReplaceAndRemoveBookmarks() throws Exception {
+		final SearchIndex index = new SearchIndex(folder.newFolder("updates"));
+		index.add(bookmark(1, "a"), "<p>first draft about gardening</p>");
+		index.add(bookmark(1, "b"), "<p>second draft about cooking</p>");
+		Assert.assertTrue(index.search("gardening").isEmpty());
+		Assert.assertEquals(Arrays.asList(1L), ids(index.search("cooking draft")));
+		Assert.assertTrue(index.remove(1));
+		Assert.assertFalse(index.remove(1));
+		Assert.assertTrue(index.search("draft").isEmpty());
+		Assert.assertEquals(0, index.size());
+
+		// enough churn to compact the posting lists
+		for (int round = 0; round < 3; round++) {
+			for (int id = 0; id < 1000; id++) {
+				index.add(bookmark(id, "r" + round), "<p>round" + round + " common text " + id + "</p>");
+			}
+		}
+		Assert.assertEquals(1000, index.size());
+		Assert.assertTrue(index.search("round1").isEmpty());
+		Assert.assertEquals(1000, index.search("round2 common").size());
+		Assert.assertEquals(Arrays.asList(42L), ids(index.search("\"text 42\"")));
+	}
+
+	@Test
+	public void shouldLoadTheSavedIndex() throws Exception {
+		final SearchIndex index = new SearchIndex(folder.newFolder("saved"));
+		for (int id = 0; id < 200; id++) {
+			index.add(bookmark(id, "h" + id), "<p>article " + id + " about " + (id % 2 == 0 ? "even" : "odd")
+					+ " numbers and their properties</p>");
+		}
+		index.remove(10);
+		index.save();
+
+		final SearchIndex loaded = new SearchIndex(folder.getRoot().listFiles()[0]);
+		Assert.assertEquals(199, loaded.size());
+		Assert.assertEquals(index.getTermCount(), loaded.getTermCount());
+		Assert.assertEquals(99, loaded.search("even numbers").size());
+		Assert.assertEquals(Arrays.asList(12L), ids(loaded.search("\"article 12 about even\"")));
+		Assert.assertTrue(loaded.search("\"article 10\"").isEmpty());
+		loaded.add(bookmark(10, "h10"), "<p>article 10 is back</p>");
+		Assert.assertEquals(Arrays.asList(10L), ids(loaded.search("back")));
+	}
+
+	@Test
+	public void shouldFetchOnlyTheTextOfNewBookmarks() throws Exception {
+		final List<String> fetched = Collections.synchronizedList(new ArrayList<String>());
+		final InstaClient client = (InstaClient) Proxy.newProxyInstance(InstaClient.class.getClassLoader(),
+				new Class<?>[] {InstaClient.class}, new InvocationHandler() {
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						fetched.add((String) args[0]);
+						return "<p>text of bookmark " + args[0] + "</p>";
+					}
+				});
+		final SearchIndex index = new SearchIndex(folder.newFolder("update"));
+		Assert.assertEquals(2, index.update(client, null, new SyncChanges(Arrays.asList(bookmark(1, "a"), bookmark(
+				2, "a")), new ArrayList<Bookmark>(), new ArrayList<Long>())));
+		Assert.assertEquals(1, index.update(client, null, new SyncChanges(Arrays.asList(bookmark(3, "a")), Arrays
+				.asList(bookmark(1, "starred")), Arrays.asList(2L))));
+		Assert.assertEquals(Arrays.asList("1", "2", "3"), fetched);
+		Assert.assertEquals(Arrays.asList(3L, 1L), ids(index.search("text bookmark")));
+		Assert.assertEquals("starred", index.search("\"bookmark 1\"").get(0).hash);
+	}
+
+	@Test
+	public void shouldKeepUpdatingPastFailedTexts() throws Exception {
+		final boolean[] failing = {true};
+		final InstaClient client = (InstaClient) Proxy.newProxyInstance(InstaClient.class.getClassLoader(),
+				new Class<?>[] {InstaClient.class}, new InvocationHandler() {
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						if (failing[0] && "2".equals(args[0])) {
+							throw new IllegalStateException("no text view of a pdf");
+						}
+						return "<p>text of bookmark " + args[0] + "</p>";
+					}
+				});
+		final SearchIndex index = new SearchIndex(folder.newFolder("failures"));
+		Assert.assertEquals(2, index.update(client, null, new SyncChanges(Arrays.asList(bookmark(1, "a"), bookmark(
+				2, "a"), bookmark(3, "a")), new ArrayList<Bookmark>(), new ArrayList<Long>())));
+		Assert.assertEquals(Arrays.asList(2L), index.getUnfetched());
+		Assert.assertEquals(Arrays.asList(3L, 1L), ids(index.search("text")));
+
+		// the deletions are applied although the text of 2 fails again
+		Assert.assertEquals(0, index.update(client, null, new SyncChanges(new ArrayList<Bookmark>(),
+				new ArrayList<Bookmark>(), Arrays.asList(3L))));
+		Assert.assertEquals(Arrays.asList(1L), ids(index.search("text")));
+		Assert.assertEquals(Arrays.asList(2L), index.getUnfetched());
+
+		failing[0] = false;
+		Assert.assertEquals(1, index.update(client, null, new SyncChanges(new ArrayList<Bookmark>(),
+				new ArrayList<Bookmark>(), new ArrayList<Long>())));
+		Assert.assertTrue(index.getUnfetched().isEmpty());
+		Assert.assertEquals(Arrays.asList(2L, 1L), ids(index.search("text")));
+	}
+
+	private static Bookmark bookmark(final long id, final String hash) {
+		return new Bookmark(id, "http://example.com/" + id, "Bookmark " + id, "", 1330000000L + id, false, "",
+				hash, 0f, 0L);
+	}
+
+	private static List<Long> ids(final List<InstaRecordBean> bookmarks) {
+		final List<Long> ids = new ArrayList<Long>();
+		for (final InstaRecordBean bookmark : bookmarks) {
+			ids.add(Long.parseLong(bookmark.bookmark_id));
+		}
+		return ids;
+	}
+}
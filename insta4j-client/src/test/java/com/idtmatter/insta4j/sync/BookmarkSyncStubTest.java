@@ -0,0 +1,87 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.sync;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.StubInstaClientConfig;
+import com.idtmatter.insta4j.model.Bookmark;
+import com.idtmatter.insta4j.stub.BookmarkDataset;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Runs {@link BookmarkSync} against an {@link InstapaperStubServer}.
+ */
+public class BookmarkSyncStubTest {
+
+	private static final long FIRST = BookmarkDataset.FIRST_BOOKMARK_ID;
+
+	private InstapaperStubServer server;
+	private FullInstaClient client;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().dataset(new BookmarkDataset(200)).account("jinstapaper@gmail.com", "open")
+				.start();
+		client = new FullInstaClient("jinstapaper@gmail.com", "open", new StubInstaClientConfig(server));
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void shouldOnlyApplyDeltas() {
+		final BookmarkSync sync = new BookmarkSync(client, null);
+		Assert.assertEquals(200, sync.sync().getAdded().size());
+		Assert.assertEquals(200, sync.size());
+		Assert.assertTrue(sync.sync().isEmpty());
+
+		server.getDataset().updateProgress(FIRST, 0.25, 1288584076L);
+		server.getDataset().delete(FIRST + 1);
+		client.addBookmark("http://toilettwit.info/", "ToileTTwiT", null, false);
+		final SyncChanges changes = sync.sync();
+		Assert.assertEquals(1, changes.getAdded().size());
+		Assert.assertEquals("http://toilettwit.info/", changes.getAdded().get(0).getUrl());
+		Assert.assertEquals(1, changes.getChanged().size());
+		Assert.assertEquals(0.25f, changes.getChanged().get(0).getProgress());
+		Assert.assertEquals(Long.valueOf(FIRST + 1), changes.getDeleted().get(0));
+		Assert.assertNull(sync.getBookmark(FIRST + 1));
+		Assert.assertEquals(200, sync.size());
+		Assert.assertTrue(sync.sync().isEmpty());
+	}
+
+	@Test
+	public void shouldPushLocalProgress() {
+		final BookmarkSync sync = new BookmarkSync(client, null);
+		sync.sync();
+		final String hash = sync.getBookmark(FIRST).getHash();
+		Assert.assertTrue(sync.recordProgress(FIRST, 0.5f, 1288584076L));
+		Assert.assertTrue(sync.have().contains(FIRST + ":" + hash + ":0.5:1288584076"));
+
+		final SyncChanges changes = sync.sync();
+		Assert.assertEquals(1, changes.getChanged().size());
+		final Bookmark read = sync.getBookmark(FIRST);
+		Assert.assertEquals(0.5f, read.getProgress());
+		Assert.assertFalse(hash.equals(read.getHash()));
+		Assert.assertEquals(0.5, server.getDataset().get(FIRST).getProgress());
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.token;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.idtmatter.insta4j.client.FullInstaClient;
+import com.idtmatter.insta4j.client.InstaCredentials;
+import com.idtmatter.insta4j.client.StubInstaClientConfig;
+import com.idtmatter.insta4j.client.config.InstaClientConfig;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Checks the {@link EncryptedFileTokenStore} and clients starting with a stored token.
+ */
+public class TokenStoreTest {
+
+	private static final String USERNAME = "jinstapaper@gmail.com";
+	private static final String ACCESS_TOKEN = "/api/1/oauth/access_token";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void shouldKeepTokensEncrypted() throws Exception {
+		final File directory = folder.newFolder("tokens");
+		final EncryptedFileTokenStore store = new EncryptedFileTokenStore(directory, key(1));
+		store.store(new InstaCredentials(USERNAME, "token1", "secret1"));
+		final InstaCredentials loaded = new EncryptedFileTokenStore(directory, key(1)).load(USERNAME);
+		Assert.assertEquals("token1", loaded.getToken());
+		Assert.assertEquals("secret1", loaded.getTokenSecret());
+		Assert.assertNull(store.load("other@example.com"));
+
+		final File[] files = directory.listFiles();
+		Assert.assertEquals(1, files.length);
+		Assert.assertFalse(files[0].getName().contains("jinstapaper"));
+		Assert.assertFalse(new String(read(files[0]), "ISO-8859-1").contains("token1"));
+
+		// the file names differ with the key
+		Assert.assertNull(new EncryptedFileTokenStore(directory, key(2)).load(USERNAME));
+		final RandomAccessFile tampered = new RandomAccessFile(files[0], "rw");
+		tampered.seek(20);
+		final int value = tampered.read();
+		tampered.seek(20);
+		tampered.write(value ^ 1);
+		tampered.close();
+		try {
+			store.load(USERNAME);
+			Assert.fail("loaded a changed file");
+		} catch (IOException expected) {
+			// the mac does not match
+		}
+		store.remove(USERNAME);
+		Assert.assertNull(store.load(USERNAME));
+	}
+
+	@Test
+	public void shouldStartWithStoredToken() throws Exception {
+		final InstapaperStubServer server = new InstapaperStubServer().account(USERNAME, "open").requireKnownToken(true)
+				.start();
+		try {
+			final TokenStore store = new EncryptedFileTokenStore(folder.newFolder("tokens"), key(1));
+			final InstaClientConfig config = new StubInstaClientConfig(server);
+			new FullInstaClient(USERNAME, "open", config, store).destroy();
+			Assert.assertEquals(1, server.getRequestCount(ACCESS_TOKEN));
+
+			final FullInstaClient client = new FullInstaClient(USERNAME, "open", config, store);
+			Assert.assertEquals(USERNAME, client.verifyCredentials().username);
+			Assert.assertEquals(1, server.getRequestCount(ACCESS_TOKEN));
+			client.destroy();
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void shouldAuthorizeOnceWhenTokenIsRevoked() throws Exception {
+		final InstapaperStubServer server = new InstapaperStubServer().account(USERNAME, "open").requireKnownToken(true)
+				.start();
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final MemoryTokenStore store = new MemoryTokenStore();
+			final InstaClientConfig config = new StubInstaClientConfig(server);
+			config.getProperties().put(InstaClientConfig.PROPERTY_COALESCE_READS, "false");
+			final FullInstaClient client = new FullInstaClient(USERNAME, "open", config, store);
+			final InstaCredentials first = client.getCredentials();
+			server.revokeTokens(USERNAME);
+
+			final List<Future<String>> calls = new ArrayList<Future<String>>();
+			for (int i = 0; i < 8; i++) {
+				calls.add(executor.submit(new Callable<String>() {
+					public String call() {
+						return client.verifyCredentials().username;
+					}
+				}));
+			}
+			for (final Future<String> call : calls) {
+				Assert.assertEquals(USERNAME, call.get());
+			}
+			Assert.assertEquals(2, server.getRequestCount(ACCESS_TOKEN));
+			Assert.assertFalse(first.getToken().equals(client.getCredentials().getToken()));
+			Assert.assertSame(client.getCredentials(), store.load(USERNAME));
+			client.destroy();
+		} finally {
+			executor.shutdown();
+			server.stop();
+		}
+	}
+
+	private static byte[] key(final int seed) {
+		final byte[] key = new byte[16];
+		for (int i = 0; i < key.length; i++) {
+			key[i] = (byte) (seed * 31 + i);
+		}
+		return key;
+	}
+
+	private static byte[] read(final File file) throws IOException {
+		final RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			final byte[] content = new byte[(int) in.length()];
+			in.readFully(content);
+			return content;
+		} finally {
+			in.close();
+		}
+	}
+}
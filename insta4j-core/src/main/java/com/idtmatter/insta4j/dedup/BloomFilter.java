@@ -0,0 +1,75 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.dedup;
+
+/**
+ * A Bloom filter of 64 bit hashes: {@link #mightContain(long)} is never false for a hash put, and true for a hash
+ * never put with about the false positive rate it was sized for. The bit positions are derived from the two halves
+ * of the hash, which must already be well mixed. Not thread safe.
+ */
+public final class BloomFilter {
+
+	private final long[] bits;
+	private final long bitCount;
+	private final int hashCount;
+
+	/**
+	 * @param expectedInsertions The number of hashes the filter is sized for
+	 * @param falsePositiveRate  The rate of false positives once they are put, e.g. 0.01
+	 */
+	public BloomFilter(final int expectedInsertions, final double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1 but was "
+					+ falsePositiveRate);
+		}
+		final int n = Math.max(1, expectedInsertions);
+		final long m = Math.max(64, (long) (-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+		bits = new long[(int) ((m + 63) >>> 6)];
+		bitCount = (long) bits.length << 6;
+		hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+	}
+
+	public void put(final long hash) {
+		final int h1 = (int) hash;
+		final int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			final long bit = ((h1 + i * h2) & 0x7FFFFFFFL) % bitCount;
+			bits[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	public boolean mightContain(final long hash) {
+		final int h1 = (int) hash;
+		final int h2 = (int) (hash >>> 32);
+		for (int i = 1; i <= hashCount; i++) {
+			final long bit = ((h1 + i * h2) & 0x7FFFFFFFL) % bitCount;
+			if ((bits[(int) (bit >>> 6)] & 1L << bit) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return The heap taken by the bits.
+	 */
+	public long getBytes() {
+		return (long) bits.length * 8;
+	}
+
+	public int getHashCount() {
+		return hashCount;
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.dedup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reduces the urls of the same page to one form, so that a url saved again with another tracking parameter, scheme
+ * or trailing slash is recognised:
+ * <ul>
+ * <li>http and https are the same page, the canonical form has no scheme: //host/path?query</li>
+ * <li>the host is lower case, without a trailing dot or the default port</li>
+ * <li>the fragment is dropped, unless it is a #! route</li>
+ * <li>utm_* and the click ids of ad and mail trackers (fbclid, gclid...) are dropped, the other query parameters are
+ * sorted</li>
+ * <li>a trailing slash of the path is dropped, percent escapes are upper case</li>
+ * </ul>
+ * The path and the remaining parameters keep their case, servers may tell them apart.
+ */
+public final class UrlCanonicalizer {
+
+	private static final Set<String> TRACKING = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			"fbclid", "gclid", "gclsrc", "dclid", "msclkid", "yclid", "igshid", "mc_cid", "mc_eid", "_hsenc",
+			"_hsmi", "mkt_tok", "_ga", "__s", "oly_anon_id", "oly_enc_id", "vero_id", "wickedid")));
+
+	private UrlCanonicalizer() {
+	}
+
+	/**
+	 * @return The canonical form of an http or https url, null for any other url, e.g. a private source or a
+	 *         mailto: link, which is then never taken for another.
+	 */
+	public static String canonicalize(final String url) {
+		if (url == null) {
+			return null;
+		}
+		final String trimmed = url.trim();
+		final int schemeEnd = trimmed.indexOf("://");
+		if (schemeEnd < 0) {
+			return null;
+		}
+		final String scheme = trimmed.substring(0, schemeEnd);
+		if (!"http".equalsIgnoreCase(scheme) && !"https".equalsIgnoreCase(scheme)) {
+			return null;
+		}
+		final int authorityStart = schemeEnd + 3;
+		int authorityEnd = authorityStart;
+		while (authorityEnd < trimmed.length() && "/?#".indexOf(trimmed.charAt(authorityEnd)) < 0) {
+			authorityEnd++;
+		}
+		if (authorityEnd == authorityStart) {
+			return null;
+		}
+		final StringBuilder canonical = new StringBuilder(trimmed.length());
+		canonical.append("//");
+		host(trimmed.substring(authorityStart, authorityEnd), canonical);
+
+		int fragmentStart = trimmed.indexOf('#', authorityEnd);
+		if (fragmentStart < 0) {
+			fragmentStart = trimmed.length();
+		}
+		int queryStart = trimmed.indexOf('?', authorityEnd);
+		if (queryStart < 0 || queryStart > fragmentStart) {
+			queryStart = fragmentStart;
+		}
+		final int pathStart = canonical.length();
+		escapes(trimmed, authorityEnd, queryStart, canonical);
+		while (canonical.length() > pathStart && canonical.charAt(canonical.length() - 1) == '/') {
+			canonical.setLength(canonical.length() - 1);
+		}
+		if (queryStart < fragmentStart) {
+			query(trimmed.substring(queryStart + 1, fragmentStart), canonical);
+		}
+		if (trimmed.startsWith("#!", fragmentStart)) {
+			canonical.append(trimmed, fragmentStart, trimmed.length());
+		}
+		return canonical.toString();
+	}
+
+	/**
+	 * Appends the host and port of the authority, credentials dropped.
+	 */
+	private static void host(final String authority, final StringBuilder canonical) {
+		String host = authority.substring(authority.lastIndexOf('@') + 1).toLowerCase(Locale.ENGLISH);
+		String port = null;
+		final int colon = host.lastIndexOf(':');
+		if (colon >= 0 && host.indexOf(']', colon) < 0) {
+			port = host.substring(colon + 1);
+			host = host.substring(0, colon);
+		}
+		if (host.endsWith(".")) {
+			host = host.substring(0, host.length() - 1);
+		}
+		canonical.append(host);
+		if (port != null && port.length() > 0 && !"80".equals(port) && !"443".equals(port)) {
+			canonical.append(':').append(port);
+		}
+	}
+
+	private static void query(final String query, final StringBuilder canonical) {
+		final List<String> parameters = new ArrayList<String>();
+		for (final String parameter : query.split("&")) {
+			if (parameter.length() == 0) {
+				continue;
+			}
+			final int equals = parameter.indexOf('=');
+			final String name = (equals < 0 ? parameter : parameter.substring(0, equals)).toLowerCase(Locale.ENGLISH);
+			if (!name.startsWith("utm_") && !TRACKING.contains(name)) {
+				parameters.add(parameter);
+			}
+		}
+		if (parameters.isEmpty()) {
+			return;
+		}
+		Collections.sort(parameters);
+		char separator = '?';
+		for (final String parameter : parameters) {
+			canonical.append(separator);
+			escapes(parameter, 0, parameter.length(), canonical);
+			separator = '&';
+		}
+	}
+
+	/**
+	 * Appends the characters between start and end with the hex digits of percent escapes in upper case.
+	 */
+	private static void escapes(final String value, final int start, final int end, final StringBuilder canonical) {
+		for (int i = start; i < end; i++) {
+			final char c = value.charAt(i);
+			if (c == '%' && i + 2 < end && isHex(value.charAt(i + 1)) && isHex(value.charAt(i + 2))) {
+				canonical.append('%').append(Character.toUpperCase(value.charAt(i + 1))).append(
+						Character.toUpperCase(value.charAt(i + 2)));
+				i += 2;
+			} else {
+				canonical.append(c);
+			}
+		}
+	}
+
+	private static boolean isHex(final char c) {
+		return c >= '0' && c <= '9' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F';
+	}
+}
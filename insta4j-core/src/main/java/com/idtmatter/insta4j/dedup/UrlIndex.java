@@ -0,0 +1,318 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.dedup;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The urls saved in one account, so that saving a url again can be answered locally instead of with a round trip.
+ * <p>
+ * Urls are reduced by {@link UrlCanonicalizer} and kept as 64 bit fingerprints with the bookmark_id they were saved
+ * as, in an open addressing table of 16 bytes per url at most half full, rather than as strings. A
+ * {@link BloomFilter} of about 10 bits per url sits in front of the table: a new url, the common case of an
+ * ingestion, is most often rejected by the filter without touching the table. Two different urls share a fingerprint
+ * with a chance of about n&sup2;/2<sup>65</sup>, negligible for the size of an account.
+ * <p>
+ * The index is filled by the clients from the bookmarks they list and save, the filter is rebuilt whenever the
+ * table grows or removals have left too many stale bits. Lookups run concurrently, changes one at a time.
+ */
+public class UrlIndex {
+
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+	private static final long EMPTY = 0;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private long[] fingerprints;
+	private long[] bookmarkIds;
+	private int size;
+	private int removedSinceRebuild;
+	private BloomFilter filter;
+
+	private final AtomicLong lookups = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong filtered = new AtomicLong();
+
+	public UrlIndex() {
+		this(1024);
+	}
+
+	/**
+	 * @param expectedUrls The number of urls the index is first sized for, it grows past it
+	 */
+	public UrlIndex(final int expectedUrls) {
+		allocate(Math.max(16, expectedUrls));
+	}
+
+	private void allocate(final int expectedUrls) {
+		int capacity = 16;
+		while (capacity < expectedUrls * 2) {
+			capacity <<= 1;
+		}
+		fingerprints = new long[capacity];
+		bookmarkIds = new long[capacity];
+		filter = new BloomFilter(capacity / 2, FALSE_POSITIVE_RATE);
+		removedSinceRebuild = 0;
+	}
+
+	/**
+	 * Records a saved url.
+	 *
+	 * @param bookmarkId The bookmark the url was saved as, 0 if it is not known
+	 * @return false if the url is not an http or https url and is not recorded.
+	 */
+	public boolean add(final String url, final long bookmarkId) {
+		final String canonical = UrlCanonicalizer.canonicalize(url);
+		if (canonical == null) {
+			return false;
+		}
+		final long fingerprint = fingerprint(canonical);
+		lock.writeLock().lock();
+		try {
+			if ((size + 1) * 2 > fingerprints.length) {
+				grow();
+			}
+			final int slot = slot(fingerprint);
+			if (fingerprints[slot] == EMPTY) {
+				fingerprints[slot] = fingerprint;
+				size++;
+				filter.put(fingerprint);
+			}
+			if (bookmarkId != 0 || bookmarkIds[slot] == 0) {
+				bookmarkIds[slot] = bookmarkId;
+			}
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The bookmark_id the url was saved as, 0 if it is not known, -1 if the url is not in the index.
+	 */
+	public long lookup(final String url) {
+		lookups.incrementAndGet();
+		final String canonical = UrlCanonicalizer.canonicalize(url);
+		if (canonical == null) {
+			return -1;
+		}
+		final long fingerprint = fingerprint(canonical);
+		lock.readLock().lock();
+		try {
+			if (!filter.mightContain(fingerprint)) {
+				filtered.incrementAndGet();
+				return -1;
+			}
+			final int slot = slot(fingerprint);
+			if (fingerprints[slot] == EMPTY) {
+				return -1;
+			}
+			hits.incrementAndGet();
+			return bookmarkIds[slot];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return true if the url, or another form of it, is in the index.
+	 */
+	public boolean contains(final String url) {
+		return lookup(url) >= 0;
+	}
+
+	/**
+	 * Forgets a url, e.g. once it is moved out of the folder the index covers.
+	 *
+	 * @return false if the url was not in the index.
+	 */
+	public boolean remove(final String url) {
+		final String canonical = UrlCanonicalizer.canonicalize(url);
+		if (canonical == null) {
+			return false;
+		}
+		lock.writeLock().lock();
+		try {
+			final int slot = slot(fingerprint(canonical));
+			if (fingerprints[slot] == EMPTY) {
+				return false;
+			}
+			delete(slot);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Forgets the url of a bookmark deleted, archived or moved, looked up by a scan of the table.
+	 *
+	 * @return false if no url of the index was saved as this bookmark.
+	 */
+	public boolean removeBookmark(final long bookmarkId) {
+		if (bookmarkId <= 0) {
+			return false;
+		}
+		lock.writeLock().lock();
+		try {
+			for (int slot = 0; slot < fingerprints.length; slot++) {
+				if (fingerprints[slot] != EMPTY && bookmarkIds[slot] == bookmarkId) {
+					delete(slot);
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Forgets every url, e.g. before the index is filled again from a full listing.
+	 */
+	public void clear() {
+		lock.writeLock().lock();
+		try {
+			allocate(Math.max(16, fingerprints.length / 4));
+			size = 0;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The slot of the fingerprint, or the empty slot it would go to.
+	 */
+	private int slot(final long fingerprint) {
+		final int mask = fingerprints.length - 1;
+		int slot = (int) fingerprint & mask;
+		while (fingerprints[slot] != EMPTY && fingerprints[slot] != fingerprint) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Empties the slot and moves back the entries of the run after it that could not take their own slot.
+	 */
+	private void delete(final int removed) {
+		final int mask = fingerprints.length - 1;
+		int hole = removed;
+		int slot = (removed + 1) & mask;
+		while (fingerprints[slot] != EMPTY) {
+			final int home = (int) fingerprints[slot] & mask;
+			// the entry may fill the hole unless its home lies cyclically in (hole, slot]
+			if (hole <= slot ? home <= hole || home > slot : home <= hole && home > slot) {
+				fingerprints[hole] = fingerprints[slot];
+				bookmarkIds[hole] = bookmarkIds[slot];
+				hole = slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		fingerprints[hole] = EMPTY;
+		bookmarkIds[hole] = 0;
+		size--;
+		if (++removedSinceRebuild > size) {
+			rebuild(fingerprints.length / 2);
+		}
+	}
+
+	private void grow() {
+		rebuild(fingerprints.length);
+	}
+
+	private void rebuild(final int expectedUrls) {
+		final long[] oldFingerprints = fingerprints;
+		final long[] oldBookmarkIds = bookmarkIds;
+		allocate(expectedUrls);
+		for (int i = 0; i < oldFingerprints.length; i++) {
+			if (oldFingerprints[i] != EMPTY) {
+				final int slot = slot(oldFingerprints[i]);
+				fingerprints[slot] = oldFingerprints[i];
+				bookmarkIds[slot] = oldBookmarkIds[i];
+				filter.put(oldFingerprints[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return A 64 bit FNV-1a hash of the canonical url with the MurmurHash3 finalizer, never 0.
+	 */
+	static long fingerprint(final String canonical) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < canonical.length(); i++) {
+			hash ^= canonical.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash != EMPTY ? hash : 1;
+	}
+
+	/**
+	 * @return The number of urls in the index.
+	 */
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The heap taken by the table and the filter.
+	 */
+	public long getBytes() {
+		lock.readLock().lock();
+		try {
+			return (long) fingerprints.length * 16 + filter.getBytes();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return The number of lookups.
+	 */
+	public long getLookups() {
+		return lookups.get();
+	}
+
+	/**
+	 * @return The number of lookups that found the url, the saves a client could skip.
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return The number of lookups the Bloom filter answered alone.
+	 */
+	public long getFiltered() {
+		return filtered.get();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("UrlIndex[%d urls, %d lookups, %d hits, %d filtered]", size(), getLookups(), getHits(),
+				getFiltered());
+	}
+}
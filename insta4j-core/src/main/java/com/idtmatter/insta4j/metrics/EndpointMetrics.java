@@ -0,0 +1,74 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters of one endpoint, e.g. /api/1/bookmarks/list, updated without locks by the {@link MetricsFilter}.
+ */
+final class EndpointMetrics {
+
+	final String endpoint;
+	final LatencyHistogram latency = new LatencyHistogram();
+	final AtomicInteger inFlight = new AtomicInteger();
+	final AtomicLong failures = new AtomicLong();
+	final AtomicLong requestBytes = new AtomicLong();
+	final AtomicLong responseBytes = new AtomicLong();
+	private final ConcurrentMap<Integer, AtomicLong> statuses = new ConcurrentHashMap<Integer, AtomicLong>();
+	private final ConcurrentMap<Integer, AtomicLong> errorCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+
+	EndpointMetrics(final String endpoint) {
+		this.endpoint = endpoint;
+	}
+
+	void status(final int status) {
+		increment(statuses, status);
+	}
+
+	void errorCode(final int code) {
+		increment(errorCodes, code);
+	}
+
+	private static void increment(final ConcurrentMap<Integer, AtomicLong> counters, final int key) {
+		AtomicLong counter = counters.get(key);
+		if (counter == null) {
+			final AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(key, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		counter.incrementAndGet();
+	}
+
+	EndpointSnapshot snapshot() {
+		return new EndpointSnapshot(endpoint, latency.snapshot(), inFlight.get(), failures.get(), requestBytes.get(),
+				responseBytes.get(), copy(statuses), copy(errorCodes));
+	}
+
+	private static Map<Integer, Long> copy(final ConcurrentMap<Integer, AtomicLong> counters) {
+		final Map<Integer, Long> copy = new TreeMap<Integer, Long>();
+		for (final Map.Entry<Integer, AtomicLong> counter : counters.entrySet()) {
+			copy.put(counter.getKey(), counter.getValue().get());
+		}
+		return copy;
+	}
+}
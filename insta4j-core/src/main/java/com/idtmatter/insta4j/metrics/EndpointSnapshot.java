@@ -0,0 +1,112 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The metrics of one endpoint at one moment.
+ */
+public final class EndpointSnapshot {
+
+	private final String endpoint;
+	private final HistogramSnapshot latency;
+	private final int inFlight;
+	private final long failures;
+	private final long requestBytes;
+	private final long responseBytes;
+	private final Map<Integer, Long> statuses;
+	private final Map<Integer, Long> errorCodes;
+
+	EndpointSnapshot(final String endpoint, final HistogramSnapshot latency, final int inFlight, final long failures,
+			final long requestBytes, final long responseBytes, final Map<Integer, Long> statuses,
+			final Map<Integer, Long> errorCodes) {
+		this.endpoint = endpoint;
+		this.latency = latency;
+		this.inFlight = inFlight;
+		this.failures = failures;
+		this.requestBytes = requestBytes;
+		this.responseBytes = responseBytes;
+		this.statuses = Collections.unmodifiableMap(statuses);
+		this.errorCodes = Collections.unmodifiableMap(errorCodes);
+	}
+
+	/**
+	 * @return The path of the endpoint, e.g. /api/1/bookmarks/list
+	 */
+	public String getEndpoint() {
+		return endpoint;
+	}
+
+	/**
+	 * @return The time from sending a request to reading the status line of its answer, in microseconds.
+	 */
+	public HistogramSnapshot getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @return The requests answered, whatever their status.
+	 */
+	public long getRequests() {
+		return latency.getCount();
+	}
+
+	/**
+	 * @return The requests sent and not answered yet.
+	 */
+	public int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * @return The requests that got no answer, e.g. a refused connection or a read timeout.
+	 */
+	public long getFailures() {
+		return failures;
+	}
+
+	public long getRequestBytes() {
+		return requestBytes;
+	}
+
+	/**
+	 * @return The bytes of the response bodies read by the client.
+	 */
+	public long getResponseBytes() {
+		return responseBytes;
+	}
+
+	/**
+	 * @return The requests by http status.
+	 */
+	public Map<Integer, Long> getStatuses() {
+		return statuses;
+	}
+
+	/**
+	 * @return The requests by Instapaper error code, e.g. 1040 or 1240.
+	 */
+	public Map<Integer, Long> getErrorCodes() {
+		return errorCodes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %s in flight=%d failures=%d statuses=%s errors=%s", endpoint, latency, inFlight,
+				failures, statuses, errorCodes);
+	}
+}
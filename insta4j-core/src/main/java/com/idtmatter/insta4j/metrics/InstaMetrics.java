@@ -0,0 +1,172 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.metrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Per endpoint request metrics of the clients recording into it through a {@link MetricsFilter}, one instance may be
+ * shared by many clients.
+ * <p>
+ * {@link #snapshot()} gives the latency percentiles, byte counts, status and error code counters and in-flight
+ * requests of every endpoint, {@link #writePrometheus(Appendable)} writes them in the Prometheus text format:
+ * <p>
+ * <blockquote><pre>
+ *     insta4j_request_duration_seconds{endpoint="/api/1/bookmarks/list",quantile="0.99"} 0.412
+ *     insta4j_requests_total{endpoint="/api/1/bookmarks/list",status="200"} 1200
+ *     insta4j_errors_total{endpoint="/api/1/bookmarks/add",code="1240"} 3
+ * </pre></blockquote>
+ */
+public class InstaMetrics {
+
+	/**
+	 * Paths beyond this many are recorded together as "other", so a misbehaving caller can not grow the metrics.
+	 */
+	static final int MAX_ENDPOINTS = 100;
+	static final String OTHER = "other";
+
+	private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+	private final ConcurrentMap<String, EndpointMetrics> endpoints = new ConcurrentHashMap<String, EndpointMetrics>();
+
+	EndpointMetrics endpoint(final String path) {
+		final EndpointMetrics existing = endpoints.get(path);
+		if (existing != null) {
+			return existing;
+		}
+		final String name = endpoints.size() < MAX_ENDPOINTS ? path : OTHER;
+		final EndpointMetrics created = new EndpointMetrics(name);
+		final EndpointMetrics raced = endpoints.putIfAbsent(name, created);
+		return raced != null ? raced : created;
+	}
+
+	/**
+	 * @return A filter recording the requests of a client.
+	 */
+	public MetricsFilter filter() {
+		return new MetricsFilter(this);
+	}
+
+	/**
+	 * @return The metrics of every endpoint called so far, ordered by path.
+	 */
+	public List<EndpointSnapshot> snapshot() {
+		final List<EndpointSnapshot> snapshots = new ArrayList<EndpointSnapshot>();
+		for (final EndpointMetrics endpoint : new TreeMap<String, EndpointMetrics>(endpoints).values()) {
+			snapshots.add(endpoint.snapshot());
+		}
+		return snapshots;
+	}
+
+	/**
+	 * @return The metrics of an endpoint, null if it was never called.
+	 */
+	public EndpointSnapshot snapshot(final String endpoint) {
+		final EndpointMetrics metrics = endpoints.get(endpoint);
+		return metrics != null ? metrics.snapshot() : null;
+	}
+
+	/**
+	 * Writes the metrics in the Prometheus text exposition format, version 0.0.4.
+	 */
+	public void writePrometheus(final Appendable out) throws IOException {
+		final List<EndpointSnapshot> snapshots = snapshot();
+		out.append("# HELP insta4j_request_duration_seconds Time until the status line of the answer is read.\n");
+		out.append("# TYPE insta4j_request_duration_seconds summary\n");
+		for (final EndpointSnapshot endpoint : snapshots) {
+			final HistogramSnapshot latency = endpoint.getLatency();
+			for (final double quantile : QUANTILES) {
+				sample(out, "insta4j_request_duration_seconds", endpoint, "quantile", Double.toString(quantile),
+						latency.getPercentile(quantile) / 1e6);
+			}
+			sample(out, "insta4j_request_duration_seconds_sum", endpoint, null, null, latency.getSum() / 1e6);
+			sample(out, "insta4j_request_duration_seconds_count", endpoint, null, null, latency.getCount());
+		}
+		out.append("# HELP insta4j_requests_total Answered requests by http status.\n");
+		out.append("# TYPE insta4j_requests_total counter\n");
+		for (final EndpointSnapshot endpoint : snapshots) {
+			for (final Map.Entry<Integer, Long> status : endpoint.getStatuses().entrySet()) {
+				sample(out, "insta4j_requests_total", endpoint, "status", status.getKey().toString(),
+						status.getValue());
+			}
+		}
+		out.append("# HELP insta4j_errors_total Answers by Instapaper error code.\n");
+		out.append("# TYPE insta4j_errors_total counter\n");
+		for (final EndpointSnapshot endpoint : snapshots) {
+			for (final Map.Entry<Integer, Long> code : endpoint.getErrorCodes().entrySet()) {
+				sample(out, "insta4j_errors_total", endpoint, "code", code.getKey().toString(), code.getValue());
+			}
+		}
+		out.append("# HELP insta4j_request_failures_total Requests that got no answer.\n");
+		out.append("# TYPE insta4j_request_failures_total counter\n");
+		for (final EndpointSnapshot endpoint : snapshots) {
+			sample(out, "insta4j_request_failures_total", endpoint, null, null, endpoint.getFailures());
+		}
+		out.append("# HELP insta4j_requests_in_flight Requests sent and not answered yet.\n");
+		out.append("# TYPE insta4j_requests_in_flight gauge\n");
+		for (final EndpointSnapshot endpoint : snapshots) {
+			sample(out, "insta4j_requests_in_flight", endpoint, null, null, endpoint.getInFlight());
+		}
+		out.append("# HELP insta4j_request_bytes_total Bytes of the request bodies.\n");
+		out.append("# TYPE insta4j_request_bytes_total counter\n");
+		for (final EndpointSnapshot endpoint : snapshots) {
+			sample(out, "insta4j_request_bytes_total", endpoint, null, null, endpoint.getRequestBytes());
+		}
+		out.append("# HELP insta4j_response_bytes_total Bytes of the response bodies read.\n");
+		out.append("# TYPE insta4j_response_bytes_total counter\n");
+		for (final EndpointSnapshot endpoint : snapshots) {
+			sample(out, "insta4j_response_bytes_total", endpoint, null, null, endpoint.getResponseBytes());
+		}
+	}
+
+	/**
+	 * @return The metrics in the Prometheus text exposition format.
+	 */
+	public String toPrometheus() {
+		final StringBuilder out = new StringBuilder(4096);
+		try {
+			writePrometheus(out);
+		} catch (IOException e) {
+			// a StringBuilder does not throw
+			throw new IllegalStateException(e);
+		}
+		return out.toString();
+	}
+
+	private static void sample(final Appendable out, final String name, final EndpointSnapshot endpoint,
+			final String label, final String value, final double sample) throws IOException {
+		out.append(name).append("{endpoint=\"").append(escape(endpoint.getEndpoint())).append('"');
+		if (label != null) {
+			out.append(',').append(label).append("=\"").append(value).append('"');
+		}
+		out.append("} ");
+		if (sample == Math.rint(sample) && Math.abs(sample) < 1e15) {
+			out.append(Long.toString((long) sample));
+		} else {
+			out.append(Double.toString(sample));
+		}
+		out.append('\n');
+	}
+
+	private static String escape(final String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.metrics;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.jersey.api.client.AbstractClientRequestAdapter;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientRequestAdapter;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+/**
+ * Records every request of a client in {@link InstaMetrics}: its latency until the status line is read, the bytes
+ * written and read, the http status and, for a 400, the Instapaper error code found in the first bytes of the body.
+ * <p>
+ * Nothing is buffered or logged, the body streams are only counted as the client reads them. The filter should be
+ * the last of the client, closest to the transport, so that every attempt of a retried request is recorded.
+ */
+public class MetricsFilter extends ClientFilter {
+
+	private static final Pattern ERROR_CODE = Pattern.compile("\"error_code\"\\s*:\\s*\"?(\\d{1,9})");
+	private static final int SNIFFED_BYTES = 256;
+
+	private final InstaMetrics metrics;
+
+	public MetricsFilter(final InstaMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public ClientResponse handle(final ClientRequest request) throws ClientHandlerException {
+		final EndpointMetrics endpoint = metrics.endpoint(request.getURI().getPath());
+		final ClientRequestAdapter adapter = request.getAdapter();
+		request.setAdapter(new CountingAdapter(adapter, endpoint));
+		endpoint.inFlight.incrementAndGet();
+		final long start = System.nanoTime();
+		final ClientResponse response;
+		try {
+			response = getNext().handle(request);
+		} catch (ClientHandlerException e) {
+			endpoint.failures.incrementAndGet();
+			throw e;
+		} finally {
+			endpoint.inFlight.decrementAndGet();
+			// a retry of the request is counted once
+			request.setAdapter(adapter);
+		}
+		endpoint.latency.record((System.nanoTime() - start) / 1000);
+		endpoint.status(response.getStatus());
+		if (response.hasEntity()) {
+			response.setEntityInputStream(new CountingInputStream(response.getEntityInputStream(), endpoint,
+					response.getStatus() == 400));
+		}
+		return response;
+	}
+
+	private static final class CountingAdapter extends AbstractClientRequestAdapter {
+		private final EndpointMetrics endpoint;
+
+		CountingAdapter(final ClientRequestAdapter adapter, final EndpointMetrics endpoint) {
+			super(adapter);
+			this.endpoint = endpoint;
+		}
+
+		public OutputStream adapt(final ClientRequest request, final OutputStream stream) throws IOException {
+			return new FilterOutputStream(getAdapter().adapt(request, stream)) {
+				@Override
+				public void write(final int b) throws IOException {
+					out.write(b);
+					endpoint.requestBytes.incrementAndGet();
+				}
+
+				@Override
+				public void write(final byte[] b, final int off, final int len) throws IOException {
+					out.write(b, off, len);
+					endpoint.requestBytes.addAndGet(len);
+				}
+			};
+		}
+	}
+
+	/**
+	 * Counts the body as it is read and keeps the first bytes of an error to find its code, recorded at the end of
+	 * the body or when it is closed.
+	 */
+	private static final class CountingInputStream extends FilterInputStream {
+		private final EndpointMetrics endpoint;
+		private byte[] sniffed;
+		private int sniffedLength;
+		private long count;
+		private boolean recorded;
+
+		CountingInputStream(final InputStream in, final EndpointMetrics endpoint, final boolean sniff) {
+			super(in);
+			this.endpoint = endpoint;
+			this.sniffed = sniff ? new byte[SNIFFED_BYTES] : null;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int b = super.read();
+			if (b < 0) {
+				record();
+			} else {
+				count(new byte[]{(byte) b}, 0, 1);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			final int read = super.read(b, off, len);
+			if (read < 0) {
+				record();
+			} else {
+				count(b, off, read);
+			}
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				super.close();
+			} finally {
+				record();
+			}
+		}
+
+		private void count(final byte[] b, final int off, final int read) {
+			count += read;
+			if (sniffed != null && sniffedLength < SNIFFED_BYTES) {
+				final int copied = Math.min(read, SNIFFED_BYTES - sniffedLength);
+				System.arraycopy(b, off, sniffed, sniffedLength, copied);
+				sniffedLength += copied;
+			}
+		}
+
+		private void record() {
+			if (recorded) {
+				return;
+			}
+			recorded = true;
+			endpoint.responseBytes.addAndGet(count);
+			if (sniffed != null) {
+				final Matcher matcher = ERROR_CODE.matcher(new String(sniffed, 0, sniffedLength));
+				if (matcher.find()) {
+					endpoint.errorCode(Integer.parseInt(matcher.group(1)));
+				}
+				sniffed = null;
+			}
+		}
+	}
+}
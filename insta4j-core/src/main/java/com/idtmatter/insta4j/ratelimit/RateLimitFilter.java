@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.ratelimit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.regex.Pattern;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+/**
+ * Sends every request of a client through a {@link RateLimiter}. A request answered with a 1040 error record is
+ * queued again after the back off of its account instead of failing, up to the given number of retries, the last
+ * answer is then handed to the client as it is.
+ * <p>
+ * The filter has to be the first of the client, so the authentication filters after it sign each retry anew.
+ * <p>
+ * A filter created without an account paces each request by the account set on it under {@link #PROPERTY_ACCOUNT},
+ * so a Jersey client shared by many accounts needs a single filter.
+ * <p>
+ * The Simple api answers a rate limited request with a bare 400, as it does a request missing its url. A filter
+ * created for it pauses the account and sends a request answered with a 400 once more, without lowering any rate:
+ * a second 400 is taken as a bad request and handed to the client.
+ */
+public class RateLimitFilter extends ClientFilter {
+
+	/**
+	 * The request property naming the account of a request, a String.
+	 */
+	public static final String PROPERTY_ACCOUNT = "insta4j.ratelimit.account";
+
+	/**
+	 * How often a rate limited request is sent again unless configured otherwise.
+	 */
+	public static final int DEFAULT_RETRIES = 8;
+
+	private static final Pattern RATE_LIMITED = Pattern.compile("\"error_code\"\\s*:\\s*\"?1040\\b");
+	private static final int MAX_ERROR_BYTES = 4096;
+
+	private final RateLimiter limiter;
+	private final String account;
+	private final int maxRetries;
+	private final boolean badRequestRateLimited;
+
+	/**
+	 * @param account    The key of the account of the client, e.g. the username
+	 * @param maxRetries How often a rate limited request is sent again
+	 */
+	public RateLimitFilter(final RateLimiter limiter, final String account, final int maxRetries) {
+		this(limiter, account, maxRetries, false);
+	}
+
+	/**
+	 * @param maxRetries How often a rate limited request is sent again
+	 */
+	public RateLimitFilter(final RateLimiter limiter, final int maxRetries) {
+		this(limiter, null, maxRetries, false);
+	}
+
+	/**
+	 * @param badRequestRateLimited true to send a request answered with a 400 once more after a pause, for the
+	 *                              Simple api
+	 */
+	public RateLimitFilter(final RateLimiter limiter, final String account, final int maxRetries,
+			final boolean badRequestRateLimited) {
+		this.limiter = limiter;
+		this.account = account;
+		this.maxRetries = maxRetries;
+		this.badRequestRateLimited = badRequestRateLimited;
+	}
+
+	@Override
+	public ClientResponse handle(final ClientRequest request) throws ClientHandlerException {
+		final String account = this.account != null ? this.account : (String) request.getProperties().get(
+				PROPERTY_ACCOUNT);
+		boolean pausedOnBadRequest = false;
+		for (int attempt = 0; ; attempt++) {
+			final long sentAt;
+			try {
+				sentAt = limiter.acquire(account);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ClientHandlerException(e);
+			}
+			final ClientResponse response = getNext().handle(request);
+			if (badRequestRateLimited && response.getStatus() == 400) {
+				// maybe rate limited, maybe a bad request, worth a single retry but not a lower rate
+				if (pausedOnBadRequest) {
+					return response;
+				}
+				pausedOnBadRequest = true;
+				limiter.pause(account);
+				response.close();
+				request.getHeaders().remove("Authorization");
+				continue;
+			}
+			if (!isRateLimited(response)) {
+				limiter.onSuccess(account);
+				return response;
+			}
+			limiter.onRateLimited(account, sentAt);
+			if (attempt >= maxRetries) {
+				return response;
+			}
+			response.close();
+			// signed again by the authentication filter with a fresh nonce
+			request.getHeaders().remove("Authorization");
+		}
+	}
+
+	/**
+	 * Reads the body of a 400 answer to look for the 1040 error code, the body is then put back for the client.
+	 */
+	private boolean isRateLimited(final ClientResponse response) {
+		if (response.getStatus() != 400 || !response.hasEntity()) {
+			return false;
+		}
+		final byte[] body;
+		try {
+			body = read(response.getEntityInputStream());
+		} catch (IOException e) {
+			throw new ClientHandlerException(e);
+		}
+		response.setEntityInputStream(new ByteArrayInputStream(body));
+		try {
+			return RATE_LIMITED.matcher(new String(body, 0, Math.min(body.length, MAX_ERROR_BYTES), "UTF-8"))
+					.find();
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private static byte[] read(final InputStream in) throws IOException {
+		try {
+			final ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+			final byte[] buffer = new byte[1024];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				body.write(buffer, 0, read);
+			}
+			return body.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
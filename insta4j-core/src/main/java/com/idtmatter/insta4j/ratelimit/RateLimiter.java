@@ -0,0 +1,265 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.ratelimit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Paces the requests of a consumer key and of each account using it with token buckets, and learns the rate
+ * Instapaper actually allows from its 1040 (rate-limit exceeded) answers.
+ * <p>
+ * Callers wait for their slot in {@link #acquire(String)} instead of failing. When a request is rate limited the
+ * rate it was sent at is remembered as the ceiling of its account, the rate drops to 70% of it and the account
+ * pauses, for half a second and twice as long for every further 1040 in a row up to a minute. Successful requests
+ * raise the rate back to the ceiling within three seconds, then probe above it slowly, so a long running job
+ * spends most of its time just under the limit of the service. The rate of the consumer key, if one is set, is
+ * lowered and raised back the same way, without pausing the other accounts.
+ * <p>
+ * An account without a rate of its own starts at the rate of the consumer key, or at {@link #DEFAULT_ACCOUNT_RATE}
+ * if the consumer key is not limited either, so a 1040 has a rate to lower.
+ * <p>
+ * One limiter is meant to be shared by all clients of a consumer key, see {@link #forConsumerKey}.
+ *
+ * @see RateLimitFilter
+ */
+public class RateLimiter {
+
+	/**
+	 * The requests per second an account starts at when neither an account rate nor a consumer rate is set.
+	 */
+	public static final double DEFAULT_ACCOUNT_RATE = 10;
+
+	private static final ConcurrentMap<String, RateLimiter> BY_CONSUMER_KEY =
+			new ConcurrentHashMap<String, RateLimiter>();
+
+	private static final long MIN_PAUSE = TimeUnit.MILLISECONDS.toNanos(500);
+	private static final double DECREASE = 0.7;
+	private static final double RECOVERY_PER_SECOND = 0.1;
+	private static final double PROBE_PER_SECOND = 0.02;
+	private static final long MAX_PAUSE = TimeUnit.MINUTES.toNanos(1);
+
+	private final Pace consumer;
+	private final double consumerRate;
+	private final double accountRate;
+	private final double burst;
+	private final ConcurrentMap<String, Pace> accounts = new ConcurrentHashMap<String, Pace>();
+
+	private final AtomicLong rateLimited = new AtomicLong();
+	private final AtomicLong waitedNanos = new AtomicLong();
+
+	/**
+	 * @param consumerRate Requests per second of all accounts together, 0 for no limit
+	 * @param accountRate  Requests per second of a single account, 0 to start each account at the consumer rate
+	 */
+	public RateLimiter(final double consumerRate, final double accountRate) {
+		this(consumerRate, accountRate, 1);
+	}
+
+	/**
+	 * @param burst Requests let through at once after an idle period
+	 */
+	public RateLimiter(final double consumerRate, final double accountRate, final double burst) {
+		this.consumer = consumerRate > 0 ? new Pace(consumerRate, burst) : null;
+		this.consumerRate = consumerRate;
+		this.accountRate = accountRate;
+		this.burst = burst;
+	}
+
+	/**
+	 * @return The limiter shared by every client of the consumer key in this jvm configured with the same rates.
+	 *         Clients configured with other rates, e.g. after the configuration was reloaded, get a new limiter that
+	 *         replaces the previous one of the consumer key, which is left to the clients already using it.
+	 */
+	public static RateLimiter forConsumerKey(final String consumerKey, final double consumerRate,
+			final double accountRate) {
+		final String key = consumerKey != null ? consumerKey : "";
+		while (true) {
+			final RateLimiter limiter = BY_CONSUMER_KEY.get(key);
+			if (limiter != null && limiter.consumerRate == consumerRate && limiter.accountRate == accountRate) {
+				return limiter;
+			}
+			final RateLimiter created = new RateLimiter(consumerRate, accountRate);
+			if (limiter == null ? BY_CONSUMER_KEY.putIfAbsent(key, created) == null : BY_CONSUMER_KEY.replace(key,
+					limiter, created)) {
+				return created;
+			}
+		}
+	}
+
+	/**
+	 * Waits until the account and the consumer key may send a request.
+	 *
+	 * @param account The username, or any key of the account
+	 * @return The time the request was let through, to be passed to {@link #onRateLimited(String, long)}.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	public long acquire(final String account) throws InterruptedException {
+		final Pace state = account(account);
+		long wait = state.bucket.reserve(System.nanoTime());
+		sleep(wait);
+		if (consumer != null) {
+			final long consumerWait = consumer.bucket.reserve(System.nanoTime());
+			sleep(consumerWait);
+			wait += consumerWait;
+		}
+		waitedNanos.addAndGet(wait);
+		return System.nanoTime();
+	}
+
+	/**
+	 * Raises the rate of the account and of the consumer key back towards the configured rates.
+	 */
+	public void onSuccess(final String account) {
+		final long now = System.nanoTime();
+		account(account).increase(now);
+		if (consumer != null) {
+			consumer.increase(now);
+		}
+	}
+
+	/**
+	 * Lowers the rate of the account and pauses it, and lowers the rate of the consumer key, each once for all the
+	 * requests sent before its previous decrease.
+	 *
+	 * @param sentAt The time returned by {@link #acquire(String)} for the rate limited request
+	 */
+	public void onRateLimited(final String account, final long sentAt) {
+		rateLimited.incrementAndGet();
+		final long now = System.nanoTime();
+		account(account).decrease(sentAt, now, true);
+		if (consumer != null) {
+			consumer.decrease(sentAt, now, false);
+		}
+	}
+
+	/**
+	 * Pauses the account for the shortest back off without lowering its rate, after an answer that may or may not
+	 * mean the request was rate limited.
+	 */
+	public void pause(final String account) {
+		account(account).pause(System.nanoTime());
+	}
+
+	/**
+	 * @return The requests per second the account is currently paced at.
+	 */
+	public double getRate(final String account) {
+		return account(account).bucket.getRate();
+	}
+
+	/**
+	 * @return The requests per second all accounts together are currently paced at, 0 if the consumer key is not
+	 *         limited.
+	 */
+	public double getConsumerRate() {
+		return consumer != null ? consumer.bucket.getRate() : 0;
+	}
+
+	/**
+	 * @return The 1040 answers seen.
+	 */
+	public long getRateLimitedCount() {
+		return rateLimited.get();
+	}
+
+	/**
+	 * @return The time requests spent waiting for their slot, in milliseconds.
+	 */
+	public long getWaitedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(waitedNanos.get());
+	}
+
+	private Pace account(final String account) {
+		final String key = account != null ? account : "";
+		final Pace state = accounts.get(key);
+		if (state != null) {
+			return state;
+		}
+		final Pace created = new Pace(accountRate > 0 ? accountRate : consumerRate > 0 ? consumerRate
+				: DEFAULT_ACCOUNT_RATE, burst);
+		final Pace raced = accounts.putIfAbsent(key, created);
+		return raced != null ? raced : created;
+	}
+
+	private static void sleep(final long nanos) throws InterruptedException {
+		if (nanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+		}
+	}
+
+	/**
+	 * The adaptive pacing of one account or of the consumer key.
+	 */
+	private static final class Pace {
+		final TokenBucket bucket;
+		final double maxRate;
+		final double minRate;
+		double ceiling;
+		long lastChange = System.nanoTime();
+		long lastDecrease;
+		boolean decreased;
+		int consecutive;
+
+		Pace(final double maxRate, final double burst) {
+			this.bucket = new TokenBucket(maxRate, burst);
+			this.maxRate = maxRate;
+			this.minRate = Math.min(maxRate, 0.1);
+			this.ceiling = maxRate;
+		}
+
+		synchronized void increase(final long now) {
+			consecutive = 0;
+			if (now - lastChange <= 0) {
+				// still paused
+				return;
+			}
+			final double rate = bucket.getRate();
+			if (rate < maxRate) {
+				final double seconds = (now - lastChange) / 1e9;
+				final double step = ceiling * (rate < ceiling ? RECOVERY_PER_SECOND : PROBE_PER_SECOND) * seconds;
+				bucket.setRate(Math.min(maxRate, rate < ceiling ? Math.min(ceiling, rate + step) : rate + step));
+			}
+			lastChange = now;
+		}
+
+		void pause(final long now) {
+			bucket.pauseUntil(now + MIN_PAUSE);
+		}
+
+		/**
+		 * @param pause Whether no request may be sent for the back off
+		 */
+		synchronized void decrease(final long sentAt, final long now, final boolean pause) {
+			if (decreased && sentAt - lastDecrease < 0) {
+				// sent before the last decrease, already accounted for
+				return;
+			}
+			consecutive++;
+			ceiling = Math.max(minRate, bucket.getRate());
+			bucket.setRate(Math.max(minRate, ceiling * DECREASE));
+			lastDecrease = now;
+			decreased = true;
+			lastChange = now;
+			if (pause) {
+				final long backOff = Math.min(MAX_PAUSE, MIN_PAUSE << Math.min(consecutive - 1, 6));
+				bucket.pauseUntil(now + backOff);
+				lastChange = now + backOff;
+			}
+		}
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.ratelimit;
+
+/**
+ * A token bucket kept as the time the next request is due, so callers reserve their slot and wait for it in the
+ * order they arrived instead of polling.
+ */
+final class TokenBucket {
+
+	private double rate;
+	private final double burst;
+	private long due;
+
+	/**
+	 * @param rate  Requests per second
+	 * @param burst Requests let through at once after an idle period
+	 */
+	TokenBucket(final double rate, final double burst) {
+		this.rate = rate;
+		this.burst = Math.max(1, burst);
+		this.due = System.nanoTime();
+	}
+
+	/**
+	 * Takes the next slot.
+	 *
+	 * @param now {@link System#nanoTime()}
+	 * @return The nanoseconds to wait before sending.
+	 */
+	synchronized long reserve(final long now) {
+		final long interval = (long) (1000000000L / rate);
+		final long next = Math.max(due, now);
+		due = next + interval;
+		return Math.max(0, next - (long) ((burst - 1) * interval) - now);
+	}
+
+	/**
+	 * Holds back all slots not taken yet until the given time.
+	 */
+	synchronized void pauseUntil(final long time) {
+		final long tolerance = (long) ((burst - 1) * (1000000000L / rate));
+		due = Math.max(due, time + tolerance);
+	}
+
+	synchronized double getRate() {
+		return rate;
+	}
+
+	synchronized void setRate(final double rate) {
+		this.rate = rate;
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.dedup;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the forms {@link UrlCanonicalizer} merges and the membership answers of {@link UrlIndex}.
+ */
+public class UrlIndexTest {
+
+	@Test
+	public void shouldMergeFormsOfTheSameUrl() {
+		final String canonical = "//example.com/articles/42?id=7&page=2";
+		Assert.assertEquals(canonical, UrlCanonicalizer.canonicalize("http://example.com/articles/42?id=7&page=2"));
+		Assert.assertEquals(canonical, UrlCanonicalizer.canonicalize(
+				" HTTPS://Example.COM:443/articles/42/?page=2&utm_source=twitter&id=7&fbclid=abc#comments "));
+		Assert.assertEquals(canonical, UrlCanonicalizer.canonicalize("http://user@example.com.:80/articles/42?"
+				+ "utm_medium=email&page=2&&id=7"));
+		Assert.assertEquals("//example.com", UrlCanonicalizer.canonicalize("https://example.com/"));
+		Assert.assertEquals("//example.com/a%2Fb", UrlCanonicalizer.canonicalize("http://example.com/a%2fb"));
+		Assert.assertEquals("//example.com:8080#!/inbox", UrlCanonicalizer.canonicalize(
+				"http://example.com:8080/#!/inbox"));
+		// the path keeps its case
+		Assert.assertFalse(UrlCanonicalizer.canonicalize("http://example.com/About").equals(UrlCanonicalizer
+				.canonicalize("http://example.com/about")));
+		Assert.assertNull(UrlCanonicalizer.canonicalize("instapaper://private-content/123"));
+		Assert.assertNull(UrlCanonicalizer.canonicalize("mailto:jinstapaper@gmail.com"));
+		Assert.assertNull(UrlCanonicalizer.canonicalize("http:///path"));
+	}
+
+	@Test
+	public void shouldFindSavedUrlsInAnyForm() {
+		final UrlIndex index = new UrlIndex(16);
+		for (int i = 0; i < 10000; i++) {
+			Assert.assertTrue(index.add("http://example.com/articles/" + i, 1000 + i));
+		}
+		Assert.assertFalse(index.add("mailto:jinstapaper@gmail.com", 1));
+		Assert.assertEquals(10000, index.size());
+		for (int i = 0; i < 10000; i++) {
+			Assert.assertEquals(1000 + i, index.lookup("https://example.com/articles/" + i + "/?utm_campaign=x"));
+		}
+		int found = 0;
+		for (int i = 10000; i < 20000; i++) {
+			found += index.contains("http://example.com/articles/" + i) ? 1 : 0;
+		}
+		Assert.assertEquals(0, found);
+		Assert.assertEquals(20000, index.getLookups());
+		Assert.assertEquals(10000, index.getHits());
+		// about 1% of the new urls pass the filter and are answered by the table
+		Assert.assertTrue(index.toString(), index.getFiltered() > 9500);
+
+		Assert.assertTrue(index.remove("https://example.com/articles/5/"));
+		Assert.assertFalse(index.remove("http://example.com/articles/5"));
+		Assert.assertTrue(index.removeBookmark(1006));
+		Assert.assertFalse(index.removeBookmark(1006));
+		for (int i = 0; i < 5000; i++) {
+			index.remove("http://example.com/articles/" + (i * 2));
+		}
+		Assert.assertEquals(4999, index.size());
+		for (int i = 0; i < 10000; i++) {
+			final boolean kept = i % 2 == 1 && i != 5;
+			Assert.assertEquals(String.valueOf(i), kept, index.contains("http://example.com/articles/" + i));
+		}
+		index.add("http://example.com/articles/6", 0);
+		Assert.assertEquals(0, index.lookup("http://example.com/articles/6"));
+		index.clear();
+		Assert.assertEquals(0, index.size());
+		Assert.assertFalse(index.contains("http://example.com/articles/7"));
+	}
+}
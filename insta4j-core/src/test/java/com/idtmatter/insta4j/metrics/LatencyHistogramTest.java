@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the buckets and percentiles of {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void shouldKeepPercentilesWithinBucketPrecision() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		for (long micros = 1; micros <= 100000; micros++) {
+			histogram.record(micros);
+		}
+		final HistogramSnapshot snapshot = histogram.snapshot();
+		Assert.assertEquals(100000, snapshot.getCount());
+		Assert.assertEquals(100000, snapshot.getMax());
+		Assert.assertEquals(50000.5, snapshot.getMean(), 0.001);
+		Assert.assertEquals(50000, snapshot.getPercentile(0.5), 50000 * 0.0625);
+		Assert.assertEquals(99000, snapshot.getPercentile(0.99), 99000 * 0.0625);
+		Assert.assertEquals(100000, snapshot.getPercentile(1.0));
+	}
+
+	@Test
+	public void shouldMapEveryValueToItsBucket() {
+		int previous = -1;
+		for (long value = 0; value < (1L << 40); value = value < 64 ? value + 1 : value + value / 7) {
+			final int index = LatencyHistogram.index(value);
+			Assert.assertTrue(index >= previous && index < LatencyHistogram.BUCKETS);
+			Assert.assertTrue(Math.abs(LatencyHistogram.value(index) - value) <= Math.max(1, value / 16));
+			previous = index;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.ratelimit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Checks the pacing and the back off of {@link RateLimiter}.
+ */
+public class RateLimiterTest {
+
+	@Test
+	public void shouldPaceAccount() throws InterruptedException {
+		final RateLimiter limiter = new RateLimiter(0, 100);
+		final long start = System.nanoTime();
+		for (int i = 0; i < 51; i++) {
+			limiter.acquire("jinstapaper@gmail.com");
+		}
+		final long elapsedMillis = (System.nanoTime() - start) / 1000000;
+		Assert.assertTrue("took " + elapsedMillis + "ms", elapsedMillis >= 480);
+		// another account has its own bucket
+		final long other = System.nanoTime();
+		limiter.acquire("other@gmail.com");
+		Assert.assertTrue((System.nanoTime() - other) / 1000000 < 50);
+	}
+
+	@Test
+	public void shouldBackOffOncePerRateLimitedBurst() throws InterruptedException {
+		final RateLimiter limiter = new RateLimiter(0, 100);
+		final long sentAt = limiter.acquire("jinstapaper@gmail.com");
+		limiter.onRateLimited("jinstapaper@gmail.com", sentAt);
+		// a second request of the same burst does not lower the rate again
+		limiter.onRateLimited("jinstapaper@gmail.com", sentAt);
+		Assert.assertEquals(70.0, limiter.getRate("jinstapaper@gmail.com"), 0.001);
+		Assert.assertEquals(2, limiter.getRateLimitedCount());
+
+		final long start = System.nanoTime();
+		limiter.acquire("jinstapaper@gmail.com");
+		Assert.assertTrue((System.nanoTime() - start) / 1000000 >= 490);
+		Thread.sleep(200);
+		limiter.onSuccess("jinstapaper@gmail.com");
+		final double recovered = limiter.getRate("jinstapaper@gmail.com");
+		Assert.assertTrue("rate " + recovered, recovered > 70 && recovered < 100);
+	}
+
+	@Test
+	public void shouldLowerConsumerRateWithoutPausingOtherAccounts() throws InterruptedException {
+		final RateLimiter limiter = new RateLimiter(100, 0);
+		final long sentAt = limiter.acquire("jinstapaper@gmail.com");
+		limiter.onRateLimited("jinstapaper@gmail.com", sentAt);
+		limiter.onRateLimited("other@gmail.com", sentAt);
+		Assert.assertEquals(70.0, limiter.getConsumerRate(), 0.001);
+
+		final long start = System.nanoTime();
+		limiter.acquire("third@gmail.com");
+		Assert.assertTrue((System.nanoTime() - start) / 1000000 < 100);
+		Thread.sleep(200);
+		limiter.onSuccess("third@gmail.com");
+		final double recovered = limiter.getConsumerRate();
+		Assert.assertTrue("rate " + recovered, recovered > 70 && recovered < 100);
+	}
+
+	@Test
+	public void shouldLowerAnAccountWithoutARateOfItsOwn() {
+		final RateLimiter unlimited = new RateLimiter(0, 0);
+		Assert.assertEquals(RateLimiter.DEFAULT_ACCOUNT_RATE, unlimited.getRate("jinstapaper@gmail.com"), 0.001);
+		unlimited.onRateLimited("jinstapaper@gmail.com", System.nanoTime());
+		Assert.assertEquals(RateLimiter.DEFAULT_ACCOUNT_RATE * 0.7, unlimited.getRate("jinstapaper@gmail.com"), 0.001);
+
+		final RateLimiter consumer = new RateLimiter(50, 0);
+		Assert.assertEquals(50.0, consumer.getRate("jinstapaper@gmail.com"), 0.001);
+		consumer.onRateLimited("jinstapaper@gmail.com", System.nanoTime());
+		Assert.assertEquals(35.0, consumer.getRate("jinstapaper@gmail.com"), 0.001);
+	}
+
+	@Test
+	public void shouldKeepOneLimiterPerConsumerKey() {
+		final RateLimiter first = RateLimiter.forConsumerKey("shared-key", 10, 2);
+		Assert.assertSame(first, RateLimiter.forConsumerKey("shared-key", 10, 2));
+		final RateLimiter reloaded = RateLimiter.forConsumerKey("shared-key", 20, 2);
+		Assert.assertNotSame(first, reloaded);
+		Assert.assertSame(reloaded, RateLimiter.forConsumerKey("shared-key", 20, 2));
+		Assert.assertNotSame(first, RateLimiter.forConsumerKey("shared-key", 10, 2));
+	}
+}
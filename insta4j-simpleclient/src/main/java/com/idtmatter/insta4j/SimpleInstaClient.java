@@ -14,7 +14,9 @@
 
 package com.idtmatter.insta4j;
 
-import java.util.Stack;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
@@ -23,29 +25,47 @@ import javax.ws.rs.core.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.idtmatter.insta4j.dedup.UrlIndex;
+import com.idtmatter.insta4j.metrics.InstaMetrics;
+import com.idtmatter.insta4j.ratelimit.RateLimitFilter;
+import com.idtmatter.insta4j.ratelimit.RateLimiter;
 import com.sun.istack.NotNull;
 import com.sun.istack.Nullable;
 import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.config.ClientConfig;
 import com.sun.jersey.api.client.config.DefaultClientConfig;
 import com.sun.jersey.api.client.filter.ClientFilter;
-import com.sun.jersey.api.client.filter.HTTPBasicAuthFilter;
 import com.sun.jersey.api.client.filter.LoggingFilter;
+import com.sun.jersey.core.util.Base64;
 import com.sun.jersey.core.util.MultivaluedMapImpl;
 
 /**
  * A java client for Simple Instapaper api http://www.instapaper.com/api/simple
+ * <p/>
+ * The client is thread safe: each request reads the username and password once and is authenticated and rate
+ * limited with them, {@link #updateAuthenticationCredentials(String, String)} only affects the requests started
+ * after it.
+ * <p/>
+ * With a {@link UrlIndex} of the account, e.g. the one a Full api client fills from its listings, a url the account
+ * already has is not sent again.
  *
  * @author dzontak@gmail.com
  */
 public class SimpleInstaClient implements SimpleClient {
 	private static final Logger log = LoggerFactory.getLogger(SimpleInstaClient.class);
 	private static final String INSTAPAPER_BASE_API_URL = "https://www.instapaper.com/api";
+	/**
+	 * The request property holding the {@link Account} a request is sent for.
+	 */
+	private static final String PROPERTY_ACCOUNT = "insta4j.simple.account";
 	private final Client client;
+	private final String baseUrl;
 	private final ClientConfig config = new DefaultClientConfig();
-	private final Stack<ClientFilter> filterStack = new Stack<ClientFilter>();
+	private final AtomicReference<Account> account = new AtomicReference<Account>();
 
 
 	public static SimpleInstaClient create(final String username, final String password) {
@@ -53,28 +73,90 @@ public class SimpleInstaClient implements SimpleClient {
 	}
 
 	public SimpleInstaClient(final String username, final String password) {
+		this(username, password, INSTAPAPER_BASE_API_URL);
+	}
+
+	/**
+	 * @param username The instapaper user
+	 * @param password Optional the Instapaper user password
+	 * @param baseUrl  The base url of the Simple api, e.g. https://www.instapaper.com/api or a local stub server.
+	 */
+	public SimpleInstaClient(final String username, final String password, final String baseUrl) {
+		this(username, password, baseUrl, null);
+	}
+
+	/**
+	 * @param rateLimiter Optional, paces the requests of the user and sends a request once more after a pause when
+	 *                    Instapaper answers with a 400, which the Simple api sends when the rate limit is exceeded
+	 *                    as well as for a bad request
+	 */
+	public SimpleInstaClient(final String username, final String password, final String baseUrl,
+			final RateLimiter rateLimiter) {
+		this(username, password, baseUrl, rateLimiter, null);
+	}
+
+	/**
+	 * @param metrics Optional, records the latency, bytes and status of every request per endpoint
+	 */
+	public SimpleInstaClient(final String username, final String password, final String baseUrl,
+			final RateLimiter rateLimiter, final InstaMetrics metrics) {
+		this(username, password, baseUrl, rateLimiter, metrics, null);
+	}
+
+	/**
+	 * @param urlIndex Optional, the urls of the account, {@link #add(String, String, String)} answers a url in it
+	 *                 without a request and records the urls it saves
+	 */
+	public SimpleInstaClient(final String username, final String password, final String baseUrl,
+			final RateLimiter rateLimiter, final InstaMetrics metrics, final UrlIndex urlIndex) {
+		this.baseUrl = baseUrl;
+		account.set(new Account(username, password, urlIndex));
 		client = Client.create(config);
-		// client basic authentication
-		final HTTPBasicAuthFilter httpBasicAuthFilter = new HTTPBasicAuthFilter(username, password);
-		client.addFilter(httpBasicAuthFilter);
-		filterStack.push(httpBasicAuthFilter);
+		if (metrics != null) {
+			// the last filter, records every attempt as sent on the wire
+			client.addFilter(metrics.filter());
+		}
+		// client basic authentication with the account of each request
+		client.addFilter(new BasicAuthFilter());
 		if (log.isDebugEnabled()) {
 			client.addFilter(new LoggingFilter());
 		}
+		if (rateLimiter != null) {
+			// paces each request by the account set on it
+			// the Simple api answers a rate limited request with a bare 400
+			client.addFilter(new RateLimitFilter(rateLimiter, null, 0, true));
+		}
 	}
 
-
 	/**
-	 * Removes the {@link HTTPBasicAuthFilter} added to {@link Client} at object construction.
-	 * and adds a new instance of the same filter with the new credentials.
+	 * Replaces the credentials of the client in one step, requests in flight complete with the credentials they
+	 * were started with.
 	 *
 	 * @param username The instapaper user
 	 * @param password Optional the Instapaper user password
 	 */
 	public void updateAuthenticationCredentials(final String username, final String password) {
-		final HTTPBasicAuthFilter httpBasicAuthFilter = new HTTPBasicAuthFilter(username, password);
-		client.removeFilter(filterStack.pop());
-		client.addFilter(httpBasicAuthFilter);
+		updateAuthenticationCredentials(username, password, null);
+	}
+
+	/**
+	 * @param urlIndex Optional, the urls of the new account, the index of the previous account is dropped
+	 */
+	public void updateAuthenticationCredentials(final String username, final String password,
+			final UrlIndex urlIndex) {
+		account.set(new Account(username, password, urlIndex));
+	}
+
+	/**
+	 * A resource of the Simple api for a request of the current account, the filters read the account from its
+	 * properties.
+	 */
+	private WebResource resource(final String path) {
+		final Account current = account.get();
+		final WebResource resource = client.resource(baseUrl).path(path);
+		resource.setProperty(PROPERTY_ACCOUNT, current);
+		resource.setProperty(RateLimitFilter.PROPERTY_ACCOUNT, current.username);
+		return resource;
 	}
 
 	/**
@@ -119,12 +201,30 @@ public class SimpleInstaClient implements SimpleClient {
 	 *         X-Instapaper-Title: The saved title for the page, after any auto-detection.
 	 *         if jasonp value was passed in the map will contain a javascript callback function under key 'jasonp'
 	 *         </p>
+	 *         <p>
+	 *         With a {@link UrlIndex} a url the account already has is not sent, the map then only holds its
+	 *         Content-Location.
+	 *         </p>
 	 * @throws InvalidCredentialsException Is thrown if username or password are invalid.
 	 * @throws RuntimeException			Is thrown if a code other than 201 is returned with an appropriate error description.
 	 */
 	public MultivaluedMap<String, String> add(final String url, final String title, final String selection) {
-		return processResponse(this._add(url, title, selection, null, null)).getHeaders();
-
+		final UrlIndex urlIndex = account.get().urlIndex;
+		if (urlIndex != null && urlIndex.contains(url)) {
+			final MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+			headers.add("Content-Location", url);
+			return headers;
+		}
+		final MultivaluedMap<String, String> headers = processResponse(this._add(url, title, selection, null, null))
+				.getHeaders();
+		if (urlIndex != null) {
+			urlIndex.add(url, 0);
+			final List<String> saved = headers.get("Content-Location");
+			if (saved != null && !saved.isEmpty()) {
+				urlIndex.add(saved.get(0), 0);
+			}
+		}
+		return headers;
 	}
 
 
@@ -153,7 +253,7 @@ public class SimpleInstaClient implements SimpleClient {
 
 	private ClientResponse _authenticate(@Nullable final String jsonp) {
 
-		final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/authenticate");
+		final WebResource resource = resource("/authenticate");
 		final MultivaluedMap postData = new MultivaluedMapImpl();
 		if (jsonp != null) {
 			postData.add("jsonp", jsonp);
@@ -166,7 +266,11 @@ public class SimpleInstaClient implements SimpleClient {
 	private ClientResponse _add(@NotNull final String url, @Nullable final String title,
 			@Nullable final String selection, @Nullable final String redirect, @Nullable final String jsonp) {
 
-		final WebResource resource = client.resource(INSTAPAPER_BASE_API_URL).path("/add");
+		if (url == null || url.length() == 0) {
+			// checked here, a 400 of the Simple api may be rate limiting and is sent once more
+			throw new IllegalArgumentException("A url is required");
+		}
+		final WebResource resource = resource("/add");
 		final MultivaluedMap postData = new MultivaluedMapImpl();
 		postData.add("url", url);
 		if (title != null) {
@@ -207,4 +311,38 @@ public class SimpleInstaClient implements SimpleClient {
 						String.format("Instapaper api returned an unknown code '%s'", response.getStatus()));
 		}
 	}
+
+	/**
+	 * A username and password, with the Authorization header they are sent in and the urls of the account.
+	 */
+	private static final class Account {
+		final String username;
+		final String authorization;
+		final UrlIndex urlIndex;
+
+		Account(final String username, final String password, final UrlIndex urlIndex) {
+			this.username = username;
+			this.urlIndex = urlIndex;
+			try {
+				authorization = "Basic " + new String(Base64.encode(username + ":" + (password != null ? password
+						: "")), "ASCII");
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	/**
+	 * Adds the Authorization header of the account set on the request, unless the request has one.
+	 */
+	private static final class BasicAuthFilter extends ClientFilter {
+		@Override
+		public ClientResponse handle(final ClientRequest request) throws ClientHandlerException {
+			final Account account = (Account) request.getProperties().get(PROPERTY_ACCOUNT);
+			if (account != null && !request.getHeaders().containsKey("Authorization")) {
+				request.getHeaders().add("Authorization", account.authorization);
+			}
+			return getNext().handle(request);
+		}
+	}
 }
@@ -0,0 +1,144 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.idtmatter.insta4j.dedup.UrlIndex;
+import com.idtmatter.insta4j.ratelimit.RateLimiter;
+import com.idtmatter.insta4j.stub.InstapaperStubServer;
+
+/**
+ * Runs the {@link SimpleInstaClient} against the {@link InstapaperStubServer}, which answers 403 to a username
+ * sent with the password of another account.
+ */
+public class SimpleInstaClientStubTest {
+
+	private static final int THREADS = 8;
+	private static final int CALLS = 100;
+
+	private InstapaperStubServer server;
+
+	@Before
+	public void setUp() throws Exception {
+		server = new InstapaperStubServer().account("alice", "alice-password").account("bob", "bob-password")
+				.start();
+	}
+
+	@After
+	public void tearDown() {
+		server.stop();
+	}
+
+	@Test
+	public void updatesCredentials() {
+		final SimpleInstaClient client = new SimpleInstaClient("alice", "bob-password", server.getSimpleApiUrl());
+		try {
+			client.authenticate();
+			Assert.fail("alice does not have the password of bob");
+		} catch (InvalidCredentialsException expected) {
+		}
+		client.updateAuthenticationCredentials("alice", "alice-password");
+		Assert.assertTrue(client.authenticate());
+	}
+
+	@Test
+	public void updatesCredentialsWhileSending() throws Exception {
+		final SimpleInstaClient client = new SimpleInstaClient("alice", "alice-password", server.getSimpleApiUrl());
+		final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < THREADS; t++) {
+				final int thread = t;
+				futures.add(executor.submit(new Callable<Integer>() {
+					public Integer call() {
+						for (int i = 0; i < CALLS; i++) {
+							client.add(String.format("http://example.com/%d/%d", thread, i), null, null, null,
+									null);
+						}
+						return CALLS;
+					}
+				}));
+			}
+			// switches the account until every add is sent
+			for (int i = 0; !allDone(futures); i++) {
+				if (i % 2 == 0) {
+					client.updateAuthenticationCredentials("bob", "bob-password");
+				} else {
+					client.updateAuthenticationCredentials("alice", "alice-password");
+				}
+			}
+			int added = 0;
+			for (final Future<Integer> future : futures) {
+				// an add sent with a mixed username and password fails with InvalidCredentialsException
+				added += future.get();
+			}
+			Assert.assertEquals(THREADS * CALLS, added);
+			Assert.assertEquals(THREADS * CALLS, server.getRequestCount("/api/add"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void skipsKnownUrls() {
+		final UrlIndex urlIndex = new UrlIndex();
+		urlIndex.add("http://example.com/listed", 42);
+		final SimpleInstaClient client = new SimpleInstaClient("alice", "alice-password", server.getSimpleApiUrl(),
+				null, null, urlIndex);
+		Assert.assertEquals("http://example.com/listed/", client.add("http://example.com/listed/", null, null)
+				.getFirst("Content-Location"));
+		client.add("http://example.com/new", null, null);
+		client.add("https://example.com/new?utm_medium=email", null, null);
+		Assert.assertEquals(1, server.getRequestCount("/api/add"));
+		Assert.assertTrue(urlIndex.contains("http://example.com/new"));
+	}
+
+	@Test
+	public void backsOffWhenRateLimited() {
+		server.rateLimit(20);
+		final RateLimiter limiter = new RateLimiter(0, 50);
+		final SimpleInstaClient client = new SimpleInstaClient("alice", "alice-password", server.getSimpleApiUrl(),
+				limiter, null);
+		for (int i = 0; i < 60; i++) {
+			// a bare 400 of the stub is sent once more after a pause instead of failing the add
+			client.add("http://example.com/paced/" + i, null, null);
+		}
+		Assert.assertTrue(server.getRateLimitedCount() > 0);
+		// a 400 may be a bad request, it does not lower the rates shared with other clients
+		Assert.assertEquals(0, limiter.getRateLimitedCount());
+		Assert.assertEquals(50.0, limiter.getRate("alice"));
+	}
+
+	private static boolean allDone(final List<? extends Future<?>> futures) {
+		for (final Future<?> future : futures) {
+			if (!future.isDone()) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.stub;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The bookmarks and folders served by the stub server.
+ * <p/>
+ * A dataset starts with a number of synthetic Unread bookmarks that are never materialised: bookmark
+ * <code>n</code> is derived from its id on every read, so datasets with millions of bookmarks cost no memory.
+ * Only bookmarks that are added or changed are kept, in an overlay that shadows the synthetic ones.
+ */
+public class BookmarkDataset {
+
+	/**
+	 * The id of the first synthetic bookmark, the next ones count up from here.
+	 */
+	public static final long FIRST_BOOKMARK_ID = 184117327L;
+	private static final long FIRST_FOLDER_ID = 1190085L;
+	private static final long EPOCH = 1310438674L;
+	private static final String SYNTHETIC_URL = "http://example.com/articles/";
+
+	private final long syntheticCount;
+	private final AtomicLong nextBookmarkId;
+	private final AtomicLong nextFolderId = new AtomicLong(FIRST_FOLDER_ID);
+	/**
+	 * Added and modified bookmarks, a null value marks a deleted bookmark.
+	 */
+	private final ConcurrentMap<Long, Entry> overlay = new ConcurrentHashMap<Long, Entry>();
+	private final ConcurrentMap<String, Long> addedUrls = new ConcurrentHashMap<String, Long>();
+	private final ConcurrentMap<Long, StubFolder> folders = new ConcurrentHashMap<Long, StubFolder>();
+
+	/**
+	 * @param syntheticCount The number of Unread bookmarks the dataset starts with
+	 */
+	public BookmarkDataset(final long syntheticCount) {
+		if (syntheticCount < 0) {
+			throw new IllegalArgumentException("syntheticCount must not be negative");
+		}
+		this.syntheticCount = syntheticCount;
+		this.nextBookmarkId = new AtomicLong(FIRST_BOOKMARK_ID + syntheticCount);
+	}
+
+	/**
+	 * @param id A bookmark id
+	 * @return The bookmark or null if it does not exist or was deleted.
+	 */
+	public StubBookmark get(final long id) {
+		final Entry entry = overlay.get(id);
+		if (entry != null) {
+			return entry.bookmark;
+		}
+		return isSynthetic(id) ? synthetic(id) : null;
+	}
+
+	/**
+	 * Lists a folder newest first.
+	 *
+	 * @param folderId  unread, archive, starred or a folder id
+	 * @param limit	 The maximum number of bookmarks returned
+	 * @param have	  The bookmarks the client already has by id, bookmarks with an unchanged hash are skipped
+	 * @param deleteIds Receives the ids of have entries that are no longer in the folder
+	 * @return Up to limit bookmarks
+	 */
+	public List<StubBookmark> list(final String folderId, final int limit, final Map<Long, String> have,
+			final List<Long> deleteIds) {
+		final List<StubBookmark> bookmarks = new ArrayList<StubBookmark>(Math.min(limit, 512));
+		if (StubBookmark.UNREAD.equals(folderId)) {
+			// synthetic bookmarks all start in Unread, walk the id space backwards.
+			for (long id = nextBookmarkId.get() - 1; id >= FIRST_BOOKMARK_ID && bookmarks.size() < limit; id--) {
+				collect(get(id), folderId, have, bookmarks);
+			}
+		} else {
+			// other folders only ever contain bookmarks of the overlay.
+			final List<StubBookmark> candidates = new ArrayList<StubBookmark>();
+			for (final Entry entry : overlay.values()) {
+				if (entry.bookmark != null && entry.bookmark.isIn(folderId)) {
+					candidates.add(entry.bookmark);
+				}
+			}
+			Collections.sort(candidates, NEWEST_FIRST);
+			for (final StubBookmark bookmark : candidates) {
+				if (bookmarks.size() >= limit) {
+					break;
+				}
+				collect(bookmark, folderId, have, bookmarks);
+			}
+		}
+		if (have != null) {
+			for (final Long id : have.keySet()) {
+				final StubBookmark bookmark = get(id);
+				if (bookmark == null || !bookmark.isIn(folderId)) {
+					deleteIds.add(id);
+				}
+			}
+		}
+		return bookmarks;
+	}
+
+	private static void collect(final StubBookmark bookmark, final String folderId, final Map<Long, String> have,
+			final List<StubBookmark> bookmarks) {
+		if (bookmark == null || !bookmark.isIn(folderId)) {
+			return;
+		}
+		final String knownHash = have != null ? have.get(bookmark.getId()) : null;
+		if (knownHash == null || !knownHash.equals(bookmark.getHash())) {
+			bookmarks.add(bookmark);
+		}
+	}
+
+	/**
+	 * Adds a bookmark, or moves an already saved url to the top of the folder like Instapaper does, taking the new
+	 * title if one is given.
+	 */
+	public synchronized StubBookmark add(final String url, final String title, final String description,
+			final String folderId) {
+		final Long existingId = findByUrl(url);
+		final String folder = folderId != null ? folderId : StubBookmark.UNREAD;
+		if (existingId != null && get(existingId) != null) {
+			final StubBookmark existing = get(existingId).movedTo(folder);
+			return put(title != null ? existing.titled(title) : existing);
+		}
+		final long id = nextBookmarkId.getAndIncrement();
+		addedUrls.put(url, id);
+		return put(new StubBookmark(id, url, title != null ? title : url, description != null ? description : "",
+				System.currentTimeMillis() / 1000, false, folder, 0, 0));
+	}
+
+	/**
+	 * @return True if the bookmark existed.
+	 */
+	public synchronized boolean delete(final long id) {
+		if (get(id) == null) {
+			return false;
+		}
+		overlay.put(id, Entry.DELETED);
+		return true;
+	}
+
+	public synchronized StubBookmark star(final long id, final boolean starred) {
+		final StubBookmark bookmark = get(id);
+		return bookmark == null ? null : put(bookmark.starred(starred));
+	}
+
+	public synchronized StubBookmark move(final long id, final String folderId) {
+		final StubBookmark bookmark = get(id);
+		return bookmark == null ? null : put(bookmark.movedTo(folderId));
+	}
+
+	/**
+	 * Records reading progress, older timestamps than the one already stored are ignored.
+	 */
+	public synchronized StubBookmark updateProgress(final long id, final double progress, final long timestamp) {
+		final StubBookmark bookmark = get(id);
+		if (bookmark == null) {
+			return null;
+		}
+		return timestamp >= bookmark.getProgressTimestamp() ? put(bookmark.progress(progress, timestamp)) : bookmark;
+	}
+
+	/**
+	 * @return The new folder or null if a folder with this title already exists.
+	 */
+	public synchronized StubFolder addFolder(final String title) {
+		for (final StubFolder folder : folders.values()) {
+			if (folder.getTitle().equals(title)) {
+				return null;
+			}
+		}
+		final long id = nextFolderId.getAndIncrement();
+		final StubFolder folder = new StubFolder(id, title, System.currentTimeMillis() / 1000);
+		folders.put(id, folder);
+		return folder;
+	}
+
+	/**
+	 * Deletes a folder and moves its bookmarks to the Archive.
+	 *
+	 * @return True if the folder existed.
+	 */
+	public synchronized boolean deleteFolder(final long id) {
+		if (folders.remove(id) == null) {
+			return false;
+		}
+		final String folderId = Long.toString(id);
+		for (final Entry entry : overlay.values()) {
+			if (entry.bookmark != null && entry.bookmark.isIn(folderId)) {
+				put(entry.bookmark.movedTo(StubBookmark.ARCHIVE));
+			}
+		}
+		return true;
+	}
+
+	public StubFolder getFolder(final long id) {
+		return folders.get(id);
+	}
+
+	public synchronized void setFolderPosition(final long id, final long position) {
+		final StubFolder folder = folders.get(id);
+		if (folder != null) {
+			folders.put(id, folder.position(position));
+		}
+	}
+
+	/**
+	 * @return The user folders ordered by position.
+	 */
+	public List<StubFolder> listFolders() {
+		final List<StubFolder> list = new ArrayList<StubFolder>(folders.values());
+		Collections.sort(list, new Comparator<StubFolder>() {
+			public int compare(final StubFolder left, final StubFolder right) {
+				return left.getPosition() < right.getPosition() ? -1 : (left.getPosition() == right.getPosition() ? 0 : 1);
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * @return The number of bookmarks ever created, deleted ones included.
+	 */
+	public long getBookmarkIdCount() {
+		return nextBookmarkId.get() - FIRST_BOOKMARK_ID;
+	}
+
+	private Long findByUrl(final String url) {
+		if (url.startsWith(SYNTHETIC_URL)) {
+			try {
+				final long id = Long.parseLong(url.substring(SYNTHETIC_URL.length()));
+				if (isSynthetic(id)) {
+					return id;
+				}
+			} catch (NumberFormatException e) {
+				// not one of ours
+			}
+		}
+		return addedUrls.get(url);
+	}
+
+	private StubBookmark put(final StubBookmark bookmark) {
+		overlay.put(bookmark.getId(), new Entry(bookmark));
+		return bookmark;
+	}
+
+	private boolean isSynthetic(final long id) {
+		return id >= FIRST_BOOKMARK_ID && id < FIRST_BOOKMARK_ID + syntheticCount;
+	}
+
+	private static StubBookmark synthetic(final long id) {
+		final long n = id - FIRST_BOOKMARK_ID;
+		return new StubBookmark(id, SYNTHETIC_URL + id, "Synthetic article " + id,
+				"Bookmark number " + n + " of the stub dataset", EPOCH + n * 60, false, StubBookmark.UNREAD, 0, 0);
+	}
+
+	private static final Comparator<StubBookmark> NEWEST_FIRST = new Comparator<StubBookmark>() {
+		public int compare(final StubBookmark left, final StubBookmark right) {
+			return left.getId() > right.getId() ? -1 : (left.getId() == right.getId() ? 0 : 1);
+		}
+	};
+
+	private static final class Entry {
+		static final Entry DELETED = new Entry(null);
+
+		final StubBookmark bookmark;
+
+		Entry(final StubBookmark bookmark) {
+			this.bookmark = bookmark;
+		}
+	}
+}
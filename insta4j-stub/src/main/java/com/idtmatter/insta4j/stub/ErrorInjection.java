@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.stub;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Makes the stub server answer a share of requests with an error instead of the regular response.
+ * <p/>
+ * Http codes (below 1000, e.g. 500) are answered with that status and a plain text body, Instapaper codes
+ * (1040, 1251...) with status 400 and an error record, e.g.
+ * [{"type":"error","error_code":1040,"message":"Rate-limit exceeded"}]
+ *
+ * @see InstapaperStubServer#inject(ErrorInjection)
+ */
+public final class ErrorInjection {
+
+	private final int code;
+	private final double probability;
+	private final String path;
+	/**
+	 * The errors left to inject, null for no limit.
+	 */
+	private final AtomicInteger remaining;
+
+	private ErrorInjection(final int code, final double probability, final String path,
+			final AtomicInteger remaining) {
+		if (probability < 0 || probability > 1) {
+			throw new IllegalArgumentException("probability must be between 0 and 1");
+		}
+		this.code = code;
+		this.probability = probability;
+		this.path = path;
+		this.remaining = remaining;
+	}
+
+	/**
+	 * @param code		An http status or Instapaper error code, e.g. 500 or 1040
+	 * @param probability The share of requests failing, between 0 and 1
+	 * @return An injection applying to every endpoint.
+	 */
+	public static ErrorInjection of(final int code, final double probability) {
+		return new ErrorInjection(code, probability, null, null);
+	}
+
+	/**
+	 * @param pathPrefix Restricts the injection to the endpoints starting with this path, e.g. /api/1/folders/add
+	 * @return A copy of this injection restricted to the given endpoints.
+	 */
+	public ErrorInjection on(final String pathPrefix) {
+		return new ErrorInjection(code, probability, pathPrefix, remaining);
+	}
+
+	/**
+	 * @param count The number of errors to inject
+	 * @return A copy of this injection that stops after the given number of errors, e.g. a single 503 followed by
+	 *         regular responses.
+	 */
+	public ErrorInjection times(final int count) {
+		return new ErrorInjection(code, probability, path, new AtomicInteger(count));
+	}
+
+	/**
+	 * Parses the command line form <code>code:probability[:pathPrefix]</code>, e.g. <code>1040:0.01</code>.
+	 *
+	 * @param spec The textual injection
+	 * @return The matching injection
+	 */
+	public static ErrorInjection parse(final String spec) {
+		final String[] parts = spec.split(":");
+		if (parts.length < 2) {
+			throw new IllegalArgumentException("Expected code:probability[:path] but got " + spec);
+		}
+		final ErrorInjection injection = of(Integer.parseInt(parts[0]), Double.parseDouble(parts[1]));
+		return parts.length > 2 ? injection.on(parts[2]) : injection;
+	}
+
+	public int getCode() {
+		return code;
+	}
+
+	public double getProbability() {
+		return probability;
+	}
+
+	boolean appliesTo(final String requestPath) {
+		return path == null || requestPath.startsWith(path);
+	}
+
+	/**
+	 * @return false once the injection has no errors left.
+	 */
+	boolean take() {
+		if (remaining == null) {
+			return true;
+		}
+		int left;
+		do {
+			left = remaining.get();
+			if (left <= 0) {
+				return false;
+			}
+		} while (!remaining.compareAndSet(left, left - 1));
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s:%s%s", code, probability, path != null ? ":" + path : "");
+	}
+}
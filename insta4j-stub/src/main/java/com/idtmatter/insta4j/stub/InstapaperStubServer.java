@@ -0,0 +1,848 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.stub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.DatatypeConverter;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process stand-in for the Instapaper Full and Simple apis, for tests and for load and soak testing the
+ * clients without calling http://www.instapaper.com.
+ * <p/>
+ * It implements /api/1/oauth/access_token, /api/1/account/verify_credentials, /api/1/bookmarks/*,
+ * /api/1/folders/*, /api/authenticate and /api/add with the json shapes of the real service, on top of a
+ * {@link BookmarkDataset}. Latency and errors can be injected:
+ * <p/>
+ * <blockquote><pre>
+ *     InstapaperStubServer server = new InstapaperStubServer()
+ *         .dataset(new BookmarkDataset(2000000))
+ *         .latency(LatencyDistribution.logNormal(20, 0.5))
+ *         .inject(ErrorInjection.of(1040, 0.01))
+ *         .start();
+ *     config.getProperties().put(InstaClientConfig.PROPERTY_API_BASE_URL, server.getBaseUrl());
+ * </pre></blockquote>
+ * It can also run standalone, see {@link #main(String[])}.
+ */
+public class InstapaperStubServer {
+
+	private static final String JSON = "application/json; charset=utf-8";
+	private static final String HTML = "text/html; charset=utf-8";
+	private static final String TEXT = "text/plain; charset=utf-8";
+	private static final long USER_ID = 1615568L;
+
+	private final Map<String, Endpoint> endpoints = new HashMap<String, Endpoint>();
+	private final List<ErrorInjection> injections = new CopyOnWriteArrayList<ErrorInjection>();
+	private final ConcurrentMap<String, String> accounts = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, String> tokens = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, AtomicLong> requestsByPath = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, Boolean> connections = new ConcurrentHashMap<String, Boolean>();
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong tokenSequence = new AtomicLong();
+	private final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new Random();
+		}
+	};
+
+	private volatile BookmarkDataset dataset = new BookmarkDataset(25);
+	private volatile LatencyDistribution latency = LatencyDistribution.none();
+	private volatile int articleParagraphs = 12;
+	private volatile boolean requireKnownToken;
+	private volatile double rateLimit;
+	private double rateTokens;
+	private long rateRefilledAt;
+	private final AtomicLong rateLimited = new AtomicLong();
+	private final int port;
+	private HttpServer server;
+	private ExecutorService executor;
+
+	/**
+	 * A server on a free loopback port.
+	 */
+	public InstapaperStubServer() {
+		this(0);
+	}
+
+	/**
+	 * @param port The loopback port to listen on, 0 picks a free one.
+	 */
+	public InstapaperStubServer(final int port) {
+		this.port = port;
+		registerEndpoints();
+	}
+
+	/**
+	 * @param dataset The bookmarks and folders to serve, 25 synthetic bookmarks by default.
+	 */
+	public InstapaperStubServer dataset(final BookmarkDataset dataset) {
+		this.dataset = dataset;
+		return this;
+	}
+
+	/**
+	 * @param latency How long every request waits before being answered.
+	 */
+	public InstapaperStubServer latency(final LatencyDistribution latency) {
+		this.latency = latency;
+		return this;
+	}
+
+	/**
+	 * Adds an error injection, can be called while the server is running.
+	 */
+	public InstapaperStubServer inject(final ErrorInjection injection) {
+		injections.add(injection);
+		return this;
+	}
+
+	/**
+	 * Answers requests above the given rate with a 1040 error record, or a bare 400 on the Simple api, like the real
+	 * service throttles a consumer.
+	 * Up to one second worth of requests may come at once.
+	 *
+	 * @param requestsPerSecond The allowed rate, 0 for no limit
+	 */
+	public InstapaperStubServer rateLimit(final double requestsPerSecond) {
+		synchronized (this) {
+			this.rateTokens = Math.max(1, requestsPerSecond);
+			this.rateRefilledAt = System.nanoTime();
+		}
+		this.rateLimit = requestsPerSecond;
+		return this;
+	}
+
+	/**
+	 * @return The requests answered with 1040 by the {@link #rateLimit(double)} of the server.
+	 */
+	public long getRateLimitedCount() {
+		return rateLimited.get();
+	}
+
+	/**
+	 * @return False if the request exceeds the rate limit.
+	 */
+	private synchronized boolean takeRateToken() {
+		final double limit = rateLimit;
+		if (limit <= 0) {
+			return true;
+		}
+		final long now = System.nanoTime();
+		rateTokens = Math.min(Math.max(1, limit), rateTokens + (now - rateRefilledAt) / 1e9 * limit);
+		rateRefilledAt = now;
+		if (rateTokens < 1) {
+			rateLimited.incrementAndGet();
+			return false;
+		}
+		rateTokens--;
+		return true;
+	}
+
+	/**
+	 * Removes all error injections.
+	 */
+	public InstapaperStubServer clearInjections() {
+		injections.clear();
+		return this;
+	}
+
+	/**
+	 * Restricts the accepted credentials, by default any username and password is accepted.
+	 */
+	public InstapaperStubServer account(final String username, final String password) {
+		accounts.put(username, password != null ? password : "");
+		return this;
+	}
+
+	/**
+	 * @param require If true, Full api calls signed with a token this server did not issue get a 401.
+	 */
+	public InstapaperStubServer requireKnownToken(final boolean require) {
+		this.requireKnownToken = require;
+		return this;
+	}
+
+	/**
+	 * @param paragraphs The size of the html returned by get_text, about 400 bytes per paragraph.
+	 */
+	public InstapaperStubServer articleParagraphs(final int paragraphs) {
+		this.articleParagraphs = paragraphs;
+		return this;
+	}
+
+	public synchronized InstapaperStubServer start() throws IOException {
+		if (server != null) {
+			throw new IllegalStateException("The stub server is already started");
+		}
+		// without TCP_NODELAY the JDK server writes headers and body in two segments and every keep-alive
+		// request waits out the client's delayed ack (~40ms), read once when the first server is created.
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+		executor = Executors.newCachedThreadPool();
+		server.setExecutor(executor);
+		server.createContext("/", new Dispatcher());
+		server.start();
+		return this;
+	}
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdownNow();
+			server = null;
+		}
+	}
+
+	/**
+	 * @return The base url of the Full api, to be used as insta4j.api.base.url
+	 */
+	public String getBaseUrl() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @return The base url of the Simple api.
+	 */
+	public String getSimpleApiUrl() {
+		return getBaseUrl() + "/api";
+	}
+
+	public BookmarkDataset getDataset() {
+		return dataset;
+	}
+
+	/**
+	 * @return The number of requests answered since the server started.
+	 */
+	public long getRequestCount() {
+		return requests.get();
+	}
+
+	/**
+	 * @param path An endpoint, e.g. /api/1/bookmarks/list
+	 * @return The number of requests answered by that endpoint.
+	 */
+	public long getRequestCount(final String path) {
+		final AtomicLong count = requestsByPath.get(path);
+		return count != null ? count.get() : 0;
+	}
+
+	/**
+	 * @return The number of distinct client connections seen, i.e. the number of tcp (and on a real server tls)
+	 *         handshakes the clients had to make.
+	 */
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	/**
+	 * Issues a token without going through /api/1/oauth/access_token, for clients started with a stored token.
+	 *
+	 * @return A map with oauth_token and oauth_token_secret.
+	 */
+	public Map<String, String> issueToken(final String username) {
+		final String token = String.format("token%08d", tokenSequence.incrementAndGet());
+		tokens.put(token, username);
+		final Map<String, String> issued = new LinkedHashMap<String, String>();
+		issued.put("oauth_token", token);
+		issued.put("oauth_token_secret", "secret" + token.substring(5));
+		return issued;
+	}
+
+	/**
+	 * @return The secret of a token issued by the stub, null if the token is unknown or revoked. Lets a test check
+	 *         the signature of a request.
+	 */
+	public String getTokenSecret(final String token) {
+		return tokens.containsKey(token) ? "secret" + token.substring(5) : null;
+	}
+
+	/**
+	 * Revokes every token issued to the user, Full api calls signed with them get a 401 if known tokens are
+	 * required, see {@link #requireKnownToken(boolean)}.
+	 *
+	 * @return The number of tokens revoked.
+	 */
+	public int revokeTokens(final String username) {
+		int revoked = 0;
+		for (final Iterator<Map.Entry<String, String>> it = tokens.entrySet().iterator(); it.hasNext();) {
+			if (it.next().getValue().equals(username)) {
+				it.remove();
+				revoked++;
+			}
+		}
+		return revoked;
+	}
+
+	private void registerEndpoints() {
+		endpoints.put("/api/1/oauth/access_token", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				final String username = form.get("x_auth_username");
+				if (username == null || !isValid(username, form.get("x_auth_password"))) {
+					return Response.text(401, "Invalid xAuth credentials.");
+				}
+				final Map<String, String> token = issueToken(username);
+				return Response.text(200, String.format("oauth_token=%s&oauth_token_secret=%s",
+						token.get("oauth_token"), token.get("oauth_token_secret")));
+			}
+		});
+		endpoints.put("/api/1/account/verify_credentials", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				final String username = userOf(exchange);
+				return Response.json(new JsonWriter(128).record("user").field("user_id", USER_ID)
+						.field("username", username != null ? username : "jinstapaper@gmail.com")
+						.field("subscription_is_active", true).end().close());
+			}
+		});
+		endpoints.put("/api/1/bookmarks/list", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				final int limit = form.containsKey("limit") ? Integer.parseInt(form.get("limit")) : 25;
+				final String folderId = form.containsKey("folder_id") ? form.get("folder_id") : StubBookmark.UNREAD;
+				final Map<Long, String> have = parseHave(form.get("have"), folderId);
+				final List<Long> deleteIds = new ArrayList<Long>();
+				final List<StubBookmark> bookmarks = dataset.list(folderId, limit, have, deleteIds);
+
+				final JsonWriter writer = new JsonWriter(256 + bookmarks.size() * 320);
+				writer.record("meta");
+				if (!deleteIds.isEmpty()) {
+					writer.field("delete_ids", join(deleteIds));
+				}
+				writer.end();
+				final String username = userOf(exchange);
+				writer.record("user").field("user_id", USER_ID)
+						.field("username", username != null ? username : "jinstapaper@gmail.com")
+						.field("subscription_is_active", true).end();
+				for (final StubBookmark bookmark : bookmarks) {
+					bookmark.writeTo(writer);
+				}
+				return Response.json(writer.close());
+			}
+		});
+		endpoints.put("/api/1/bookmarks/update_read_progress", new BookmarkEndpoint() {
+			StubBookmark apply(final long id, final Map<String, String> form) {
+				final String progress = form.get("progress");
+				final String timestamp = form.get("progress_timestamp");
+				if (progress == null) {
+					throw new ApiError(1243);
+				}
+				if (timestamp == null) {
+					throw new ApiError(1244);
+				}
+				return dataset.updateProgress(id, Double.parseDouble(progress), Long.parseLong(timestamp));
+			}
+		});
+		endpoints.put("/api/1/bookmarks/add", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				final String url = form.get("url");
+				if (url == null || !(url.startsWith("http://") || url.startsWith("https://"))) {
+					throw new ApiError(1240);
+				}
+				final String folderId = form.get("folder_id");
+				if (folderId != null && dataset.getFolder(parseId(folderId, 1242)) == null) {
+					throw new ApiError(1242);
+				}
+				final JsonWriter writer = new JsonWriter(512);
+				dataset.add(url, form.get("title"), form.get("description"), folderId).writeTo(writer);
+				return Response.json(writer.close());
+			}
+		});
+		endpoints.put("/api/1/bookmarks/delete", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				if (!dataset.delete(parseId(form.get("bookmark_id"), 1241))) {
+					throw new ApiError(1241);
+				}
+				return Response.json("[]");
+			}
+		});
+		endpoints.put("/api/1/bookmarks/star", new BookmarkEndpoint() {
+			StubBookmark apply(final long id, final Map<String, String> form) {
+				return dataset.star(id, true);
+			}
+		});
+		endpoints.put("/api/1/bookmarks/unstar", new BookmarkEndpoint() {
+			StubBookmark apply(final long id, final Map<String, String> form) {
+				return dataset.star(id, false);
+			}
+		});
+		endpoints.put("/api/1/bookmarks/archive", new BookmarkEndpoint() {
+			StubBookmark apply(final long id, final Map<String, String> form) {
+				return dataset.move(id, StubBookmark.ARCHIVE);
+			}
+		});
+		endpoints.put("/api/1/bookmarks/unarchive", new BookmarkEndpoint() {
+			StubBookmark apply(final long id, final Map<String, String> form) {
+				return dataset.move(id, StubBookmark.UNREAD);
+			}
+		});
+		endpoints.put("/api/1/bookmarks/move", new BookmarkEndpoint() {
+			StubBookmark apply(final long id, final Map<String, String> form) {
+				final long folderId = parseId(form.get("folder_id"), 1242);
+				if (dataset.getFolder(folderId) == null) {
+					throw new ApiError(1242);
+				}
+				return dataset.move(id, Long.toString(folderId));
+			}
+		});
+		endpoints.put("/api/1/bookmarks/get_text", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				final StubBookmark bookmark = dataset.get(parseId(form.get("bookmark_id"), 1241));
+				if (bookmark == null) {
+					throw new ApiError(1241);
+				}
+				return new Response(200, HTML, article(bookmark));
+			}
+		});
+		endpoints.put("/api/1/folders/list", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				return Response.json(folders(dataset.listFolders()));
+			}
+		});
+		endpoints.put("/api/1/folders/add", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				final String title = form.get("title");
+				if (title == null || title.length() == 0) {
+					throw new ApiError(1250);
+				}
+				final StubFolder folder = dataset.addFolder(title);
+				if (folder == null) {
+					throw new ApiError(1251);
+				}
+				return Response.json(folders(Collections.singletonList(folder)));
+			}
+		});
+		endpoints.put("/api/1/folders/delete", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				if (!dataset.deleteFolder(parseId(form.get("folder_id"), 1242))) {
+					throw new ApiError(1242);
+				}
+				return Response.json("[]");
+			}
+		});
+		endpoints.put("/api/1/folders/set_order", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				final String order = form.get("order");
+				if (order != null) {
+					for (final String pair : order.split(",")) {
+						final String[] idAndPosition = pair.split(":");
+						if (idAndPosition.length == 2) {
+							dataset.setFolderPosition(parseId(idAndPosition[0], 1242),
+									parseId(idAndPosition[1], 1242));
+						}
+					}
+				}
+				return Response.json(folders(dataset.listFolders()));
+			}
+		});
+		endpoints.put("/api/authenticate", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				final String[] credentials = basicCredentials(exchange);
+				if (credentials == null || !isValid(credentials[0], credentials[1])) {
+					return Response.text(403, "403");
+				}
+				return Response.text(200, "200");
+			}
+		});
+		endpoints.put("/api/add", new Endpoint() {
+			Response handle(final Map<String, String> form, final HttpExchange exchange) {
+				final String[] credentials = basicCredentials(exchange);
+				if (credentials == null || !isValid(credentials[0], credentials[1])) {
+					return Response.text(403, "403");
+				}
+				final String url = form.get("url");
+				if (url == null) {
+					return Response.text(400, "400");
+				}
+				final StubBookmark bookmark = dataset.add(url, form.get("title"), form.get("selection"), null);
+				final Response response = Response.text(201, "201");
+				response.headers.put("Content-Location", bookmark.getUrl());
+				response.headers.put("X-Instapaper-Title", bookmark.getTitle());
+				return response;
+			}
+		});
+	}
+
+	private boolean isValid(final String username, final String password) {
+		if (accounts.isEmpty()) {
+			return true;
+		}
+		final String expected = accounts.get(username);
+		return expected != null && expected.equals(password != null ? password : "");
+	}
+
+	/**
+	 * @return The user owning the oauth token of the request, or null if the request is not signed with a known
+	 *         token.
+	 */
+	private String userOf(final HttpExchange exchange) {
+		final String token = oauthToken(exchange);
+		return token != null ? tokens.get(token) : null;
+	}
+
+	private static String oauthToken(final HttpExchange exchange) {
+		final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		if (authorization == null) {
+			return null;
+		}
+		final int start = authorization.indexOf("oauth_token=\"");
+		if (start < 0) {
+			return null;
+		}
+		final int valueStart = start + "oauth_token=\"".length();
+		final int end = authorization.indexOf('"', valueStart);
+		return end > valueStart ? authorization.substring(valueStart, end) : null;
+	}
+
+	private static String[] basicCredentials(final HttpExchange exchange) {
+		final String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+		if (authorization == null || !authorization.startsWith("Basic ")) {
+			return null;
+		}
+		try {
+			final String decoded = new String(DatatypeConverter.parseBase64Binary(authorization.substring(6).trim()), "UTF-8");
+			final int colon = decoded.indexOf(':');
+			return colon < 0 ? new String[]{decoded, ""}
+					: new String[]{decoded.substring(0, colon), decoded.substring(colon + 1)};
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Parses the have parameter, id[:hash[:progress:progress_timestamp]] entries separated by commas. Progress
+	 * entries more recent than the server's are applied, like Instapaper does.
+	 */
+	private Map<Long, String> parseHave(final String have, final String folderId) {
+		if (have == null || have.length() == 0) {
+			return null;
+		}
+		final Map<Long, String> known = new HashMap<Long, String>();
+		for (final String entry : have.split(",")) {
+			final String[] fields = entry.split(":");
+			final long id;
+			try {
+				id = Long.parseLong(fields[0].trim());
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			if (fields.length >= 4) {
+				dataset.updateProgress(id, Double.parseDouble(fields[2]), Long.parseLong(fields[3]));
+			}
+			// a bare id means "do not send it whatever its hash is"
+			final StubBookmark current = dataset.get(id);
+			known.put(id, fields.length >= 2 ? fields[1] : (current != null ? current.getHash() : ""));
+		}
+		return known;
+	}
+
+	private String article(final StubBookmark bookmark) {
+		final StringBuilder html = new StringBuilder(512 + articleParagraphs * 420);
+		html.append("<!DOCTYPE html>\n<html>\n<head><meta charset=\"utf-8\"><title>").append(bookmark.getTitle())
+				.append("</title></head>\n<body>\n<div id=\"story\">\n");
+		final Random words = new Random(bookmark.getId());
+		for (int p = 0; p < articleParagraphs; p++) {
+			html.append("<p>");
+			for (int w = 0; w < 60; w++) {
+				html.append(WORDS[words.nextInt(WORDS.length)]).append(w == 59 ? "." : " ");
+			}
+			html.append("</p>\n");
+		}
+		return html.append("</div>\n</body>\n</html>\n").toString();
+	}
+
+	private static String folders(final List<StubFolder> folders) {
+		final JsonWriter writer = new JsonWriter(64 + folders.size() * 128);
+		for (final StubFolder folder : folders) {
+			folder.writeTo(writer);
+		}
+		return writer.close();
+	}
+
+	private static String join(final List<Long> ids) {
+		final StringBuilder builder = new StringBuilder();
+		for (final Long id : ids) {
+			if (builder.length() > 0) {
+				builder.append(',');
+			}
+			builder.append(id);
+		}
+		return builder.toString();
+	}
+
+	private static long parseId(final String value, final int errorCode) {
+		if (value == null) {
+			throw new ApiError(errorCode);
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new ApiError(errorCode);
+		}
+	}
+
+	private static byte[] readFully(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	private static Map<String, String> parseForm(final String body) throws UnsupportedEncodingException {
+		final Map<String, String> form = new HashMap<String, String>();
+		if (body == null || body.length() == 0) {
+			return form;
+		}
+		for (final String pair : body.split("&")) {
+			final int eq = pair.indexOf('=');
+			if (eq > 0) {
+				form.put(URLDecoder.decode(pair.substring(0, eq), "UTF-8"),
+						URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+			}
+		}
+		return form;
+	}
+
+	private final class Dispatcher implements HttpHandler {
+		public void handle(final HttpExchange exchange) throws IOException {
+			try {
+				connections.putIfAbsent(exchange.getRemoteAddress().toString(), Boolean.TRUE);
+				final String path = exchange.getRequestURI().getPath();
+				// the form is read before answering so that the connection can be kept alive
+				final Map<String, String> form = parseForm(new String(readFully(exchange.getRequestBody()), "UTF-8"));
+				form.putAll(parseForm(exchange.getRequestURI().getRawQuery()));
+
+				sleep(latency.nextMicros(random.get()));
+				final Response response = answer(path, form, exchange);
+				// counted before answering, a client reading the counters after its call sees the call
+				requests.incrementAndGet();
+				AtomicLong count = requestsByPath.get(path);
+				if (count == null) {
+					requestsByPath.putIfAbsent(path, new AtomicLong());
+					count = requestsByPath.get(path);
+				}
+				count.incrementAndGet();
+				respond(exchange, response);
+			} finally {
+				exchange.close();
+			}
+		}
+
+		private Response answer(final String path, final Map<String, String> form, final HttpExchange exchange) {
+			final Endpoint endpoint = endpoints.get(path);
+			if (endpoint == null) {
+				return Response.text(404, "Unknown endpoint " + path);
+			}
+			for (final ErrorInjection injection : injections) {
+				if (injection.appliesTo(path) && random.get().nextDouble() < injection.getProbability()
+						&& injection.take()) {
+					return injection.getCode() < 1000
+							? Response.text(injection.getCode(), "Injected error " + injection.getCode())
+							: ApiError.response(injection.getCode());
+				}
+			}
+			if (!path.equals("/api/1/oauth/access_token") && !takeRateToken()) {
+				// the Simple api has no error records, only its bare 400
+				return path.startsWith("/api/1/") ? ApiError.response(1040) : Response.text(400, "400");
+			}
+			if (path.startsWith("/api/1/") && !path.equals("/api/1/oauth/access_token")) {
+				final String token = oauthToken(exchange);
+				if (token == null || (requireKnownToken && !tokens.containsKey(token))) {
+					return Response.text(401, "Invalid xAuth credentials.");
+				}
+			}
+			try {
+				return endpoint.handle(form, exchange);
+			} catch (ApiError e) {
+				return ApiError.response(e.code);
+			} catch (NumberFormatException e) {
+				return Response.text(400, "Bad request: " + e.getMessage());
+			}
+		}
+
+		private void sleep(final long micros) {
+			if (micros > 0) {
+				try {
+					TimeUnit.MICROSECONDS.sleep(micros);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		private void respond(final HttpExchange exchange, final Response response) throws IOException {
+			final byte[] body = response.body.getBytes("UTF-8");
+			exchange.getResponseHeaders().set("Content-Type", response.contentType);
+			for (final Map.Entry<String, String> header : response.headers.entrySet()) {
+				exchange.getResponseHeaders().set(header.getKey(), header.getValue());
+			}
+			exchange.sendResponseHeaders(response.status, body.length == 0 ? -1 : body.length);
+			final OutputStream out = exchange.getResponseBody();
+			try {
+				out.write(body);
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	private abstract static class Endpoint {
+		abstract Response handle(Map<String, String> form, HttpExchange exchange);
+	}
+
+	/**
+	 * An endpoint taking a bookmark_id and answering the modified bookmark.
+	 */
+	private abstract static class BookmarkEndpoint extends Endpoint {
+		Response handle(final Map<String, String> form, final HttpExchange exchange) {
+			final StubBookmark bookmark = apply(parseId(form.get("bookmark_id"), 1241), form);
+			if (bookmark == null) {
+				throw new ApiError(1241);
+			}
+			final JsonWriter writer = new JsonWriter(512);
+			bookmark.writeTo(writer);
+			return Response.json(writer.close());
+		}
+
+		abstract StubBookmark apply(long id, Map<String, String> form);
+	}
+
+	private static final class Response {
+		final int status;
+		final String contentType;
+		final String body;
+		final Map<String, String> headers = new HashMap<String, String>();
+
+		Response(final int status, final String contentType, final String body) {
+			this.status = status;
+			this.contentType = contentType;
+			this.body = body;
+		}
+
+		static Response json(final String body) {
+			return new Response(200, JSON, body);
+		}
+
+		static Response text(final int status, final String body) {
+			return new Response(status, TEXT, body);
+		}
+	}
+
+	/**
+	 * An Instapaper error, answered with status 400 and an error record.
+	 */
+	private static final class ApiError extends RuntimeException {
+		private static final Map<Integer, String> MESSAGES = new HashMap<Integer, String>();
+
+		static {
+			MESSAGES.put(1040, "Rate-limit exceeded");
+			MESSAGES.put(1041, "Subscription account required");
+			MESSAGES.put(1042, "Application is suspended");
+			MESSAGES.put(1220, "Domain requires full content to be supplied");
+			MESSAGES.put(1221, "Domain has opted out of Instapaper compatibility");
+			MESSAGES.put(1240, "Invalid URL specified");
+			MESSAGES.put(1241, "Invalid or missing bookmark_id");
+			MESSAGES.put(1242, "Invalid or missing folder_id");
+			MESSAGES.put(1243, "Invalid or missing progress");
+			MESSAGES.put(1244, "Invalid or missing progress_timestamp");
+			MESSAGES.put(1245, "Private bookmarks require supplied content");
+			MESSAGES.put(1246, "Unexpected error when saving bookmark");
+			MESSAGES.put(1250, "Invalid or missing title");
+			MESSAGES.put(1251, "User already has a folder with this title");
+			MESSAGES.put(1252, "Cannot add bookmarks to this folder");
+		}
+
+		final int code;
+
+		ApiError(final int code) {
+			super("Instapaper error " + code);
+			this.code = code;
+		}
+
+		static Response response(final int code) {
+			final String message = MESSAGES.containsKey(code) ? MESSAGES.get(code) : "Error " + code;
+			return new Response(400, JSON, JsonWriter.error(code, message));
+		}
+	}
+
+	private static final String[] WORDS = ("instapaper saves web pages for later reading on the phone tablet or "
+			+ "kindle with a clean text view that removes the clutter around the story so the article can be "
+			+ "read comfortably offline at any time while commuting or travelling").split(" ");
+
+	/**
+	 * Runs the stub server standalone:
+	 * <p/>
+	 * <blockquote><pre>
+	 *     java -jar insta4j-stub.jar [--port 8089] [--bookmarks 1000000] [--latency lognormal:20:0.5]
+	 *                                [--error 1040:0.01] [--error 500:0.001:/api/1/bookmarks/add]
+	 * </pre></blockquote>
+	 */
+	public static void main(final String[] args) throws IOException {
+		int port = 8089;
+		long bookmarks = 1000;
+		final List<ErrorInjection> errors = new ArrayList<ErrorInjection>();
+		LatencyDistribution latency = LatencyDistribution.none();
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if ("--port".equals(args[i])) {
+				port = Integer.parseInt(args[i + 1]);
+			} else if ("--bookmarks".equals(args[i])) {
+				bookmarks = Long.parseLong(args[i + 1]);
+			} else if ("--latency".equals(args[i])) {
+				latency = LatencyDistribution.parse(args[i + 1]);
+			} else if ("--error".equals(args[i])) {
+				errors.add(ErrorInjection.parse(args[i + 1]));
+			} else {
+				throw new IllegalArgumentException("Unknown option " + args[i]);
+			}
+		}
+		final InstapaperStubServer server = new InstapaperStubServer(port).dataset(new BookmarkDataset(bookmarks))
+				.latency(latency);
+		for (final ErrorInjection error : errors) {
+			server.inject(error);
+		}
+		server.start();
+		System.out.println(String.format("Instapaper stub listening on %s with %d bookmarks, latency %s, errors %s",
+				server.getBaseUrl(), bookmarks, latency, errors));
+	}
+}
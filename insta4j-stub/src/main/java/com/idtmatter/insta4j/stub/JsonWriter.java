@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.stub;
+
+/**
+ * Writes records the way the Instapaper api does: flat objects in a top level array, slashes and non ascii
+ * characters escaped, booleans as "0"/"1" strings.
+ */
+final class JsonWriter {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final StringBuilder builder;
+	private boolean firstRecord = true;
+	private boolean firstField;
+
+	JsonWriter(final int capacity) {
+		builder = new StringBuilder(capacity);
+		builder.append('[');
+	}
+
+	JsonWriter record(final String type) {
+		if (!firstRecord) {
+			builder.append(',');
+		}
+		firstRecord = false;
+		builder.append('{');
+		firstField = true;
+		return field("type", type);
+	}
+
+	JsonWriter field(final String name, final String value) {
+		name(name);
+		string(value);
+		return this;
+	}
+
+	JsonWriter field(final String name, final long value) {
+		name(name);
+		builder.append(value);
+		return this;
+	}
+
+	JsonWriter field(final String name, final double value) {
+		name(name);
+		if (value == Math.rint(value) && !Double.isInfinite(value)) {
+			builder.append((long) value);
+		} else {
+			builder.append(value);
+		}
+		return this;
+	}
+
+	JsonWriter field(final String name, final boolean value) {
+		return field(name, value ? "1" : "0");
+	}
+
+	JsonWriter end() {
+		builder.append('}');
+		return this;
+	}
+
+	String close() {
+		return builder.append(']').toString();
+	}
+
+	static String error(final int code, final String message) {
+		return new JsonWriter(64).record("error").field("error_code", code).field("message", message).end().close();
+	}
+
+	private void name(final String name) {
+		if (!firstField) {
+			builder.append(',');
+		}
+		firstField = false;
+		string(name);
+		builder.append(':');
+	}
+
+	private void string(final String value) {
+		builder.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					builder.append("\\\"");
+					break;
+				case '\\':
+					builder.append("\\\\");
+					break;
+				case '/':
+					builder.append("\\/");
+					break;
+				case '\n':
+					builder.append("\\n");
+					break;
+				case '\r':
+					builder.append("\\r");
+					break;
+				case '\t':
+					builder.append("\\t");
+					break;
+				default:
+					if (c < 0x20 || c > 0x7e) {
+						builder.append("\\u").append(HEX[(c >> 12) & 0xf]).append(HEX[(c >> 8) & 0xf])
+								.append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+					} else {
+						builder.append(c);
+					}
+			}
+		}
+		builder.append('"');
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.stub;
+
+import java.util.Random;
+
+/**
+ * The time the stub server waits before answering a request, drawn for every request.
+ *
+ * @see InstapaperStubServer#latency(LatencyDistribution)
+ */
+public abstract class LatencyDistribution {
+
+	/**
+	 * Draws the next delay.
+	 *
+	 * @param random The random source of the calling thread.
+	 * @return The delay in microseconds, never negative.
+	 */
+	public abstract long nextMicros(Random random);
+
+	/**
+	 * @return Answer as fast as possible.
+	 */
+	public static LatencyDistribution none() {
+		return fixed(0);
+	}
+
+	/**
+	 * @param millis The constant delay
+	 * @return A distribution that always returns the same delay.
+	 */
+	public static LatencyDistribution fixed(final double millis) {
+		final long micros = toMicros(millis);
+		return new LatencyDistribution() {
+			@Override
+			public long nextMicros(final Random random) {
+				return micros;
+			}
+
+			@Override
+			public String toString() {
+				return String.format("fixed(%sms)", millis);
+			}
+		};
+	}
+
+	/**
+	 * @param minMillis The shortest delay
+	 * @param maxMillis The longest delay
+	 * @return A distribution uniformly spread between min and max.
+	 */
+	public static LatencyDistribution uniform(final double minMillis, final double maxMillis) {
+		if (maxMillis < minMillis) {
+			throw new IllegalArgumentException("maxMillis must not be smaller than minMillis");
+		}
+		final long min = toMicros(minMillis);
+		final long span = toMicros(maxMillis) - min;
+		return new LatencyDistribution() {
+			@Override
+			public long nextMicros(final Random random) {
+				return min + (long) (random.nextDouble() * span);
+			}
+
+			@Override
+			public String toString() {
+				return String.format("uniform(%sms..%sms)", minMillis, maxMillis);
+			}
+		};
+	}
+
+	/**
+	 * @param meanMillis The mean delay
+	 * @return An exponential distribution, the classic model for independent service times.
+	 */
+	public static LatencyDistribution exponential(final double meanMillis) {
+		final double mean = toMicros(meanMillis);
+		return new LatencyDistribution() {
+			@Override
+			public long nextMicros(final Random random) {
+				return (long) (-mean * Math.log(1 - random.nextDouble()));
+			}
+
+			@Override
+			public String toString() {
+				return String.format("exponential(mean=%sms)", meanMillis);
+			}
+		};
+	}
+
+	/**
+	 * A log-normal distribution has the long tail observed on real http services: most answers are close to
+	 * the median and a few are many times slower.
+	 *
+	 * @param medianMillis The median delay
+	 * @param sigma		The shape, 0.5 gives a p99 of about 3 times the median, 1.0 about 10 times.
+	 * @return A log-normal distribution.
+	 */
+	public static LatencyDistribution logNormal(final double medianMillis, final double sigma) {
+		final double mu = Math.log(Math.max(toMicros(medianMillis), 1));
+		return new LatencyDistribution() {
+			@Override
+			public long nextMicros(final Random random) {
+				return (long) Math.exp(mu + sigma * random.nextGaussian());
+			}
+
+			@Override
+			public String toString() {
+				return String.format("logNormal(median=%sms, sigma=%s)", medianMillis, sigma);
+			}
+		};
+	}
+
+	/**
+	 * Parses the command line form of a distribution: <code>none</code>, <code>fixed:20</code>,
+	 * <code>uniform:5:50</code>, <code>exponential:20</code> or <code>lognormal:20:0.5</code>, all times in
+	 * milliseconds.
+	 *
+	 * @param spec The textual distribution
+	 * @return The matching distribution
+	 */
+	public static LatencyDistribution parse(final String spec) {
+		final String[] parts = spec.split(":");
+		final String name = parts[0].toLowerCase();
+		try {
+			if ("none".equals(name)) {
+				return none();
+			} else if ("fixed".equals(name)) {
+				return fixed(Double.parseDouble(parts[1]));
+			} else if ("uniform".equals(name)) {
+				return uniform(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+			} else if ("exponential".equals(name)) {
+				return exponential(Double.parseDouble(parts[1]));
+			} else if ("lognormal".equals(name)) {
+				return logNormal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			// fall through to the error below
+		}
+		throw new IllegalArgumentException("Unknown latency distribution " + spec);
+	}
+
+	private static long toMicros(final double millis) {
+		return (long) (millis * 1000);
+	}
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.stub;
+
+/**
+ * An immutable bookmark held by a {@link BookmarkDataset}. Every change produces a new instance.
+ */
+public final class StubBookmark {
+
+	/**
+	 * The folder of bookmarks in the Unread list.
+	 */
+	public static final String UNREAD = "unread";
+	/**
+	 * The folder of archived bookmarks.
+	 */
+	public static final String ARCHIVE = "archive";
+	/**
+	 * The pseudo folder listing starred bookmarks.
+	 */
+	public static final String STARRED = "starred";
+
+	private final long id;
+	private final String url;
+	private final String title;
+	private final String description;
+	private final long time;
+	private final boolean starred;
+	private final String folder;
+	private final double progress;
+	private final long progressTimestamp;
+
+	StubBookmark(final long id, final String url, final String title, final String description, final long time,
+			final boolean starred, final String folder, final double progress, final long progressTimestamp) {
+		this.id = id;
+		this.url = url;
+		this.title = title;
+		this.description = description;
+		this.time = time;
+		this.starred = starred;
+		this.folder = folder;
+		this.progress = progress;
+		this.progressTimestamp = progressTimestamp;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public String getDescription() {
+		return description;
+	}
+
+	public long getTime() {
+		return time;
+	}
+
+	public boolean isStarred() {
+		return starred;
+	}
+
+	/**
+	 * @return {@link #UNREAD}, {@link #ARCHIVE} or the id of a user folder.
+	 */
+	public String getFolder() {
+		return folder;
+	}
+
+	public double getProgress() {
+		return progress;
+	}
+
+	public long getProgressTimestamp() {
+		return progressTimestamp;
+	}
+
+	/**
+	 * Like Instapaper the hash covers url, title, description and reading progress, so it changes whenever one
+	 * of them does.
+	 *
+	 * @return An 8 character hash of the bookmark.
+	 */
+	public String getHash() {
+		long h = 1125899906842597L;
+		h = 31 * h + url.hashCode();
+		h = 31 * h + title.hashCode();
+		h = 31 * h + description.hashCode();
+		h = 31 * h + Double.doubleToLongBits(progress);
+		h = 31 * h + progressTimestamp;
+		final char[] alphabet = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz".toCharArray();
+		final char[] hash = new char[8];
+		for (int i = 0; i < hash.length; i++) {
+			hash[i] = alphabet[(int) ((h >>> (i * 6)) & 0x3f) % alphabet.length];
+		}
+		return new String(hash);
+	}
+
+	/**
+	 * @param folderId {@link #UNREAD}, {@link #ARCHIVE}, {@link #STARRED} or a user folder id
+	 * @return True if the bookmark is listed in that folder.
+	 */
+	public boolean isIn(final String folderId) {
+		return STARRED.equals(folderId) ? starred : folder.equals(folderId);
+	}
+
+	StubBookmark starred(final boolean value) {
+		return new StubBookmark(id, url, title, description, time, value, folder, progress, progressTimestamp);
+	}
+
+	StubBookmark movedTo(final String value) {
+		return new StubBookmark(id, url, title, description, time, starred, value, progress, progressTimestamp);
+	}
+
+	StubBookmark titled(final String value) {
+		return new StubBookmark(id, url, value, description, time, starred, folder, progress, progressTimestamp);
+	}
+
+	StubBookmark progress(final double value, final long timestamp) {
+		return new StubBookmark(id, url, title, description, time, starred, folder, value, timestamp);
+	}
+
+	void writeTo(final JsonWriter writer) {
+		writer.record("bookmark")
+				.field("bookmark_id", id)
+				.field("url", url)
+				.field("title", title)
+				.field("description", description)
+				.field("time", time)
+				.field("starred", starred)
+				.field("private_source", "")
+				.field("hash", getHash())
+				.field("progress", progress)
+				.field("progress_timestamp", progressTimestamp)
+				.end();
+	}
+}
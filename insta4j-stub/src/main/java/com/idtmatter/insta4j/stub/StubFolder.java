@@ -0,0 +1,56 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+
+package com.idtmatter.insta4j.stub;
+
+/**
+ * An immutable user folder held by a {@link BookmarkDataset}.
+ */
+public final class StubFolder {
+
+	private final long id;
+	private final String title;
+	private final long position;
+
+	StubFolder(final long id, final String title, final long position) {
+		this.id = id;
+		this.title = title;
+		this.position = position;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	StubFolder position(final long value) {
+		return new StubFolder(id, title, value);
+	}
+
+	void writeTo(final JsonWriter writer) {
+		writer.record("folder")
+				.field("folder_id", id)
+				.field("title", title)
+				.field("sync_to_mobile", true)
+				.field("position", position)
+				.end();
+	}
+}